@@ -0,0 +1,140 @@
+/**
+ * File BenchmarkData.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * generates the input data for the benchmarks. encoded files can't be
+ * generated without encoders, so they are taken from the directory given by
+ * the system property hotsound.bench.dir (bench.mp3, bench.ogg, bench.flac).
+ * For MP3 a file of valid but silent frames is generated if none is given.
+ *
+ * @author Martin Braun
+ */
+public final class BenchmarkData {
+
+	public static final String BENCH_DIR_PROPERTY = "hotsound.bench.dir";
+
+	public static final AudioFormat CD_FORMAT = new AudioFormat( 44100, 16, 2, true, false );
+
+	private BenchmarkData() {
+		throw new AssertionError( "can't touch this!" );
+	}
+
+	/**
+	 * @return pFrames frames of a 440 Hz sine in pFormat (PCM, 8 or 16 bit)
+	 */
+	public static byte[] sine(AudioFormat pFormat, int pFrames) {
+		int channels = pFormat.getChannels();
+		int bytesPerSample = pFormat.getSampleSizeInBits() / 8;
+		boolean signed = pFormat.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+		byte[] data = new byte[pFrames * pFormat.getFrameSize()];
+		int pos = 0;
+		for ( int i = 0; i < pFrames; ++i ) {
+			double value = Math.sin( 2 * Math.PI * 440 * i / pFormat.getSampleRate() ) * 0.5;
+			for ( int c = 0; c < channels; ++c ) {
+				if ( bytesPerSample == 1 ) {
+					int sample = (int) (value * 127);
+					data[pos++] = (byte) (signed ? sample : sample + 128);
+				}
+				else {
+					int sample = (int) (value * 32767);
+					if ( pFormat.isBigEndian() ) {
+						data[pos++] = (byte) (sample >> 8);
+						data[pos++] = (byte) sample;
+					}
+					else {
+						data[pos++] = (byte) sample;
+						data[pos++] = (byte) (sample >> 8);
+					}
+				}
+			}
+		}
+		return data;
+	}
+
+	public static File wave(AudioFormat pFormat, int pFrames) throws IOException {
+		File file = File.createTempFile( "hotsound-bench", ".wav" );
+		file.deleteOnExit();
+		byte[] data = sine( pFormat, pFrames );
+		AudioSystem.write(
+				new AudioInputStream( new ByteArrayInputStream( data ), pFormat, pFrames ),
+				AudioFileFormat.Type.WAVE,
+				file
+		);
+		return file;
+	}
+
+	/**
+	 * @return a MPEG-1 Layer III file (128 kbit/s, 44.1 kHz) of pFrames silent
+	 *         frames
+	 */
+	public static File silentMp3(int pFrames) throws IOException {
+		File file = File.createTempFile( "hotsound-bench", ".mp3" );
+		file.deleteOnExit();
+		byte[] frame = new byte[417];
+		frame[0] = (byte) 0xFF;
+		frame[1] = (byte) 0xFB;
+		frame[2] = (byte) 0x90;
+		frame[3] = (byte) 0x64;
+		try (OutputStream out = new FileOutputStream( file )) {
+			for ( int i = 0; i < pFrames; ++i ) {
+				out.write( frame );
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * @return the benchmark input for the given codec
+	 * @throws IllegalStateException if there is no file for the codec
+	 */
+	public static File file(String pCodec) throws IOException {
+		String dir = System.getProperty( BENCH_DIR_PROPERTY );
+		if ( dir != null ) {
+			File file = new File( dir, "bench." + pCodec );
+			if ( file.exists() ) {
+				return file;
+			}
+		}
+		switch ( pCodec ) {
+			case "wav":
+				return wave( CD_FORMAT, 44100 * 10 );
+			case "mp3":
+				return silentMp3( 383 );
+			default:
+				throw new IllegalStateException(
+						"no input for " + pCodec + ", put bench." + pCodec + " into the directory given by -D" +
+								BENCH_DIR_PROPERTY
+				);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ * File ConversionBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.util.AudioUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * converts a second of PCM audio to 16 bit signed little endian like
+ * {@link AudioUtil} does for formats the line doesn't support
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+	@Param({"PCM_UNSIGNED_8", "PCM_SIGNED_16_BE", "PCM_SIGNED_16_LE"})
+	public String mSourceFormat;
+
+	private AudioFormat mFormat;
+	private byte[] mData;
+	private byte[] mBuffer;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		switch ( this.mSourceFormat ) {
+			case "PCM_UNSIGNED_8":
+				this.mFormat = new AudioFormat( AudioFormat.Encoding.PCM_UNSIGNED, 44100, 8, 2, 2, 44100, false );
+				break;
+			case "PCM_SIGNED_16_BE":
+				this.mFormat = new AudioFormat( 44100, 16, 2, true, true );
+				break;
+			default:
+				this.mFormat = new AudioFormat( 44100, 16, 2, true, false );
+				break;
+		}
+		this.mData = BenchmarkData.sine( this.mFormat, 44100 );
+		this.mBuffer = new byte[16384];
+	}
+
+	@Benchmark
+	public long convert() throws Exception {
+		AudioInputStream source = new AudioInputStream(
+				new ByteArrayInputStream( this.mData ),
+				this.mFormat,
+				this.mData.length / this.mFormat.getFrameSize()
+		);
+		AudioInputStream converted = AudioUtil.getPCMSignedAudioInputStreamFromAudioInputStream( source );
+		long checksum = 0;
+		int read;
+		while ( (read = converted.read( this.mBuffer )) != -1 ) {
+			checksum += read > 0 ? this.mBuffer[read - 1] : 0;
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	public long convertTo16BitLittleEndian() throws Exception {
+		AudioInputStream source = new AudioInputStream(
+				new ByteArrayInputStream( this.mData ),
+				this.mFormat,
+				this.mData.length / this.mFormat.getFrameSize()
+		);
+		AudioInputStream converted = AudioSystem.getAudioInputStream(
+				new AudioFormat( 44100, 16, 2, true, false ),
+				source
+		);
+		long checksum = 0;
+		int read;
+		while ( (read = converted.read( this.mBuffer )) != -1 ) {
+			checksum += read > 0 ? this.mBuffer[read - 1] : 0;
+		}
+		return checksum;
+	}
+
+}
@@ -0,0 +1,94 @@
+/**
+ * File DecodeBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.player.BasicPlaybackSong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * decodes a whole file per codec through BasicPlaybackSong/BasicPlaybackAudio
+ * into a {@link NullAudioDevice}
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+	@Param({"wav", "mp3", "ogg"})
+	public String mCodec;
+
+	@Param({"16384"})
+	public int mChunkSize;
+
+	private BasicPlaybackSong mSong;
+	private NullAudioDevice mDevice;
+	private byte[] mBuffer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		File file = BenchmarkData.file( this.mCodec );
+		this.mSong = new BasicPlaybackSong( file );
+		this.mBuffer = new byte[this.mChunkSize];
+		Audio audio = this.mSong.getAudio();
+		audio.open();
+		this.mDevice = new NullAudioDevice();
+		this.mDevice.open( audio.getAudioFormat() );
+		audio.close();
+	}
+
+	@Benchmark
+	public long decode() throws Exception {
+		Audio audio = this.mSong.getAudio();
+		audio.open();
+		try {
+			int read;
+			while ( (read = audio.read( this.mBuffer, 0, this.mBuffer.length )) != -1 ) {
+				this.mDevice.write( this.mBuffer, 0, read );
+			}
+		}
+		finally {
+			audio.close();
+		}
+		return this.mDevice.getChecksum();
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * File MultiAudioDeviceBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.data.AudioDevice;
+import de.hotware.hotsound.audio.data.MultiAudioDevice;
+import de.hotware.hotsound.audio.data.MultiAudioDevice.SlowConsumerPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * writes chunks into a {@link MultiAudioDevice} fanning out to several
+ * {@link NullAudioDevice}s
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiAudioDeviceBenchmark {
+
+	@Param({"1", "4", "16"})
+	public int mDevices;
+
+	@Param({"sync", "async"})
+	public String mMode;
+
+	@Param({"4096"})
+	public int mChunkSize;
+
+	private MultiAudioDevice mMultiAudioDevice;
+	private byte[] mChunk;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		List<AudioDevice> devices = new ArrayList<>();
+		for ( int i = 0; i < this.mDevices; ++i ) {
+			devices.add( new NullAudioDevice() );
+		}
+		if ( "async".equals( this.mMode ) ) {
+			this.mMultiAudioDevice = new MultiAudioDevice( devices, 8, SlowConsumerPolicy.BLOCK );
+		}
+		else {
+			this.mMultiAudioDevice = new MultiAudioDevice( devices );
+		}
+		this.mMultiAudioDevice.open( BenchmarkData.CD_FORMAT );
+		this.mChunk = BenchmarkData.sine( BenchmarkData.CD_FORMAT, this.mChunkSize / 4 );
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		this.mMultiAudioDevice.close();
+	}
+
+	@Benchmark
+	public int write() throws Exception {
+		return this.mMultiAudioDevice.write( this.mChunk, 0, this.mChunk.length );
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * File NullAudioDevice.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+
+/**
+ * AudioDevice that throws everything away, so benchmarks don't need sound
+ * hardware. Touches the written data so the JIT can't optimize the copy away.
+ *
+ * @author Martin Braun
+ */
+public class NullAudioDevice extends BaseAudioDevice {
+
+	protected long mBytesWritten;
+	protected long mChecksum;
+
+	@Override
+	public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+		super.write( pData, pStart, pLength );
+		if ( pLength > 0 ) {
+			this.mChecksum += pData[pStart] + pData[pStart + pLength - 1];
+		}
+		this.mBytesWritten += pLength;
+		return pLength;
+	}
+
+	@Override
+	public void flush() {
+
+	}
+
+	public long getBytesWritten() {
+		return this.mBytesWritten;
+	}
+
+	public long getChecksum() {
+		return this.mChecksum;
+	}
+
+}
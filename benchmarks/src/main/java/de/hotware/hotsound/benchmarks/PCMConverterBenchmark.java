@@ -0,0 +1,134 @@
+/**
+ * File PCMConverterBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.util.PCMCodec;
+import de.hotware.hotsound.audio.util.PCMConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * converts a second of 96 kHz 6 channel audio between every pair of PCM
+ * encodings, once with the {@link PCMConverter} kernels and once with the
+ * converters of JavaSound (0 if JavaSound doesn't support the pair)
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PCMConverterBenchmark {
+
+	private static final float SAMPLE_RATE = 96000;
+	private static final int CHANNELS = 6;
+
+	@Param({"U8", "S16LE", "S16BE", "S24LE", "S32LE", "F32LE"})
+	public String mSourceFormat;
+
+	@Param({"U8", "S16LE", "S16BE", "S24LE", "S32LE", "F32LE"})
+	public String mTargetFormat;
+
+	private AudioFormat mSource;
+	private AudioFormat mTarget;
+	private PCMConverter mConverter;
+	private byte[] mData;
+	private byte[] mOutput;
+	private int mFrames;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.mSource = format( this.mSourceFormat );
+		this.mTarget = format( this.mTargetFormat );
+		this.mConverter = new PCMConverter( this.mSource, this.mTarget );
+		this.mFrames = (int) SAMPLE_RATE;
+		float[] samples = new float[this.mFrames * CHANNELS];
+		for ( int i = 0; i < samples.length; ++i ) {
+			samples[i] = (float) Math.sin( 2 * Math.PI * 440 * (i / CHANNELS) / SAMPLE_RATE ) * 0.5f;
+		}
+		this.mData = new byte[this.mFrames * this.mSource.getFrameSize()];
+		new PCMCodec( this.mSource ).encode( samples, 0, this.mData, 0, this.mFrames );
+		this.mOutput = new byte[this.mFrames * this.mTarget.getFrameSize()];
+	}
+
+	private static AudioFormat format(String pName) {
+		switch ( pName ) {
+			case "U8":
+				return new AudioFormat( AudioFormat.Encoding.PCM_UNSIGNED, SAMPLE_RATE, 8, CHANNELS, CHANNELS, SAMPLE_RATE, false );
+			case "S16LE":
+				return new AudioFormat( SAMPLE_RATE, 16, CHANNELS, true, false );
+			case "S16BE":
+				return new AudioFormat( SAMPLE_RATE, 16, CHANNELS, true, true );
+			case "S24LE":
+				return new AudioFormat( SAMPLE_RATE, 24, CHANNELS, true, false );
+			case "S32LE":
+				return new AudioFormat( SAMPLE_RATE, 32, CHANNELS, true, false );
+			default:
+				return new AudioFormat( AudioFormat.Encoding.PCM_FLOAT, SAMPLE_RATE, 32, CHANNELS, CHANNELS * 4, SAMPLE_RATE, false );
+		}
+	}
+
+	@Benchmark
+	public byte kernel() {
+		this.mConverter.convert( this.mData, 0, this.mOutput, 0, this.mFrames );
+		return this.mOutput[this.mOutput.length - 1];
+	}
+
+	@Benchmark
+	public long javaSound() throws Exception {
+		if ( !AudioSystem.isConversionSupported( this.mTarget, this.mSource ) ) {
+			return 0;
+		}
+		AudioInputStream converted = AudioSystem.getAudioInputStream(
+				this.mTarget,
+				new AudioInputStream( new ByteArrayInputStream( this.mData ), this.mSource, this.mFrames )
+		);
+		long checksum = 0;
+		int read;
+		while ( (read = converted.read( this.mOutput )) != -1 ) {
+			checksum += read > 0 ? this.mOutput[read - 1] : 0;
+		}
+		return checksum;
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * File RecorderBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.data.RecordingAudioDevice;
+import de.hotware.hotsound.audio.data.RecordingAudioDevice.FsyncPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * write throughput of a {@link RecordingAudioDevice}. Every invocation
+ * records a fixed amount of data into a fresh file, including finishing it on
+ * close
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecorderBenchmark {
+
+	@Param({"4096", "65536"})
+	public int mChunkSize;
+
+	@Param({"33554432"})
+	public long mBytesPerRecording;
+
+	/**
+	 * amount of buffers queued for the writer thread, 0 writes synchronously
+	 */
+	@Param({"0", "16"})
+	public int mQueueCapacity;
+
+	private File mFile;
+	private byte[] mChunk;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.mFile = File.createTempFile( "hotsound-bench", ".wav" );
+		this.mFile.deleteOnExit();
+		this.mChunk = BenchmarkData.sine( BenchmarkData.CD_FORMAT, this.mChunkSize / 4 );
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.mFile.delete();
+	}
+
+	@Benchmark
+	public long record() throws Exception {
+		RecordingAudioDevice device = new RecordingAudioDevice( this.mFile, 0, this.mQueueCapacity, FsyncPolicy.NONE );
+		device.open( BenchmarkData.CD_FORMAT );
+		long written = 0;
+		try {
+			while ( written < this.mBytesPerRecording ) {
+				written += device.write( this.mChunk, 0, this.mChunk.length );
+			}
+		}
+		finally {
+			device.close();
+		}
+		return written;
+	}
+
+}
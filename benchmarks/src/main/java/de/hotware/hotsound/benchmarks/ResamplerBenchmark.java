@@ -0,0 +1,104 @@
+/**
+ * File ResamplerBenchmark.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.benchmarks;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.util.Resampler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * resamples a second of stereo audio in blocks of {@link #BLOCK_FRAMES}
+ * frames. The real time factor of a tier is one second divided by the score.
+ *
+ * @author Martin Braun
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResamplerBenchmark {
+
+	private static final int BLOCK_FRAMES = 4096;
+
+	@Param({"LINEAR", "LOW", "MEDIUM", "HIGH"})
+	public String mQuality;
+
+	@Param({"44100:48000", "48000:44100", "96000:44100"})
+	public String mRates;
+
+	private Resampler mResampler;
+	private float[] mData;
+	private float[] mBuffer;
+	private int mFrames;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		String[] rates = this.mRates.split( ":" );
+		int inputRate = Integer.parseInt( rates[0] );
+		int outputRate = Integer.parseInt( rates[1] );
+		this.mResampler = new Resampler( 2, inputRate, outputRate, Resampler.Quality.valueOf( this.mQuality ) );
+		this.mFrames = inputRate;
+		this.mData = new float[this.mFrames * 2];
+		for ( int i = 0; i < this.mFrames; ++i ) {
+			float sample = (float) Math.sin( 2 * Math.PI * 440 * i / inputRate ) * 16384f;
+			this.mData[i * 2] = sample;
+			this.mData[i * 2 + 1] = sample;
+		}
+		this.mBuffer = new float[this.mResampler.getMaxOutputFrames( BLOCK_FRAMES ) * 2];
+	}
+
+	@Setup(Level.Invocation)
+	public void reset() {
+		this.mResampler.reset();
+	}
+
+	@Benchmark
+	public float resample() {
+		Resampler resampler = this.mResampler;
+		int maxOutput = this.mBuffer.length / 2;
+		float checksum = 0;
+		for ( int frame = 0; frame < this.mFrames; frame += BLOCK_FRAMES ) {
+			int frames = Math.min( BLOCK_FRAMES, this.mFrames - frame );
+			int written = resampler.process( this.mData, frame * 2, frames, this.mBuffer, 0, maxOutput );
+			checksum += written > 0 ? this.mBuffer[written * 2 - 1] : 0;
+		}
+		return checksum;
+	}
+
+}
@@ -21,6 +21,7 @@
 package de.hotware.hotsound.audio.data;
 
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.Mixer;
 
 import de.hotware.hotsound.audio.player.MusicPlayerException;
 
@@ -55,6 +56,15 @@ public interface Audio extends AutoCloseable {
 	 */
 	public void open() throws AudioException;
 
+	/**
+	 * sets the Mixer the Audio is going to be played on, so the next open
+	 * converts to a format that Mixer supports. null stands for any Mixer of
+	 * the AudioSystem. Audios that don't convert ignore it, which is what this
+	 * default does
+	 */
+	public default void setMixer(Mixer pMixer) {
+	}
+
 	public boolean isClosed();
 
 	/**
@@ -0,0 +1,49 @@
+/**
+ * File AudioFileWriter.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+
+/**
+ * writes the audio data passed to a {@link RecordingAudioDevice} into a file
+ */
+interface AudioFileWriter extends AutoCloseable {
+
+	/**
+	 * creates the file and prepares it for data in the given format
+	 */
+	public void open(AudioFormat pAudioFormat) throws IOException;
+
+	public int write(byte[] pData, int pStart, int pLength) throws IOException;
+
+	/**
+	 * @return the amount of audio bytes written so far
+	 */
+	public long getBytesWritten();
+
+	/**
+	 * finishes the file
+	 */
+	@Override
+	public void close() throws IOException;
+
+}
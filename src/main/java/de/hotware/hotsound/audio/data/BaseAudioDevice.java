@@ -22,11 +22,17 @@ package de.hotware.hotsound.audio.data;
 
 import javax.sound.sampled.AudioFormat;
 
-public abstract class BaseAudioDevice implements AudioDevice {
+import de.hotware.hotsound.audio.player.PlaybackMetrics;
+
+public abstract class BaseAudioDevice implements MeteredAudioDevice {
 
 	protected boolean mPaused;
 	protected boolean mClosed;
 	protected AudioFormat mAudioFormat;
+	/**
+	 * null if metrics are disabled
+	 */
+	protected volatile PlaybackMetrics mMetrics;
 
 	protected BaseAudioDevice() {
 		this.mClosed = true;
@@ -53,10 +59,10 @@ public abstract class BaseAudioDevice implements AudioDevice {
 
 	@Override
 	public final void reopen(AudioFormat pAudioFormat) throws AudioDeviceException {
-		if ( !this.mClosed ) {
-			throw new IllegalStateException( "The AudioDevice is already opened" );
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The AudioDevice is not opened" );
 		}
-		if ( !this.mAudioFormat.equals( pAudioFormat ) ) {
+		if ( !this.mAudioFormat.matches( pAudioFormat ) || !pAudioFormat.matches( this.mAudioFormat ) ) {
 			//has to be reopened with a different AudioFormat
 			this.close();
 			this.open( pAudioFormat );
@@ -80,6 +86,11 @@ public abstract class BaseAudioDevice implements AudioDevice {
 		this.mClosed = true;
 	}
 
+	@Override
+	public void setPlaybackMetrics(PlaybackMetrics pMetrics) {
+		this.mMetrics = pMetrics;
+	}
+
 	@Override
 	public boolean isClosed() {
 		return this.mClosed;
@@ -23,35 +23,69 @@ package de.hotware.hotsound.audio.data;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Mixer;
 import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 import de.hotware.hotsound.audio.util.AudioUtil;
 
 /**
- * converts to a playable format
+ * converts to a playable format. if the source is a local file, seeking
+ * reopens it at the nearest {@link SeekIndex} checkpoint instead of keeping
+ * everything read so far around for resetting. The index is built in the
+ * background after opening, seeks before it is done decode from the start of
+ * the file. Other sources are reset to a mark
  *
  * @author Martin Braun
  */
 public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 
+	private static final int SKIP_BUFFER_SIZE = 64 * 1024;
+
 	protected InputStream mInputStream;
 	protected AudioInputStream mAudioInputStream;
 	protected long mFramePosition;
 	protected long mFrameSize;
 	protected long mFrameLength;
+	protected URL mSource;
+	/**
+	 * the index of mSource, null if there is no source
+	 */
+	protected CompletableFuture<SeekIndex> mSeekIndex;
+	/**
+	 * the Mixer the format is negotiated with, null for any
+	 */
+	protected Mixer mMixer;
 
 	public BasicPlaybackAudio(InputStream pInputStream) {
 		this( pInputStream, AudioSystem.NOT_SPECIFIED );
 	}
 
 	public BasicPlaybackAudio(InputStream pInputStream, long pFrameLength) {
+		this( pInputStream, pFrameLength, null );
+	}
+
+	/**
+	 * @param pSource the URL pInputStream was opened from, used to reopen the
+	 *            stream for seeking if it is a local file. may be null
+	 */
+	public BasicPlaybackAudio(InputStream pInputStream, long pFrameLength, URL pSource) {
 		super();
 		this.mInputStream = pInputStream;
 		this.mFramePosition = 0;
 		this.mFrameSize = 0;
 		this.mFrameLength = pFrameLength;
+		//reopening remote sources would download them again
+		this.mSource = SeekIndex.toFile( pSource ) != null ? pSource : null;
+	}
+
+	@Override
+	public void setMixer(Mixer pMixer) {
+		this.mMixer = pMixer;
 	}
 
 	/**
@@ -66,9 +100,13 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 			this.mAudioInputStream = this.getAudioInputStream();
 			AudioFormat format = this.mAudioInputStream.getFormat();
 			this.mFrameSize = format.getFrameSize();
-			if ( this.mAudioInputStream.markSupported() ) {
+			if ( this.mSource == null && this.mAudioInputStream.markSupported() ) {
 				this.mAudioInputStream.mark( Integer.MAX_VALUE );
 			}
+			else if ( this.mSource != null && this.mSeekIndex == null ) {
+				//ready long before the listener gets to seek, usually
+				this.mSeekIndex = SeekIndex.forSourceAsync( this.mSource );
+			}
 		}
 		catch (UnsupportedAudioFileException | IOException e) {
 			this.close();
@@ -112,7 +150,7 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 
 	@Override
 	public boolean canSeek() {
-		return this.mAudioInputStream.markSupported() &&
+		return (this.mSource != null || this.mAudioInputStream.markSupported()) &&
 				this.mFrameSize != AudioSystem.NOT_SPECIFIED &&
 				this.mFrameLength != AudioSystem.NOT_SPECIFIED && !this.mClosed;
 	}
@@ -126,7 +164,29 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 			throw new AudioException( "can't seek on this audio" );
 		}
 		long pFramesToSkip = pFrame - this.mFramePosition;
-		if ( pFramesToSkip < 0 ) {
+		if ( this.mSource != null ) {
+			//never wait for the index, the playback would stall
+			SeekIndex index = null;
+			if ( this.mSeekIndex.isDone() && !this.mSeekIndex.isCompletedExceptionally() ) {
+				index = this.mSeekIndex.join();
+			}
+			//without an index we can't tell whether skip() is reliable
+			boolean decode = index == null || !index.isEmpty();
+			if ( index == null ) {
+				index = SeekIndex.EMPTY;
+			}
+			int checkpoint = index.floor( pFrame );
+			long checkpointFrame = checkpoint >= 0 ? index.getFrame( checkpoint ) : 0;
+			if ( pFramesToSkip < 0 || checkpointFrame > this.mFramePosition ) {
+				this.reopen( checkpoint >= 0 ? index.getOffset( checkpoint ) : 0, checkpointFrame );
+				pFramesToSkip = pFrame - this.mFramePosition;
+			}
+			//skip() of compressed streams isn't reliable (mp3spi skips
+			//encoded bytes), but with an index the rest is short enough to
+			//decode
+			this.skipFrames( pFramesToSkip, decode );
+		}
+		else if ( pFramesToSkip < 0 ) {
 			//reset and skip to pFrame
 			try {
 				this.mFramePosition = 0;
@@ -138,10 +198,10 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 						e
 				);
 			}
-			this.skip( pFrame );
+			this.skipFrames( pFrame, false );
 		}
 		else {
-			this.skip( pFramesToSkip );
+			this.skipFrames( pFramesToSkip, false );
 		}
 	}
 
@@ -153,27 +213,53 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 		if ( !this.canSeek() ) {
 			throw new AudioException( "can't seek on this audio" );
 		}
-		//FIXME: skipping in wav files
-		double rate = ((double) pFrames) / this.mFrameLength;
-		long bytesToSkip = (long) Math.round(
-				rate * this.mFrameLength *
-						this.mFrameSize
-		);
+		if ( this.mSource != null ) {
+			this.seek( this.mFramePosition + pFrames );
+		}
+		else {
+			this.skipFrames( pFrames, false );
+		}
+	}
+
+	/**
+	 * @param pDecode whether to read and throw away the data instead of
+	 *            relying on the skip implementation of the stream
+	 */
+	private void skipFrames(long pFrames, boolean pDecode) throws AudioException {
+		long bytesToSkip = pFrames * this.mFrameSize;
 		long totalSkipped = 0;
+		byte[] scratch = null;
 		try {
 			while ( totalSkipped < bytesToSkip ) {
-				long skipped = this.mAudioInputStream.skip(
-						bytesToSkip -
-								totalSkipped
-				);
-				totalSkipped += skipped;
-				if ( skipped == 0 ) {
-					break;
+				long skipped = 0;
+				if ( !pDecode ) {
+					skipped = this.mAudioInputStream.skip(
+							bytesToSkip -
+									totalSkipped
+					);
+				}
+				if ( skipped <= 0 ) {
+					//some decoders don't skip at all, decode and throw away
+					if ( scratch == null ) {
+						scratch = new byte[(int) Math.min(
+								bytesToSkip,
+								SKIP_BUFFER_SIZE - SKIP_BUFFER_SIZE % this.mFrameSize
+						)];
+					}
+					skipped = this.mAudioInputStream.read(
+							scratch,
+							0,
+							(int) Math.min( scratch.length, bytesToSkip - totalSkipped )
+					);
+					if ( skipped < 0 ) {
+						break;
+					}
 				}
+				totalSkipped += skipped;
 			}
 		}
 		catch (IOException e) {
-			throw new AudioException( "couldn't skip the audio" );
+			throw new AudioException( "couldn't skip the audio", e );
 		}
 		this.mFramePosition += totalSkipped / this.mFrameSize;
 	}
@@ -193,13 +279,42 @@ public class BasicPlaybackAudio extends BaseAudio implements SeekableAudio {
 		return this.mAudioInputStream.getFormat();
 	}
 
+	/**
+	 * reopens the source and positions the decoder at pOffset in the encoded
+	 * stream, which must be the start of pFrame. an offset of 0 starts over
+	 * with the whole stream (headers included)
+	 */
+	private void reopen(long pOffset, long pFrame) throws AudioException {
+		InputStream in = null;
+		try {
+			this.mAudioInputStream.close();
+			in = this.mSource.openStream();
+			SeekIndex.skipFully( in, pOffset );
+			this.mInputStream = new BufferedInputStream( in );
+			this.mAudioInputStream = this.getAudioInputStream();
+			this.mFramePosition = pFrame;
+		}
+		catch (UnsupportedAudioFileException | IOException e) {
+			if ( in != null ) {
+				try {
+					in.close();
+				}
+				catch (IOException e1) {
+					e.addSuppressed( e1 );
+				}
+			}
+			this.mClosed = true;
+			throw new AudioException( "couldn't reopen the source for seeking", e );
+		}
+	}
+
 	/**
 	 * Override this, if you want a different audio format
 	 */
 	protected AudioInputStream getAudioInputStream() throws UnsupportedAudioFileException,
 			IOException {
 		return AudioUtil
-				.getSupportedAudioInputStreamFromInputStream( this.mInputStream );
+				.getSupportedAudioInputStreamFromInputStream( this.mInputStream, this.mMixer );
 	}
 
 }
@@ -28,6 +28,7 @@ import javax.sound.sampled.Mixer;
 import javax.sound.sampled.SourceDataLine;
 import java.util.List;
 
+import de.hotware.hotsound.audio.player.PlaybackMetrics;
 import de.hotware.hotsound.audio.util.AudioUtil;
 
 /**
@@ -36,9 +37,14 @@ import de.hotware.hotsound.audio.util.AudioUtil;
 public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSoundPlaybackAudioDevice {
 
 	protected Mixer mMixer;
-	protected SourceDataLine mSourceDataLine;
+	protected volatile SourceDataLine mSourceDataLine;
 	protected Class<? extends SourceDataLine> mSourceDataLineClass;
 	protected int mBufferSize;
+	/**
+	 * whether something has been written since the line was started, a
+	 * drained line only counts as an underrun afterwards
+	 */
+	protected boolean mWritten;
 
 	public BasicPlaybackAudioDevice() {
 		this( null );
@@ -88,7 +94,12 @@ public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSou
 				this.mSourceDataLine = (SourceDataLine) this.mMixer
 						.getLine( dataLineInfo );
 			}
-			this.mSourceDataLine.open( pAudioFormat );
+			if ( this.mBufferSize <= 0 ) {
+				this.mSourceDataLine.open( pAudioFormat );
+			}
+			else {
+				this.mSourceDataLine.open( pAudioFormat, this.mBufferSize );
+			}
 		}
 		catch (LineUnavailableException e) {
 			this.mClosed = true;
@@ -98,11 +109,19 @@ public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSou
 			);
 		}
 		this.mSourceDataLine.start();
+		this.mWritten = false;
 	}
 
 	@Override
 	public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
 		super.write( pData, pStart, pLength );
+		PlaybackMetrics metrics = this.mMetrics;
+		if ( metrics != null ) {
+			if ( this.mWritten && this.mSourceDataLine.available() >= this.mSourceDataLine.getBufferSize() ) {
+				metrics.recordLineUnderrun();
+			}
+			this.mWritten = true;
+		}
 		return this.mSourceDataLine.write( pData, pStart, pLength );
 	}
 
@@ -111,6 +130,7 @@ public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSou
 		if ( this.mSourceDataLine != null ) {
 			this.mSourceDataLine.flush();
 		}
+		this.mWritten = false;
 	}
 
 	@Override
@@ -119,6 +139,7 @@ public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSou
 		if ( this.mSourceDataLine != null ) {
 			if ( pPause ) {
 				this.mSourceDataLine.stop();
+				this.mWritten = false;
 			}
 			else {
 				this.mSourceDataLine.start();
@@ -144,6 +165,19 @@ public class BasicPlaybackAudioDevice extends BaseAudioDevice implements JavaSou
 		this.mMixer = pMixer;
 	}
 
+	@Override
+	public Mixer getMixer() {
+		return this.mMixer;
+	}
+
+	@Override
+	public void setBufferSize(int pBufferSize) {
+		if ( !this.mClosed ) {
+			throw new IllegalStateException( "can't set the buffer size if the AudioDevice is not stopped" );
+		}
+		this.mBufferSize = pBufferSize;
+	}
+
 	@Override
 	public DataLine getDataLine() {
 		return this.mSourceDataLine;
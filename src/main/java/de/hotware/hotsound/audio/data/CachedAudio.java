@@ -0,0 +1,106 @@
+/**
+ * File CachedAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+
+/**
+ * Audio that plays already decoded PCM data out of a {@link ByteBuffer}.
+ * Instances obtained from a {@link DecodedAudioCache} share the data but each
+ * has its own position.
+ *
+ * @author Martin Braun
+ */
+public class CachedAudio extends BaseAudio implements SeekableAudio {
+
+	protected final AudioFormat mAudioFormat;
+	protected final ByteBuffer mData;
+	protected final int mFrameSize;
+
+	/**
+	 * @param pData the decoded data. only the part between position and limit
+	 *            is played, the buffer itself is not modified
+	 */
+	public CachedAudio(AudioFormat pAudioFormat, ByteBuffer pData) {
+		super();
+		if ( pAudioFormat.getFrameSize() <= 0 ) {
+			throw new IllegalArgumentException( "the frame size has to be known" );
+		}
+		this.mAudioFormat = pAudioFormat;
+		this.mData = pData.slice();
+		this.mFrameSize = pAudioFormat.getFrameSize();
+	}
+
+	@Override
+	public void open() throws AudioException {
+		super.open();
+		this.mData.rewind();
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The Audio is not opened" );
+		}
+		if ( !this.mData.hasRemaining() ) {
+			return -1;
+		}
+		int count = Math.min( pLength - pLength % this.mFrameSize, this.mData.remaining() );
+		this.mData.get( pData, pStart, count );
+		return count;
+	}
+
+	@Override
+	public void seek(long pFrame) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The Audio is not opened" );
+		}
+		long position = Math.max( 0, Math.min( pFrame * this.mFrameSize, this.mData.limit() ) );
+		this.mData.position( (int) position );
+	}
+
+	@Override
+	public void skip(long pFrames) throws AudioException {
+		this.seek( this.getFramePosition() + pFrames );
+	}
+
+	@Override
+	public long getFramePosition() {
+		return this.mData.position() / this.mFrameSize;
+	}
+
+	@Override
+	public long getFrameLength() {
+		return this.mData.limit() / this.mFrameSize;
+	}
+
+	@Override
+	public boolean canSeek() {
+		return !this.mClosed;
+	}
+
+	@Override
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+}
@@ -0,0 +1,426 @@
+/**
+ * File DecodedAudioCache.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.Mixer;
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hotware.hotsound.audio.data.Audio.AudioException;
+
+/**
+ * Cache for fully decoded PCM data of short, often replayed sources (jingles,
+ * notification sounds, ...) so they don't have to go through the decoders
+ * again. Entries are keyed by URL and, for local files, size and modification
+ * time. The cache is bounded by the amount of bytes it holds and evicts the
+ * least recently used entries first.
+ *
+ * The cache is filled while a source is played for the first time: the Audio
+ * returned by {@link #tee(URL, Audio)} keeps a copy of everything read from
+ * it and stores it once the end is reached. Only one Audio at a time fills
+ * the entry of a source, others just play. Sources bigger than the cache are
+ * remembered and not copied again.
+ *
+ * @author Martin Braun
+ */
+public class DecodedAudioCache {
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * marks a FillingAudio that doesn't copy anymore
+	 */
+	private static final byte[] DONE = new byte[0];
+
+	private final long mMaxBytes;
+	private final boolean mDirect;
+	private final LinkedHashMap<String, Entry> mEntries;
+	private final Set<String> mUncacheable;
+	/**
+	 * the keys that are being filled right now
+	 */
+	private final Set<String> mFilling;
+	private final AtomicLong mHits;
+	private final AtomicLong mMisses;
+	private final AtomicLong mEvictions;
+	private long mSize;
+
+	public DecodedAudioCache(long pMaxBytes) {
+		this( pMaxBytes, false );
+	}
+
+	/**
+	 * @param pMaxBytes the maximum amount of decoded bytes held by this cache
+	 * @param pDirect whether to store the data off-heap in direct buffers
+	 */
+	public DecodedAudioCache(long pMaxBytes, boolean pDirect) {
+		if ( pMaxBytes <= 0 ) {
+			throw new IllegalArgumentException( "pMaxBytes has to be positive" );
+		}
+		this.mMaxBytes = pMaxBytes;
+		this.mDirect = pDirect;
+		this.mEntries = new LinkedHashMap<>( 16, 0.75f, true );
+		this.mUncacheable = Collections.synchronizedSet( new HashSet<String>() );
+		this.mFilling = Collections.synchronizedSet( new HashSet<String>() );
+		this.mHits = new AtomicLong();
+		this.mMisses = new AtomicLong();
+		this.mEvictions = new AtomicLong();
+	}
+
+	/**
+	 * @return a new (closed) Audio playing the cached data of pURL or null if
+	 *         it isn't cached
+	 */
+	public CachedAudio get(URL pURL) {
+		Entry entry;
+		synchronized ( this.mEntries ) {
+			entry = this.mEntries.get( key( pURL ) );
+		}
+		if ( entry == null ) {
+			this.mMisses.incrementAndGet();
+			return null;
+		}
+		this.mHits.incrementAndGet();
+		return new CachedAudio( entry.mAudioFormat, entry.mData );
+	}
+
+	/**
+	 * @return an Audio playing pAudio that caches the decoded data for pURL
+	 *         once it has been read to the end without seeking, or pAudio
+	 *         itself if pURL is too big for this cache or already being filled
+	 *         by another Audio
+	 */
+	public Audio tee(URL pURL, Audio pAudio) {
+		String key = key( pURL );
+		if ( this.mUncacheable.contains( key ) || !this.mFilling.add( key ) ) {
+			return pAudio;
+		}
+		if ( pAudio instanceof SeekableAudio ) {
+			return new SeekableFillingAudio( key, (SeekableAudio) pAudio );
+		}
+		return new FillingAudio( key, pAudio );
+	}
+
+	/**
+	 * decodes pAudio completely and caches the result for pURL, e.g. to
+	 * preload a source in the background. pAudio is opened if needed and
+	 * closed afterwards.
+	 *
+	 * @return a new (closed) Audio playing the decoded data or null if it is
+	 *         too big for this cache or being filled by another Audio
+	 */
+	public CachedAudio put(URL pURL, Audio pAudio) throws AudioException {
+		Audio audio = this.tee( pURL, pAudio );
+		try {
+			if ( audio == pAudio ) {
+				return null;
+			}
+			if ( audio.isClosed() ) {
+				audio.open();
+			}
+			byte[] scratch = new byte[INITIAL_BUFFER_SIZE];
+			while ( audio.read( scratch, 0, scratch.length ) >= 0 ) {
+				//the copy is kept by the FillingAudio
+			}
+		}
+		finally {
+			audio.close();
+		}
+		Entry entry;
+		synchronized ( this.mEntries ) {
+			entry = this.mEntries.get( key( pURL ) );
+		}
+		return entry == null ? null : new CachedAudio( entry.mAudioFormat, entry.mData );
+	}
+
+	/**
+	 * removes all entries. Audios handed out before stay playable
+	 */
+	public void clear() {
+		synchronized ( this.mEntries ) {
+			this.mEntries.clear();
+			this.mSize = 0;
+		}
+		this.mUncacheable.clear();
+	}
+
+	public long getHitCount() {
+		return this.mHits.get();
+	}
+
+	public long getMissCount() {
+		return this.mMisses.get();
+	}
+
+	public long getEvictionCount() {
+		return this.mEvictions.get();
+	}
+
+	/**
+	 * @return the amount of decoded bytes currently held
+	 */
+	public long getSize() {
+		synchronized ( this.mEntries ) {
+			return this.mSize;
+		}
+	}
+
+	public long getMaxSize() {
+		return this.mMaxBytes;
+	}
+
+	public int getEntryCount() {
+		synchronized ( this.mEntries ) {
+			return this.mEntries.size();
+		}
+	}
+
+	public boolean isDirect() {
+		return this.mDirect;
+	}
+
+	private void store(String pKey, AudioFormat pAudioFormat, byte[] pData, int pSize) {
+		ByteBuffer buffer;
+		if ( this.mDirect ) {
+			buffer = ByteBuffer.allocateDirect( pSize );
+			buffer.put( pData, 0, pSize );
+			buffer.flip();
+		}
+		else {
+			buffer = ByteBuffer.wrap( Arrays.copyOf( pData, pSize ) );
+		}
+		Entry entry = new Entry( pAudioFormat, buffer.asReadOnlyBuffer() );
+		synchronized ( this.mEntries ) {
+			Entry old = this.mEntries.put( pKey, entry );
+			if ( old != null ) {
+				this.mSize -= old.mData.capacity();
+			}
+			this.mSize += entry.mData.capacity();
+			Iterator<Entry> it = this.mEntries.values().iterator();
+			while ( this.mSize > this.mMaxBytes && it.hasNext() ) {
+				Entry eldest = it.next();
+				it.remove();
+				this.mSize -= eldest.mData.capacity();
+				this.mEvictions.incrementAndGet();
+			}
+		}
+	}
+
+	static String key(URL pURL) {
+		File file = SeekIndex.toFile( pURL );
+		if ( file == null ) {
+			return pURL.toExternalForm();
+		}
+		return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+	}
+
+	private static final class Entry {
+
+		final AudioFormat mAudioFormat;
+		final ByteBuffer mData;
+
+		Entry(AudioFormat pAudioFormat, ByteBuffer pData) {
+			this.mAudioFormat = pAudioFormat;
+			this.mData = pData;
+		}
+
+	}
+
+	/**
+	 * passes everything through and keeps a copy of the data read until the
+	 * end of pAudio. Seeking or closing before the end gives up on the copy
+	 */
+	private class FillingAudio implements Audio {
+
+		protected final Audio mAudio;
+		private final String mKey;
+		/**
+		 * DONE once given up. volatile because close() may give up from
+		 * another thread than the one reading
+		 */
+		private volatile byte[] mData;
+		private int mSize;
+
+		FillingAudio(String pKey, Audio pAudio) {
+			this.mKey = pKey;
+			this.mAudio = pAudio;
+		}
+
+		@Override
+		public AudioFormat getAudioFormat() {
+			return this.mAudio.getAudioFormat();
+		}
+
+		@Override
+		public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+			int read = this.mAudio.read( pData, pStart, pLength );
+			if ( this.isFilling() ) {
+				if ( read < 0 ) {
+					this.finish();
+				}
+				else {
+					this.append( pData, pStart, read );
+				}
+			}
+			return read;
+		}
+
+		@Override
+		public void open() throws AudioException {
+			this.mAudio.open();
+			if ( this.isFilling() && this.mAudio.getAudioFormat().getFrameSize() <= 0 ) {
+				this.giveUp( true );
+			}
+		}
+
+		@Override
+		public boolean isClosed() {
+			return this.mAudio.isClosed();
+		}
+
+		@Override
+		public void setMixer(Mixer pMixer) {
+			this.mAudio.setMixer( pMixer );
+		}
+
+		@Override
+		public void close() throws AudioException {
+			try {
+				if ( this.isFilling() ) {
+					this.giveUp( false );
+				}
+			}
+			finally {
+				this.mAudio.close();
+			}
+		}
+
+		/**
+		 * @return false once the copy is stored or has been given up
+		 */
+		protected final boolean isFilling() {
+			return this.mData != DONE;
+		}
+
+		protected final void giveUp(boolean pUncacheable) {
+			this.mData = DONE;
+			if ( pUncacheable ) {
+				DecodedAudioCache.this.mUncacheable.add( this.mKey );
+			}
+			DecodedAudioCache.this.mFilling.remove( this.mKey );
+		}
+
+		private void append(byte[] pData, int pStart, int pLength) {
+			if ( this.mData == null ) {
+				this.mData = new byte[(int) Math.min( INITIAL_BUFFER_SIZE, DecodedAudioCache.this.mMaxBytes )];
+			}
+			long size = (long) this.mSize + pLength;
+			if ( size > DecodedAudioCache.this.mMaxBytes || size > Integer.MAX_VALUE - 8 ) {
+				this.giveUp( true );
+				return;
+			}
+			if ( size > this.mData.length ) {
+				long length = Math.max( this.mData.length * 2L, size );
+				this.mData = Arrays.copyOf(
+						this.mData,
+						(int) Math.min( Math.min( length, DecodedAudioCache.this.mMaxBytes ), Integer.MAX_VALUE - 8 )
+				);
+			}
+			System.arraycopy( pData, pStart, this.mData, this.mSize, pLength );
+			this.mSize = (int) size;
+		}
+
+		private void finish() {
+			AudioFormat format = this.mAudio.getAudioFormat();
+			if ( format.getFrameSize() <= 0 ) {
+				this.giveUp( true );
+				return;
+			}
+			try {
+				DecodedAudioCache.this.store(
+						this.mKey,
+						format,
+						this.mData == null ? DONE : this.mData,
+						this.mSize - this.mSize % format.getFrameSize()
+				);
+			}
+			finally {
+				this.giveUp( false );
+			}
+		}
+
+	}
+
+	private final class SeekableFillingAudio extends FillingAudio implements SeekableAudio {
+
+		SeekableFillingAudio(String pKey, SeekableAudio pAudio) {
+			super( pKey, pAudio );
+		}
+
+		@Override
+		public void seek(long pFrame) throws AudioException {
+			if ( this.isFilling() ) {
+				this.giveUp( false );
+			}
+			((SeekableAudio) this.mAudio).seek( pFrame );
+		}
+
+		@Override
+		public void skip(long pFrames) throws AudioException {
+			if ( this.isFilling() ) {
+				this.giveUp( false );
+			}
+			((SeekableAudio) this.mAudio).skip( pFrames );
+		}
+
+		@Override
+		public long getFramePosition() {
+			return ((SeekableAudio) this.mAudio).getFramePosition();
+		}
+
+		@Override
+		public long getFrameLength() {
+			return ((SeekableAudio) this.mAudio).getFrameLength();
+		}
+
+		@Override
+		public boolean canSeek() {
+			return ((SeekableAudio) this.mAudio).canSeek();
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "DecodedAudioCache [size=" + this.getSize() + ", maxSize=" + this.mMaxBytes +
+				", hits=" + this.mHits + ", misses=" + this.mMisses +
+				", evictions=" + this.mEvictions + "]";
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * File DecodingFloatAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.Audio.AudioException;
+import de.hotware.hotsound.audio.util.PCMCodec;
+
+/**
+ * {@link FloatAudio} that decodes the bytes of an integer PCM {@link Audio}
+ * (see {@link PCMCodec} for the supported formats). Opening and closing the
+ * FloatAudio opens and closes the Audio.
+ *
+ * @author Martin Braun
+ */
+public class DecodingFloatAudio implements FloatAudio {
+
+	protected final Audio mAudio;
+	protected PCMCodec mCodec;
+	protected AudioFormat mAudioFormat;
+	private byte[] mBuffer;
+	private boolean mClosed;
+
+	public DecodingFloatAudio(Audio pAudio) {
+		if ( pAudio == null ) {
+			throw new NullPointerException( "pAudio may not be null" );
+		}
+		this.mAudio = pAudio;
+		this.mBuffer = new byte[0];
+		this.mClosed = true;
+	}
+
+	@Override
+	public void open() throws AudioException {
+		if ( !this.mClosed ) {
+			throw new IllegalStateException( "The FloatAudio is already opened" );
+		}
+		if ( this.mAudio.isClosed() ) {
+			this.mAudio.open();
+		}
+		AudioFormat format = this.mAudio.getAudioFormat();
+		if ( !PCMCodec.isSupported( format ) ) {
+			this.mAudio.close();
+			throw new AudioException( "can't decode " + format + " to float samples" );
+		}
+		this.mCodec = new PCMCodec( format );
+		this.mAudioFormat = PCMCodec.getFloatFormat( format );
+		this.mClosed = false;
+	}
+
+	@Override
+	public int read(float[] pData, int pStart, int pFrames) throws AudioException {
+		int frames = this.fill( pFrames );
+		if ( frames > 0 ) {
+			this.mCodec.decode( this.mBuffer, 0, pData, pStart, frames );
+		}
+		return frames;
+	}
+
+	@Override
+	public int readPlanar(float[][] pData, int pStart, int pFrames) throws AudioException {
+		int frames = this.fill( pFrames );
+		if ( frames > 0 ) {
+			this.mCodec.decodePlanar( this.mBuffer, 0, pData, pStart, frames );
+		}
+		return frames;
+	}
+
+	/**
+	 * reads up to pFrames frames of the Audio into mBuffer
+	 *
+	 * @return the amount of frames read or -1 if the end has been reached
+	 */
+	private int fill(int pFrames) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The FloatAudio is not opened" );
+		}
+		int frameSize = this.mCodec.getFrameSize();
+		int length = pFrames * frameSize;
+		if ( this.mBuffer.length < length ) {
+			this.mBuffer = new byte[length];
+		}
+		int read = this.mAudio.read( this.mBuffer, 0, length );
+		return read == -1 ? -1 : read / frameSize;
+	}
+
+	@Override
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return this.mClosed;
+	}
+
+	@Override
+	public void close() throws AudioException {
+		this.mClosed = true;
+		if ( !this.mAudio.isClosed() ) {
+			this.mAudio.close();
+		}
+	}
+
+	public Audio getAudio() {
+		return this.mAudio;
+	}
+
+}
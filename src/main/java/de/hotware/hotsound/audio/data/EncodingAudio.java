@@ -0,0 +1,124 @@
+/**
+ * File EncodingAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.util.PCMCodec;
+
+/**
+ * {@link Audio} that encodes the samples of a {@link FloatAudio} to integer
+ * PCM, so the end of a float processing chain can be played with the usual
+ * players and AudioDevices. Opening and closing the Audio opens and closes
+ * the FloatAudio.
+ *
+ * @author Martin Braun
+ */
+public class EncodingAudio extends BaseAudio {
+
+	public static final int DEFAULT_SAMPLE_SIZE_IN_BITS = 16;
+
+	protected final FloatAudio mFloatAudio;
+	protected final int mSampleSizeInBits;
+	protected PCMCodec mCodec;
+	private float[] mBuffer;
+
+	/**
+	 * encodes to 16 bit signed little endian PCM
+	 */
+	public EncodingAudio(FloatAudio pFloatAudio) {
+		this( pFloatAudio, DEFAULT_SAMPLE_SIZE_IN_BITS );
+	}
+
+	/**
+	 * encodes to signed little endian PCM with the given sample size
+	 *
+	 * @throws IllegalArgumentException
+	 *             if pSampleSizeInBits is not 8, 16, 24 or 32
+	 */
+	public EncodingAudio(FloatAudio pFloatAudio, int pSampleSizeInBits) {
+		if ( pFloatAudio == null ) {
+			throw new NullPointerException( "pFloatAudio may not be null" );
+		}
+		if ( pSampleSizeInBits != 8 && pSampleSizeInBits != 16 && pSampleSizeInBits != 24 && pSampleSizeInBits != 32 ) {
+			throw new IllegalArgumentException( "pSampleSizeInBits has to be 8, 16, 24 or 32" );
+		}
+		this.mFloatAudio = pFloatAudio;
+		this.mSampleSizeInBits = pSampleSizeInBits;
+		this.mBuffer = new float[0];
+	}
+
+	@Override
+	public void open() throws AudioException {
+		super.open();
+		try {
+			if ( this.mFloatAudio.isClosed() ) {
+				this.mFloatAudio.open();
+			}
+		}
+		catch (AudioException e) {
+			this.mClosed = true;
+			throw e;
+		}
+		AudioFormat format = this.mFloatAudio.getAudioFormat();
+		this.mCodec = new PCMCodec( new AudioFormat( format.getSampleRate(),
+				this.mSampleSizeInBits,
+				format.getChannels(),
+				true,
+				false ) );
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The Audio is not opened" );
+		}
+		int channels = this.mCodec.getChannels();
+		int frames = pLength / this.mCodec.getFrameSize();
+		if ( this.mBuffer.length < frames * channels ) {
+			this.mBuffer = new float[frames * channels];
+		}
+		int read = this.mFloatAudio.read( this.mBuffer, 0, frames );
+		if ( read <= 0 ) {
+			return read;
+		}
+		this.mCodec.encode( this.mBuffer, 0, pData, pStart, read );
+		return read * this.mCodec.getFrameSize();
+	}
+
+	@Override
+	public AudioFormat getAudioFormat() {
+		return this.mCodec == null ? null : this.mCodec.getAudioFormat();
+	}
+
+	@Override
+	public void close() throws AudioException {
+		super.close();
+		if ( !this.mFloatAudio.isClosed() ) {
+			this.mFloatAudio.close();
+		}
+	}
+
+	public FloatAudio getFloatAudio() {
+		return this.mFloatAudio;
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * File EncodingFloatAudioDevice.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.util.PCMCodec;
+
+/**
+ * {@link FloatAudioDevice} that encodes the samples to signed little endian
+ * integer PCM and writes them to an {@link AudioDevice}. Opening and closing
+ * the FloatAudioDevice opens and closes the AudioDevice.
+ *
+ * @author Martin Braun
+ */
+public class EncodingFloatAudioDevice implements FloatAudioDevice {
+
+	public static final int DEFAULT_SAMPLE_SIZE_IN_BITS = 16;
+
+	protected final AudioDevice mAudioDevice;
+	protected final int mSampleSizeInBits;
+	protected PCMCodec mCodec;
+	private byte[] mBuffer;
+
+	/**
+	 * encodes to 16 bit signed little endian PCM
+	 */
+	public EncodingFloatAudioDevice(AudioDevice pAudioDevice) {
+		this( pAudioDevice, DEFAULT_SAMPLE_SIZE_IN_BITS );
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if pSampleSizeInBits is not 8, 16, 24 or 32
+	 */
+	public EncodingFloatAudioDevice(AudioDevice pAudioDevice, int pSampleSizeInBits) {
+		if ( pAudioDevice == null ) {
+			throw new NullPointerException( "pAudioDevice may not be null" );
+		}
+		if ( pSampleSizeInBits != 8 && pSampleSizeInBits != 16 && pSampleSizeInBits != 24 && pSampleSizeInBits != 32 ) {
+			throw new IllegalArgumentException( "pSampleSizeInBits has to be 8, 16, 24 or 32" );
+		}
+		this.mAudioDevice = pAudioDevice;
+		this.mSampleSizeInBits = pSampleSizeInBits;
+		this.mBuffer = new byte[0];
+	}
+
+	@Override
+	public void open(AudioFormat pAudioFormat) throws AudioDeviceException {
+		if ( pAudioFormat == null ) {
+			throw new NullPointerException( "pAudioFormat may not be null" );
+		}
+		PCMCodec codec = new PCMCodec( new AudioFormat( pAudioFormat.getSampleRate(),
+				this.mSampleSizeInBits,
+				pAudioFormat.getChannels(),
+				true,
+				false ) );
+		this.mAudioDevice.open( codec.getAudioFormat() );
+		this.mCodec = codec;
+	}
+
+	@Override
+	public int write(float[] pData, int pStart, int pFrames) throws AudioDeviceException {
+		this.mCodec.encode( pData, pStart, this.ensureBuffer( pFrames ), 0, pFrames );
+		return this.writeBuffer( pFrames );
+	}
+
+	@Override
+	public int writePlanar(float[][] pData, int pStart, int pFrames) throws AudioDeviceException {
+		this.mCodec.encodePlanar( pData, pStart, this.ensureBuffer( pFrames ), 0, pFrames );
+		return this.writeBuffer( pFrames );
+	}
+
+	private byte[] ensureBuffer(int pFrames) {
+		if ( this.mAudioDevice.isClosed() ) {
+			throw new IllegalStateException( "The FloatAudioDevice is not opened" );
+		}
+		int length = pFrames * this.mCodec.getFrameSize();
+		if ( this.mBuffer.length < length ) {
+			this.mBuffer = new byte[length];
+		}
+		return this.mBuffer;
+	}
+
+	private int writeBuffer(int pFrames) throws AudioDeviceException {
+		int length = pFrames * this.mCodec.getFrameSize();
+		int written = 0;
+		while ( written < length ) {
+			int result = this.mAudioDevice.write( this.mBuffer, written, length - written );
+			if ( result <= 0 ) {
+				break;
+			}
+			written += result;
+		}
+		return written / this.mCodec.getFrameSize();
+	}
+
+	@Override
+	public void flush() {
+		this.mAudioDevice.flush();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return this.mAudioDevice.isClosed();
+	}
+
+	@Override
+	public void close() throws AudioDeviceException {
+		this.mAudioDevice.close();
+	}
+
+	public AudioDevice getAudioDevice() {
+		return this.mAudioDevice;
+	}
+
+}
@@ -0,0 +1,755 @@
+/**
+ * File FlacFrameEncoder.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+/**
+ * encodes single blocks of samples into FLAC frames (fixed block size
+ * strategy). Every channel is tried with fixed predictors of order 0 to 4 and
+ * a quantized LPC predictor whose order is picked from the Levinson-Durbin
+ * error estimates, the cheapest one is written with partitioned Rice coding.
+ * Stereo blocks are decorrelated (left/side, right/side or mid/side) if that
+ * is estimated to be cheaper.
+ *
+ * All buffers are allocated up front, so encoding doesn't allocate. Instances
+ * are not thread safe, use one per thread.
+ *
+ * @author Martin Braun
+ */
+final class FlacFrameEncoder {
+
+	static final int MAX_LPC_ORDER = 12;
+
+	private static final int MAX_FIXED_ORDER = 4;
+
+	private static final int MAX_RICE_PARAMETER = 14;
+
+	private static final int MAX_PARTITION_ORDER = 8;
+
+	private static final int CHANNEL_INDEPENDENT = 0;
+	private static final int CHANNEL_LEFT_SIDE = 8;
+	private static final int CHANNEL_RIGHT_SIDE = 9;
+	private static final int CHANNEL_MID_SIDE = 10;
+
+	private static final int[] CRC8_TABLE = new int[256];
+	private static final int[] CRC16_TABLE = new int[256];
+
+	static {
+		for ( int i = 0; i < 256; ++i ) {
+			int crc8 = i;
+			int crc16 = i << 8;
+			for ( int j = 0; j < 8; ++j ) {
+				crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+				crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+			}
+			CRC8_TABLE[i] = crc8 & 0xFF;
+			CRC16_TABLE[i] = crc16 & 0xFFFF;
+		}
+	}
+
+	private final int mChannels;
+	private final int mBitsPerSample;
+	private final int mSampleRateCode;
+	private final int mSampleSizeCode;
+
+	private final byte[] mOutput;
+	private int mOutputPosition;
+	private long mBitBuffer;
+	private int mBitCount;
+
+	private final int[] mMid;
+	private final int[] mSide;
+	private final int[] mResidual;
+	private final long[] mPartitionSums;
+	private final int[] mRiceParameters;
+	private final int[] mBestRiceParameters;
+	private final double[] mWindow;
+	private int mWindowLength;
+	private final double[] mWindowed;
+	private final double[] mAutocorrelation;
+	private final double[] mLpc;
+	private final double[] mLpcTmp;
+	private final double[][] mLpcCoefficients;
+	private final double[] mLpcErrors;
+	private final int[] mQlpCoefficients;
+
+	FlacFrameEncoder(int pChannels, int pBitsPerSample, int pSampleRate, int pMaxBlockSize) {
+		this.mChannels = pChannels;
+		this.mBitsPerSample = pBitsPerSample;
+		this.mSampleRateCode = sampleRateCode( pSampleRate );
+		this.mSampleSizeCode = sampleSizeCode( pBitsPerSample );
+		//verbatim subframes with one extra bit for side channels plus headers
+		this.mOutput = new byte[pMaxBlockSize * pChannels * (pBitsPerSample + 1) / 8 + 64 * pChannels + 64];
+		this.mMid = new int[pMaxBlockSize];
+		this.mSide = new int[pMaxBlockSize];
+		this.mResidual = new int[pMaxBlockSize];
+		this.mPartitionSums = new long[1 << (MAX_PARTITION_ORDER + 1)];
+		this.mRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+		this.mBestRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+		this.mWindow = new double[pMaxBlockSize];
+		this.mWindowed = new double[pMaxBlockSize];
+		this.mAutocorrelation = new double[MAX_LPC_ORDER + 1];
+		this.mLpc = new double[MAX_LPC_ORDER];
+		this.mLpcTmp = new double[MAX_LPC_ORDER];
+		this.mLpcCoefficients = new double[MAX_LPC_ORDER][MAX_LPC_ORDER];
+		this.mLpcErrors = new double[MAX_LPC_ORDER];
+		this.mQlpCoefficients = new int[MAX_LPC_ORDER];
+	}
+
+	/**
+	 * @return the buffer the last frame has been encoded into
+	 */
+	byte[] getOutput() {
+		return this.mOutput;
+	}
+
+	/**
+	 * encodes the first pBlockSize samples of every channel
+	 *
+	 * @return the length of the frame in {@link #getOutput()}
+	 */
+	int encode(int[][] pSamples, int pBlockSize, long pFrameNumber) {
+		this.mOutputPosition = 0;
+		this.mBitBuffer = 0;
+		this.mBitCount = 0;
+		int assignment = CHANNEL_INDEPENDENT + this.mChannels - 1;
+		if ( this.mChannels == 2 ) {
+			assignment = this.decorrelate( pSamples[0], pSamples[1], pBlockSize );
+		}
+		this.writeHeader( pBlockSize, pFrameNumber, assignment );
+		int bps = this.mBitsPerSample;
+		switch ( assignment ) {
+			case CHANNEL_LEFT_SIDE:
+				this.writeSubframe( pSamples[0], pBlockSize, bps );
+				this.writeSubframe( this.mSide, pBlockSize, bps + 1 );
+				break;
+			case CHANNEL_RIGHT_SIDE:
+				this.writeSubframe( this.mSide, pBlockSize, bps + 1 );
+				this.writeSubframe( pSamples[1], pBlockSize, bps );
+				break;
+			case CHANNEL_MID_SIDE:
+				this.writeSubframe( this.mMid, pBlockSize, bps );
+				this.writeSubframe( this.mSide, pBlockSize, bps + 1 );
+				break;
+			default:
+				for ( int c = 0; c < this.mChannels; ++c ) {
+					this.writeSubframe( pSamples[c], pBlockSize, bps );
+				}
+				break;
+		}
+		this.alignToByte();
+		int crc = crc16( this.mOutput, 0, this.mOutputPosition );
+		this.mOutput[this.mOutputPosition++] = (byte) (crc >> 8);
+		this.mOutput[this.mOutputPosition++] = (byte) crc;
+		return this.mOutputPosition;
+	}
+
+	/**
+	 * fills mid and side and picks the cheapest channel assignment judged by
+	 * the residual of the second order fixed predictor
+	 */
+	private int decorrelate(int[] pLeft, int[] pRight, int pBlockSize) {
+		for ( int i = 0; i < pBlockSize; ++i ) {
+			this.mMid[i] = (pLeft[i] + pRight[i]) >> 1;
+			this.mSide[i] = pLeft[i] - pRight[i];
+		}
+		long left = fixedCost( pLeft, pBlockSize );
+		long right = fixedCost( pRight, pBlockSize );
+		long mid = fixedCost( this.mMid, pBlockSize );
+		long side = fixedCost( this.mSide, pBlockSize );
+		long best = left + right;
+		int assignment = CHANNEL_INDEPENDENT + 1;
+		if ( left + side < best ) {
+			best = left + side;
+			assignment = CHANNEL_LEFT_SIDE;
+		}
+		if ( right + side < best ) {
+			best = right + side;
+			assignment = CHANNEL_RIGHT_SIDE;
+		}
+		if ( mid + side < best ) {
+			assignment = CHANNEL_MID_SIDE;
+		}
+		return assignment;
+	}
+
+	private static long fixedCost(int[] pSignal, int pBlockSize) {
+		long sum = 0;
+		for ( int i = 2; i < pBlockSize; ++i ) {
+			sum += Math.abs( (long) pSignal[i] - 2L * pSignal[i - 1] + pSignal[i - 2] );
+		}
+		return sum;
+	}
+
+	private void writeHeader(int pBlockSize, long pFrameNumber, int pAssignment) {
+		int start = this.mOutputPosition;
+		//sync code, reserved bit, fixed block size
+		this.writeBits( 0xFFF8, 16 );
+		int blockSizeCode = blockSizeCode( pBlockSize );
+		this.writeBits( blockSizeCode, 4 );
+		this.writeBits( this.mSampleRateCode, 4 );
+		this.writeBits( pAssignment, 4 );
+		this.writeBits( this.mSampleSizeCode, 3 );
+		this.writeBits( 0, 1 );
+		this.writeUtf8( pFrameNumber );
+		if ( blockSizeCode == 6 ) {
+			this.writeBits( pBlockSize - 1, 8 );
+		}
+		else if ( blockSizeCode == 7 ) {
+			this.writeBits( pBlockSize - 1, 16 );
+		}
+		this.alignToByte();
+		this.writeBits( crc8( this.mOutput, start, this.mOutputPosition - start ), 8 );
+	}
+
+	private void writeSubframe(int[] pSignal, int pBlockSize, int pBitsPerSample) {
+		boolean constant = true;
+		for ( int i = 1; i < pBlockSize && constant; ++i ) {
+			constant = pSignal[i] == pSignal[0];
+		}
+		if ( constant ) {
+			this.writeBits( 0, 8 );
+			this.writeSigned( pSignal[0], pBitsPerSample );
+			return;
+		}
+		long verbatimBits = (long) pBlockSize * pBitsPerSample;
+
+		//fixed predictors, judged by the sum of their residuals
+		int fixedOrder = 0;
+		long fixedSum = Long.MAX_VALUE;
+		for ( int order = 0; order <= MAX_FIXED_ORDER && order < pBlockSize; ++order ) {
+			long sum = 0;
+			for ( int i = order; i < pBlockSize; ++i ) {
+				sum += Math.abs( fixedResidual( pSignal, i, order ) );
+			}
+			if ( sum < fixedSum ) {
+				fixedSum = sum;
+				fixedOrder = order;
+			}
+		}
+		long fixedBits = Long.MAX_VALUE;
+		if ( this.fixedResiduals( pSignal, pBlockSize, fixedOrder ) ) {
+			fixedBits = fixedOrder * (long) pBitsPerSample + this.riceBits( pBlockSize, fixedOrder, this.mBestRiceParameters );
+		}
+
+		int lpcOrder = this.lpcOrder( pSignal, pBlockSize );
+		int precision = qlpPrecision( pBitsPerSample, pBlockSize );
+		int shift = -1;
+		long lpcBits = Long.MAX_VALUE;
+		if ( lpcOrder > 0 ) {
+			shift = this.quantize( this.mLpcCoefficients[lpcOrder - 1], lpcOrder, precision );
+			if ( shift >= 0 && this.lpcResiduals( pSignal, pBlockSize, lpcOrder, shift ) ) {
+				lpcBits = lpcOrder * (long) (pBitsPerSample + precision) + 9 +
+						this.riceBits( pBlockSize, lpcOrder, this.mRiceParameters );
+			}
+		}
+
+		if ( verbatimBits <= fixedBits && verbatimBits <= lpcBits ) {
+			this.writeBits( 0x02, 8 );
+			for ( int i = 0; i < pBlockSize; ++i ) {
+				this.writeSigned( pSignal[i], pBitsPerSample );
+			}
+		}
+		else if ( lpcBits < fixedBits ) {
+			//the residuals of the LPC predictor are still in mResidual
+			this.writeBits( (0x20 | (lpcOrder - 1)) << 1, 8 );
+			for ( int i = 0; i < lpcOrder; ++i ) {
+				this.writeSigned( pSignal[i], pBitsPerSample );
+			}
+			this.writeBits( precision - 1, 4 );
+			this.writeSigned( shift, 5 );
+			for ( int i = 0; i < lpcOrder; ++i ) {
+				this.writeSigned( this.mQlpCoefficients[i], precision );
+			}
+			this.writeResidual( pBlockSize, lpcOrder, this.riceOrder( pBlockSize, lpcOrder, this.mRiceParameters ), this.mRiceParameters );
+		}
+		else {
+			this.fixedResiduals( pSignal, pBlockSize, fixedOrder );
+			this.writeBits( (0x08 | fixedOrder) << 1, 8 );
+			for ( int i = 0; i < fixedOrder; ++i ) {
+				this.writeSigned( pSignal[i], pBitsPerSample );
+			}
+			this.writeResidual( pBlockSize, fixedOrder, this.riceOrder( pBlockSize, fixedOrder, this.mRiceParameters ), this.mRiceParameters );
+		}
+	}
+
+	private static long fixedResidual(int[] pSignal, int pIndex, int pOrder) {
+		int i = pIndex;
+		switch ( pOrder ) {
+			case 0:
+				return pSignal[i];
+			case 1:
+				return (long) pSignal[i] - pSignal[i - 1];
+			case 2:
+				return (long) pSignal[i] - 2L * pSignal[i - 1] + pSignal[i - 2];
+			case 3:
+				return (long) pSignal[i] - 3L * pSignal[i - 1] + 3L * pSignal[i - 2] - pSignal[i - 3];
+			default:
+				return (long) pSignal[i] - 4L * pSignal[i - 1] + 6L * pSignal[i - 2] - 4L * pSignal[i - 3] + pSignal[i - 4];
+		}
+	}
+
+	/**
+	 * @return false if a residual doesn't fit into 32 bits
+	 */
+	private boolean fixedResiduals(int[] pSignal, int pBlockSize, int pOrder) {
+		for ( int i = pOrder; i < pBlockSize; ++i ) {
+			long residual = fixedResidual( pSignal, i, pOrder );
+			if ( residual != (int) residual ) {
+				return false;
+			}
+			this.mResidual[i] = (int) residual;
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if a residual doesn't fit into 32 bits
+	 */
+	private boolean lpcResiduals(int[] pSignal, int pBlockSize, int pOrder, int pShift) {
+		int[] coefficients = this.mQlpCoefficients;
+		for ( int i = pOrder; i < pBlockSize; ++i ) {
+			long sum = 0;
+			for ( int j = 0; j < pOrder; ++j ) {
+				sum += (long) coefficients[j] * pSignal[i - j - 1];
+			}
+			long residual = pSignal[i] - (sum >> pShift);
+			if ( residual != (int) residual ) {
+				return false;
+			}
+			this.mResidual[i] = (int) residual;
+		}
+		return true;
+	}
+
+	/**
+	 * windows the signal (Tukey window), computes the LPC coefficients of all
+	 * orders with Levinson-Durbin and picks the order with the least estimated
+	 * amount of bits
+	 *
+	 * @return the order or 0 if LPC isn't usable for this signal
+	 */
+	private int lpcOrder(int[] pSignal, int pBlockSize) {
+		int maxOrder = Math.min( MAX_LPC_ORDER, pBlockSize - 1 );
+		if ( maxOrder < 1 ) {
+			return 0;
+		}
+		if ( this.mWindowLength != pBlockSize ) {
+			tukey( this.mWindow, pBlockSize, 0.5 );
+			this.mWindowLength = pBlockSize;
+		}
+		for ( int i = 0; i < pBlockSize; ++i ) {
+			this.mWindowed[i] = pSignal[i] * this.mWindow[i];
+		}
+		double[] autoc = this.mAutocorrelation;
+		for ( int lag = 0; lag <= maxOrder; ++lag ) {
+			double sum = 0;
+			for ( int i = lag; i < pBlockSize; ++i ) {
+				sum += this.mWindowed[i] * this.mWindowed[i - lag];
+			}
+			autoc[lag] = sum;
+		}
+		if ( autoc[0] == 0 ) {
+			return 0;
+		}
+		//Levinson-Durbin
+		double error = autoc[0];
+		double[] lpc = this.mLpc;
+		for ( int i = 0; i < maxOrder; ++i ) {
+			double r = -autoc[i + 1];
+			for ( int j = 0; j < i; ++j ) {
+				r -= lpc[j] * autoc[i - j];
+			}
+			r /= error;
+			System.arraycopy( lpc, 0, this.mLpcTmp, 0, i );
+			lpc[i] = r;
+			for ( int j = 0; j < i; ++j ) {
+				lpc[j] = this.mLpcTmp[j] + r * this.mLpcTmp[i - j - 1];
+			}
+			error *= 1.0 - r * r;
+			//predictor coefficients are the negated reflection form
+			for ( int j = 0; j <= i; ++j ) {
+				this.mLpcCoefficients[i][j] = -lpc[j];
+			}
+			this.mLpcErrors[i] = error;
+			if ( error <= 0 ) {
+				maxOrder = i + 1;
+				break;
+			}
+		}
+		//estimated bits: residual bits per sample from the error plus the
+		//cost of the warm up samples and coefficients
+		int best = 0;
+		double bestBits = Double.MAX_VALUE;
+		int precision = qlpPrecision( this.mBitsPerSample, pBlockSize );
+		for ( int order = 1; order <= maxOrder; ++order ) {
+			double error2 = this.mLpcErrors[order - 1];
+			double bitsPerResidual = error2 > 0 ?
+					Math.max( 0.0, 0.5 * Math.log( error2 / pBlockSize * 2.0 ) / Math.log( 2 ) ) :
+					0.0;
+			double bits = bitsPerResidual * (pBlockSize - order) + order * (this.mBitsPerSample + precision);
+			if ( bits < bestBits ) {
+				bestBits = bits;
+				best = order;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * quantizes the coefficients into mQlpCoefficients
+	 *
+	 * @return the shift or -1 if they can't be quantized
+	 */
+	private int quantize(double[] pCoefficients, int pOrder, int pPrecision) {
+		double max = 0;
+		for ( int i = 0; i < pOrder; ++i ) {
+			max = Math.max( max, Math.abs( pCoefficients[i] ) );
+		}
+		if ( max <= 0 || Double.isNaN( max ) || Double.isInfinite( max ) ) {
+			return -1;
+		}
+		int qmax = (1 << (pPrecision - 1)) - 1;
+		int qmin = -qmax - 1;
+		int log2max = Math.getExponent( max ) + 1;
+		int shift = Math.min( 15, pPrecision - 1 - log2max );
+		if ( shift < 0 ) {
+			return -1;
+		}
+		double error = 0;
+		for ( int i = 0; i < pOrder; ++i ) {
+			error += pCoefficients[i] * (1 << shift);
+			long q = Math.round( error );
+			if ( q > qmax ) {
+				q = qmax;
+			}
+			else if ( q < qmin ) {
+				q = qmin;
+			}
+			error -= q;
+			this.mQlpCoefficients[i] = (int) q;
+		}
+		return shift;
+	}
+
+	/**
+	 * @return the amount of bits the residual in mResidual takes with the
+	 *         best partition order, whose Rice parameters are stored in
+	 *         pParameters
+	 */
+	private long riceBits(int pBlockSize, int pPredictorOrder, int[] pParameters) {
+		int order = this.riceOrder( pBlockSize, pPredictorOrder, pParameters );
+		long bits = 6 + (4L << order);
+		int partitions = 1 << order;
+		int partitionSize = pBlockSize >> order;
+		int base = partitions;
+		for ( int p = 0; p < partitions; ++p ) {
+			int count = p == 0 ? partitionSize - pPredictorOrder : partitionSize;
+			bits += riceBits( this.mPartitionSums[base + p], count, pParameters[p] );
+		}
+		return bits;
+	}
+
+	/**
+	 * sums up the folded residuals for all partition orders (stored like a
+	 * binary heap in mPartitionSums) and picks the cheapest order
+	 *
+	 * @return the partition order, its parameters are stored in pParameters
+	 */
+	private int riceOrder(int pBlockSize, int pPredictorOrder, int[] pParameters) {
+		int maxOrder = 0;
+		while ( maxOrder < MAX_PARTITION_ORDER && (pBlockSize & ((2 << maxOrder) - 1)) == 0 &&
+				(pBlockSize >> (maxOrder + 1)) > pPredictorOrder ) {
+			++maxOrder;
+		}
+		int partitions = 1 << maxOrder;
+		int partitionSize = pBlockSize >> maxOrder;
+		int pos = pPredictorOrder;
+		for ( int p = 0; p < partitions; ++p ) {
+			long sum = 0;
+			int end = (p + 1) * partitionSize;
+			for ( ; pos < end; ++pos ) {
+				int r = this.mResidual[pos];
+				sum += ((long) r << 1) ^ (r >> 31);
+			}
+			this.mPartitionSums[partitions + p] = sum;
+		}
+		for ( int node = partitions - 1; node >= 1; --node ) {
+			this.mPartitionSums[node] = this.mPartitionSums[2 * node] + this.mPartitionSums[2 * node + 1];
+		}
+		int bestOrder = 0;
+		long bestBits = Long.MAX_VALUE;
+		for ( int order = 0; order <= maxOrder; ++order ) {
+			int count = 1 << order;
+			int size = pBlockSize >> order;
+			long bits = 4L * count;
+			for ( int p = 0; p < count; ++p ) {
+				int samples = p == 0 ? size - pPredictorOrder : size;
+				long sum = this.mPartitionSums[count + p];
+				bits += riceBits( sum, samples, riceParameter( sum, samples ) );
+			}
+			if ( bits < bestBits ) {
+				bestBits = bits;
+				bestOrder = order;
+			}
+		}
+		int count = 1 << bestOrder;
+		int size = pBlockSize >> bestOrder;
+		for ( int p = 0; p < count; ++p ) {
+			int samples = p == 0 ? size - pPredictorOrder : size;
+			pParameters[p] = riceParameter( this.mPartitionSums[count + p], samples );
+		}
+		return bestOrder;
+	}
+
+	private static int riceParameter(long pSum, int pCount) {
+		if ( pCount <= 0 || pSum <= pCount ) {
+			return 0;
+		}
+		int k = 63 - Long.numberOfLeadingZeros( pSum / pCount );
+		//the estimate is close, check its neighbour
+		if ( k < MAX_RICE_PARAMETER && riceBits( pSum, pCount, k + 1 ) < riceBits( pSum, pCount, k ) ) {
+			++k;
+		}
+		return Math.min( k, MAX_RICE_PARAMETER );
+	}
+
+	private static long riceBits(long pSum, int pCount, int pParameter) {
+		return (long) pCount * (pParameter + 1) + (pSum >> pParameter);
+	}
+
+	private void writeResidual(int pBlockSize, int pPredictorOrder, int pPartitionOrder, int[] pParameters) {
+		//partitioned Rice with 4 bit parameters
+		this.writeBits( 0, 2 );
+		this.writeBits( pPartitionOrder, 4 );
+		int partitions = 1 << pPartitionOrder;
+		int partitionSize = pBlockSize >> pPartitionOrder;
+		int pos = pPredictorOrder;
+		for ( int p = 0; p < partitions; ++p ) {
+			int k = pParameters[p];
+			this.writeBits( k, 4 );
+			int end = (p + 1) * partitionSize;
+			for ( ; pos < end; ++pos ) {
+				int r = this.mResidual[pos];
+				long u = ((long) r << 1) ^ (r >> 31);
+				long q = u >>> k;
+				//unary part: q zeros followed by a one
+				while ( q >= 32 ) {
+					this.writeBits( 0, 32 );
+					q -= 32;
+				}
+				this.writeBits( 1, (int) q + 1 );
+				if ( k > 0 ) {
+					this.writeBits( u & ((1L << k) - 1), k );
+				}
+			}
+		}
+	}
+
+	private void writeSigned(long pValue, int pBits) {
+		this.writeBits( pValue & ((1L << pBits) - 1), pBits );
+	}
+
+	/**
+	 * writes the lower pBits (at most 32) bits of pValue
+	 */
+	private void writeBits(long pValue, int pBits) {
+		this.mBitBuffer = (this.mBitBuffer << pBits) | (pValue & ((1L << pBits) - 1));
+		this.mBitCount += pBits;
+		while ( this.mBitCount >= 8 ) {
+			this.mBitCount -= 8;
+			this.mOutput[this.mOutputPosition++] = (byte) (this.mBitBuffer >>> this.mBitCount);
+		}
+	}
+
+	private void alignToByte() {
+		if ( this.mBitCount > 0 ) {
+			this.writeBits( 0, 8 - this.mBitCount );
+		}
+	}
+
+	/**
+	 * writes the frame number in the UTF-8 like coding of FLAC
+	 */
+	private void writeUtf8(long pValue) {
+		if ( pValue < 0x80 ) {
+			this.writeBits( pValue, 8 );
+			return;
+		}
+		int bytes = 2;
+		while ( bytes < 7 && pValue >= (1L << (5 * bytes + 1)) ) {
+			++bytes;
+		}
+		int firstBits = 7 - bytes;
+		int prefix = (0xFF00 >> bytes) & 0xFF;
+		this.writeBits( prefix | (pValue >>> (6 * (bytes - 1))) & ((1 << firstBits) - 1), 8 );
+		for ( int i = bytes - 2; i >= 0; --i ) {
+			this.writeBits( 0x80 | ((pValue >>> (6 * i)) & 0x3F), 8 );
+		}
+	}
+
+	static int crc8(byte[] pData, int pStart, int pLength) {
+		int crc = 0;
+		for ( int i = pStart; i < pStart + pLength; ++i ) {
+			crc = CRC8_TABLE[(crc ^ pData[i]) & 0xFF];
+		}
+		return crc;
+	}
+
+	static int crc16(byte[] pData, int pStart, int pLength) {
+		int crc = 0;
+		for ( int i = pStart; i < pStart + pLength; ++i ) {
+			crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ pData[i]) & 0xFF]) & 0xFFFF;
+		}
+		return crc;
+	}
+
+	private static void tukey(double[] pWindow, int pLength, double pRatio) {
+		if ( pLength == 1 ) {
+			pWindow[0] = 1;
+			return;
+		}
+		int taper = (int) (pRatio / 2 * pLength);
+		for ( int i = 0; i < pLength; ++i ) {
+			double w = 1.0;
+			if ( taper > 0 && i < taper ) {
+				w = 0.5 - 0.5 * Math.cos( Math.PI * i / taper );
+			}
+			else if ( taper > 0 && i >= pLength - taper ) {
+				w = 0.5 - 0.5 * Math.cos( Math.PI * (pLength - 1 - i) / taper );
+			}
+			pWindow[i] = w;
+		}
+	}
+
+	/**
+	 * same choice as the reference encoder
+	 */
+	private static int qlpPrecision(int pBitsPerSample, int pBlockSize) {
+		int precision;
+		if ( pBlockSize <= 192 ) {
+			precision = 7;
+		}
+		else if ( pBlockSize <= 384 ) {
+			precision = 8;
+		}
+		else if ( pBlockSize <= 576 ) {
+			precision = 9;
+		}
+		else if ( pBlockSize <= 1152 ) {
+			precision = 10;
+		}
+		else if ( pBlockSize <= 2304 ) {
+			precision = 11;
+		}
+		else if ( pBlockSize <= 4608 ) {
+			precision = 12;
+		}
+		else {
+			precision = 13;
+		}
+		if ( pBitsPerSample > 16 ) {
+			precision += 2;
+		}
+		return Math.min( precision, 15 );
+	}
+
+	private static int blockSizeCode(int pBlockSize) {
+		switch ( pBlockSize ) {
+			case 192:
+				return 1;
+			case 576:
+				return 2;
+			case 1152:
+				return 3;
+			case 2304:
+				return 4;
+			case 4608:
+				return 5;
+			case 256:
+				return 8;
+			case 512:
+				return 9;
+			case 1024:
+				return 10;
+			case 2048:
+				return 11;
+			case 4096:
+				return 12;
+			case 8192:
+				return 13;
+			case 16384:
+				return 14;
+			case 32768:
+				return 15;
+			default:
+				return pBlockSize <= 256 ? 6 : 7;
+		}
+	}
+
+	private static int sampleRateCode(int pSampleRate) {
+		switch ( pSampleRate ) {
+			case 88200:
+				return 1;
+			case 176400:
+				return 2;
+			case 192000:
+				return 3;
+			case 8000:
+				return 4;
+			case 16000:
+				return 5;
+			case 22050:
+				return 6;
+			case 24000:
+				return 7;
+			case 32000:
+				return 8;
+			case 44100:
+				return 9;
+			case 48000:
+				return 10;
+			case 96000:
+				return 11;
+			default:
+				//taken from STREAMINFO
+				return 0;
+		}
+	}
+
+	private static int sampleSizeCode(int pBitsPerSample) {
+		switch ( pBitsPerSample ) {
+			case 8:
+				return 1;
+			case 12:
+				return 2;
+			case 16:
+				return 4;
+			case 20:
+				return 5;
+			case 24:
+				return 6;
+			default:
+				//taken from STREAMINFO
+				return 0;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * File FlacRecordingAudioDevice.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import java.io.File;
+
+/**
+ * records everything written to it into a FLAC file, which takes about half
+ * the space (and disk bandwidth) of a WAVE file. Signed and unsigned PCM with
+ * up to 24 bits and 8 channels is supported.
+ *
+ * Blocks can be encoded by several threads in parallel (see
+ * {@link #FlacRecordingAudioDevice(File, int)}), so recordings with many
+ * channels or high sample rates don't have to be limited by a single core.
+ */
+public class FlacRecordingAudioDevice extends RecordingAudioDevice {
+
+	protected final int mThreads;
+
+	public FlacRecordingAudioDevice(File pFile) {
+		this( pFile, 1 );
+	}
+
+	/**
+	 * @param pThreads
+	 *            the amount of threads used for encoding. 1 encodes in the
+	 *            thread writing to this device
+	 */
+	public FlacRecordingAudioDevice(File pFile, int pThreads) {
+		super( pFile );
+		if ( pThreads < 1 ) {
+			throw new IllegalArgumentException( "pThreads has to be at least 1" );
+		}
+		this.mThreads = pThreads;
+	}
+
+	@Override
+	AudioFileWriter createRecorder() {
+		return new FlacWriter( this.mFile, this.mThreads );
+	}
+
+}
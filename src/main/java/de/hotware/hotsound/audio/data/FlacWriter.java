@@ -0,0 +1,564 @@
+/**
+ * File FlacWriter.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * writes a FLAC file in a single pass. Blocks of {@link #BLOCK_SIZE} samples
+ * are encoded by {@link FlacFrameEncoder}s, either in the writing thread or
+ * by a pool of encoder threads, and written to the file in order. STREAMINFO
+ * (with the MD5 of the audio data) and the SEEKTABLE are reserved at the
+ * start of the file and filled in on close.
+ *
+ * After opening, writing doesn't allocate: every block has its preallocated
+ * slot that is reused once its frame has been written.
+ */
+class FlacWriter implements AudioFileWriter {
+
+	static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * the amount of seek points reserved at the start of the file
+	 */
+	static final int SEEK_POINTS = 1024;
+
+	private static final int STREAMINFO_LENGTH = 34;
+
+	private static final int SEEK_POINT_LENGTH = 18;
+
+	private static final int METADATA_LENGTH = 4 + 4 + STREAMINFO_LENGTH + 4 + SEEK_POINTS * SEEK_POINT_LENGTH;
+
+	private static final long PLACEHOLDER_POINT = 0xFFFFFFFFFFFFFFFFL;
+
+	/**
+	 * queued to stop an encoder thread
+	 */
+	private static final Slot END = new Slot();
+
+	private final File mFile;
+	private final int mThreads;
+	private FileChannel mChannel;
+	private AudioFormat mFormat;
+	private int mChannels;
+	private int mBitsPerSample;
+	private int mBytesPerSample;
+	private int mSampleRate;
+	private boolean mBigEndian;
+	private boolean mUnsigned;
+	private Slot[] mSlots;
+	private int mCurrentSlot;
+	private int mBlockFill;
+	/**
+	 * the bytes of an incomplete sample frame from the last write
+	 */
+	private final byte[] mCarry;
+	private int mCarryLength;
+	private long mFrameNumber;
+	private long mBytesWritten;
+	private long mTotalSamples;
+	private long mFrameBytes;
+	private int mMinFrameSize;
+	private int mMaxFrameSize;
+	private MessageDigest mMd5;
+	private byte[] mMd5Buffer;
+	private long[] mSeekSamples;
+	private long[] mSeekOffsets;
+	private int[] mSeekFrameSamples;
+	private int mSeekCount;
+	private long mNextSeekSample;
+	/**
+	 * samples between two seek points, doubled whenever the table is full
+	 */
+	private long mSeekInterval;
+	private BlockingQueue<Slot> mWork;
+	private Thread[] mEncoderThreads;
+	private boolean mClosed;
+
+	public FlacWriter(File pFile) {
+		this( pFile, 1 );
+	}
+
+	/**
+	 * @param pThreads
+	 *            the amount of threads that encode blocks in parallel. 1
+	 *            encodes in the writing thread
+	 */
+	public FlacWriter(File pFile, int pThreads) {
+		if ( pFile == null ) {
+			throw new NullPointerException( "pFile may not be null" );
+		}
+		if ( pThreads < 1 ) {
+			throw new IllegalArgumentException( "pThreads has to be at least 1" );
+		}
+		this.mFile = pFile;
+		this.mThreads = pThreads;
+		this.mCarry = new byte[8 * 4];
+		this.mClosed = true;
+	}
+
+	@Override
+	public void open(AudioFormat pAudioFormat) throws IOException {
+		if ( !this.mClosed ) {
+			throw new IllegalStateException( "The FlacWriter is already opened" );
+		}
+		AudioFormat.Encoding encoding = pAudioFormat.getEncoding();
+		int bits = pAudioFormat.getSampleSizeInBits();
+		int channels = pAudioFormat.getChannels();
+		boolean unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals( encoding );
+		if ( !(unsigned || AudioFormat.Encoding.PCM_SIGNED.equals( encoding )) || bits < 4 || bits > 24 ||
+				channels < 1 || channels > 8 || pAudioFormat.getSampleRate() < 1 ||
+				pAudioFormat.getSampleRate() > 655350 ||
+				pAudioFormat.getFrameSize() != channels * ((bits + 7) / 8) ) {
+			throw new IOException( "FLAC can't store audio in the format " + pAudioFormat );
+		}
+		this.mFormat = pAudioFormat;
+		this.mChannels = channels;
+		this.mBitsPerSample = bits;
+		this.mBytesPerSample = (bits + 7) / 8;
+		this.mSampleRate = (int) pAudioFormat.getSampleRate();
+		this.mBigEndian = pAudioFormat.isBigEndian();
+		this.mUnsigned = unsigned;
+		try {
+			this.mMd5 = MessageDigest.getInstance( "MD5" );
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException( "MD5 is not available", e );
+		}
+		this.mMd5Buffer = new byte[BLOCK_SIZE * this.mChannels * this.mBytesPerSample];
+		int slotCount = this.mThreads > 1 ? this.mThreads * 2 : 1;
+		this.mSlots = new Slot[slotCount];
+		for ( int i = 0; i < slotCount; ++i ) {
+			this.mSlots[i] = new Slot( this.mChannels, this.mBitsPerSample, this.mSampleRate );
+		}
+		this.mCurrentSlot = 0;
+		this.mBlockFill = 0;
+		this.mCarryLength = 0;
+		this.mFrameNumber = 0;
+		this.mBytesWritten = 0;
+		this.mTotalSamples = 0;
+		this.mFrameBytes = 0;
+		this.mMinFrameSize = Integer.MAX_VALUE;
+		this.mMaxFrameSize = 0;
+		this.mSeekSamples = new long[SEEK_POINTS];
+		this.mSeekOffsets = new long[SEEK_POINTS];
+		this.mSeekFrameSamples = new int[SEEK_POINTS];
+		this.mSeekCount = 0;
+		this.mNextSeekSample = 0;
+		this.mSeekInterval = this.mSampleRate;
+
+		if ( this.mFile.exists() && !this.mFile.delete() ) {
+			throw new IOException( "couldn't delete the old file " + this.mFile.getAbsolutePath() );
+		}
+		this.mChannel = FileChannel.open(
+				this.mFile.toPath(),
+				StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE_NEW
+		);
+		try {
+			this.writeMetadata( false );
+			this.mChannel.position( METADATA_LENGTH );
+		}
+		catch (IOException e) {
+			this.mChannel.close();
+			this.mChannel = null;
+			throw e;
+		}
+		if ( this.mThreads > 1 ) {
+			this.mWork = new ArrayBlockingQueue<>( slotCount + this.mThreads );
+			this.mEncoderThreads = new Thread[this.mThreads];
+			for ( int i = 0; i < this.mThreads; ++i ) {
+				this.mEncoderThreads[i] = new Thread(
+						new Encoder(),
+						"HotSound-FlacEncoder-" + this.mFile.getName() + "-" + i
+				);
+				this.mEncoderThreads[i].setDaemon( true );
+				this.mEncoderThreads[i].start();
+			}
+		}
+		this.mClosed = false;
+	}
+
+	@Override
+	public int write(byte[] pData, int pStart, int pLength) throws IOException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The FlacWriter is not open" );
+		}
+		int frameSize = this.mFormat.getFrameSize();
+		int pos = pStart;
+		int end = pStart + pLength;
+		if ( this.mCarryLength > 0 ) {
+			int count = Math.min( frameSize - this.mCarryLength, pLength );
+			System.arraycopy( pData, pos, this.mCarry, this.mCarryLength, count );
+			this.mCarryLength += count;
+			pos += count;
+			if ( this.mCarryLength < frameSize ) {
+				this.mBytesWritten += pLength;
+				return pLength;
+			}
+			this.append( this.mCarry, 0, 1 );
+			this.mCarryLength = 0;
+		}
+		while ( end - pos >= frameSize ) {
+			int frames = Math.min( (end - pos) / frameSize, BLOCK_SIZE - this.mBlockFill );
+			this.append( pData, pos, frames );
+			pos += frames * frameSize;
+		}
+		if ( pos < end ) {
+			System.arraycopy( pData, pos, this.mCarry, 0, end - pos );
+			this.mCarryLength = end - pos;
+		}
+		this.mBytesWritten += pLength;
+		return pLength;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return this.mBytesWritten;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( this.mChannel == null ) {
+			return;
+		}
+		try {
+			if ( this.mBlockFill > 0 ) {
+				this.submit();
+			}
+			for ( int i = 0; i < this.mSlots.length; ++i ) {
+				this.finish( this.mSlots[(this.mCurrentSlot + i) % this.mSlots.length] );
+			}
+			this.writeMetadata( true );
+		}
+		finally {
+			this.mClosed = true;
+			try {
+				this.stopEncoders();
+			}
+			finally {
+				try {
+					this.mChannel.close();
+				}
+				finally {
+					this.mChannel = null;
+					this.mSlots = null;
+					this.mWork = null;
+					this.mEncoderThreads = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * de-interleaves pFrames sample frames into the current slot. they have
+	 * to fit into the current block
+	 */
+	private void append(byte[] pData, int pStart, int pFrames) throws IOException {
+		int[][] samples = this.mSlots[this.mCurrentSlot].mSamples;
+		int bytes = this.mBytesPerSample;
+		int shift = 32 - bytes * 8;
+		int pos = pStart;
+		for ( int i = 0; i < pFrames; ++i ) {
+			int index = this.mBlockFill + i;
+			for ( int c = 0; c < this.mChannels; ++c ) {
+				int value = 0;
+				if ( this.mBigEndian ) {
+					for ( int b = 0; b < bytes; ++b ) {
+						value = (value << 8) | (pData[pos + b] & 0xFF);
+					}
+				}
+				else {
+					for ( int b = bytes - 1; b >= 0; --b ) {
+						value = (value << 8) | (pData[pos + b] & 0xFF);
+					}
+				}
+				if ( this.mUnsigned ) {
+					value ^= 1 << (bytes * 8 - 1);
+				}
+				//sign extend, samples with less bits are stored left aligned
+				samples[c][index] = ((value << shift) >> shift) >> (bytes * 8 - this.mBitsPerSample);
+				pos += bytes;
+			}
+		}
+		this.mBlockFill += pFrames;
+		if ( this.mBlockFill == BLOCK_SIZE ) {
+			this.submit();
+		}
+	}
+
+	/**
+	 * hands the current block to an encoder and moves on to the next slot,
+	 * writing its previous frame if needed
+	 */
+	private void submit() throws IOException {
+		Slot slot = this.mSlots[this.mCurrentSlot];
+		this.updateMd5( slot.mSamples, this.mBlockFill );
+		slot.mBlockSize = this.mBlockFill;
+		slot.mFrameNumber = this.mFrameNumber++;
+		slot.mDone = false;
+		slot.mPending = true;
+		if ( this.mWork == null ) {
+			slot.encode();
+		}
+		else {
+			try {
+				this.mWork.put( slot );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException( "interrupted while waiting for the encoder threads" );
+			}
+		}
+		this.mCurrentSlot = (this.mCurrentSlot + 1) % this.mSlots.length;
+		this.mBlockFill = 0;
+		this.finish( this.mSlots[this.mCurrentSlot] );
+	}
+
+	/**
+	 * waits for the frame of the slot to be encoded and writes it
+	 */
+	private void finish(Slot pSlot) throws IOException {
+		if ( !pSlot.mPending ) {
+			return;
+		}
+		try {
+			pSlot.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "interrupted while waiting for the encoder threads" );
+		}
+		pSlot.mPending = false;
+		if ( pSlot.mFailure != null ) {
+			throw new IOException( "couldn't encode a FLAC frame", pSlot.mFailure );
+		}
+		if ( this.mTotalSamples >= this.mNextSeekSample ) {
+			this.addSeekPoint( this.mTotalSamples, this.mFrameBytes, pSlot.mBlockSize );
+		}
+		ByteBuffer buffer = pSlot.mOutput;
+		buffer.clear();
+		buffer.limit( pSlot.mLength );
+		while ( buffer.hasRemaining() ) {
+			this.mChannel.write( buffer );
+		}
+		this.mTotalSamples += pSlot.mBlockSize;
+		this.mFrameBytes += pSlot.mLength;
+		this.mMinFrameSize = Math.min( this.mMinFrameSize, pSlot.mLength );
+		this.mMaxFrameSize = Math.max( this.mMaxFrameSize, pSlot.mLength );
+	}
+
+	/**
+	 * the MD5 of STREAMINFO is computed over the signed little endian samples
+	 */
+	private void updateMd5(int[][] pSamples, int pBlockSize) {
+		byte[] buffer = this.mMd5Buffer;
+		int pos = 0;
+		for ( int i = 0; i < pBlockSize; ++i ) {
+			for ( int c = 0; c < this.mChannels; ++c ) {
+				int value = pSamples[c][i];
+				for ( int b = 0; b < this.mBytesPerSample; ++b ) {
+					buffer[pos++] = (byte) (value >> (8 * b));
+				}
+			}
+		}
+		this.mMd5.update( buffer, 0, pos );
+	}
+
+	/**
+	 * adds a seek point to the preallocated table. If it is full every second
+	 * point is dropped and the interval is doubled, so the points stay evenly
+	 * spread over the whole recording
+	 */
+	private void addSeekPoint(long pSample, long pOffset, int pFrameSamples) {
+		if ( this.mSeekCount == SEEK_POINTS ) {
+			for ( int i = 0; i < SEEK_POINTS / 2; ++i ) {
+				this.mSeekSamples[i] = this.mSeekSamples[i * 2];
+				this.mSeekOffsets[i] = this.mSeekOffsets[i * 2];
+				this.mSeekFrameSamples[i] = this.mSeekFrameSamples[i * 2];
+			}
+			this.mSeekCount = SEEK_POINTS / 2;
+			this.mSeekInterval *= 2;
+			this.mNextSeekSample = this.mSeekSamples[this.mSeekCount - 1] + this.mSeekInterval;
+			if ( pSample < this.mNextSeekSample ) {
+				return;
+			}
+		}
+		this.mSeekSamples[this.mSeekCount] = pSample;
+		this.mSeekOffsets[this.mSeekCount] = pOffset;
+		this.mSeekFrameSamples[this.mSeekCount] = pFrameSamples;
+		++this.mSeekCount;
+		this.mNextSeekSample = pSample + this.mSeekInterval;
+	}
+
+	/**
+	 * writes the signature, STREAMINFO and the SEEKTABLE to the start of the
+	 * file without moving the position of the channel. Until the final write
+	 * the totals are 0 (unknown) and the seek points are placeholders
+	 */
+	private void writeMetadata(boolean pFinal) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( METADATA_LENGTH );
+		buffer.put( new byte[] {'f', 'L', 'a', 'C'} );
+		buffer.putInt( STREAMINFO_LENGTH );
+		int minFrameSize = this.mMaxFrameSize > 0 ? this.mMinFrameSize : 0;
+		buffer.putShort( (short) BLOCK_SIZE );
+		buffer.putShort( (short) BLOCK_SIZE );
+		putInt24( buffer, minFrameSize );
+		putInt24( buffer, this.mMaxFrameSize );
+		//20 bits sample rate, 3 bits channels - 1, 5 bits bits per sample - 1
+		//and 36 bits total samples
+		long packed = ((long) this.mSampleRate << 44) | ((long) (this.mChannels - 1) << 41) |
+				((long) (this.mBitsPerSample - 1) << 36) | (this.mTotalSamples & 0xFFFFFFFFFL);
+		buffer.putLong( packed );
+		if ( pFinal ) {
+			buffer.put( this.mMd5.digest() );
+		}
+		else {
+			buffer.put( new byte[16] );
+		}
+		//last metadata block, type 3
+		buffer.putInt( 0x83000000 | (SEEK_POINTS * SEEK_POINT_LENGTH) );
+		int points = this.mSeekCount;
+		for ( int i = 0; i < points; ++i ) {
+			buffer.putLong( this.mSeekSamples[i] );
+			buffer.putLong( this.mSeekOffsets[i] );
+			buffer.putShort( (short) this.mSeekFrameSamples[i] );
+		}
+		for ( int i = points; i < SEEK_POINTS; ++i ) {
+			buffer.putLong( PLACEHOLDER_POINT );
+			buffer.putLong( 0 );
+			buffer.putShort( (short) 0 );
+		}
+		buffer.flip();
+		long position = 0;
+		while ( buffer.hasRemaining() ) {
+			position += this.mChannel.write( buffer, position );
+		}
+	}
+
+	private static void putInt24(ByteBuffer pBuffer, int pValue) {
+		pBuffer.put( (byte) (pValue >> 16) );
+		pBuffer.put( (byte) (pValue >> 8) );
+		pBuffer.put( (byte) pValue );
+	}
+
+	private void stopEncoders() throws IOException {
+		if ( this.mEncoderThreads == null ) {
+			return;
+		}
+		try {
+			for ( int i = 0; i < this.mEncoderThreads.length; ++i ) {
+				this.mWork.put( END );
+			}
+			for ( Thread thread : this.mEncoderThreads ) {
+				thread.join();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for ( Thread thread : this.mEncoderThreads ) {
+				thread.interrupt();
+			}
+			throw new InterruptedIOException( "interrupted while waiting for the encoder threads" );
+		}
+	}
+
+	/**
+	 * a block of samples together with the encoder and the buffer for its
+	 * frame
+	 */
+	private static final class Slot {
+
+		final int[][] mSamples;
+		final FlacFrameEncoder mEncoder;
+		final ByteBuffer mOutput;
+		int mBlockSize;
+		long mFrameNumber;
+		int mLength;
+		RuntimeException mFailure;
+		/**
+		 * only touched by the writing thread
+		 */
+		boolean mPending;
+		private boolean mDone;
+
+		Slot() {
+			this.mSamples = null;
+			this.mEncoder = null;
+			this.mOutput = null;
+		}
+
+		Slot(int pChannels, int pBitsPerSample, int pSampleRate) {
+			this.mSamples = new int[pChannels][BLOCK_SIZE];
+			this.mEncoder = new FlacFrameEncoder( pChannels, pBitsPerSample, pSampleRate, BLOCK_SIZE );
+			this.mOutput = ByteBuffer.wrap( this.mEncoder.getOutput() );
+		}
+
+		void encode() {
+			try {
+				this.mLength = this.mEncoder.encode( this.mSamples, this.mBlockSize, this.mFrameNumber );
+				this.mFailure = null;
+			}
+			catch (RuntimeException e) {
+				this.mFailure = e;
+			}
+			synchronized ( this ) {
+				this.mDone = true;
+				this.notifyAll();
+			}
+		}
+
+		synchronized void await() throws InterruptedException {
+			while ( !this.mDone ) {
+				this.wait();
+			}
+		}
+
+	}
+
+	private final class Encoder implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				Slot slot;
+				while ( (slot = FlacWriter.this.mWork.take()) != END ) {
+					slot.encode();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
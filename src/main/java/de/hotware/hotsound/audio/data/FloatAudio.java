@@ -0,0 +1,73 @@
+/**
+ * File FloatAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.Audio.AudioException;
+
+/**
+ * Source of normalized float samples in the range [-1, 1). Processing stages
+ * that work on floats should be chained with this interface so the bytes of
+ * the original {@link Audio} are decoded only once (see
+ * {@link DecodingFloatAudio}) and encoded only once at the end of the chain
+ * (see {@link EncodingAudio} and {@link EncodingFloatAudioDevice}).
+ *
+ * @author Martin Braun
+ */
+public interface FloatAudio extends AutoCloseable {
+
+	/**
+	 * @return the PCM_FLOAT AudioFormat of the samples. Only valid after the
+	 *         FloatAudio has been opened. doesn't throw exceptions!
+	 */
+	public AudioFormat getAudioFormat();
+
+	/**
+	 * reads up to pFrames frames of interleaved samples
+	 *
+	 * @throws IllegalStateException
+	 *             if not opened yet
+	 * @return the amount of frames read or -1 if the end has been reached
+	 */
+	public int read(float[] pData, int pStart, int pFrames) throws AudioException;
+
+	/**
+	 * reads up to pFrames frames into one array per channel
+	 *
+	 * @throws IllegalStateException
+	 *             if not opened yet
+	 * @return the amount of frames read or -1 if the end has been reached
+	 */
+	public int readPlanar(float[][] pData, int pStart, int pFrames) throws AudioException;
+
+	/**
+	 * @throws IllegalStateException
+	 *             if opened while not being closed
+	 */
+	public void open() throws AudioException;
+
+	public boolean isClosed();
+
+	@Override
+	public void close() throws AudioException;
+
+}
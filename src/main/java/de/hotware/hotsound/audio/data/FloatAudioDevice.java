@@ -0,0 +1,73 @@
+/**
+ * File FloatAudioDevice.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+
+/**
+ * Receives normalized float samples in the range [-1, 1), the counterpart of
+ * {@link FloatAudio}. {@link EncodingFloatAudioDevice} puts them out to an
+ * {@link AudioDevice}.
+ *
+ * @author Martin Braun
+ */
+public interface FloatAudioDevice extends AutoCloseable {
+
+	/**
+	 * writes pFrames frames of interleaved samples
+	 *
+	 * @throws IllegalStateException
+	 *             if not opened yet
+	 * @return the amount of frames written
+	 */
+	public int write(float[] pData, int pStart, int pFrames) throws AudioDeviceException;
+
+	/**
+	 * writes pFrames frames from one array per channel
+	 *
+	 * @throws IllegalStateException
+	 *             if not opened yet
+	 * @return the amount of frames written
+	 */
+	public int writePlanar(float[][] pData, int pStart, int pFrames) throws AudioDeviceException;
+
+	/**
+	 * opens the FloatAudioDevice for samples with the sample rate and the
+	 * channels of the given AudioFormat
+	 *
+	 * @throws IllegalStateException
+	 *             if opened while not being closed
+	 */
+	public void open(AudioFormat pAudioFormat) throws AudioDeviceException;
+
+	/**
+	 * discards all audio that is currently in the buffer
+	 */
+	public void flush();
+
+	public boolean isClosed();
+
+	@Override
+	public void close() throws AudioDeviceException;
+
+}
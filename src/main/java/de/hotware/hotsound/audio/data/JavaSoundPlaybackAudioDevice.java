@@ -34,6 +34,26 @@ public interface JavaSoundPlaybackAudioDevice extends AudioDevice {
 
 	public void setMixer(Mixer pMixer);
 
+	/**
+	 * @return the Mixer the line is taken from or null for any Mixer of the
+	 *         AudioSystem, which is what this default returns
+	 */
+	public default Mixer getMixer() {
+		return null;
+	}
+
+	/**
+	 * sets the buffer size hint in bytes that is used for the line the next
+	 * time the AudioDevice is opened. AudioSystem.NOT_SPECIFIED lets the line
+	 * decide. AudioDevices that can't size their line ignore the hint, which
+	 * is what this default does
+	 *
+	 * @throws IllegalStateException
+	 *             if the AudioDevice is not closed
+	 */
+	public default void setBufferSize(int pBufferSize) {
+	}
+
 	/**
 	 * @return the DataLine to which is being written (with that you can control
 	 *         the volume, etc.)
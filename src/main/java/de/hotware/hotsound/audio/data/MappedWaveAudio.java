@@ -0,0 +1,238 @@
+/**
+ * File MappedWaveAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays uncompressed WAVE files by mapping their data chunk into memory.
+ * Reading is a bulk copy out of the mapping and seeking only moves the
+ * position, so neither depends on where in the file we are.
+ *
+ * The data isn't converted. If the format can't be played by the line use
+ * {@link WaveAudio} instead.
+ *
+ * @author Martin Braun
+ */
+public class MappedWaveAudio extends BaseAudio implements SeekableAudio {
+
+	/**
+	 * size of a single mapping. files larger than this are mapped in windows
+	 */
+	private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+	protected final File mFile;
+	private final long mMaxWindowSize;
+	protected FileChannel mChannel;
+	protected AudioFormat mAudioFormat;
+	protected long mDataOffset;
+	protected long mDataLength;
+	protected int mFrameSize;
+	private long mWindowSize;
+	private long mWindowStart;
+	private MappedByteBuffer mWindow;
+
+	public MappedWaveAudio(File pFile) {
+		this( pFile, MAX_WINDOW_SIZE );
+	}
+
+	/**
+	 * for tests that need several windows without a huge file
+	 */
+	MappedWaveAudio(File pFile, long pMaxWindowSize) {
+		super();
+		if ( pFile == null ) {
+			throw new NullPointerException( "pFile may not be null" );
+		}
+		this.mFile = pFile;
+		this.mMaxWindowSize = pMaxWindowSize;
+	}
+
+	@Override
+	public void open() throws AudioException {
+		super.open();
+		try {
+			this.mChannel = FileChannel.open( this.mFile.toPath(), StandardOpenOption.READ );
+			WaveFileHeader header = new WaveFileHeader();
+			//the stream would close the channel, so it isn't closed here
+			int offset = header.read(
+					new BufferedInputStream( Channels.newInputStream( this.mChannel ) )
+			);
+			this.mAudioFormat = toAudioFormat( header );
+			this.mFrameSize = this.mAudioFormat.getFrameSize();
+			this.mDataOffset = offset;
+			long available = this.mChannel.size() - offset;
+			long length = header.getDataLength();
+			//streamed files often have 0 or 0xFFFFFFFF as length
+			if ( length == 0 || length > available ) {
+				length = available;
+			}
+			this.mDataLength = length - length % this.mFrameSize;
+			this.mWindowSize = this.mMaxWindowSize - this.mMaxWindowSize % this.mFrameSize;
+			this.map( 0 );
+		}
+		catch (IOException e) {
+			this.close();
+			throw new AudioException( "Error while mapping " + this.mFile, e );
+		}
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The Audio is not opened" );
+		}
+		int length = pLength - pLength % this.mFrameSize;
+		int total = 0;
+		try {
+			while ( total < length ) {
+				if ( !this.mWindow.hasRemaining() ) {
+					long next = this.mWindowStart + this.mWindow.limit();
+					if ( next >= this.mDataLength ) {
+						break;
+					}
+					this.map( next );
+				}
+				int count = Math.min( length - total, this.mWindow.remaining() );
+				this.mWindow.get( pData, pStart + total, count );
+				total += count;
+			}
+		}
+		catch (IOException e) {
+			throw new AudioException( "IOException while mapping " + this.mFile, e );
+		}
+		return total == 0 && length > 0 ? -1 : total;
+	}
+
+	@Override
+	public void close() throws AudioException {
+		super.close();
+		//the mapping is released by the GC, there is no public API for that
+		this.mWindow = null;
+		try {
+			if ( this.mChannel != null ) {
+				this.mChannel.close();
+			}
+		}
+		catch (IOException e) {
+			throw new AudioException( "IOException while closing " + this.mFile, e );
+		}
+	}
+
+	@Override
+	public void seek(long pFrame) throws AudioException {
+		if ( this.mClosed ) {
+			throw new IllegalStateException( "The Audio is not opened" );
+		}
+		long position = Math.max( 0, Math.min( pFrame * this.mFrameSize, this.mDataLength ) );
+		try {
+			if ( position < this.mWindowStart || position >= this.mWindowStart + this.mWindow.limit() ) {
+				this.map( position - position % this.mWindowSize );
+			}
+			this.mWindow.position( (int) (position - this.mWindowStart) );
+		}
+		catch (IOException e) {
+			throw new AudioException( "IOException while mapping " + this.mFile, e );
+		}
+	}
+
+	@Override
+	public void skip(long pFrames) throws AudioException {
+		this.seek( this.getFramePosition() + pFrames );
+	}
+
+	@Override
+	public long getFramePosition() {
+		if ( this.mWindow == null ) {
+			return 0;
+		}
+		return (this.mWindowStart + this.mWindow.position()) / this.mFrameSize;
+	}
+
+	@Override
+	public long getFrameLength() {
+		if ( this.mClosed ) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		return this.mDataLength / this.mFrameSize;
+	}
+
+	@Override
+	public boolean canSeek() {
+		return !this.mClosed;
+	}
+
+	@Override
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+	/**
+	 * maps the window starting at pStart (relative to the data chunk)
+	 */
+	private void map(long pStart) throws IOException {
+		long size = Math.min( this.mWindowSize, this.mDataLength - pStart );
+		this.mWindow = this.mChannel.map(
+				FileChannel.MapMode.READ_ONLY,
+				this.mDataOffset + pStart,
+				size
+		);
+		this.mWindowStart = pStart;
+	}
+
+	static AudioFormat toAudioFormat(WaveFileHeader pHeader) throws IOException {
+		int bits = pHeader.getBitsPerSample();
+		int channels = pHeader.getNumChannels();
+		float sampleRate = pHeader.getSampleRate();
+		int frameSize = channels * bits / 8;
+		if ( frameSize <= 0 || sampleRate <= 0 ) {
+			throw new IOException( "invalid WAVE format: " + pHeader );
+		}
+		AudioFormat.Encoding encoding;
+		switch ( pHeader.getFormat() ) {
+			case WaveFileHeader.FORMAT_PCM:
+				//8 bit WAVE data is unsigned
+				encoding = bits == 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+				break;
+			case WaveFileHeader.FORMAT_IEEE_FLOAT:
+				encoding = AudioFormat.Encoding.PCM_FLOAT;
+				break;
+			case WaveFileHeader.FORMAT_ALAW:
+				encoding = AudioFormat.Encoding.ALAW;
+				break;
+			case WaveFileHeader.FORMAT_ULAW:
+				encoding = AudioFormat.Encoding.ULAW;
+				break;
+			default:
+				throw new IOException( "unsupported WAVE format: " + pHeader );
+		}
+		return new AudioFormat( encoding, sampleRate, bits, channels, frameSize, sampleRate, false );
+	}
+
+}
@@ -0,0 +1,467 @@
+/**
+ * File MixingAudio.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.hotware.hotsound.audio.util.PCMCodec;
+import de.hotware.hotsound.audio.util.Resampler;
+
+/**
+ * Software mixer that plays many Audios at once. Every Audio that is passed to
+ * {@link #play(Audio)} becomes a {@link Voice} with its own gain and pan, all
+ * voices are summed up in a float accumulator and clipped into one 16 bit
+ * signed stereo stream. Play this Audio with a single player and a single
+ * AudioDevice (e.g. a BasicPlaybackAudioDevice) instead of opening one line
+ * and one thread per sound.
+ *
+ * The voices must have one or two channels in a PCM format that a
+ * {@link PCMCodec} supports. Voices with a
+ * different sample rate than the mixer are converted with a
+ * {@link Resampler} of {@link Resampler.Quality#LOW} quality. While there are
+ * no voices silence is returned, so the line keeps running until the mixer is
+ * closed.
+ *
+ * Mixing happens in the thread that calls {@link #read(byte[], int, int)} and
+ * doesn't allocate after the first chunk. All the other methods may be called
+ * from any thread, {@link #close()} waits for the chunk that is being mixed.
+ *
+ * @author Martin Braun
+ */
+public class MixingAudio extends BaseAudio {
+
+	public static final int DEFAULT_MAX_VOICES = 256;
+
+	private static final int OUTPUT_CHANNELS = 2;
+	private static final int OUTPUT_FRAME_SIZE = 4;
+
+	protected final AudioFormat mAudioFormat;
+	protected final int mMaxVoices;
+	/**
+	 * voices that are mixed. guarded by mMixLock
+	 */
+	protected final Voice[] mVoices;
+	protected int mVoiceCount;
+	/**
+	 * held while mixing a chunk and while closing, so close doesn't tear down
+	 * the voices under the mixing thread
+	 */
+	protected final Object mMixLock;
+	protected final Queue<Voice> mPendingVoices;
+	protected final AtomicInteger mActiveVoices;
+	protected volatile float mGain;
+	protected float[] mAccumulator;
+
+	public MixingAudio(float pSampleRate) {
+		this( pSampleRate, DEFAULT_MAX_VOICES );
+	}
+
+	public MixingAudio(float pSampleRate, int pMaxVoices) {
+		super();
+		if ( pMaxVoices < 1 ) {
+			throw new IllegalArgumentException( "pMaxVoices has to be at least 1" );
+		}
+		this.mAudioFormat = new AudioFormat(
+				AudioFormat.Encoding.PCM_SIGNED,
+				pSampleRate,
+				16,
+				OUTPUT_CHANNELS,
+				OUTPUT_FRAME_SIZE,
+				pSampleRate,
+				false
+		);
+		this.mMaxVoices = pMaxVoices;
+		this.mVoices = new Voice[pMaxVoices];
+		this.mVoiceCount = 0;
+		this.mMixLock = new Object();
+		this.mPendingVoices = new ConcurrentLinkedQueue<>();
+		this.mActiveVoices = new AtomicInteger( 0 );
+		this.mGain = 1f;
+		this.mAccumulator = new float[0];
+	}
+
+	/**
+	 * adds the Audio as a new voice. The Audio is opened if it is closed and
+	 * closed by the mixer as soon as it has ended or the voice is stopped.
+	 *
+	 * @throws AudioException
+	 *             if the Audio can't be opened or its format can't be mixed
+	 * @throws IllegalStateException
+	 *             if the maximum amount of voices is already playing
+	 */
+	public Voice play(Audio pAudio) throws AudioException {
+		return this.play( pAudio, 1f, 0f );
+	}
+
+	/**
+	 * @param pGain
+	 *            linear gain of the voice
+	 * @param pPan
+	 *            -1 for left, 0 for center and 1 for right
+	 * @see #play(Audio)
+	 */
+	public Voice play(Audio pAudio, float pGain, float pPan) throws AudioException {
+		if ( pAudio == null ) {
+			throw new NullPointerException( "pAudio may not be null" );
+		}
+		if ( pAudio.isClosed() ) {
+			pAudio.open();
+		}
+		AudioFormat format = pAudio.getAudioFormat();
+		if ( !canMix( format ) ) {
+			pAudio.close();
+			throw new AudioException( "can't mix audio with the format " + format );
+		}
+		if ( this.mActiveVoices.incrementAndGet() > this.mMaxVoices ) {
+			this.mActiveVoices.decrementAndGet();
+			pAudio.close();
+			throw new IllegalStateException( "already playing the maximum of " + this.mMaxVoices + " voices" );
+		}
+		Voice voice = new Voice( pAudio, pGain, pPan, this.mAudioFormat.getSampleRate() );
+		this.mPendingVoices.add( voice );
+		return voice;
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+		synchronized ( this.mMixLock ) {
+			if ( this.mClosed ) {
+				throw new IllegalStateException( "The Audio is not opened" );
+			}
+			return this.mix( pData, pStart, pLength );
+		}
+	}
+
+	/**
+	 * mixes the next chunk of all voices. only called with mMixLock held
+	 */
+	private int mix(byte[] pData, int pStart, int pLength) {
+		int frames = pLength / OUTPUT_FRAME_SIZE;
+		int samples = frames * OUTPUT_CHANNELS;
+		if ( this.mAccumulator.length < samples ) {
+			this.mAccumulator = new float[samples];
+		}
+		float[] acc = this.mAccumulator;
+		for ( int i = 0; i < samples; ++i ) {
+			acc[i] = 0f;
+		}
+		Voice pending;
+		while ( this.mVoiceCount < this.mMaxVoices && (pending = this.mPendingVoices.poll()) != null ) {
+			this.mVoices[this.mVoiceCount++] = pending;
+		}
+		for ( int i = 0; i < this.mVoiceCount; ) {
+			Voice voice = this.mVoices[i];
+			boolean playing;
+			try {
+				playing = !voice.mStopped && voice.mix( acc, frames );
+			}
+			catch (AudioException e) {
+				//a broken voice must not take down the other ones
+				playing = false;
+			}
+			if ( !playing ) {
+				voice.finish();
+				this.mActiveVoices.decrementAndGet();
+				this.mVoices[i] = this.mVoices[--this.mVoiceCount];
+				this.mVoices[this.mVoiceCount] = null;
+			}
+			else {
+				++i;
+			}
+		}
+		float gain = this.mGain;
+		int pos = pStart;
+		for ( int i = 0; i < samples; ++i ) {
+			float value = acc[i] * gain;
+			int sample;
+			if ( value >= Short.MAX_VALUE ) {
+				sample = Short.MAX_VALUE;
+			}
+			else if ( value <= Short.MIN_VALUE ) {
+				sample = Short.MIN_VALUE;
+			}
+			else {
+				sample = (int) value;
+			}
+			pData[pos++] = (byte) sample;
+			pData[pos++] = (byte) (sample >> 8);
+		}
+		return frames * OUTPUT_FRAME_SIZE;
+	}
+
+	/**
+	 * closes the mixer and all the voices that are still playing
+	 */
+	@Override
+	public void close() throws AudioException {
+		synchronized ( this.mMixLock ) {
+			super.close();
+			for ( int i = 0; i < this.mVoiceCount; ++i ) {
+				this.mVoices[i].finish();
+				this.mVoices[i] = null;
+			}
+			this.mVoiceCount = 0;
+			Voice pending;
+			while ( (pending = this.mPendingVoices.poll()) != null ) {
+				pending.finish();
+			}
+			this.mActiveVoices.set( 0 );
+		}
+	}
+
+	@Override
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+	/**
+	 * sets the master gain that is applied after summing up all voices
+	 */
+	public void setGain(float pGain) {
+		this.mGain = pGain;
+	}
+
+	public float getGain() {
+		return this.mGain;
+	}
+
+	/**
+	 * @return the amount of voices that are currently playing or waiting to be
+	 *         mixed
+	 */
+	public int getVoiceCount() {
+		return this.mActiveVoices.get();
+	}
+
+	public int getMaxVoices() {
+		return this.mMaxVoices;
+	}
+
+	static boolean canMix(AudioFormat pAudioFormat) {
+		if ( pAudioFormat == null ) {
+			return false;
+		}
+		int channels = pAudioFormat.getChannels();
+		return PCMCodec.isSupported( pAudioFormat ) && (channels == 1 || channels == 2) &&
+				pAudioFormat.getSampleRate() > 0;
+	}
+
+	/**
+	 * A single Audio that is played by the mixer. gain and pan may be changed
+	 * while playing.
+	 */
+	public static final class Voice {
+
+		private final Audio mAudio;
+		private final int mFrameSize;
+		private final int mChannels;
+		private final PCMCodec mCodec;
+		private volatile float mGain;
+		private volatile float mPan;
+		private volatile boolean mStopped;
+		private volatile boolean mDone;
+		private byte[] mBuffer;
+		/**
+		 * the decoded samples of mBuffer
+		 */
+		private float[] mSamples;
+		/**
+		 * null if the Audio has the sample rate of the mixer
+		 */
+		private final Resampler mResampler;
+		private float[] mResampled;
+		private boolean mEnded;
+
+		Voice(Audio pAudio, float pGain, float pPan, float pSampleRate) {
+			AudioFormat format = pAudio.getAudioFormat();
+			this.mAudio = pAudio;
+			this.mChannels = format.getChannels();
+			this.mCodec = new PCMCodec( format );
+			this.mFrameSize = this.mCodec.getFrameSize();
+			this.mGain = pGain;
+			this.setPan( pPan );
+			this.mBuffer = new byte[0];
+			this.mSamples = new float[0];
+			if ( Math.abs( format.getSampleRate() - pSampleRate ) < 0.5f ) {
+				this.mResampler = null;
+			}
+			else {
+				this.mResampler = new Resampler( this.mChannels, format.getSampleRate(), pSampleRate, Resampler.Quality.LOW );
+				this.mResampled = new float[0];
+			}
+		}
+
+		/**
+		 * adds up to pFrames frames of this voice to the accumulator
+		 *
+		 * @return false if the Audio has ended
+		 */
+		boolean mix(float[] pAccumulator, int pFrames) throws AudioException {
+			if ( this.mResampler != null ) {
+				return this.mixResampled( pAccumulator, pFrames );
+			}
+			int frames = this.decode( pFrames );
+			this.pan( this.mSamples, frames, pAccumulator );
+			return !this.mEnded || frames > 0;
+		}
+
+		/**
+		 * like {@link #mix(float[], int)} but reads as many frames as the
+		 * Resampler needs for pFrames frames of the mixer
+		 */
+		private boolean mixResampled(float[] pAccumulator, int pFrames) throws AudioException {
+			if ( this.mEnded ) {
+				return false;
+			}
+			Resampler resampler = this.mResampler;
+			int channels = this.mChannels;
+			int frames = this.decode( resampler.getRequiredInputFrames( pFrames ) );
+			if ( this.mResampled.length < pFrames * channels ) {
+				this.mResampled = new float[pFrames * channels];
+			}
+			float[] resampled = this.mResampled;
+			int produced = resampler.process( this.mSamples, 0, frames, resampled, 0, pFrames );
+			if ( this.mEnded ) {
+				//whatever doesn't fit anymore is cut off
+				produced += resampler.flush( resampled, produced * channels, pFrames - produced );
+			}
+			this.pan( resampled, produced, pAccumulator );
+			return produced > 0;
+		}
+
+		/**
+		 * adds the samples to the stereo accumulator with constant power
+		 * panning
+		 */
+		private void pan(float[] pSamples, int pFrames, float[] pAccumulator) {
+			double angle = (this.mPan + 1d) * Math.PI / 4d;
+			//the accumulator is in the 16 bit range
+			float gain = this.mGain * 32768f;
+			float left = (float) (Math.cos( angle ) * gain);
+			float right = (float) (Math.sin( angle ) * gain);
+			boolean stereo = this.mChannels == 2;
+			int pos = 0;
+			int out = 0;
+			for ( int i = 0; i < pFrames; ++i ) {
+				float first = pSamples[pos++];
+				float second = stereo ? pSamples[pos++] : first;
+				pAccumulator[out++] += first * left;
+				pAccumulator[out++] += second * right;
+			}
+		}
+
+		/**
+		 * reads up to pFrames frames of the Audio and decodes them into
+		 * mSamples
+		 *
+		 * @return the amount of frames decoded
+		 */
+		private int decode(int pFrames) throws AudioException {
+			int frames = this.fill( pFrames ) / this.mFrameSize;
+			if ( this.mSamples.length < frames * this.mChannels ) {
+				this.mSamples = new float[frames * this.mChannels];
+			}
+			this.mCodec.decode( this.mBuffer, 0, this.mSamples, 0, frames );
+			return frames;
+		}
+
+		/**
+		 * reads up to pFrames frames of the Audio into mBuffer
+		 *
+		 * @return the amount of bytes read
+		 */
+		private int fill(int pFrames) throws AudioException {
+			int length = pFrames * this.mFrameSize;
+			if ( this.mBuffer.length < length ) {
+				this.mBuffer = new byte[length];
+			}
+			byte[] buffer = this.mBuffer;
+			int total = 0;
+			while ( total < length ) {
+				int read = this.mAudio.read( buffer, total, length - total );
+				if ( read == -1 ) {
+					this.mEnded = true;
+					break;
+				}
+				if ( read == 0 ) {
+					break;
+				}
+				total += read;
+			}
+			return total;
+		}
+
+		void finish() {
+			this.mDone = true;
+			try {
+				if ( !this.mAudio.isClosed() ) {
+					this.mAudio.close();
+				}
+			}
+			catch (AudioException e) {
+				//the voice is gone anyways
+			}
+		}
+
+		public void setGain(float pGain) {
+			this.mGain = pGain;
+		}
+
+		public float getGain() {
+			return this.mGain;
+		}
+
+		/**
+		 * @param pPan
+		 *            -1 for left, 0 for center and 1 for right
+		 */
+		public void setPan(float pPan) {
+			this.mPan = Math.max( -1f, Math.min( 1f, pPan ) );
+		}
+
+		public float getPan() {
+			return this.mPan;
+		}
+
+		/**
+		 * removes the voice from the mixer before the next chunk is mixed
+		 */
+		public void stop() {
+			this.mStopped = true;
+		}
+
+		/**
+		 * @return true if the voice has ended or has been stopped and removed
+		 */
+		public boolean isDone() {
+			return this.mDone;
+		}
+
+		public Audio getAudio() {
+			return this.mAudio;
+		}
+
+	}
+
+}
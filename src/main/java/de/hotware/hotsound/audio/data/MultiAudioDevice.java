@@ -23,41 +23,254 @@ package de.hotware.hotsound.audio.data;
 import javax.sound.sampled.AudioFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
-public class MultiAudioDevice implements AudioDevice {
+import de.hotware.hotsound.audio.player.PlaybackMetrics;
+import de.hotware.util.Pause;
+
+/**
+ * Writes everything to several AudioDevices.
+ *
+ * By default every write goes to one device after another. In asynchronous
+ * mode (see {@link #MultiAudioDevice(List, int, SlowConsumerPolicy)}) every
+ * device gets its own bounded queue and worker thread, so a slow device (e.g.
+ * one that writes to disk) doesn't stall the others. The written data is
+ * copied once into a pooled, reference counted chunk that is shared by all
+ * queues. What happens if a queue is full is decided by the
+ * {@link SlowConsumerPolicy}.
+ *
+ * Exceptions of the underlying devices are collected as suppressed exceptions
+ * of the AudioDeviceException that is thrown. In asynchronous mode failures
+ * of the workers are reported by the next call to write or close.
+ */
+public class MultiAudioDevice implements MeteredAudioDevice {
+
+	/**
+	 * decides what happens if the queue of a device is full in asynchronous
+	 * mode
+	 */
+	public static enum SlowConsumerPolicy {
+		/**
+		 * wait until the device has caught up
+		 */
+		BLOCK,
+		/**
+		 * drop the oldest chunk queued for the device
+		 */
+		DROP_OLDEST,
+		/**
+		 * stop writing to the device until it is reopened
+		 */
+		DETACH,
+	}
+
+	/**
+	 * how long close waits for the workers to write out their queues
+	 */
+	private static final long CLOSE_TIMEOUT_SECONDS = 10;
 
 	protected List<AudioDevice> mDevices;
+	protected final boolean mAsync;
+	protected final int mQueueCapacity;
+	protected final SlowConsumerPolicy mSlowConsumerPolicy;
+	protected List<Output> mOutputs;
+	protected BlockingQueue<SharedChunk> mChunkPool;
+	protected ExecutorService mWorkers;
+	protected Pause mPause;
 
 	public MultiAudioDevice(List<AudioDevice> pDevices) {
+		this( pDevices, false, 0, SlowConsumerPolicy.BLOCK );
+	}
+
+	/**
+	 * creates a MultiAudioDevice in asynchronous mode
+	 *
+	 * @param pQueueCapacity
+	 *            the amount of chunks that can be queued per device
+	 * @param pSlowConsumerPolicy
+	 *            what to do if the queue of a device is full
+	 */
+	public MultiAudioDevice(
+			List<AudioDevice> pDevices,
+			int pQueueCapacity,
+			SlowConsumerPolicy pSlowConsumerPolicy) {
+		this( pDevices, true, pQueueCapacity, pSlowConsumerPolicy );
+	}
+
+	private MultiAudioDevice(
+			List<AudioDevice> pDevices,
+			boolean pAsync,
+			int pQueueCapacity,
+			SlowConsumerPolicy pSlowConsumerPolicy) {
 		if ( pDevices == null ) {
 			throw new NullPointerException( "pDevices may not be null" );
 		}
+		if ( pSlowConsumerPolicy == null ) {
+			throw new NullPointerException( "pSlowConsumerPolicy may not be null" );
+		}
+		if ( pAsync && pQueueCapacity < 1 ) {
+			throw new IllegalArgumentException( "pQueueCapacity has to be at least 1" );
+		}
 		List<AudioDevice> list = new ArrayList<>();
 		list.addAll( pDevices );
 		this.mDevices = list;
+		this.mAsync = pAsync;
+		this.mQueueCapacity = pQueueCapacity;
+		this.mSlowConsumerPolicy = pSlowConsumerPolicy;
+		this.mPause = new Pause();
+		if ( pAsync ) {
+			List<Output> outputs = new ArrayList<>();
+			for ( AudioDevice dev : list ) {
+				outputs.add( new Output( dev, pQueueCapacity ) );
+			}
+			this.mOutputs = outputs;
+			//every queue holds a suffix of the written chunks and every worker one more
+			int poolSize = pQueueCapacity + list.size() + 1;
+			this.mChunkPool = new ArrayBlockingQueue<>( poolSize );
+			for ( int i = 0; i < poolSize; ++i ) {
+				this.mChunkPool.add( new SharedChunk( this.mChunkPool ) );
+			}
+		}
 	}
 
 	@Override
 	public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
-		boolean failed = false;
+		if ( this.mAsync ) {
+			return this.writeAsync( pData, pStart, pLength );
+		}
+		AudioDeviceException exception = null;
 		int ret = 0;
 		for ( AudioDevice dev : this.mDevices ) {
 			try {
 				ret += dev.write( pData, pStart, pLength );
 			}
 			catch (Exception e) {
-				failed = true;
-				//TODO: exception with list
+				exception = addFailure( exception, "couldn't write to all of the underlying AudioDevices", dev, e );
 			}
 		}
-		if ( failed ) {
-			throw new AudioDeviceException( "couldn't write to all of the underlying AudioDevices" );
+		if ( exception != null ) {
+			throw exception;
 		}
 		return ret;
 	}
 
+	private int writeAsync(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+		if ( this.mWorkers == null ) {
+			throw new IllegalStateException( "The Device is either stopped or has never been started yet" );
+		}
+		AudioDeviceException exception = this.collectFailures( null );
+		//the workers may detach their outputs at any time, the references
+		//have to match the outputs the chunk is actually handed to
+		List<Output> attached = new ArrayList<>( this.mOutputs.size() );
+		for ( Output output : this.mOutputs ) {
+			if ( !output.mDetached ) {
+				attached.add( output );
+			}
+		}
+		if ( attached.size() > 0 ) {
+			SharedChunk chunk = this.mChunkPool.poll();
+			if ( chunk == null ) {
+				//only happens if a device has been blocking for a long time
+				chunk = new SharedChunk( this.mChunkPool );
+			}
+			chunk.set( pData, pStart, pLength, attached.size() );
+			for ( int i = 0; i < attached.size(); ++i ) {
+				Output output = attached.get( i );
+				try {
+					this.enqueue( output, chunk );
+				}
+				catch (InterruptedException e) {
+					//neither this nor the remaining outputs got the chunk
+					for ( int j = i; j < attached.size(); ++j ) {
+						chunk.release();
+					}
+					Thread.currentThread().interrupt();
+					exception = addFailure( exception, "interrupted while writing", output.mDevice, e );
+					break;
+				}
+			}
+		}
+		if ( exception != null ) {
+			throw exception;
+		}
+		return pLength;
+	}
+
+	private void enqueue(Output pOutput, SharedChunk pChunk) throws InterruptedException {
+		pOutput.mPending.incrementAndGet();
+		switch ( this.mSlowConsumerPolicy ) {
+			case BLOCK:
+				try {
+					pOutput.mQueue.put( pChunk );
+				}
+				catch (InterruptedException e) {
+					pOutput.mPending.decrementAndGet();
+					throw e;
+				}
+				break;
+			case DROP_OLDEST:
+				while ( !pOutput.mQueue.offer( pChunk ) ) {
+					SharedChunk dropped = pOutput.mQueue.poll();
+					if ( dropped != null ) {
+						dropped.release();
+						pOutput.mPending.decrementAndGet();
+					}
+				}
+				break;
+			case DETACH:
+				if ( !pOutput.mQueue.offer( pChunk ) ) {
+					pChunk.release();
+					pOutput.mPending.decrementAndGet();
+					pOutput.detach( new AudioDeviceException( pOutput.mDevice + " couldn't keep up and has been detached" ) );
+				}
+				break;
+			default:
+				throw new AssertionError( this.mSlowConsumerPolicy );
+		}
+	}
+
+	private AudioDeviceException collectFailures(AudioDeviceException pException) {
+		AudioDeviceException exception = pException;
+		for ( Output output : this.mOutputs ) {
+			Throwable failure = output.mFailure.getAndSet( null );
+			if ( failure != null ) {
+				exception = addFailure( exception, "couldn't write to all of the underlying AudioDevices", output.mDevice, failure );
+			}
+		}
+		return exception;
+	}
+
+	private static AudioDeviceException addFailure(
+			AudioDeviceException pException,
+			String pMessage,
+			AudioDevice pDevice,
+			Throwable pFailure) {
+		AudioDeviceException exception = pException;
+		if ( exception == null ) {
+			exception = new AudioDeviceException( pMessage );
+		}
+		exception.addSuppressed( new AudioDeviceException( "failure of " + pDevice, pFailure ) );
+		return exception;
+	}
+
 	@Override
 	public void flush() {
+		if ( this.mAsync ) {
+			for ( Output output : this.mOutputs ) {
+				SharedChunk chunk;
+				while ( (chunk = output.mQueue.poll()) != null ) {
+					chunk.release();
+					output.mPending.decrementAndGet();
+				}
+			}
+		}
 		for ( AudioDevice dev : this.mDevices ) {
 			dev.flush();
 		}
@@ -65,17 +278,96 @@ public class MultiAudioDevice implements AudioDevice {
 
 	@Override
 	public void open(AudioFormat pAudioFormat) throws AudioDeviceException {
-		boolean failed = false;
+		AudioDeviceException exception = null;
+		if ( this.mAsync && this.mWorkers != null ) {
+			//opened again without being closed, don't leak the old workers
+			try {
+				this.stopWorkers( null );
+			}
+			catch (AudioDeviceException e) {
+				exception = e;
+			}
+		}
 		for ( AudioDevice dev : this.mDevices ) {
 			try {
 				dev.open( pAudioFormat );
 			}
 			catch (AudioDeviceException e) {
-				failed = true;
+				exception = addFailure( exception, "couldn't open all of the underlying AudioDevices", dev, e );
+			}
+		}
+		if ( exception != null ) {
+			throw exception;
+		}
+		if ( this.mAsync ) {
+			this.startWorkers();
+		}
+	}
+
+	private void startWorkers() {
+		this.mWorkers = Executors.newFixedThreadPool( this.mOutputs.size() );
+		for ( Output output : this.mOutputs ) {
+			output.mDetached = false;
+			this.mWorkers.execute( new Worker( output ) );
+		}
+	}
+
+	/**
+	 * lets the workers write out what they have queued and stops them
+	 */
+	private void stopWorkers(AudioDeviceException pException) throws AudioDeviceException {
+		AudioDeviceException exception = pException;
+		if ( this.mWorkers != null ) {
+			this.mPause.pause( false );
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( CLOSE_TIMEOUT_SECONDS );
+			try {
+				for ( Output output : this.mOutputs ) {
+					//the queue may be full and the device stuck, so don't
+					//wait for the END marker to fit forever. a worker
+					//without it is interrupted below
+					output.mQueue.offer(
+							SharedChunk.END,
+							Math.max( 0, deadline - System.nanoTime() ),
+							TimeUnit.NANOSECONDS
+					);
+				}
+				this.mWorkers.shutdown();
+				if ( !this.mWorkers.awaitTermination(
+						Math.max( 0, deadline - System.nanoTime() ),
+						TimeUnit.NANOSECONDS
+				) ) {
+					this.mWorkers.shutdownNow();
+				}
+			}
+			catch (InterruptedException e) {
+				this.mWorkers.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			this.mWorkers = null;
+			exception = this.collectFailures( exception );
+			for ( Output output : this.mOutputs ) {
+				SharedChunk chunk;
+				while ( (chunk = output.mQueue.poll()) != null ) {
+					if ( chunk != SharedChunk.END ) {
+						chunk.release();
+					}
+				}
+				output.mPending.set( 0 );
 			}
 		}
-		if ( failed ) {
-			throw new AudioDeviceException( "couldn't open all of the underlying AudioDevices" );
+		if ( exception != null ) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * waits until every attached device has written out its queue
+	 */
+	private void awaitDrained() {
+		for ( Output output : this.mOutputs ) {
+			while ( !output.mDetached && output.mPending.get() > 0 && this.mWorkers != null ) {
+				LockSupport.parkNanos( this, 1000000L );
+			}
 		}
 	}
 
@@ -93,24 +385,50 @@ public class MultiAudioDevice implements AudioDevice {
 
 	@Override
 	public void pause(boolean pPause) {
+		if ( pPause ) {
+			this.mPause.pause( true );
+		}
 		for ( AudioDevice dev : this.mDevices ) {
 			dev.pause( pPause );
 		}
+		if ( !pPause ) {
+			this.mPause.pause( false );
+		}
 	}
 
 	@Override
 	public void close() throws AudioDeviceException {
-		boolean failed = false;
+		AudioDeviceException exception = null;
+		if ( this.mAsync ) {
+			try {
+				this.stopWorkers( null );
+			}
+			catch (AudioDeviceException e) {
+				exception = e;
+			}
+		}
 		for ( AudioDevice dev : this.mDevices ) {
 			try {
 				dev.close();
 			}
 			catch (AudioDeviceException e) {
-				failed = true;
+				exception = addFailure( exception, "couldn't close all of the underlying AudioDevices", dev, e );
 			}
 		}
-		if ( failed ) {
-			throw new AudioDeviceException( "couldn't close all of the underlying AudioDevices" );
+		if ( exception != null ) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * passes the metrics on to the underlying devices
+	 */
+	@Override
+	public void setPlaybackMetrics(PlaybackMetrics pMetrics) {
+		for ( AudioDevice dev : this.mDevices ) {
+			if ( dev instanceof MeteredAudioDevice ) {
+				((MeteredAudioDevice) dev).setPlaybackMetrics( pMetrics );
+			}
 		}
 	}
 
@@ -128,18 +446,143 @@ public class MultiAudioDevice implements AudioDevice {
 
 	@Override
 	public void reopen(AudioFormat pAudioFormat) throws AudioDeviceException {
-		boolean failed = false;
+		if ( this.mAsync ) {
+			//everything queued still belongs to the old format
+			this.awaitDrained();
+		}
+		AudioDeviceException exception = null;
 		for ( AudioDevice dev : this.mDevices ) {
 			try {
 				dev.reopen( pAudioFormat );
 			}
 			catch (AudioDeviceException e) {
-				failed = true;
+				exception = addFailure( exception, "couldn't open all of the underlying AudioDevices", dev, e );
+			}
+		}
+		if ( this.mAsync ) {
+			for ( Output output : this.mOutputs ) {
+				output.mDetached = false;
 			}
 		}
-		if ( failed ) {
-			throw new AudioDeviceException( "couldn't open all of the underlying AudioDevices" );
+		if ( exception != null ) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * @return the highest amount of chunks that are currently queued for one
+	 *         of the devices. always 0 if not in asynchronous mode
+	 */
+	public int getMaxQueuedChunks() {
+		int ret = 0;
+		if ( this.mAsync ) {
+			for ( Output output : this.mOutputs ) {
+				ret = Math.max( ret, output.mQueue.size() );
+			}
 		}
+		return ret;
+	}
+
+	/**
+	 * a copy of written data that is shared by all the queues and returns
+	 * itself to the pool once every device has written it
+	 */
+	private static final class SharedChunk {
+
+		static final SharedChunk END = new SharedChunk( null );
+
+		private final BlockingQueue<SharedChunk> mPool;
+		private final AtomicInteger mReferences;
+		byte[] mData;
+		int mLength;
+
+		SharedChunk(BlockingQueue<SharedChunk> pPool) {
+			this.mPool = pPool;
+			this.mReferences = new AtomicInteger( 0 );
+			this.mData = new byte[0];
+			this.mLength = 0;
+		}
+
+		void set(byte[] pData, int pStart, int pLength, int pReferences) {
+			if ( this.mData.length < pLength ) {
+				this.mData = new byte[pLength];
+			}
+			System.arraycopy( pData, pStart, this.mData, 0, pLength );
+			this.mLength = pLength;
+			this.mReferences.set( pReferences );
+		}
+
+		void release() {
+			if ( this.mReferences.decrementAndGet() == 0 ) {
+				this.mPool.offer( this );
+			}
+		}
+
+	}
+
+	private static final class Output {
+
+		final AudioDevice mDevice;
+		final BlockingQueue<SharedChunk> mQueue;
+		final AtomicInteger mPending;
+		final AtomicReference<Throwable> mFailure;
+		volatile boolean mDetached;
+
+		Output(AudioDevice pDevice, int pCapacity) {
+			this.mDevice = pDevice;
+			this.mQueue = new ArrayBlockingQueue<>( pCapacity );
+			this.mPending = new AtomicInteger( 0 );
+			this.mFailure = new AtomicReference<>();
+			this.mDetached = false;
+		}
+
+		void detach(Throwable pFailure) {
+			this.mDetached = true;
+			this.mFailure.compareAndSet( null, pFailure );
+		}
+
+	}
+
+	private final class Worker implements Runnable {
+
+		private final Output mOutput;
+
+		Worker(Output pOutput) {
+			this.mOutput = pOutput;
+		}
+
+		@Override
+		public void run() {
+			Output output = this.mOutput;
+			try {
+				while ( true ) {
+					SharedChunk chunk = output.mQueue.take();
+					if ( chunk == SharedChunk.END ) {
+						break;
+					}
+					try {
+						MultiAudioDevice.this.mPause.probe();
+						if ( !output.mDetached ) {
+							output.mDevice.write( chunk.mData, 0, chunk.mLength );
+						}
+					}
+					catch (AudioDeviceException | RuntimeException e) {
+						output.mFailure.compareAndSet( null, e );
+						if ( MultiAudioDevice.this.mSlowConsumerPolicy == SlowConsumerPolicy.DETACH ) {
+							output.mDetached = true;
+						}
+					}
+					finally {
+						chunk.release();
+						output.mPending.decrementAndGet();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
 	}
 
 }
@@ -21,35 +21,108 @@
 package de.hotware.hotsound.audio.data;
 
 import javax.sound.sampled.AudioFormat;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-class Recorder implements AutoCloseable {
+import de.hotware.hotsound.audio.data.RecordingAudioDevice.FsyncPolicy;
+
+/**
+ * writes a WAVE file in a single pass. The header reserves room for RF64 and
+ * is patched in place on close (and optionally every few seconds, so a crash
+ * still leaves a readable file), so closing doesn't depend on the length of
+ * the recording.
+ *
+ * In asynchronous mode the written data is copied into pooled direct buffers
+ * that are written to the file by a dedicated thread with gathering writes,
+ * so the writing thread doesn't see the latency of the storage as long as the
+ * queue doesn't run full.
+ */
+class Recorder implements AudioFileWriter {
 
 	/**
-	 * the size of the internally used buffer
-	 * while writing the file in the end 
-	 * of the writing process (in close())
+	 * the size of the internally used buffers
+	 * for batching writes to the file
 	 */
 	private static final int BUFFER_SIZE = 128000;
 
-	private BufferedOutputStream mBufferedOutputStream;
+	/**
+	 * the maximum amount of buffers written with a single gathering write
+	 */
+	private static final int MAX_GATHER = 16;
+
+	/**
+	 * queued after the last buffer to stop the writer thread
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate( 0 );
+
+	private FileChannel mChannel;
+	private ByteBuffer mBuffer;
 	private File mFile;
-	private File mTempFile;
-	private AudioFileHeader mHeader;
-	private int mBytesWritten;
+	private WaveFileHeader mHeader;
+	private long mBytesWritten;
+	private long mBytesOnDisk;
+	private long mHeaderUpdateInterval;
+	private long mHeaderUpdateIntervalBytes;
+	private long mBytesAtLastHeaderUpdate;
+	private final int mQueueCapacity;
+	private final FsyncPolicy mFsyncPolicy;
+	private BlockingQueue<ByteBuffer> mFreeBuffers;
+	private BlockingQueue<ByteBuffer> mFullBuffers;
+	private Thread mWriterThread;
+	private volatile IOException mWriterException;
+	private volatile int mHighWatermark;
 	private boolean mClosed;
 
 	public Recorder(File pFile) {
+		this( pFile, 0 );
+	}
+
+	/**
+	 * @param pHeaderUpdateInterval
+	 *            the interval in milliseconds of recorded audio after which
+	 *            the header is updated. 0 means only on close
+	 */
+	public Recorder(File pFile, long pHeaderUpdateInterval) {
+		this( pFile, pHeaderUpdateInterval, 0, FsyncPolicy.NONE );
+	}
+
+	/**
+	 * @param pQueueCapacity
+	 *            the amount of buffers that can be queued for the writer
+	 *            thread. 0 writes synchronously
+	 * @param pFsyncPolicy
+	 *            when to force the data to the storage device
+	 */
+	public Recorder(File pFile, long pHeaderUpdateInterval, int pQueueCapacity, FsyncPolicy pFsyncPolicy) {
 		if ( pFile == null ) {
 			throw new NullPointerException( "pFile may not be null" );
 		}
+		if ( pFsyncPolicy == null ) {
+			throw new NullPointerException( "pFsyncPolicy may not be null" );
+		}
+		if ( pHeaderUpdateInterval < 0 ) {
+			throw new IllegalArgumentException( "pHeaderUpdateInterval may not be negative" );
+		}
+		if ( pQueueCapacity < 0 ) {
+			throw new IllegalArgumentException( "pQueueCapacity may not be negative" );
+		}
+		if ( pFsyncPolicy == FsyncPolicy.PERIODIC && pHeaderUpdateInterval == 0 ) {
+			throw new IllegalArgumentException( "FsyncPolicy.PERIODIC needs a header update interval" );
+		}
 		this.mFile = pFile;
-		this.mTempFile = new File( pFile.getAbsolutePath() + ".tmp" );
+		this.mHeaderUpdateInterval = pHeaderUpdateInterval;
+		this.mQueueCapacity = pQueueCapacity;
+		this.mFsyncPolicy = pFsyncPolicy;
 		this.mBytesWritten = 0;
 		this.mClosed = true;
 	}
@@ -58,75 +131,250 @@ class Recorder implements AutoCloseable {
 	 *
 	 * @throws IllegalStateException if opened while not being closed;
 	 */
+	@Override
 	public void open(AudioFormat pAudioFormat) throws IOException {
 		if ( !this.mClosed ) {
 			throw new IllegalStateException( "The Recorder is already opened" );
 		}
-		createEmptyFile( this.mTempFile );
-		this.mBufferedOutputStream = new BufferedOutputStream( new FileOutputStream( this.mTempFile ) );
+		createEmptyFile( this.mFile );
+		this.mChannel = FileChannel.open( this.mFile.toPath(), StandardOpenOption.WRITE );
 		this.mHeader = new WaveFileHeader(
 				WaveFileHeader.FORMAT_PCM,
 				(short) pAudioFormat.getChannels(),
 				(int) pAudioFormat.getSampleRate(),
 				(short) pAudioFormat.getSampleSizeInBits(),
-				Integer.MAX_VALUE
+				0
 		);
-		this.mHeader.write( this.mBufferedOutputStream );
+		this.mBytesWritten = 0;
+		this.mBytesOnDisk = 0;
+		this.mBytesAtLastHeaderUpdate = 0;
+		this.mHighWatermark = 0;
+		this.mWriterException = null;
+		long bytesPerSecond = (long) (pAudioFormat.getFrameRate() * pAudioFormat.getFrameSize());
+		this.mHeaderUpdateIntervalBytes = this.mHeaderUpdateInterval * bytesPerSecond / 1000;
+		try {
+			this.writeHeader();
+			this.mChannel.position( WaveFileHeader.RESERVED_HEADER_LENGTH );
+		}
+		catch (IOException e) {
+			this.mChannel.close();
+			throw e;
+		}
+		if ( this.mQueueCapacity > 0 ) {
+			//one buffer is filled while the queue is full and the writer
+			//thread holds at most MAX_GATHER more
+			int buffers = this.mQueueCapacity + MAX_GATHER + 1;
+			this.mFreeBuffers = new ArrayBlockingQueue<>( buffers );
+			this.mFullBuffers = new ArrayBlockingQueue<>( this.mQueueCapacity );
+			for ( int i = 0; i < buffers; ++i ) {
+				this.mFreeBuffers.add( ByteBuffer.allocateDirect( BUFFER_SIZE ) );
+			}
+			this.mBuffer = this.mFreeBuffers.poll();
+			this.mWriterThread = new Thread( new Writer(), "HotSound-Recorder-" + this.mFile.getName() );
+			this.mWriterThread.setDaemon( true );
+			this.mWriterThread.start();
+		}
+		else {
+			this.mBuffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+		}
 		this.mClosed = false;
 	}
 
+	@Override
 	public int write(byte[] pData, int pStart, int pLength) throws IOException {
 		if ( this.mClosed ) {
 			throw new IllegalStateException( "The Recorder is not open" );
 		}
-		this.mBufferedOutputStream.write( pData, pStart, pLength );
+		this.checkWriter();
+		int pos = pStart;
+		int end = pStart + pLength;
+		while ( pos < end ) {
+			int count = Math.min( end - pos, this.mBuffer.remaining() );
+			this.mBuffer.put( pData, pos, count );
+			pos += count;
+			if ( !this.mBuffer.hasRemaining() ) {
+				this.submitBuffer();
+			}
+		}
 		this.mBytesWritten += pLength;
 		return pLength;
 	}
 
+	@Override
+	public long getBytesWritten() {
+		return this.mBytesWritten;
+	}
+
+	/**
+	 * @return the maximum amount of buffers that have been waiting for the
+	 *         writer thread at once since opening. If this gets close to the
+	 *         queue capacity the storage is falling behind
+	 */
+	public int getHighWatermark() {
+		return this.mHighWatermark;
+	}
+
+	@Override
 	public void close() throws IOException {
-		if ( this.mBufferedOutputStream != null ) {
-			boolean delete = false;
-			try (BufferedInputStream input = new BufferedInputStream( new FileInputStream( this.mTempFile ) )) {
-				this.mBufferedOutputStream.flush();
-				this.mBufferedOutputStream.close();
-				((WaveFileHeader) this.mHeader).read( input );
-				((WaveFileHeader) this.mHeader).setNumBytes( this.mBytesWritten );
-				createEmptyFile( this.mFile );
-				delete = true;
-				this.mBufferedOutputStream = new BufferedOutputStream( new FileOutputStream( this.mFile ) );
-				int bytesRead = 0;
-				byte[] data = new byte[BUFFER_SIZE];
-				this.mHeader.write( this.mBufferedOutputStream );
-				while ( (bytesRead = input.read( data, 0, BUFFER_SIZE )) != -1 ) {
-					this.write( data, 0, bytesRead );
+		if ( this.mChannel != null ) {
+			try {
+				if ( this.mWriterThread != null ) {
+					this.stopWriter();
 				}
-			}
-			catch (IOException e) {
-				//only delete if a new file has been written over a possible old file
-				if ( delete ) {
-					if ( !this.mTempFile.delete() ) {
-						throw new IOException( "couldn't delete failure file", e );
+				this.checkWriter();
+				this.flushBuffer();
+				if ( (this.mBytesWritten & 1) != 0 ) {
+					//chunks have to be of even length
+					this.mBuffer.clear();
+					this.mBuffer.put( (byte) 0 );
+					this.mBuffer.flip();
+					while ( this.mBuffer.hasRemaining() ) {
+						this.mChannel.write( this.mBuffer );
 					}
 				}
-				throw e;
+				this.writeHeader();
+				if ( this.mFsyncPolicy != FsyncPolicy.NONE ) {
+					this.mChannel.force( true );
+				}
 			}
 			finally {
 				this.mClosed = true;
-				// No need to flush, is included in close().
 				try {
-					this.mBufferedOutputStream.close();
-					this.mBufferedOutputStream = null;
+					this.mChannel.close();
 				}
 				finally {
-					if ( !this.mTempFile.delete() ) {
-						throw new IOException( "couldn't delete the tempfile" );
-					}
+					this.mChannel = null;
+					this.mBuffer = null;
+					this.mFreeBuffers = null;
+					this.mFullBuffers = null;
+					this.mWriterThread = null;
 				}
 			}
 		}
 	}
 
+	/**
+	 * hands the current buffer over to the writer thread or writes it
+	 * directly in synchronous mode
+	 */
+	private void submitBuffer() throws IOException {
+		if ( this.mWriterThread == null ) {
+			this.flushBuffer();
+			return;
+		}
+		this.mBuffer.flip();
+		try {
+			if ( !this.offerToWriter( this.mBuffer ) ) {
+				this.checkWriter();
+				throw new IOException( "the writer thread is gone" );
+			}
+			int queued = this.mFullBuffers.size();
+			if ( queued > this.mHighWatermark ) {
+				this.mHighWatermark = queued;
+			}
+			ByteBuffer next;
+			while ( (next = this.mFreeBuffers.poll( 100, TimeUnit.MILLISECONDS )) == null ) {
+				this.checkWriter();
+			}
+			this.mBuffer = next;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "interrupted while waiting for the writer thread" );
+		}
+	}
+
+	/**
+	 * writes the rest of the current buffer in the calling thread
+	 */
+	private void flushBuffer() throws IOException {
+		this.mBuffer.flip();
+		this.writeToChannel( new ByteBuffer[] {this.mBuffer}, 1 );
+		this.mBuffer.clear();
+	}
+
+	/**
+	 * queues the current buffer and waits for the writer thread to finish.
+	 * afterwards the current buffer is empty
+	 */
+	private void stopWriter() throws IOException {
+		this.mBuffer.flip();
+		try {
+			if ( this.offerToWriter( this.mBuffer ) ) {
+				this.offerToWriter( END );
+			}
+			this.mWriterThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.mWriterThread.interrupt();
+			throw new InterruptedIOException( "interrupted while waiting for the writer thread" );
+		}
+		//every buffer is back in the pool now, unless the writer died and
+		//close() fails in checkWriter anyway
+		this.mBuffer = this.mFreeBuffers.poll();
+	}
+
+	/**
+	 * queues the buffer for the writer thread
+	 *
+	 * @return false if the writer thread died and nobody will ever take it
+	 */
+	private boolean offerToWriter(ByteBuffer pBuffer) throws InterruptedException {
+		while ( !this.mFullBuffers.offer( pBuffer, 100, TimeUnit.MILLISECONDS ) ) {
+			if ( !this.mWriterThread.isAlive() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkWriter() throws IOException {
+		IOException e = this.mWriterException;
+		if ( e != null ) {
+			throw new IOException( "the writer thread failed", e );
+		}
+	}
+
+	/**
+	 * writes the buffers to the end of the file and updates the header if
+	 * needed. only called by one thread at a time
+	 */
+	private void writeToChannel(ByteBuffer[] pBuffers, int pCount) throws IOException {
+		long remaining = 0;
+		for ( int i = 0; i < pCount; ++i ) {
+			remaining += pBuffers[i].remaining();
+		}
+		while ( remaining > 0 ) {
+			//only what actually reached the file may end up in the header
+			long written = this.mChannel.write( pBuffers, 0, pCount );
+			remaining -= written;
+			this.mBytesOnDisk += written;
+		}
+		if ( this.mHeaderUpdateIntervalBytes > 0 &&
+				this.mBytesOnDisk - this.mBytesAtLastHeaderUpdate >= this.mHeaderUpdateIntervalBytes ) {
+			this.writeHeader();
+			if ( this.mFsyncPolicy == FsyncPolicy.PERIODIC ) {
+				this.mChannel.force( false );
+			}
+		}
+	}
+
+	/**
+	 * rewrites the header at the start of the file for the data that is on
+	 * disk without moving the position of the channel
+	 */
+	private void writeHeader() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream( WaveFileHeader.RESERVED_HEADER_LENGTH );
+		this.mHeader.writeReserved( out, this.mBytesOnDisk );
+		ByteBuffer header = ByteBuffer.wrap( out.toByteArray() );
+		long position = 0;
+		while ( header.hasRemaining() ) {
+			position += this.mChannel.write( header, position );
+		}
+		this.mBytesAtLastHeaderUpdate = this.mBytesOnDisk;
+	}
+
 	private static void createEmptyFile(File pFile) throws IOException {
 		if ( pFile.exists() ) {
 			if ( !pFile.delete() ) {
@@ -138,4 +386,51 @@ class Recorder implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * drains the queue of full buffers with gathering writes
+	 */
+	private final class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+			List<ByteBuffer> drained = new ArrayList<>( MAX_GATHER );
+			boolean end = false;
+			try {
+				while ( !end ) {
+					drained.add( Recorder.this.mFullBuffers.take() );
+					Recorder.this.mFullBuffers.drainTo( drained, MAX_GATHER - 1 );
+					int count = 0;
+					for ( ByteBuffer buffer : drained ) {
+						if ( buffer == END ) {
+							end = true;
+						}
+						else {
+							batch[count++] = buffer;
+						}
+					}
+					drained.clear();
+					if ( Recorder.this.mWriterException == null ) {
+						try {
+							Recorder.this.writeToChannel( batch, count );
+						}
+						catch (IOException e) {
+							//keep draining so the producer doesn't block forever
+							Recorder.this.mWriterException = e;
+						}
+					}
+					for ( int i = 0; i < count; ++i ) {
+						batch[i].clear();
+						Recorder.this.mFreeBuffers.offer( batch[i] );
+						batch[i] = null;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Recorder.this.mWriterException = new InterruptedIOException( "the writer thread was interrupted" );
+			}
+		}
+
+	}
+
 }
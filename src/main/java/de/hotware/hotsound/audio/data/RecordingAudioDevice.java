@@ -24,23 +24,89 @@ import javax.sound.sampled.AudioFormat;
 import java.io.File;
 import java.io.IOException;
 
+/**
+ * records everything written to it into a WAVE file. In asynchronous mode
+ * (see {@link #RecordingAudioDevice(File, long, int, FsyncPolicy)}) the disk
+ * is written by a separate thread, so storage stalls don't reach the thread
+ * that writes to this device unless the queue runs full.
+ */
 public class RecordingAudioDevice extends BaseAudioDevice {
 
+	/**
+	 * decides when the recorded data is forced to the storage device
+	 */
+	public static enum FsyncPolicy {
+		/**
+		 * leave it to the operating system
+		 */
+		NONE,
+		/**
+		 * every time the header is updated and on close
+		 */
+		PERIODIC,
+		/**
+		 * only on close
+		 */
+		ON_CLOSE,
+	}
+
 	//FIXME: overwrites if reopened.
 
-	protected Recorder mRecorder;
+	protected AudioFileWriter mRecorder;
 	protected File mFile;
+	protected long mHeaderUpdateInterval;
+	protected final int mQueueCapacity;
+	protected final FsyncPolicy mFsyncPolicy;
+	protected int mQueueHighWatermark;
 
 	public RecordingAudioDevice(File pFile) {
+		this( pFile, 0 );
+	}
+
+	/**
+	 * @param pHeaderUpdateInterval
+	 *            the interval in milliseconds of recorded audio after which
+	 *            the header of the file is updated, so a crash still leaves a
+	 *            valid file. 0 means only on close
+	 */
+	public RecordingAudioDevice(File pFile, long pHeaderUpdateInterval) {
+		this( pFile, pHeaderUpdateInterval, 0, FsyncPolicy.NONE );
+	}
+
+	/**
+	 * creates a RecordingAudioDevice in asynchronous mode if pQueueCapacity
+	 * is greater than 0
+	 *
+	 * @param pQueueCapacity
+	 *            the amount of 128 KB buffers that can wait for the disk
+	 *            before writes block
+	 * @param pFsyncPolicy
+	 *            when to force the data to disk. PERIODIC needs a header
+	 *            update interval
+	 */
+	public RecordingAudioDevice(
+			File pFile,
+			long pHeaderUpdateInterval,
+			int pQueueCapacity,
+			FsyncPolicy pFsyncPolicy) {
 		super();
+		if ( pFsyncPolicy == null ) {
+			throw new NullPointerException( "pFsyncPolicy may not be null" );
+		}
+		if ( pFsyncPolicy == FsyncPolicy.PERIODIC && pHeaderUpdateInterval <= 0 ) {
+			throw new IllegalArgumentException( "FsyncPolicy.PERIODIC needs a header update interval" );
+		}
 		this.mFile = pFile;
+		this.mHeaderUpdateInterval = pHeaderUpdateInterval;
+		this.mQueueCapacity = pQueueCapacity;
+		this.mFsyncPolicy = pFsyncPolicy;
 	}
 
 	@Override
 	public void open(AudioFormat pAudioFormat) throws AudioDeviceException {
 		super.open( pAudioFormat );
 		try {
-			this.mRecorder = new Recorder( this.mFile );
+			this.mRecorder = this.createRecorder();
 			this.mRecorder.open( pAudioFormat );
 		}
 		catch (IOException e) {
@@ -64,6 +130,37 @@ public class RecordingAudioDevice extends BaseAudioDevice {
 		return pLength;
 	}
 
+	/**
+	 * @return the maximum amount of buffers that have been waiting for the
+	 *         disk at once during the current (or last) recording, 0 in
+	 *         synchronous mode. If this gets close to the queue capacity the
+	 *         storage is falling behind
+	 */
+	public int getQueueHighWatermark() {
+		AudioFileWriter recorder = this.mRecorder;
+		if ( recorder instanceof Recorder ) {
+			return ((Recorder) recorder).getHighWatermark();
+		}
+		return this.mQueueHighWatermark;
+	}
+
+	public int getQueueCapacity() {
+		return this.mQueueCapacity;
+	}
+
+	/**
+	 * creates the writer for the file format of this device, called on every
+	 * open
+	 */
+	AudioFileWriter createRecorder() {
+		return new Recorder(
+				this.mFile,
+				this.mHeaderUpdateInterval,
+				this.mQueueCapacity,
+				this.mFsyncPolicy
+		);
+	}
+
 	@Override
 	public void flush() {
 
@@ -73,6 +170,7 @@ public class RecordingAudioDevice extends BaseAudioDevice {
 	public void close() throws AudioDeviceException {
 		super.close();
 		try {
+			this.mQueueHighWatermark = this.getQueueHighWatermark();
 			this.mRecorder.close();
 			this.mRecorder = null;
 		}
@@ -0,0 +1,476 @@
+/**
+ * File RotatingRecordingAudioDevice.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.hotware.hotsound.audio.data.RecordingAudioDevice.FsyncPolicy;
+
+/**
+ * records into a series of WAVE files (segments) for long running captures.
+ * A new segment is started after a configurable duration or size, always on a
+ * frame boundary, so no samples are lost or duplicated across the cut.
+ *
+ * The segments are written asynchronously (see {@link RecordingAudioDevice}),
+ * the next segment is opened ahead of time on one background thread and
+ * finished segments are closed on another one, so neither writing nor
+ * rotating waits for the disk. A segment
+ * is written as <code>prefix-sequence.wav.part</code> and renamed to
+ * <code>prefix-yyyyMMdd-HHmmss-sequence.wav</code> (the time it was started)
+ * once it is finished. Finished segments can be deleted after a certain age
+ * or if there are too many of them (see {@link #setRetention(long, int)}).
+ *
+ * Failures of the background work are reported by the next call to write or
+ * close.
+ */
+public class RotatingRecordingAudioDevice extends BaseAudioDevice {
+
+	/**
+	 * the header of the segment that is being written is updated this often
+	 * (in milliseconds of audio), so a crash still leaves a valid file
+	 */
+	private static final long HEADER_UPDATE_INTERVAL = 1000;
+
+	/**
+	 * the default amount of 128 KB buffers of a segment that can wait for the
+	 * disk
+	 */
+	private static final int QUEUE_CAPACITY = 8;
+
+	private static final String PART_SUFFIX = ".part";
+
+	private static final String SUFFIX = ".wav";
+
+	/**
+	 * how long close waits for the background work
+	 */
+	private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+	protected final File mDirectory;
+	protected final String mPrefix;
+	protected final long mSegmentDuration;
+	protected final long mMaxSegmentBytes;
+	protected volatile long mMaxAge;
+	protected volatile int mMaxSegments;
+	protected final int mQueueCapacity;
+	protected final FsyncPolicy mFsyncPolicy;
+	/**
+	 * finishes segments
+	 */
+	protected ExecutorService mBackground;
+	/**
+	 * opens the next segment, so it isn't queued behind finishing the
+	 * previous one
+	 */
+	protected ExecutorService mPreparing;
+	private Segment mCurrent;
+	private Future<Segment> mNext;
+	private long mSegmentBytes;
+	private int mSequence;
+	private final AtomicReference<AudioDeviceException> mFailure;
+
+	/**
+	 * @param pDirectory
+	 *            the directory the segments are written to
+	 * @param pPrefix
+	 *            prefix of the file names of the segments
+	 * @param pSegmentDuration
+	 *            maximum duration of a segment in milliseconds, 0 for no limit
+	 * @param pMaxSegmentBytes
+	 *            maximum size of the audio data of a segment in bytes, 0 for
+	 *            no limit
+	 */
+	public RotatingRecordingAudioDevice(
+			File pDirectory,
+			String pPrefix,
+			long pSegmentDuration,
+			long pMaxSegmentBytes) {
+		this( pDirectory, pPrefix, pSegmentDuration, pMaxSegmentBytes, QUEUE_CAPACITY, FsyncPolicy.NONE );
+	}
+
+	/**
+	 * @param pQueueCapacity
+	 *            the amount of 128 KB buffers of a segment that can wait for
+	 *            the disk before writes block. 0 writes synchronously
+	 * @param pFsyncPolicy
+	 *            when to force the data of a segment to disk
+	 * @see #RotatingRecordingAudioDevice(File, String, long, long)
+	 */
+	public RotatingRecordingAudioDevice(
+			File pDirectory,
+			String pPrefix,
+			long pSegmentDuration,
+			long pMaxSegmentBytes,
+			int pQueueCapacity,
+			FsyncPolicy pFsyncPolicy) {
+		super();
+		if ( pDirectory == null || pPrefix == null || pFsyncPolicy == null ) {
+			throw new NullPointerException( "pDirectory, pPrefix and pFsyncPolicy may not be null" );
+		}
+		if ( pQueueCapacity < 0 ) {
+			throw new IllegalArgumentException( "pQueueCapacity may not be negative" );
+		}
+		if ( pSegmentDuration < 0 || pMaxSegmentBytes < 0 ) {
+			throw new IllegalArgumentException( "the segment limits may not be negative" );
+		}
+		if ( pSegmentDuration == 0 && pMaxSegmentBytes == 0 ) {
+			throw new IllegalArgumentException( "either a segment duration or size has to be given" );
+		}
+		this.mDirectory = pDirectory;
+		this.mPrefix = pPrefix;
+		this.mSegmentDuration = pSegmentDuration;
+		this.mMaxSegmentBytes = pMaxSegmentBytes;
+		this.mQueueCapacity = pQueueCapacity;
+		this.mFsyncPolicy = pFsyncPolicy;
+		this.mFailure = new AtomicReference<>();
+	}
+
+	/**
+	 * sets how long finished segments are kept. Checked whenever a segment is
+	 * finished
+	 *
+	 * @param pMaxAge
+	 *            segments whose last modification is older than this (in
+	 *            milliseconds) are deleted, 0 to keep them
+	 * @param pMaxSegments
+	 *            the maximum amount of finished segments kept, 0 for no limit
+	 */
+	public void setRetention(long pMaxAge, int pMaxSegments) {
+		if ( pMaxAge < 0 || pMaxSegments < 0 ) {
+			throw new IllegalArgumentException( "the retention limits may not be negative" );
+		}
+		this.mMaxAge = pMaxAge;
+		this.mMaxSegments = pMaxSegments;
+	}
+
+	@Override
+	public void open(AudioFormat pAudioFormat) throws AudioDeviceException {
+		super.open( pAudioFormat );
+		int frameSize = pAudioFormat.getFrameSize();
+		long bytesPerSecond = (long) (pAudioFormat.getFrameRate() * frameSize);
+		long segmentBytes = Long.MAX_VALUE;
+		if ( this.mSegmentDuration > 0 ) {
+			segmentBytes = this.mSegmentDuration * bytesPerSecond / 1000;
+		}
+		if ( this.mMaxSegmentBytes > 0 ) {
+			segmentBytes = Math.min( segmentBytes, this.mMaxSegmentBytes );
+		}
+		//cut on frame boundaries only
+		segmentBytes -= segmentBytes % frameSize;
+		if ( segmentBytes <= 0 ) {
+			this.mClosed = true;
+			throw new AudioDeviceException( "a segment has to hold at least one frame" );
+		}
+		this.mSegmentBytes = segmentBytes;
+		this.mFailure.set( null );
+		this.mBackground = newExecutor( "HotSound-Segments-Finish-" );
+		this.mPreparing = newExecutor( "HotSound-Segments-Open-" );
+		try {
+			this.mCurrent = this.openSegment();
+			this.mCurrent.start();
+		}
+		catch (IOException e) {
+			this.mBackground.shutdown();
+			this.mPreparing.shutdown();
+			this.mBackground = null;
+			this.mPreparing = null;
+			this.mClosed = true;
+			throw new AudioDeviceException( "couldn't open the first segment", e );
+		}
+		this.prepareNext();
+	}
+
+	private static ExecutorService newExecutor(final String pName) {
+		return Executors.newSingleThreadExecutor( new ThreadFactory() {
+
+			private final AtomicInteger mCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable pRunnable) {
+				Thread thread = new Thread( pRunnable, pName + this.mCount.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			}
+
+		} );
+	}
+
+	/**
+	 * opens the next segment in the background
+	 */
+	private void prepareNext() {
+		this.mNext = this.mPreparing.submit( new Callable<Segment>() {
+
+			@Override
+			public Segment call() throws Exception {
+				return RotatingRecordingAudioDevice.this.openSegment();
+			}
+
+		} );
+	}
+
+	@Override
+	public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+		super.write( pData, pStart, pLength );
+		this.checkFailure();
+		int pos = pStart;
+		int end = pStart + pLength;
+		try {
+			while ( pos < end ) {
+				long room = this.mSegmentBytes - this.mCurrent.mRecorder.getBytesWritten();
+				int count = (int) Math.min( end - pos, room );
+				this.mCurrent.mRecorder.write( pData, pos, count );
+				pos += count;
+				if ( count == room ) {
+					this.rotate();
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new AudioDeviceException( "couldn't write to the segment", e );
+		}
+		return pLength;
+	}
+
+	/**
+	 * switches to the prepared segment and finishes the current one in the
+	 * background
+	 */
+	private void rotate() throws AudioDeviceException {
+		Segment next;
+		try {
+			//normally done long ago, finishing the previous segment doesn't delay it
+			next = this.mNext.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AudioDeviceException( "interrupted while waiting for the next segment", e );
+		}
+		catch (ExecutionException e) {
+			throw new AudioDeviceException( "couldn't open the next segment", e.getCause() );
+		}
+		final Segment finished = this.mCurrent;
+		next.start();
+		this.mCurrent = next;
+		this.mBackground.execute( new Runnable() {
+
+			@Override
+			public void run() {
+				RotatingRecordingAudioDevice.this.finish( finished );
+			}
+
+		} );
+		this.prepareNext();
+	}
+
+	@Override
+	public void flush() {
+
+	}
+
+	@Override
+	public void close() throws AudioDeviceException {
+		super.close();
+		if ( this.mBackground == null ) {
+			return;
+		}
+		final Segment last = this.mCurrent;
+		final Future<Segment> next = this.mNext;
+		this.mCurrent = null;
+		this.mNext = null;
+		this.mBackground.execute( new Runnable() {
+
+			@Override
+			public void run() {
+				RotatingRecordingAudioDevice.this.finish( last );
+				try {
+					next.get().discard();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				catch (ExecutionException | IOException e) {
+					RotatingRecordingAudioDevice.this.addFailure( "couldn't discard the prepared segment", e );
+				}
+			}
+
+		} );
+		this.mBackground.shutdown();
+		this.mPreparing.shutdown();
+		try {
+			if ( !this.mBackground.awaitTermination( CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+				this.addFailure( "timed out while finishing the segments", null );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.addFailure( "interrupted while finishing the segments", e );
+		}
+		finally {
+			this.mBackground = null;
+			this.mPreparing = null;
+		}
+		this.checkFailure();
+	}
+
+	/**
+	 * @return the finished segments, oldest first
+	 */
+	public File[] getSegments() {
+		File[] files = this.mDirectory.listFiles( new FilenameFilter() {
+
+			@Override
+			public boolean accept(File pDir, String pName) {
+				return pName.startsWith( RotatingRecordingAudioDevice.this.mPrefix + "-" ) &&
+						pName.endsWith( SUFFIX );
+			}
+
+		} );
+		if ( files == null ) {
+			return new File[0];
+		}
+		//the names end with the zero padded sequence number, but that
+		//restarts after reopening
+		Arrays.sort( files, new Comparator<File>() {
+
+			@Override
+			public int compare(File pFirst, File pSecond) {
+				int ret = Long.compare( pFirst.lastModified(), pSecond.lastModified() );
+				return ret != 0 ? ret : pFirst.getName().compareTo( pSecond.getName() );
+			}
+
+		} );
+		return files;
+	}
+
+	/**
+	 * called by the preparing thread
+	 */
+	private Segment openSegment() throws IOException {
+		int sequence;
+		synchronized ( this ) {
+			sequence = ++this.mSequence;
+		}
+		File file = new File( this.mDirectory, String.format( "%s-%06d%s%s", this.mPrefix, sequence, SUFFIX, PART_SUFFIX ) );
+		Recorder recorder = new Recorder( file, HEADER_UPDATE_INTERVAL, this.mQueueCapacity, this.mFsyncPolicy );
+		recorder.open( this.mAudioFormat );
+		return new Segment( file, sequence, recorder );
+	}
+
+	/**
+	 * closes and renames the segment and applies the retention policy. called
+	 * by the finishing thread
+	 */
+	private void finish(Segment pSegment) {
+		try {
+			pSegment.mRecorder.close();
+			String name = String.format(
+					"%s-%s-%06d%s",
+					this.mPrefix,
+					new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( new Date( pSegment.mStartTime ) ),
+					pSegment.mSequence,
+					SUFFIX
+			);
+			File target = new File( this.mDirectory, name );
+			if ( target.exists() && !target.delete() || !pSegment.mFile.renameTo( target ) ) {
+				throw new IOException( "couldn't rename " + pSegment.mFile + " to " + target );
+			}
+		}
+		catch (IOException e) {
+			this.addFailure( "couldn't finish the segment " + pSegment.mFile, e );
+		}
+		this.applyRetention();
+	}
+
+	private void applyRetention() {
+		long maxAge = this.mMaxAge;
+		int maxSegments = this.mMaxSegments;
+		if ( maxAge == 0 && maxSegments == 0 ) {
+			return;
+		}
+		File[] segments = this.getSegments();
+		long now = System.currentTimeMillis();
+		for ( int i = 0; i < segments.length; ++i ) {
+			boolean tooOld = maxAge > 0 && now - segments[i].lastModified() > maxAge;
+			boolean tooMany = maxSegments > 0 && segments.length - i > maxSegments;
+			if ( (tooOld || tooMany) && !segments[i].delete() ) {
+				this.addFailure( "couldn't delete the old segment " + segments[i], null );
+			}
+		}
+	}
+
+	private void addFailure(String pMessage, Throwable pCause) {
+		AudioDeviceException failure = new AudioDeviceException( pMessage, pCause );
+		if ( !this.mFailure.compareAndSet( null, failure ) ) {
+			this.mFailure.get().addSuppressed( failure );
+		}
+	}
+
+	private void checkFailure() throws AudioDeviceException {
+		AudioDeviceException failure = this.mFailure.getAndSet( null );
+		if ( failure != null ) {
+			throw failure;
+		}
+	}
+
+	private static final class Segment {
+
+		final File mFile;
+		final int mSequence;
+		final Recorder mRecorder;
+		long mStartTime;
+
+		Segment(File pFile, int pSequence, Recorder pRecorder) {
+			this.mFile = pFile;
+			this.mSequence = pSequence;
+			this.mRecorder = pRecorder;
+		}
+
+		void start() {
+			this.mStartTime = System.currentTimeMillis();
+		}
+
+		void discard() throws IOException {
+			this.mRecorder.close();
+			if ( !this.mFile.delete() ) {
+				throw new IOException( "couldn't delete " + this.mFile );
+			}
+		}
+
+	}
+
+}
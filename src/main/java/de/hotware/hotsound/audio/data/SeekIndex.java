@@ -0,0 +1,485 @@
+/**
+ * File SeekIndex.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sparse table of checkpoints (decoded frame, byte offset in the encoded
+ * source) at which a decoder can be restarted. Seeking jumps to the nearest
+ * checkpoint before the target and only decodes the remainder, so the cost of
+ * a seek doesn't grow with the position.
+ *
+ * Checkpoints are gathered by walking the frame headers of MPEG audio
+ * (MP1/MP2/MP3) files, which doesn't need any decoding. Indices of local files
+ * are cached by path, size and modification time. Other formats get an empty
+ * index. As that still reads the whole file, players build the index in the
+ * background with {@link #forSourceAsync(URL)} while they play.
+ *
+ * @author Martin Braun
+ */
+public final class SeekIndex {
+
+	/**
+	 * index without checkpoints for sources that can't be indexed
+	 */
+	public static final SeekIndex EMPTY = new SeekIndex( new long[0], new long[0], 0, 0 );
+
+	/**
+	 * a checkpoint is taken every this many encoded frames (about a second
+	 * for 44.1 kHz MP3)
+	 */
+	private static final int CHECKPOINT_INTERVAL = 38;
+
+	/**
+	 * how far into the file we look for the first frame header
+	 */
+	private static final int MAX_SYNC_SEARCH = 4 * 1024;
+
+	/**
+	 * layer III frames may borrow bits from the frames before them (bit
+	 * reservoir), so this many frames are decoded and thrown away before the
+	 * target
+	 */
+	private static final int PREROLL_FRAMES = 2;
+
+	private static final int MAX_CACHED_INDICES = 128;
+
+	private static final int[][] BITRATES_V1 = {
+			{0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+			{0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+	};
+
+	private static final int[][] BITRATES_V2 = {
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+			{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+			{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+	};
+
+	private static final int[] SAMPLE_RATES_V1 = {44100, 48000, 32000};
+
+	/**
+	 * the indices of local files, including the ones that are being built
+	 */
+	private static final Map<String, CompletableFuture<SeekIndex>> CACHE = new LinkedHashMap<String, CompletableFuture<SeekIndex>>(
+			16,
+			0.75f,
+			true
+	) {
+
+		private static final long serialVersionUID = -2867398164232335447L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<SeekIndex>> pEldest) {
+			return this.size() > MAX_CACHED_INDICES;
+		}
+
+	};
+
+	/**
+	 * builds the indices requested by {@link #forSourceAsync(URL)} one after
+	 * another, so indexing doesn't compete with the decoders for the disk
+	 */
+	private static final ThreadPoolExecutor INDEXER = new ThreadPoolExecutor(
+			1,
+			1,
+			60,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable pRunnable) {
+					Thread thread = new Thread( pRunnable, "hotsound-seek-index" );
+					thread.setDaemon( true );
+					return thread;
+				}
+
+			}
+	);
+
+	static {
+		INDEXER.allowCoreThreadTimeOut( true );
+	}
+
+	private final long[] mFrames;
+	private final long[] mOffsets;
+	private final int mSize;
+	private final long mPreroll;
+
+	private SeekIndex(long[] pFrames, long[] pOffsets, int pSize, long pPreroll) {
+		this.mFrames = pFrames;
+		this.mOffsets = pOffsets;
+		this.mSize = pSize;
+		this.mPreroll = pPreroll;
+	}
+
+	/**
+	 * builds the index on the calling thread if it isn't cached or being
+	 * built already
+	 *
+	 * @return the (possibly cached) index for the given source or
+	 *         {@link #EMPTY} if it can't be indexed
+	 */
+	public static SeekIndex forSource(URL pURL) throws IOException {
+		File file = toFile( pURL );
+		if ( file == null ) {
+			//we can't tell whether remote sources have changed
+			return EMPTY;
+		}
+		String key = key( file );
+		CompletableFuture<SeekIndex> index = new CompletableFuture<>();
+		CompletableFuture<SeekIndex> cached = putIfAbsent( key, index );
+		if ( cached == null ) {
+			build( pURL, key, index );
+		}
+		else {
+			index = cached;
+		}
+		try {
+			return index.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "interrupted while waiting for the index" );
+		}
+		catch (ExecutionException e) {
+			throw new IOException( "couldn't index " + pURL, e.getCause() );
+		}
+	}
+
+	/**
+	 * builds the index in the background if it isn't cached or being built
+	 * already
+	 *
+	 * @return the future (possibly cached) index for the given source, which
+	 *         is {@link #EMPTY} if it can't be indexed. it fails if the source
+	 *         can't be read
+	 */
+	public static CompletableFuture<SeekIndex> forSourceAsync(final URL pURL) {
+		File file = toFile( pURL );
+		if ( file == null ) {
+			return CompletableFuture.completedFuture( EMPTY );
+		}
+		final String key = key( file );
+		final CompletableFuture<SeekIndex> index = new CompletableFuture<>();
+		CompletableFuture<SeekIndex> cached = putIfAbsent( key, index );
+		if ( cached != null ) {
+			return cached;
+		}
+		INDEXER.execute(
+				new Runnable() {
+
+					@Override
+					public void run() {
+						build( pURL, key, index );
+					}
+
+				}
+		);
+		return index;
+	}
+
+	private static CompletableFuture<SeekIndex> putIfAbsent(String pKey, CompletableFuture<SeekIndex> pIndex) {
+		synchronized ( CACHE ) {
+			CompletableFuture<SeekIndex> ret = CACHE.get( pKey );
+			if ( ret == null ) {
+				CACHE.put( pKey, pIndex );
+			}
+			return ret;
+		}
+	}
+
+	private static void build(URL pURL, String pKey, CompletableFuture<SeekIndex> pIndex) {
+		try (InputStream in = pURL.openStream()) {
+			pIndex.complete( scan( in ) );
+		}
+		catch (IOException | RuntimeException e) {
+			//try again next time
+			synchronized ( CACHE ) {
+				CACHE.remove( pKey, pIndex );
+			}
+			pIndex.completeExceptionally( e );
+		}
+	}
+
+	private static String key(File pFile) {
+		return pFile.getAbsolutePath() + "|" + pFile.length() + "|" + pFile.lastModified();
+	}
+
+	/**
+	 * builds the index by walking the frame headers of the given stream
+	 *
+	 * @return the index or {@link #EMPTY} if the stream is no MPEG audio
+	 */
+	public static SeekIndex scan(InputStream pInputStream) throws IOException {
+		InputStream in = new BufferedInputStream( pInputStream );
+		byte[] header = new byte[10];
+		long offset = 0;
+		if ( !readFully( in, header, 4 ) || isContainer( header ) ) {
+			return EMPTY;
+		}
+		if ( header[0] == 'I' && header[1] == 'D' && header[2] == '3' ) {
+			//skip the ID3v2 tag
+			if ( !readFully( in, header, 6 ) ) {
+				return EMPTY;
+			}
+			long tagSize = ((header[2] & 0x7F) << 21) | ((header[3] & 0x7F) << 14) |
+					((header[4] & 0x7F) << 7) | (header[5] & 0x7F);
+			if ( (header[1] & 0x10) != 0 ) {
+				tagSize += 10;
+			}
+			skipFully( in, tagSize );
+			offset = 10 + tagSize;
+			if ( !readFully( in, header, 4 ) ) {
+				return EMPTY;
+			}
+		}
+		//find the first frame header
+		int searched = 0;
+		while ( frameLength( header ) <= 0 ) {
+			if ( ++searched > MAX_SYNC_SEARCH ) {
+				return EMPTY;
+			}
+			int next = in.read();
+			if ( next == -1 ) {
+				return EMPTY;
+			}
+			header[0] = header[1];
+			header[1] = header[2];
+			header[2] = header[3];
+			header[3] = (byte) next;
+			++offset;
+		}
+		long[] frames = new long[64];
+		long[] offsets = new long[64];
+		int size = 0;
+		long frame = 0;
+		long count = 0;
+		long preroll = PREROLL_FRAMES * samplesPerFrame( header );
+		boolean endOfStream = false;
+		int length;
+		while ( (length = frameLength( header )) > 0 ) {
+			if ( count % CHECKPOINT_INTERVAL == 0 ) {
+				if ( size == frames.length ) {
+					frames = Arrays.copyOf( frames, size * 2 );
+					offsets = Arrays.copyOf( offsets, size * 2 );
+				}
+				frames[size] = frame;
+				offsets[size] = offset;
+				++size;
+			}
+			frame += samplesPerFrame( header );
+			++count;
+			offset += length;
+			try {
+				skipFully( in, length - 4 );
+			}
+			catch (EOFException e) {
+				endOfStream = true;
+				break;
+			}
+			if ( !readFully( in, header, 4 ) ) {
+				endOfStream = true;
+				break;
+			}
+		}
+		if ( !endOfStream && count < CHECKPOINT_INTERVAL && !isTrailer( header ) ) {
+			//a few matching headers followed by garbage are most likely
+			//just noise in some other format
+			return EMPTY;
+		}
+		return new SeekIndex( frames, offsets, size, preroll );
+	}
+
+	/**
+	 * @return the position of the last checkpoint a decoder can be restarted
+	 *         at to get to pFrame or -1 if there is none
+	 */
+	public int floor(long pFrame) {
+		long frame = pFrame - this.mPreroll;
+		if ( frame < 0 ) {
+			return -1;
+		}
+		int pos = Arrays.binarySearch( this.mFrames, 0, this.mSize, frame );
+		if ( pos >= 0 ) {
+			return pos;
+		}
+		return -pos - 2;
+	}
+
+	/**
+	 * @return the decoded frame of the checkpoint at pPosition
+	 */
+	public long getFrame(int pPosition) {
+		return this.mFrames[pPosition];
+	}
+
+	/**
+	 * @return the byte offset in the source of the checkpoint at pPosition
+	 */
+	public long getOffset(int pPosition) {
+		return this.mOffsets[pPosition];
+	}
+
+	public int size() {
+		return this.mSize;
+	}
+
+	public boolean isEmpty() {
+		return this.mSize == 0;
+	}
+
+	/**
+	 * @return the length of the MPEG audio frame starting with the given
+	 *         header in bytes or -1 if it's no valid header
+	 */
+	static int frameLength(byte[] pHeader) {
+		int b1 = pHeader[1] & 0xFF;
+		int b2 = pHeader[2] & 0xFF;
+		if ( (pHeader[0] & 0xFF) != 0xFF || (b1 & 0xE0) != 0xE0 ) {
+			return -1;
+		}
+		int version = (b1 >> 3) & 0x03;
+		int layer = (b1 >> 1) & 0x03;
+		int bitrateIndex = (b2 >> 4) & 0x0F;
+		int sampleRateIndex = (b2 >> 2) & 0x03;
+		int padding = (b2 >> 1) & 0x01;
+		if ( version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3 ) {
+			return -1;
+		}
+		//layer bits: 3 = I, 2 = II, 1 = III
+		int layerIndex = 3 - layer;
+		int sampleRate = SAMPLE_RATES_V1[sampleRateIndex];
+		int bitrate;
+		if ( version == 3 ) {
+			bitrate = BITRATES_V1[layerIndex][bitrateIndex] * 1000;
+		}
+		else {
+			bitrate = BITRATES_V2[layerIndex][bitrateIndex] * 1000;
+			sampleRate /= version == 2 ? 2 : 4;
+		}
+		if ( layerIndex == 0 ) {
+			return (12 * bitrate / sampleRate + padding) * 4;
+		}
+		if ( layerIndex == 2 && version != 3 ) {
+			return 72 * bitrate / sampleRate + padding;
+		}
+		return 144 * bitrate / sampleRate + padding;
+	}
+
+	/**
+	 * @return the amount of decoded frames in the MPEG audio frame with the
+	 *         given (valid) header
+	 */
+	static int samplesPerFrame(byte[] pHeader) {
+		int version = (pHeader[1] >> 3) & 0x03;
+		int layer = (pHeader[1] >> 1) & 0x03;
+		if ( layer == 3 ) {
+			return 384;
+		}
+		if ( layer == 1 && version != 3 ) {
+			return 576;
+		}
+		return 1152;
+	}
+
+	private static boolean isContainer(byte[] pHeader) {
+		return startsWith( pHeader, "RIFF" ) || startsWith( pHeader, "FORM" ) ||
+				startsWith( pHeader, ".snd" ) || startsWith( pHeader, "OggS" ) ||
+				startsWith( pHeader, "fLaC" );
+	}
+
+	private static boolean isTrailer(byte[] pHeader) {
+		return startsWith( pHeader, "TAG" ) || startsWith( pHeader, "APE" ) ||
+				startsWith( pHeader, "LYR" );
+	}
+
+	private static boolean startsWith(byte[] pHeader, String pMagic) {
+		for ( int i = 0; i < pMagic.length(); ++i ) {
+			if ( pHeader[i] != pMagic.charAt( i ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static File toFile(URL pURL) {
+		if ( pURL == null || !"file".equalsIgnoreCase( pURL.getProtocol() ) ) {
+			return null;
+		}
+		try {
+			return new File( pURL.toURI() );
+		}
+		catch (URISyntaxException | IllegalArgumentException e) {
+			return new File( pURL.getPath() );
+		}
+	}
+
+	static void skipFully(InputStream pInputStream, long pBytes) throws IOException {
+		long remaining = pBytes;
+		while ( remaining > 0 ) {
+			long skipped = pInputStream.skip( remaining );
+			if ( skipped <= 0 ) {
+				if ( pInputStream.read() == -1 ) {
+					throw new EOFException( "couldn't skip " + pBytes + " bytes" );
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	private static boolean readFully(InputStream pInputStream, byte[] pBuffer, int pLength) throws IOException {
+		int total = 0;
+		while ( total < pLength ) {
+			int read = pInputStream.read( pBuffer, total, pLength - total );
+			if ( read == -1 ) {
+				return false;
+			}
+			total += read;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "SeekIndex with " + this.mSize + " checkpoints";
+	}
+
+}
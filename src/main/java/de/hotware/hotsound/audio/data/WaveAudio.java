@@ -25,6 +25,7 @@ import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 
 import de.hotware.hotsound.audio.util.AudioUtil;
 
@@ -43,11 +44,18 @@ public class WaveAudio extends BasicPlaybackAudio {
 		super( pInputStream, pFrameLength );
 	}
 
+	public WaveAudio(InputStream pInputStream, int pFrameLength, URL pSource) {
+		super( pInputStream, pFrameLength, pSource );
+	}
+
 	@Override
 	protected AudioInputStream getAudioInputStream() throws UnsupportedAudioFileException,
 			IOException {
-		return AudioUtil
-				.getPCMSignedAudioInputStreamFromAudioInputStream( this.mInputStream );
+		return AudioUtil.getSupportedAudioInputStreamFromAudioInputStream(
+				AudioSystem.getAudioInputStream( this.mInputStream ),
+				true,
+				this.mMixer
+		);
 	}
 
 }
\ No newline at end of file
@@ -46,10 +46,29 @@ public class WaveFileHeader implements AudioFileHeader {
 
 	private static final int HEADER_LENGTH = 44;
 
+	/**
+	 * length of the header written by {@link #writeReserved(OutputStream, long)}
+	 */
+	public static final int RESERVED_HEADER_LENGTH = 80;
+
+	/**
+	 * size of the JUNK chunk that is turned into a ds64 chunk for RF64
+	 */
+	private static final int DS64_LENGTH = 28;
+
+	/**
+	 * data larger than this doesn't fit into a RIFF header anymore
+	 */
+	static final long MAX_RIFF_DATA_LENGTH = 0xFFFFFFFFL - (RESERVED_HEADER_LENGTH - 8);
+
 	/**
 	 * Indicates PCM format.
 	 */
 	public static final short FORMAT_PCM = 1;
+	/**
+	 * Indicates IEEE float format.
+	 */
+	public static final short FORMAT_IEEE_FLOAT = 3;
 	/**
 	 * Indicates ALAW format.
 	 */
@@ -58,12 +77,18 @@ public class WaveFileHeader implements AudioFileHeader {
 	 * Indicates ULAW format.
 	 */
 	public static final short FORMAT_ULAW = 7;
+	/**
+	 * Indicates WAVE_FORMAT_EXTENSIBLE. {@link #read(InputStream)} replaces it
+	 * with the format of the sub format GUID.
+	 */
+	public static final short FORMAT_EXTENSIBLE = (short) 0xFFFE;
 
 	private short mFormat;
 	private short mNumChannels;
 	private int mSampleRate;
 	private short mBitsPerSample;
 	private int mNumBytes;
+	private long mDataLength = -1;
 
 	/**
 	 * Construct a WaveHeader, with all fields defaulting to zero.
@@ -198,44 +223,118 @@ public class WaveFileHeader implements AudioFileHeader {
 	}
 
 	/**
-	 * Read and initialize a WaveHeader.
+	 * Get the size of audio data after this header as unsigned value, in bytes.
+	 *
+	 * @return size of audio data after this header, in bytes.
+	 */
+	public long getDataLength() {
+		if ( mDataLength >= 0 ) {
+			return mDataLength;
+		}
+		return mNumBytes & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Read and initialize a WaveHeader. Chunks other than fmt, ds64 and data
+	 * are skipped, so after this returns the stream is positioned at the start
+	 * of the audio data. RF64 files are supported, their data length is
+	 * available via {@link #getDataLength()}.
 	 *
 	 * @param in {@link java.io.InputStream} to read from.
 	 *
-	 * @return number of bytes consumed.
+	 * @return number of bytes consumed, i.e. the offset of the audio data.
 	 *
 	 * @throws IOException
 	 */
 	public int read(InputStream in) throws IOException {
 		/* RIFF header */
-		readId( in, "RIFF" );
+		String riff = readChunkId( in );
+		if ( !riff.equals( "RIFF" ) && !riff.equals( "RF64" ) ) {
+			throw new IOException( "RIFF tag not present" );
+		}
 		@SuppressWarnings("unused")
 		int numBytes = readInt( in ) - 36;
 		readId( in, "WAVE" );
-
-        /* fmt chunk */
-		readId( in, "fmt " );
-		if ( 16 != readInt( in ) ) {
-			throw new IOException( "fmt chunk length not 16" );
-		}
-		mFormat = readShort( in );
-		mNumChannels = readShort( in );
-		mSampleRate = readInt( in );
-		int byteRate = readInt( in );
-		short blockAlign = readShort( in );
-		mBitsPerSample = readShort( in );
-		if ( byteRate != mNumChannels * mSampleRate * mBitsPerSample / 8 ) {
-			throw new IOException( "fmt.ByteRate field inconsistent" );
-		}
-		if ( blockAlign != mNumChannels * mBitsPerSample / 8 ) {
-			throw new IOException( "fmt.BlockAlign field inconsistent" );
+		mDataLength = -1;
+		int consumed = 12;
+		boolean fmt = false;
+		while ( true ) {
+			String id = readChunkId( in );
+			int length = readInt( in );
+			consumed += 8;
+			if ( id.equals( "data" ) ) {
+				if ( !fmt ) {
+					throw new IOException( "data chunk before fmt chunk" );
+				}
+				/* data chunk */
+				mNumBytes = length;
+				if ( length != -1 ) {
+					mDataLength = -1;
+				}
+				return consumed;
+			}
+			long chunkLength = (length & 0xFFFFFFFFL) + (length & 1);
+			if ( id.equals( "ds64" ) && length >= 16 ) {
+				/* riff size, data size */
+				skip( in, 8 );
+				mDataLength = (readInt( in ) & 0xFFFFFFFFL) | ((long) readInt( in ) << 32);
+				chunkLength -= 16;
+			}
+			else if ( id.equals( "fmt " ) ) {
+				if ( length < 16 ) {
+					throw new IOException( "fmt chunk length less than 16" );
+				}
+				/* fmt chunk */
+				mFormat = readShort( in );
+				mNumChannels = readShort( in );
+				mSampleRate = readInt( in );
+				int byteRate = readInt( in );
+				short blockAlign = readShort( in );
+				mBitsPerSample = readShort( in );
+				if ( byteRate != mNumChannels * mSampleRate * mBitsPerSample / 8 ) {
+					throw new IOException( "fmt.ByteRate field inconsistent" );
+				}
+				if ( blockAlign != mNumChannels * mBitsPerSample / 8 ) {
+					throw new IOException( "fmt.BlockAlign field inconsistent" );
+				}
+				chunkLength -= 16;
+				if ( mFormat == FORMAT_EXTENSIBLE && length >= 40 ) {
+					/* cbSize, validBitsPerSample, channelMask, sub format GUID */
+					skip( in, 8 );
+					mFormat = readShort( in );
+					chunkLength -= 10;
+				}
+				fmt = true;
+			}
+			skip( in, chunkLength );
+			consumed += (length & 0xFFFFFFFFL) + (length & 1);
 		}
+	}
 
-        /* data chunk */
-		readId( in, "data" );
-		mNumBytes = readInt( in );
+	private static String readChunkId(InputStream in) throws IOException {
+		char[] id = new char[4];
+		for ( int i = 0; i < id.length; i++ ) {
+			int read = in.read();
+			if ( read == -1 ) {
+				throw new IOException( "data tag not present" );
+			}
+			id[i] = (char) read;
+		}
+		return new String( id );
+	}
 
-		return HEADER_LENGTH;
+	private static void skip(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while ( remaining > 0 ) {
+			long skipped = in.skip( remaining );
+			if ( skipped <= 0 ) {
+				if ( in.read() == -1 ) {
+					throw new IOException( "unexpected end of stream" );
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
 	}
 
 	private static void readId(InputStream in, String id) throws IOException {
@@ -287,6 +386,68 @@ public class WaveFileHeader implements AudioFileHeader {
 		return HEADER_LENGTH;
 	}
 
+	/**
+	 * Write a WAVE file header that can be rewritten in place once the size of
+	 * the data changes. A JUNK chunk reserves room for the ds64 chunk, so the
+	 * header becomes a RF64 header of the same length as soon as pNumBytes
+	 * doesn't fit into 32 bits anymore.
+	 *
+	 * @param out {@link java.io.OutputStream} to receive the header.
+	 * @param numBytes size of audio data after this header, in bytes.
+	 *
+	 * @return number of bytes written, always {@link #RESERVED_HEADER_LENGTH}.
+	 *
+	 * @throws IOException
+	 */
+	public int writeReserved(OutputStream out, long numBytes) throws IOException {
+		long riffLength = RESERVED_HEADER_LENGTH - 8 + numBytes + (numBytes & 1);
+		boolean rf64 = numBytes > MAX_RIFF_DATA_LENGTH;
+		if ( rf64 ) {
+			writeId( out, "RF64" );
+			writeInt( out, -1 );
+			writeId( out, "WAVE" );
+			writeId( out, "ds64" );
+			writeInt( out, DS64_LENGTH );
+			writeLong( out, riffLength );
+			writeLong( out, numBytes );
+			int blockAlign = mNumChannels * mBitsPerSample / 8;
+			writeLong( out, blockAlign > 0 ? numBytes / blockAlign : 0 );
+			/* table length */
+			writeInt( out, 0 );
+		}
+		else {
+			writeId( out, "RIFF" );
+			writeInt( out, (int) riffLength );
+			writeId( out, "WAVE" );
+			writeId( out, "JUNK" );
+			writeInt( out, DS64_LENGTH );
+			for ( int i = 0; i < DS64_LENGTH; ++i ) {
+				out.write( 0 );
+			}
+		}
+
+        /* fmt chunk */
+		writeId( out, "fmt " );
+		writeInt( out, 16 );
+		writeShort( out, mFormat );
+		writeShort( out, mNumChannels );
+		writeInt( out, mSampleRate );
+		writeInt( out, mNumChannels * mSampleRate * mBitsPerSample / 8 );
+		writeShort( out, (short) (mNumChannels * mBitsPerSample / 8) );
+		writeShort( out, mBitsPerSample );
+
+        /* data chunk */
+		writeId( out, "data" );
+		writeInt( out, rf64 ? -1 : (int) numBytes );
+
+		return RESERVED_HEADER_LENGTH;
+	}
+
+	private static void writeLong(OutputStream out, long val) throws IOException {
+		writeInt( out, (int) val );
+		writeInt( out, (int) (val >> 32) );
+	}
+
 	private static void writeId(OutputStream out, String id) throws IOException {
 		for ( int i = 0; i < id.length(); i++ ) {
 			out.write( id.charAt( i ) );
@@ -0,0 +1,88 @@
+/**
+ * File AsyncMusicPlayer.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.concurrent.CompletableFuture;
+
+import de.hotware.hotsound.audio.data.AudioDevice;
+
+/**
+ * Asynchronous counterpart of {@link MusicPlayer}. The operations are
+ * executed one after another on the player's own Executor, so the calling
+ * thread never blocks. The returned futures are completed by the playback
+ * itself as soon as the operation has taken effect and fail with the
+ * exception the synchronous method would have thrown.
+ *
+ * @author Martin Braun
+ */
+public interface AsyncMusicPlayer {
+
+	/**
+	 * inserts a Song to the Player after the current playback has ended and
+	 * uses the given AudioDevice to play it
+	 *
+	 * @return a future that is completed once the Audio has been opened
+	 */
+	public CompletableFuture<Void> insertAsync(Song pSong, AudioDevice pAudioDevice);
+
+	/**
+	 * starts the playback
+	 *
+	 * @return a future that is completed once the first chunk has been
+	 *         written to the AudioDevice or the playback ended without writing
+	 *         anything
+	 */
+	public CompletableFuture<Void> startAsync();
+
+	/**
+	 * pauses/unpauses the playback
+	 *
+	 * @return a future that is completed once the AudioDevice has been
+	 *         paused/unpaused
+	 */
+	public CompletableFuture<Void> pauseAsync(boolean pPause);
+
+	/**
+	 * seeks to the given position. restarts the playback if it has already
+	 * ended
+	 *
+	 * @return a future that is completed once the Audio is read from the new
+	 *         position
+	 */
+	public CompletableFuture<Void> seekAsync(long pFrame);
+
+	/**
+	 * stops the playback
+	 *
+	 * @return a future that is completed once the playback has ended and the
+	 *         AudioDevice has been closed
+	 */
+	public CompletableFuture<Void> stopAsync();
+
+	/**
+	 * stops the playback and closes the resources the Player has opened
+	 * itself
+	 *
+	 * @return a future that is completed once everything is closed
+	 */
+	public CompletableFuture<Void> closeAsync();
+
+}
@@ -0,0 +1,58 @@
+/**
+ * File AudioProcessor.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Effect that is applied to the audio between reading it from the Audio and
+ * writing it to the AudioDevice (see {@link AudioProcessorChain}). All the
+ * methods are called from the thread that writes to the AudioDevice, so they
+ * should neither block nor allocate.
+ *
+ * @author Martin Braun
+ */
+public interface AudioProcessor {
+
+	/**
+	 * called before the first block and whenever the AudioFormat of the
+	 * blocks changes
+	 *
+	 * @param pAudioFormat
+	 *            the PCM_FLOAT AudioFormat of the samples that are passed to
+	 *            {@link #process(float[], int)}
+	 */
+	public void prepare(AudioFormat pAudioFormat);
+
+	/**
+	 * processes a block of interleaved samples in the range [-1, 1) in place
+	 *
+	 * @param pSamples
+	 *            the samples, only the first pFrames frames are valid
+	 */
+	public void process(float[] pSamples, int pFrames);
+
+	/**
+	 * @return the delay in frames this processor adds to the audio
+	 */
+	public int getLatency();
+
+}
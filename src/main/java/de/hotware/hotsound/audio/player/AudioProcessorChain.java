@@ -0,0 +1,266 @@
+/**
+ * File AudioProcessorChain.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.hotware.hotsound.audio.util.PCMCodec;
+
+/**
+ * Chain of {@link AudioProcessor}s that a {@link StreamMusicPlayer} applies
+ * to every chunk before it is written to the AudioDevice. The chunk is decoded
+ * to float samples once, processed in place by every stage and encoded back
+ * into the same byte buffer. If no stage is active the chunk is not touched
+ * at all.
+ *
+ * Stages may be added, removed and bypassed from any thread while the player
+ * is playing. The stages are kept in a copy-on-write array, so the playback
+ * thread never takes a lock and sees a change with the next chunk.
+ *
+ * @author Martin Braun
+ */
+public final class AudioProcessorChain {
+
+	private static final Stage[] EMPTY = new Stage[0];
+
+	private final AtomicReference<Stage[]> mStages;
+	/**
+	 * the following fields are only touched by the playback thread
+	 */
+	private PCMCodec mCodec;
+	private AudioFormat mFloatFormat;
+	private float[] mSamples;
+
+	public AudioProcessorChain() {
+		this.mStages = new AtomicReference<>( EMPTY );
+		this.mSamples = new float[0];
+	}
+
+	/**
+	 * appends the AudioProcessor to the end of the chain
+	 *
+	 * @return the Stage that controls the AudioProcessor in this chain
+	 */
+	public Stage add(AudioProcessor pAudioProcessor) {
+		if ( pAudioProcessor == null ) {
+			throw new NullPointerException( "pAudioProcessor may not be null" );
+		}
+		Stage stage = new Stage( pAudioProcessor );
+		while ( true ) {
+			Stage[] stages = this.mStages.get();
+			Stage[] newStages = Arrays.copyOf( stages, stages.length + 1 );
+			newStages[stages.length] = stage;
+			if ( this.mStages.compareAndSet( stages, newStages ) ) {
+				return stage;
+			}
+		}
+	}
+
+	/**
+	 * removes the first Stage of the given AudioProcessor
+	 *
+	 * @return true if the AudioProcessor was part of the chain
+	 */
+	public boolean remove(AudioProcessor pAudioProcessor) {
+		while ( true ) {
+			Stage[] stages = this.mStages.get();
+			int index = -1;
+			for ( int i = 0; i < stages.length; ++i ) {
+				if ( stages[i].mAudioProcessor == pAudioProcessor ) {
+					index = i;
+					break;
+				}
+			}
+			if ( index == -1 ) {
+				return false;
+			}
+			Stage[] newStages = stages.length == 1 ? EMPTY : new Stage[stages.length - 1];
+			System.arraycopy( stages, 0, newStages, 0, index );
+			System.arraycopy( stages, index + 1, newStages, index, stages.length - index - 1 );
+			if ( this.mStages.compareAndSet( stages, newStages ) ) {
+				return true;
+			}
+		}
+	}
+
+	public void clear() {
+		this.mStages.set( EMPTY );
+	}
+
+	/**
+	 * @return the Stages in the order they are applied
+	 */
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList( new ArrayList<>( Arrays.asList( this.mStages.get() ) ) );
+	}
+
+	/**
+	 * @return the sum of the latencies of all the Stages that aren't
+	 *         bypassed in frames
+	 */
+	public int getLatency() {
+		int latency = 0;
+		for ( Stage stage : this.mStages.get() ) {
+			if ( !stage.mBypassed ) {
+				latency += stage.mAudioProcessor.getLatency();
+			}
+		}
+		return latency;
+	}
+
+	/**
+	 * applies all the active Stages to the chunk. Chunks in an AudioFormat
+	 * that can't be decoded by a {@link PCMCodec} are left untouched. Only
+	 * called from the playback thread
+	 */
+	void process(byte[] pData, int pLength, AudioFormat pAudioFormat) {
+		Stage[] stages = this.mStages.get();
+		int first = 0;
+		while ( first < stages.length && stages[first].mBypassed ) {
+			++first;
+		}
+		if ( first == stages.length || pLength <= 0 ) {
+			return;
+		}
+		PCMCodec codec = this.getCodec( pAudioFormat );
+		if ( codec == null ) {
+			return;
+		}
+		int frames = pLength / codec.getFrameSize();
+		int samples = frames * codec.getChannels();
+		if ( this.mSamples.length < samples ) {
+			this.mSamples = new float[samples];
+		}
+		float[] buffer = this.mSamples;
+		codec.decode( pData, 0, buffer, 0, frames );
+		for ( int i = first; i < stages.length; ++i ) {
+			Stage stage = stages[i];
+			if ( !stage.mBypassed ) {
+				stage.process( buffer, frames, this.mFloatFormat );
+			}
+		}
+		codec.encode( buffer, 0, pData, 0, frames );
+	}
+
+	private PCMCodec getCodec(AudioFormat pAudioFormat) {
+		PCMCodec codec = this.mCodec;
+		if ( codec == null || (codec.getAudioFormat() != pAudioFormat && !(codec.getAudioFormat().matches( pAudioFormat ) &&
+				pAudioFormat.matches( codec.getAudioFormat() ))) ) {
+			if ( !PCMCodec.isSupported( pAudioFormat ) ) {
+				return null;
+			}
+			this.mCodec = codec = new PCMCodec( pAudioFormat );
+			this.mFloatFormat = PCMCodec.getFloatFormat( pAudioFormat );
+		}
+		return codec;
+	}
+
+	/**
+	 * an AudioProcessor in the chain together with its state and the time it
+	 * took to process the blocks. The times are measured on the playback
+	 * thread around each call, so they include any time the thread wasn't
+	 * scheduled
+	 */
+	public static final class Stage {
+
+		private final AudioProcessor mAudioProcessor;
+		private volatile boolean mBypassed;
+		/**
+		 * the format the processor has been prepared for. only touched by
+		 * the playback thread
+		 */
+		private AudioFormat mPreparedFormat;
+		private volatile long mLastNanos;
+		private volatile long mTotalNanos;
+		private volatile long mBlocks;
+
+		Stage(AudioProcessor pAudioProcessor) {
+			this.mAudioProcessor = pAudioProcessor;
+			this.mBypassed = false;
+		}
+
+		void process(float[] pSamples, int pFrames, AudioFormat pFloatFormat) {
+			if ( this.mPreparedFormat != pFloatFormat ) {
+				this.mAudioProcessor.prepare( pFloatFormat );
+				this.mPreparedFormat = pFloatFormat;
+			}
+			long start = System.nanoTime();
+			this.mAudioProcessor.process( pSamples, pFrames );
+			long nanos = System.nanoTime() - start;
+			this.mLastNanos = nanos;
+			//only written by the playback thread
+			this.mTotalNanos += nanos;
+			++this.mBlocks;
+		}
+
+		public AudioProcessor getAudioProcessor() {
+			return this.mAudioProcessor;
+		}
+
+		/**
+		 * a bypassed Stage is skipped without any cost. Takes effect with
+		 * the next chunk
+		 */
+		public void setBypassed(boolean pBypassed) {
+			this.mBypassed = pBypassed;
+		}
+
+		public boolean isBypassed() {
+			return this.mBypassed;
+		}
+
+		/**
+		 * @return the latency of the AudioProcessor in frames
+		 */
+		public int getLatency() {
+			return this.mAudioProcessor.getLatency();
+		}
+
+		/**
+		 * @return the time in nanoseconds the last block took
+		 */
+		public long getLastProcessingNanos() {
+			return this.mLastNanos;
+		}
+
+		/**
+		 * @return the average time in nanoseconds per block
+		 */
+		public long getAverageProcessingNanos() {
+			long blocks = this.mBlocks;
+			return blocks == 0 ? 0 : this.mTotalNanos / blocks;
+		}
+
+		/**
+		 * @return the amount of blocks that have been processed
+		 */
+		public long getBlockCount() {
+			return this.mBlocks;
+		}
+
+	}
+
+}
@@ -0,0 +1,269 @@
+/**
+ * File AudioRingBuffer.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated chunk
+ * buffers. The decoding thread claims free slots, fills them and publishes
+ * them, the writing thread consumes them in the same order. Nothing is
+ * allocated after construction.
+ *
+ * Only one thread may act as producer and only one as consumer at a time.
+ *
+ * @author Martin Braun
+ */
+final class AudioRingBuffer {
+
+	/**
+	 * length that is published to mark the end of the stream
+	 */
+	public static final int END_OF_STREAM = -1;
+
+	/**
+	 * returned by {@link #acquireWrite()} if the producer has been woken up
+	 * with {@link #wakeProducer()} before a slot became free
+	 */
+	public static final int WOKEN_UP = -2;
+
+	/**
+	 * how often a waiting side yields before it starts parking
+	 */
+	private static final int SPIN_TRIES = 32;
+
+	/**
+	 * upper bound for a single park. the other side unparks us earlier in
+	 * almost all cases, this only covers the case of a missed wakeup
+	 */
+	private static final long PARK_NANOS = 1000000L;
+
+	private final byte[][] mBuffers;
+	private final int[] mLengths;
+	private final int[] mGenerations;
+	private final long[] mPositions;
+	/**
+	 * index of the next slot to be consumed
+	 */
+	private final AtomicLong mHead;
+	/**
+	 * index of the next slot to be produced
+	 */
+	private final AtomicLong mTail;
+	private volatile Thread mWaitingProducer;
+	private volatile Thread mWaitingConsumer;
+	private volatile boolean mClosed;
+	private volatile boolean mProducerWakeup;
+
+	/**
+	 * @param pDepth
+	 *            the amount of chunks that can be buffered
+	 * @param pBufferSize
+	 *            the size of every chunk in bytes
+	 */
+	public AudioRingBuffer(int pDepth, int pBufferSize) {
+		if ( pDepth < 1 ) {
+			throw new IllegalArgumentException( "pDepth has to be at least 1" );
+		}
+		this.mBuffers = new byte[pDepth][pBufferSize];
+		this.mLengths = new int[pDepth];
+		this.mGenerations = new int[pDepth];
+		this.mPositions = new long[pDepth];
+		this.mHead = new AtomicLong( 0 );
+		this.mTail = new AtomicLong( 0 );
+		this.mClosed = false;
+		this.mProducerWakeup = false;
+	}
+
+	/**
+	 * waits until a slot is free for writing
+	 *
+	 * @return the index of the slot to fill, -1 if the ring has been closed or
+	 *         {@link #WOKEN_UP}
+	 */
+	public int acquireWrite() {
+		long tail = this.mTail.get();
+		int tries = 0;
+		while ( tail - this.mHead.get() >= this.mBuffers.length ) {
+			if ( this.mClosed ) {
+				return -1;
+			}
+			if ( this.mProducerWakeup ) {
+				this.mProducerWakeup = false;
+				return WOKEN_UP;
+			}
+			if ( tries++ < SPIN_TRIES ) {
+				Thread.yield();
+			}
+			else {
+				this.mWaitingProducer = Thread.currentThread();
+				if ( tail - this.mHead.get() >= this.mBuffers.length && !this.mClosed &&
+						!this.mProducerWakeup ) {
+					LockSupport.parkNanos( this, PARK_NANOS );
+				}
+				this.mWaitingProducer = null;
+			}
+		}
+		if ( this.mClosed ) {
+			return -1;
+		}
+		return (int) (tail % this.mBuffers.length);
+	}
+
+	/**
+	 * publishes the slot acquired by {@link #acquireWrite()}
+	 *
+	 * @param pLength
+	 *            the amount of valid bytes in the slot or
+	 *            {@link #END_OF_STREAM}
+	 * @param pGeneration
+	 *            the generation the data belongs to
+	 * @param pPosition
+	 *            the frame position of the data in its Audio
+	 */
+	public void publish(int pSlot, int pLength, int pGeneration, long pPosition) {
+		this.mLengths[pSlot] = pLength;
+		this.mGenerations[pSlot] = pGeneration;
+		this.mPositions[pSlot] = pPosition;
+		this.mTail.lazySet( this.mTail.get() + 1 );
+		Thread consumer = this.mWaitingConsumer;
+		if ( consumer != null ) {
+			LockSupport.unpark( consumer );
+		}
+	}
+
+	/**
+	 * waits until a published slot is available for reading
+	 *
+	 * @return the index of the slot to consume or -1 if the ring has been
+	 *         closed
+	 */
+	public int acquireRead() {
+		long head = this.mHead.get();
+		int tries = 0;
+		while ( head >= this.mTail.get() ) {
+			if ( this.mClosed ) {
+				return -1;
+			}
+			if ( tries++ < SPIN_TRIES ) {
+				Thread.yield();
+			}
+			else {
+				this.mWaitingConsumer = Thread.currentThread();
+				if ( head >= this.mTail.get() && !this.mClosed ) {
+					LockSupport.parkNanos( this, PARK_NANOS );
+				}
+				this.mWaitingConsumer = null;
+			}
+		}
+		if ( this.mClosed ) {
+			return -1;
+		}
+		return (int) (head % this.mBuffers.length);
+	}
+
+	/**
+	 * hands the slot acquired by {@link #acquireRead()} back to the producer
+	 */
+	public void release() {
+		this.mHead.lazySet( this.mHead.get() + 1 );
+		Thread producer = this.mWaitingProducer;
+		if ( producer != null ) {
+			LockSupport.unpark( producer );
+		}
+	}
+
+	public byte[] getBuffer(int pSlot) {
+		return this.mBuffers[pSlot];
+	}
+
+	public int getLength(int pSlot) {
+		return this.mLengths[pSlot];
+	}
+
+	public int getGeneration(int pSlot) {
+		return this.mGenerations[pSlot];
+	}
+
+	public long getPosition(int pSlot) {
+		return this.mPositions[pSlot];
+	}
+
+	public int getBufferSize() {
+		return this.mBuffers[0].length;
+	}
+
+	public int getDepth() {
+		return this.mBuffers.length;
+	}
+
+	/**
+	 * @return the amount of published but not yet consumed slots
+	 */
+	public int size() {
+		return (int) (this.mTail.get() - this.mHead.get());
+	}
+
+	/**
+	 * makes a producer that is waiting for a free slot return
+	 * {@link #WOKEN_UP} so it can do other work. If the producer is not
+	 * waiting, the next acquireWrite that would have to wait returns it
+	 */
+	public void wakeProducer() {
+		this.mProducerWakeup = true;
+		Thread producer = this.mWaitingProducer;
+		if ( producer != null ) {
+			LockSupport.unpark( producer );
+		}
+	}
+
+	/**
+	 * wakes up both sides and makes every further acquire fail
+	 */
+	public void close() {
+		this.mClosed = true;
+		Thread producer = this.mWaitingProducer;
+		if ( producer != null ) {
+			LockSupport.unpark( producer );
+		}
+		Thread consumer = this.mWaitingConsumer;
+		if ( consumer != null ) {
+			LockSupport.unpark( consumer );
+		}
+	}
+
+	public boolean isClosed() {
+		return this.mClosed;
+	}
+
+	/**
+	 * empties and reopens the ring. may only be called while neither the
+	 * producer nor the consumer are using it
+	 */
+	public void reset() {
+		this.mHead.set( 0 );
+		this.mTail.set( 0 );
+		this.mClosed = false;
+		this.mProducerWakeup = false;
+	}
+
+}
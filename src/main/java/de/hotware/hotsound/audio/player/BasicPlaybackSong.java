@@ -35,6 +35,7 @@ import java.net.URLConnection;
 
 import de.hotware.hotsound.audio.data.Audio;
 import de.hotware.hotsound.audio.data.BasicPlaybackAudio;
+import de.hotware.hotsound.audio.data.DecodedAudioCache;
 
 /**
  * Base implementation of a song. instantiable because it already knows enough
@@ -45,8 +46,13 @@ import de.hotware.hotsound.audio.data.BasicPlaybackAudio;
 public class BasicPlaybackSong implements Song {
 
 	protected URL mURL;
+	/**
+	 * the url the audio is actually read from, resolved by {@link #getAudio()}
+	 */
+	protected URL mPlaybackURL;
 	protected long mFrameLength;
 	protected AudioFormat mAudioFormat;
+	protected DecodedAudioCache mDecodedAudioCache;
 
 	public BasicPlaybackSong(URL pURL) {
 		this.mURL = pURL;
@@ -66,28 +72,48 @@ public class BasicPlaybackSong implements Song {
 	@Override
 	public final Audio getAudio() throws MusicPlayerException {
 		try {
+			URL url = this.getPlaybackURL();
+			this.mPlaybackURL = url;
+			if ( this.mDecodedAudioCache != null ) {
+				//a hit doesn't touch the source at all, not even for probing
+				Audio cached = this.mDecodedAudioCache.get( url );
+				if ( cached != null ) {
+					if ( this.mAudioFormat == null ) {
+						this.mAudioFormat = cached.getAudioFormat();
+					}
+					return cached;
+				}
+			}
+			Object event = PlaybackEvents.beginSongProbe();
 			AudioFileFormat audioFileFormat;
-			if ( this.getPlaybackURL().getProtocol() != null &&
-					this.getPlaybackURL().getProtocol().toLowerCase()
+			if ( url.getProtocol() != null &&
+					url.getProtocol().toLowerCase()
 							.equals( "file" ) ) {
 				try {
 					audioFileFormat = AudioSystem
-							.getAudioFileFormat( new File( this.mURL.toURI() ) );
+							.getAudioFileFormat( new File( url.toURI() ) );
 				}
 				catch (URISyntaxException e) {
 					audioFileFormat = AudioSystem
-							.getAudioFileFormat( new File( this.mURL.getPath() ) );
+							.getAudioFileFormat( new File( url.getPath() ) );
 				}
 			}
 			else {
-				audioFileFormat = AudioSystem.getAudioFileFormat( this.mURL );
+				audioFileFormat = AudioSystem.getAudioFileFormat( url );
 			}
 			this.mAudioFormat = audioFileFormat.getFormat();
-			URLConnection uc = this.mURL.openConnection();
-			return this.getAudio(
+			PlaybackEvents.commitSongProbe( event, this, this.mAudioFormat );
+			URLConnection uc = url.openConnection();
+			Audio audio = this.getAudio(
 					uc.getInputStream(),
 					audioFileFormat.getFrameLength()
 			);
+			if ( this.mDecodedAudioCache != null ) {
+				//filled while playing, so the first playback doesn't wait for
+				//the whole song to be decoded
+				return this.mDecodedAudioCache.tee( url, audio );
+			}
+			return audio;
 		}
 		catch (IOException | UnsupportedAudioFileException e) {
 			throw new MusicPlayerException(
@@ -114,7 +140,19 @@ public class BasicPlaybackSong implements Song {
 	 * @return an audio instance according to this implementation
 	 */
 	protected Audio getAudio(InputStream pInputstream, int pFrameLength) {
-		return new BasicPlaybackAudio( pInputstream, pFrameLength );
+		return new BasicPlaybackAudio( pInputstream, pFrameLength, this.mPlaybackURL );
+	}
+
+	/**
+	 * sets the cache the decoded data of this song is kept in, so replaying it
+	 * doesn't decode it again. null disables caching
+	 */
+	public void setDecodedAudioCache(DecodedAudioCache pDecodedAudioCache) {
+		this.mDecodedAudioCache = pDecodedAudioCache;
+	}
+
+	public DecodedAudioCache getDecodedAudioCache() {
+		return this.mDecodedAudioCache;
 	}
 
 	@Override
@@ -0,0 +1,325 @@
+/**
+ * File FlightRecorderEvents.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * the JDK Flight Recorder events of HotSound. Only used through
+ * {@link PlaybackEvents}, so nothing here is loaded if the JFR API isn't
+ * available.
+ *
+ * Every begin method returns null if its event type is disabled, so a
+ * disabled event costs a check of a static flag and nothing is measured.
+ *
+ * @author Martin Braun
+ */
+final class FlightRecorderEvents {
+
+	static final String PREFIX = "de.hotware.hotsound.";
+
+	private static final SongProbeEvent SONG_PROBE = new SongProbeEvent();
+	private static final SongOpenEvent SONG_OPEN = new SongOpenEvent();
+	private static final FirstByteEvent FIRST_BYTE = new FirstByteEvent();
+	private static final DecodeChunkEvent DECODE_CHUNK = new DecodeChunkEvent();
+	private static final DeviceWriteEvent DEVICE_WRITE = new DeviceWriteEvent();
+	private static final SeekEvent SEEK = new SeekEvent();
+	private static final ListenerDispatchEvent LISTENER_DISPATCH = new ListenerDispatchEvent();
+
+	private FlightRecorderEvents() {
+	}
+
+	static Object beginSongProbe() {
+		if ( !SONG_PROBE.isEnabled() ) {
+			return null;
+		}
+		SongProbeEvent event = new SongProbeEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitSongProbe(Object pEvent, Object pSong, Object pFormat) {
+		SongProbeEvent event = (SongProbeEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mSong = String.valueOf( pSong );
+			event.mFormat = String.valueOf( pFormat );
+			event.commit();
+		}
+	}
+
+	static Object beginSongOpen() {
+		if ( !SONG_OPEN.isEnabled() ) {
+			return null;
+		}
+		SongOpenEvent event = new SongOpenEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitSongOpen(Object pEvent, Object pSong, Object pFormat) {
+		SongOpenEvent event = (SongOpenEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mSong = String.valueOf( pSong );
+			event.mFormat = String.valueOf( pFormat );
+			event.commit();
+		}
+	}
+
+	static Object beginFirstByte() {
+		if ( !FIRST_BYTE.isEnabled() ) {
+			return null;
+		}
+		FirstByteEvent event = new FirstByteEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitFirstByte(Object pEvent, Object pAudio, int pBytes) {
+		FirstByteEvent event = (FirstByteEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mAudio = String.valueOf( pAudio );
+			event.mBytes = pBytes;
+			event.commit();
+		}
+	}
+
+	static Object beginDecodeChunk() {
+		if ( !DECODE_CHUNK.isEnabled() ) {
+			return null;
+		}
+		DecodeChunkEvent event = new DecodeChunkEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitDecodeChunk(Object pEvent, Object pAudio, int pBytes) {
+		DecodeChunkEvent event = (DecodeChunkEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mAudio = String.valueOf( pAudio );
+			event.mBytes = pBytes;
+			event.commit();
+		}
+	}
+
+	static Object beginDeviceWrite() {
+		if ( !DEVICE_WRITE.isEnabled() ) {
+			return null;
+		}
+		DeviceWriteEvent event = new DeviceWriteEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitDeviceWrite(Object pEvent, Object pDevice, int pBytes) {
+		DeviceWriteEvent event = (DeviceWriteEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mDevice = String.valueOf( pDevice );
+			event.mBytes = pBytes;
+			event.commit();
+		}
+	}
+
+	static Object beginSeek() {
+		if ( !SEEK.isEnabled() ) {
+			return null;
+		}
+		SeekEvent event = new SeekEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitSeek(Object pEvent, Object pAudio, boolean pRelative, long pFrames) {
+		SeekEvent event = (SeekEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mAudio = String.valueOf( pAudio );
+			event.mRelative = pRelative;
+			event.mFrames = pFrames;
+			event.commit();
+		}
+	}
+
+	static Object beginListenerDispatch() {
+		if ( !LISTENER_DISPATCH.isEnabled() ) {
+			return null;
+		}
+		ListenerDispatchEvent event = new ListenerDispatchEvent();
+		event.begin();
+		event.mSubmitted = System.nanoTime();
+		return event;
+	}
+
+	static void listenerDispatched(Object pEvent) {
+		ListenerDispatchEvent event = (ListenerDispatchEvent) pEvent;
+		event.mQueueTime = System.nanoTime() - event.mSubmitted;
+	}
+
+	static void commitListenerDispatch(Object pEvent, String pCallback) {
+		ListenerDispatchEvent event = (ListenerDispatchEvent) pEvent;
+		event.end();
+		if ( event.shouldCommit() ) {
+			event.mCallback = pCallback;
+			event.commit();
+		}
+	}
+
+	@Name(PREFIX + "SongProbe")
+	@Label("Song Probe")
+	@Category({"HotSound", "Song"})
+	@Description("Probing of the file format of a Song")
+	static final class SongProbeEvent extends Event {
+
+		@Name("song")
+		@Label("Song")
+		String mSong;
+
+		@Name("format")
+		@Label("Format")
+		String mFormat;
+
+	}
+
+	@Name(PREFIX + "SongOpen")
+	@Label("Song Open")
+	@Category({"HotSound", "Song"})
+	@Description("Opening of the Audio of an inserted Song")
+	static final class SongOpenEvent extends Event {
+
+		@Name("song")
+		@Label("Song")
+		String mSong;
+
+		@Name("format")
+		@Label("Format")
+		String mFormat;
+
+	}
+
+	@Name(PREFIX + "FirstByte")
+	@Label("First Byte")
+	@Category({"HotSound", "Song"})
+	@Description("Time from the start of the playback until the first chunk has been written to the AudioDevice")
+	static final class FirstByteEvent extends Event {
+
+		@Name("audio")
+		@Label("Audio")
+		String mAudio;
+
+		@Name("bytes")
+		@Label("Bytes")
+		@DataAmount
+		int mBytes;
+
+	}
+
+	@Name(PREFIX + "DecodeChunk")
+	@Label("Decode Chunk")
+	@Category({"HotSound", "Playback"})
+	@Description("Decoding of a chunk that took longer than the threshold")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class DecodeChunkEvent extends Event {
+
+		@Name("audio")
+		@Label("Audio")
+		String mAudio;
+
+		@Name("bytes")
+		@Label("Bytes")
+		@DataAmount
+		int mBytes;
+
+	}
+
+	@Name(PREFIX + "DeviceWrite")
+	@Label("AudioDevice Write")
+	@Category({"HotSound", "Playback"})
+	@Description("Write to an AudioDevice that blocked longer than the threshold")
+	@Threshold("20 ms")
+	@StackTrace(false)
+	static final class DeviceWriteEvent extends Event {
+
+		@Name("device")
+		@Label("AudioDevice")
+		String mDevice;
+
+		@Name("bytes")
+		@Label("Bytes")
+		@DataAmount
+		int mBytes;
+
+	}
+
+	@Name(PREFIX + "Seek")
+	@Label("Seek")
+	@Category({"HotSound", "Playback"})
+	@Description("Seek or skip in the current Audio")
+	static final class SeekEvent extends Event {
+
+		@Name("audio")
+		@Label("Audio")
+		String mAudio;
+
+		@Name("relative")
+		@Label("Relative")
+		@Description("true for skips, false for seeks")
+		boolean mRelative;
+
+		@Name("frames")
+		@Label("Frames")
+		long mFrames;
+
+	}
+
+	@Name(PREFIX + "ListenerDispatch")
+	@Label("Listener Dispatch")
+	@Category({"HotSound", "Playback"})
+	@Description("Dispatch of a MusicListener callback by the signalling executor")
+	static final class ListenerDispatchEvent extends Event {
+
+		@Name("callback")
+		@Label("Callback")
+		String mCallback;
+
+		@Name("queueTime")
+		@Label("Queue Time")
+		@Description("Time until the signalling executor ran the callback")
+		@Timespan
+		long mQueueTime;
+
+		transient long mSubmitted;
+
+	}
+
+}
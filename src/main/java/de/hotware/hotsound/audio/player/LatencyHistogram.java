@@ -0,0 +1,156 @@
+/**
+ * File LatencyHistogram.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock-free histogram of durations in nanoseconds. Every power of two is
+ * split into 8 buckets, so percentiles are accurate to 12.5%. Recording
+ * doesn't allocate and may be done from several threads at once.
+ *
+ * @author Martin Braun
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray mBuckets;
+	private final AtomicLong mCount;
+	private final AtomicLong mSum;
+	private final AtomicLong mMax;
+
+	public LatencyHistogram() {
+		this.mBuckets = new AtomicLongArray( BUCKETS );
+		this.mCount = new AtomicLong();
+		this.mSum = new AtomicLong();
+		this.mMax = new AtomicLong();
+	}
+
+	public void record(long pNanos) {
+		long value = Math.max( 0, pNanos );
+		this.mBuckets.incrementAndGet( bucket( value ) );
+		this.mCount.incrementAndGet();
+		this.mSum.addAndGet( value );
+		long max;
+		while ( value > (max = this.mMax.get()) && !this.mMax.compareAndSet( max, value ) ) {
+			//retry
+		}
+	}
+
+	public long getCount() {
+		return this.mCount.get();
+	}
+
+	/**
+	 * @return the mean in nanoseconds or 0 if nothing has been recorded
+	 */
+	public long getMean() {
+		long count = this.mCount.get();
+		return count > 0 ? this.mSum.get() / count : 0;
+	}
+
+	public long getMax() {
+		return this.mMax.get();
+	}
+
+	/**
+	 * @param pPercentile
+	 *            between 0 and 100
+	 * @return the upper bound of the bucket the given percentile falls into
+	 *         in nanoseconds, 0 if nothing has been recorded
+	 */
+	public long getPercentile(double pPercentile) {
+		if ( pPercentile < 0 || pPercentile > 100 ) {
+			throw new IllegalArgumentException( "pPercentile has to be between 0 and 100" );
+		}
+		long count = 0;
+		for ( int i = 0; i < BUCKETS; ++i ) {
+			count += this.mBuckets.get( i );
+		}
+		if ( count == 0 ) {
+			return 0;
+		}
+		long rank = Math.max( 1, (long) Math.ceil( count * pPercentile / 100 ) );
+		long seen = 0;
+		for ( int i = 0; i < BUCKETS; ++i ) {
+			seen += this.mBuckets.get( i );
+			if ( seen >= rank ) {
+				return Math.min( upperBound( i ), this.mMax.get() );
+			}
+		}
+		return this.mMax.get();
+	}
+
+	/**
+	 * @return a copy of the counts of all buckets. bucket i contains the
+	 *         values from {@link #lowerBound(int)} to
+	 *         {@link #upperBound(int)}
+	 */
+	public long[] getBuckets() {
+		long[] buckets = new long[BUCKETS];
+		for ( int i = 0; i < BUCKETS; ++i ) {
+			buckets[i] = this.mBuckets.get( i );
+		}
+		return buckets;
+	}
+
+	public void reset() {
+		for ( int i = 0; i < BUCKETS; ++i ) {
+			this.mBuckets.set( i, 0 );
+		}
+		this.mCount.set( 0 );
+		this.mSum.set( 0 );
+		this.mMax.set( 0 );
+	}
+
+	static int bucket(long pValue) {
+		if ( pValue < SUB_BUCKETS ) {
+			return (int) pValue;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros( pValue );
+		int sub = (int) (pValue >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	public static long lowerBound(int pBucket) {
+		if ( pBucket < SUB_BUCKETS ) {
+			return pBucket;
+		}
+		int exponent = pBucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = pBucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	public static long upperBound(int pBucket) {
+		if ( pBucket < SUB_BUCKETS ) {
+			return pBucket;
+		}
+		int exponent = pBucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return lowerBound( pBucket ) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * File LatencyProfile.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Describes how much audio is read per chunk and how big the buffer of the
+ * underlying line should be. Smaller values make pausing, seeking and stopping
+ * more responsive, bigger values are more robust against scheduling hiccups.
+ *
+ * @author Martin Braun
+ */
+public final class LatencyProfile {
+
+	/**
+	 * for interactive use. small chunks and a small line buffer
+	 */
+	public static final LatencyProfile LOW_LATENCY = new LatencyProfile( 5, 20 );
+
+	/**
+	 * reasonable default for music playback
+	 */
+	public static final LatencyProfile BALANCED = new LatencyProfile( 25, 100 );
+
+	/**
+	 * for background playback where responsiveness doesn't matter
+	 */
+	public static final LatencyProfile THROUGHPUT = new LatencyProfile( 250, 1000 );
+
+	private final int mChunkMillis;
+	private final int mBufferMillis;
+
+	private LatencyProfile(int pChunkMillis, int pBufferMillis) {
+		this.mChunkMillis = pChunkMillis;
+		this.mBufferMillis = pBufferMillis;
+	}
+
+	/**
+	 * creates a profile that targets the given output latency. the line buffer
+	 * gets the whole target, a chunk a quarter of it
+	 *
+	 * @throws IllegalArgumentException
+	 *             if pTargetMillis is smaller than 1
+	 */
+	public static LatencyProfile ofMillis(int pTargetMillis) {
+		if ( pTargetMillis < 1 ) {
+			throw new IllegalArgumentException( "pTargetMillis has to be at least 1" );
+		}
+		return new LatencyProfile( Math.max( 1, pTargetMillis / 4 ), pTargetMillis );
+	}
+
+	public int getChunkMillis() {
+		return this.mChunkMillis;
+	}
+
+	public int getBufferMillis() {
+		return this.mBufferMillis;
+	}
+
+	/**
+	 * @return the size of one read chunk in bytes for the given format
+	 */
+	public int getChunkSize(AudioFormat pAudioFormat) {
+		return toBytes( pAudioFormat, this.mChunkMillis );
+	}
+
+	/**
+	 * @return the buffer size hint in bytes for the line playing the given
+	 *         format
+	 */
+	public int getBufferSize(AudioFormat pAudioFormat) {
+		return toBytes( pAudioFormat, this.mBufferMillis );
+	}
+
+	private static int toBytes(AudioFormat pAudioFormat, int pMillis) {
+		int frameSize = Math.max( 1, pAudioFormat.getFrameSize() );
+		long frames = (long) Math.ceil( pAudioFormat.getFrameRate() * pMillis / 1000d );
+		return (int) Math.max( frameSize, frames * frameSize );
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		return builder.append( "[" ).append( this.getClass().getSimpleName() )
+				.append( ": chunk " ).append( this.mChunkMillis ).append( "ms, buffer " )
+				.append( this.mBufferMillis ).append( "ms]" ).toString();
+	}
+
+}
@@ -109,6 +109,35 @@ public interface MusicPlayer extends AutoCloseable {
 
 	public boolean canSeek();
 
+	/**
+	 * @return the frame of the current Song that is audible right now, taking
+	 *         the frames that are decoded ahead or still buffered in the
+	 *         AudioDevice into account. -1 if no Song has been inserted,
+	 *         nothing has been played yet or the player doesn't track its
+	 *         playhead (the default)
+	 */
+	public default long getPlayheadFrame() {
+		return -1;
+	}
+
+	/**
+	 * @return the position of {@link #getPlayheadFrame()} in microseconds or
+	 *         -1 if no Song has been inserted, nothing has been played yet or
+	 *         the player doesn't track its playhead (the default)
+	 */
+	public default long getPlayheadMicroseconds() {
+		return -1;
+	}
+
+	/**
+	 * @return the time in microseconds from decoding a frame until it is
+	 *         played back right now, or -1 if it is unknown or no Song has
+	 *         been inserted (the default)
+	 */
+	public default long getOutputLatency() {
+		return -1;
+	}
+
 	public void restart() throws MusicPlayerException;
 
 	public void setMusicListener(MusicListener pMusicListener);
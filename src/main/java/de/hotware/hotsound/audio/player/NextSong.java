@@ -0,0 +1,201 @@
+/**
+ * File NextSong.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.Mixer;
+import java.util.concurrent.CountDownLatch;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.Audio.AudioException;
+
+/**
+ * A Song that has been enqueued to be played after the current one. Running
+ * it opens the Audio and decodes the first chunk in the background so the
+ * playback can switch over without a gap.
+ *
+ * @author Martin Braun
+ */
+final class NextSong implements Runnable {
+
+	private final Song mSong;
+	private final int mBufferSize;
+	private final LatencyProfile mLatencyProfile;
+	private final Mixer mMixer;
+	private final CountDownLatch mPrepared;
+	private Audio mAudio;
+	private byte[] mData;
+	private int mLength;
+	private int mChunkSize;
+	private MusicPlayerException mException;
+	private boolean mCancelled;
+
+	/**
+	 * @param pBufferSize
+	 *            the buffer size setting of the player, the chunk that is
+	 *            decoded ahead is sized for the format of this Song just like
+	 *            the chunks of the Runnable that will play it
+	 * @param pLatencyProfile
+	 *            the LatencyProfile of the player or null
+	 * @param pMixer
+	 *            the Mixer the Song is going to be played on, null for any
+	 */
+	public NextSong(Song pSong, int pBufferSize, LatencyProfile pLatencyProfile, Mixer pMixer) {
+		if ( pSong == null ) {
+			throw new NullPointerException( "pSong may not be null" );
+		}
+		this.mSong = pSong;
+		this.mBufferSize = pBufferSize;
+		this.mLatencyProfile = pLatencyProfile;
+		this.mMixer = pMixer;
+		this.mPrepared = new CountDownLatch( 1 );
+		this.mLength = 0;
+		this.mCancelled = false;
+	}
+
+	@Override
+	public void run() {
+		Audio audio = null;
+		try {
+			audio = this.mSong.getAudio();
+			audio.setMixer( this.mMixer );
+			audio.open();
+			int chunkSize = StreamPlayerRunnable.getChunkSize(
+					audio.getAudioFormat(),
+					this.mBufferSize,
+					this.mLatencyProfile
+			);
+			byte[] data = new byte[chunkSize];
+			int length = audio.read( data, 0, chunkSize );
+			synchronized ( this ) {
+				if ( !this.mCancelled ) {
+					this.mAudio = audio;
+					this.mData = data;
+					this.mLength = length;
+					this.mChunkSize = chunkSize;
+					audio = null;
+				}
+			}
+		}
+		catch (MusicPlayerException e) {
+			synchronized ( this ) {
+				this.mException = e;
+			}
+		}
+		finally {
+			closeQuietly( audio );
+			this.mPrepared.countDown();
+		}
+	}
+
+	/**
+	 * waits until the preparation is done
+	 */
+	public void await() throws InterruptedException {
+		this.mPrepared.await();
+	}
+
+	/**
+	 * @return true if the Audio has been opened and is ready to be played
+	 */
+	public synchronized boolean isReady() {
+		return this.mAudio != null && !this.mCancelled;
+	}
+
+	/**
+	 * @return the size of the chunks the Song has to be played with, so the
+	 *         chunk that has been decoded ahead fits
+	 */
+	public synchronized int getChunkSize() {
+		return this.mChunkSize;
+	}
+
+	/**
+	 * @param pBufferSize
+	 *            the chunk size of the Runnable that is playing pAudioFormat
+	 * @return true if the Audio is ready and can be played without reopening
+	 *         an AudioDevice that is playing pAudioFormat
+	 */
+	public synchronized boolean canPlayGapless(AudioFormat pAudioFormat, int pBufferSize) {
+		if ( !this.isReady() || pAudioFormat == null || this.mChunkSize > pBufferSize ) {
+			return false;
+		}
+		AudioFormat format = this.mAudio.getAudioFormat();
+		return format != null && format.matches( pAudioFormat ) && pAudioFormat.matches( format );
+	}
+
+	/**
+	 * copies the chunk that has been decoded ahead into pBuffer which has to
+	 * hold at least {@link #getChunkSize()} bytes. may only be called once
+	 *
+	 * @return the amount of bytes copied
+	 */
+	public synchronized int copyData(byte[] pBuffer) {
+		int length = Math.max( 0, this.mLength );
+		if ( length > 0 ) {
+			System.arraycopy( this.mData, 0, pBuffer, 0, length );
+		}
+		this.mData = null;
+		this.mLength = 0;
+		return length;
+	}
+
+	/**
+	 * discards the prepared Audio (or the Audio being prepared)
+	 */
+	public void cancel() {
+		Audio audio;
+		synchronized ( this ) {
+			this.mCancelled = true;
+			audio = this.mAudio;
+			this.mAudio = null;
+			this.mData = null;
+		}
+		closeQuietly( audio );
+	}
+
+	public Song getSong() {
+		return this.mSong;
+	}
+
+	public synchronized Audio getAudio() {
+		return this.mAudio;
+	}
+
+	/**
+	 * @return the exception that occured while preparing or null
+	 */
+	public synchronized MusicPlayerException getException() {
+		return this.mException;
+	}
+
+	private static void closeQuietly(Audio pAudio) {
+		if ( pAudio != null && !pAudio.isClosed() ) {
+			try {
+				pAudio.close();
+			}
+			catch (AudioException e) {
+				//nothing we could do about it here
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * File PlaybackEvents.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+/**
+ * emits the JDK Flight Recorder events of HotSound if the JFR API is
+ * available (see {@link FlightRecorderEvents} for the event types). Every
+ * begin method returns an opaque event or null if the event isn't recorded,
+ * the matching commit method ignores null. With JFR off or missing this
+ * boils down to a check of a static flag per call.
+ *
+ * @author Martin Braun
+ */
+final class PlaybackEvents {
+
+	private static final boolean AVAILABLE = isAvailable();
+
+	private PlaybackEvents() {
+	}
+
+	static Object beginSongProbe() {
+		return AVAILABLE ? FlightRecorderEvents.beginSongProbe() : null;
+	}
+
+	static void commitSongProbe(Object pEvent, Object pSong, Object pFormat) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitSongProbe( pEvent, pSong, pFormat );
+		}
+	}
+
+	static Object beginSongOpen() {
+		return AVAILABLE ? FlightRecorderEvents.beginSongOpen() : null;
+	}
+
+	static void commitSongOpen(Object pEvent, Object pSong, Object pFormat) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitSongOpen( pEvent, pSong, pFormat );
+		}
+	}
+
+	static Object beginFirstByte() {
+		return AVAILABLE ? FlightRecorderEvents.beginFirstByte() : null;
+	}
+
+	static void commitFirstByte(Object pEvent, Object pAudio, int pBytes) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitFirstByte( pEvent, pAudio, pBytes );
+		}
+	}
+
+	static Object beginDecodeChunk() {
+		return AVAILABLE ? FlightRecorderEvents.beginDecodeChunk() : null;
+	}
+
+	static void commitDecodeChunk(Object pEvent, Object pAudio, int pBytes) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitDecodeChunk( pEvent, pAudio, pBytes );
+		}
+	}
+
+	static Object beginDeviceWrite() {
+		return AVAILABLE ? FlightRecorderEvents.beginDeviceWrite() : null;
+	}
+
+	static void commitDeviceWrite(Object pEvent, Object pDevice, int pBytes) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitDeviceWrite( pEvent, pDevice, pBytes );
+		}
+	}
+
+	static Object beginSeek() {
+		return AVAILABLE ? FlightRecorderEvents.beginSeek() : null;
+	}
+
+	/**
+	 * @param pRelative
+	 *            true for skips
+	 */
+	static void commitSeek(Object pEvent, Object pAudio, boolean pRelative, long pFrames) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitSeek( pEvent, pAudio, pRelative, pFrames );
+		}
+	}
+
+	/**
+	 * to be called when the callback is handed to the signalling executor
+	 */
+	static Object beginListenerDispatch() {
+		return AVAILABLE ? FlightRecorderEvents.beginListenerDispatch() : null;
+	}
+
+	/**
+	 * to be called right before the listener is invoked
+	 */
+	static void listenerDispatched(Object pEvent) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.listenerDispatched( pEvent );
+		}
+	}
+
+	static void commitListenerDispatch(Object pEvent, String pCallback) {
+		if ( pEvent != null ) {
+			FlightRecorderEvents.commitListenerDispatch( pEvent, pCallback );
+		}
+	}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName( "jdk.jfr.Event", false, PlaybackEvents.class.getClassLoader() );
+			//make sure the event classes can actually be loaded
+			Class.forName( FlightRecorderEvents.class.getName(), true, PlaybackEvents.class.getClassLoader() );
+			return true;
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,299 @@
+/**
+ * File PlaybackMetrics.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * counters and latency histograms of the playback of one
+ * {@link StreamMusicPlayer}. Everything recorded is added to the aggregate
+ * of all players as well (see {@link #getAggregate()}). Both can be
+ * registered with the platform MBeanServer under the domain
+ * {@value #DOMAIN}.
+ *
+ * The playback threads only touch the metrics if they are enabled for the
+ * player (see {@link StreamMusicPlayer#setMetricsEnabled(boolean)}), so
+ * disabled metrics cost a null check per chunk.
+ *
+ * @author Martin Braun
+ */
+public final class PlaybackMetrics implements PlaybackMetricsMBean {
+
+	public static final String DOMAIN = "de.hotware.hotsound";
+
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private static final Object AGGREGATE_LOCK = new Object();
+
+	private static PlaybackMetrics sAggregate;
+
+	private final PlaybackMetrics mParent;
+	private final LongAdder mBytesPlayed;
+	private final LongAdder mFramesPlayed;
+	private final LongAdder mChunksDecoded;
+	private final LongAdder mDecoderUnderruns;
+	private final LongAdder mLineUnderruns;
+	private final LatencyHistogram mDecodeTime;
+	private final LatencyHistogram mWriteTime;
+	private volatile int mBufferFill;
+	private volatile int mBufferCapacity;
+	private ObjectName mObjectName;
+
+	private PlaybackMetrics(PlaybackMetrics pParent) {
+		this.mParent = pParent;
+		this.mBytesPlayed = new LongAdder();
+		this.mFramesPlayed = new LongAdder();
+		this.mChunksDecoded = new LongAdder();
+		this.mDecoderUnderruns = new LongAdder();
+		this.mLineUnderruns = new LongAdder();
+		this.mDecodeTime = new LatencyHistogram();
+		this.mWriteTime = new LatencyHistogram();
+	}
+
+	/**
+	 * creates metrics for a single player that add to the aggregate
+	 */
+	public static PlaybackMetrics create() {
+		return new PlaybackMetrics( getAggregate() );
+	}
+
+	/**
+	 * @return the metrics of all players together
+	 */
+	public static PlaybackMetrics getAggregate() {
+		synchronized ( AGGREGATE_LOCK ) {
+			if ( sAggregate == null ) {
+				sAggregate = new PlaybackMetrics( null );
+			}
+			return sAggregate;
+		}
+	}
+
+	/**
+	 * records the time it took to decode a chunk of pBytes bytes
+	 * (AudioRingBuffer.END_OF_STREAM at the end of the Audio)
+	 */
+	public void recordDecode(long pNanos, int pBytes) {
+		if ( pBytes > 0 ) {
+			this.mChunksDecoded.increment();
+			this.mDecodeTime.record( pNanos );
+		}
+		if ( this.mParent != null ) {
+			this.mParent.recordDecode( pNanos, pBytes );
+		}
+	}
+
+	/**
+	 * records the time the AudioDevice blocked while writing pBytes bytes
+	 */
+	public void recordWrite(long pNanos, int pBytes, int pFrameSize) {
+		this.mBytesPlayed.add( pBytes );
+		if ( pFrameSize > 0 ) {
+			this.mFramesPlayed.add( pBytes / pFrameSize );
+		}
+		this.mWriteTime.record( pNanos );
+		if ( this.mParent != null ) {
+			this.mParent.recordWrite( pNanos, pBytes, pFrameSize );
+		}
+	}
+
+	public void recordDecoderUnderrun() {
+		this.mDecoderUnderruns.increment();
+		if ( this.mParent != null ) {
+			this.mParent.recordDecoderUnderrun();
+		}
+	}
+
+	public void recordLineUnderrun() {
+		this.mLineUnderruns.increment();
+		if ( this.mParent != null ) {
+			this.mParent.recordLineUnderrun();
+		}
+	}
+
+	/**
+	 * the aggregate doesn't track the buffer fill
+	 */
+	public void setBufferFill(int pFill, int pCapacity) {
+		this.mBufferFill = pFill;
+		this.mBufferCapacity = pCapacity;
+	}
+
+	@Override
+	public long getBytesPlayed() {
+		return this.mBytesPlayed.sum();
+	}
+
+	@Override
+	public long getFramesPlayed() {
+		return this.mFramesPlayed.sum();
+	}
+
+	@Override
+	public long getChunksDecoded() {
+		return this.mChunksDecoded.sum();
+	}
+
+	@Override
+	public long getDecoderUnderruns() {
+		return this.mDecoderUnderruns.sum();
+	}
+
+	@Override
+	public long getLineUnderruns() {
+		return this.mLineUnderruns.sum();
+	}
+
+	@Override
+	public int getBufferFill() {
+		return this.mBufferFill;
+	}
+
+	@Override
+	public int getBufferCapacity() {
+		return this.mBufferCapacity;
+	}
+
+	@Override
+	public long getDecodeTimeMean() {
+		return this.mDecodeTime.getMean() / 1000;
+	}
+
+	@Override
+	public long getDecodeTime99thPercentile() {
+		return this.mDecodeTime.getPercentile( 99 ) / 1000;
+	}
+
+	@Override
+	public long getDecodeTimeMax() {
+		return this.mDecodeTime.getMax() / 1000;
+	}
+
+	@Override
+	public long getWriteTimeMean() {
+		return this.mWriteTime.getMean() / 1000;
+	}
+
+	@Override
+	public long getWriteTime99thPercentile() {
+		return this.mWriteTime.getPercentile( 99 ) / 1000;
+	}
+
+	@Override
+	public long getWriteTimeMax() {
+		return this.mWriteTime.getMax() / 1000;
+	}
+
+	/**
+	 * @return the histogram of the decoding times of chunks
+	 */
+	public LatencyHistogram getDecodeTime() {
+		return this.mDecodeTime;
+	}
+
+	/**
+	 * @return the histogram of the times the AudioDevice blocked per chunk
+	 */
+	public LatencyHistogram getWriteTime() {
+		return this.mWriteTime;
+	}
+
+	/**
+	 * resets these metrics. the aggregate is not affected
+	 */
+	@Override
+	public void reset() {
+		this.mBytesPlayed.reset();
+		this.mFramesPlayed.reset();
+		this.mChunksDecoded.reset();
+		this.mDecoderUnderruns.reset();
+		this.mLineUnderruns.reset();
+		this.mDecodeTime.reset();
+		this.mWriteTime.reset();
+	}
+
+	/**
+	 * registers these metrics with the platform MBeanServer as
+	 * <code>de.hotware.hotsound:type=StreamMusicPlayer,name=player-n</code>
+	 * and the aggregate as
+	 * <code>de.hotware.hotsound:type=StreamMusicPlayer,name=all</code> if it
+	 * isn't registered yet
+	 *
+	 * @throws IllegalStateException
+	 *             if already registered
+	 */
+	public synchronized void register() throws JMException {
+		if ( this.mObjectName != null ) {
+			throw new IllegalStateException( "the metrics are already registered" );
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if ( this.mParent != null ) {
+			ObjectName aggregate = objectName( "all" );
+			try {
+				if ( !server.isRegistered( aggregate ) ) {
+					server.registerMBean( this.mParent, aggregate );
+				}
+			}
+			catch (InstanceAlreadyExistsException e) {
+				//registered by another player in the meantime
+			}
+		}
+		ObjectName name = objectName( "player-" + NEXT_ID.incrementAndGet() );
+		server.registerMBean( this, name );
+		this.mObjectName = name;
+	}
+
+	/**
+	 * removes these metrics from the MBeanServer if they are registered. The
+	 * aggregate stays registered
+	 */
+	public synchronized void unregister() throws JMException {
+		if ( this.mObjectName != null ) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean( this.mObjectName );
+			}
+			catch (InstanceNotFoundException e) {
+				//unregistered by somebody else
+			}
+			this.mObjectName = null;
+		}
+	}
+
+	/**
+	 * @return the name these metrics are registered under or null
+	 */
+	public synchronized ObjectName getObjectName() {
+		return this.mObjectName;
+	}
+
+	private static ObjectName objectName(String pName) throws MalformedObjectNameException {
+		return new ObjectName( DOMAIN + ":type=StreamMusicPlayer,name=" + pName );
+	}
+
+}
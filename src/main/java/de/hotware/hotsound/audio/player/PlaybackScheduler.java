@@ -0,0 +1,255 @@
+/**
+ * File PlaybackScheduler.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads that can be shared by many {@link StreamMusicPlayer}s instead of
+ * every player creating its own playback and signalling threads.
+ *
+ * Playback runs on virtual threads if the JVM supports them, otherwise on
+ * platform threads. Players are not multiplexed: a playing player occupies
+ * its playback thread until its Song has ended, and its decoding thread as
+ * well if it decodes ahead. With platform threads these threads are limited
+ * to pMaxThreads, so about pMaxThreads / 2 players with the default ring
+ * depth may play at the same time. Starting another one fails with a
+ * {@link MusicPlayerException} until enough threads are free again. Players
+ * are never queued.
+ *
+ * The asynchronous operations of the players and the preparation of enqueued
+ * Songs run on separate pools, so they make progress even if every
+ * playback thread is in use. The listener callbacks of all players are
+ * dispatched by one shared thread, so listeners must not block.
+ *
+ * @author Martin Braun
+ */
+public final class PlaybackScheduler implements AutoCloseable {
+
+	public static final int DEFAULT_MAX_THREADS = Math.max( 4, Runtime.getRuntime().availableProcessors() * 4 );
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final ExecutorService mPlaybackExecutor;
+	private final ExecutorService mBackgroundExecutor;
+	private final ExecutorService mControlExecutor;
+	private final ExecutorService mDispatcher;
+	/**
+	 * one permit per playback or decoding thread, null for virtual threads
+	 */
+	private final Semaphore mPlaybackPermits;
+	private final int mMaxThreads;
+	private final boolean mVirtualThreads;
+
+	/**
+	 * uses virtual threads if available and at most
+	 * {@link #DEFAULT_MAX_THREADS} playback and decoding threads otherwise
+	 */
+	public PlaybackScheduler() {
+		ExecutorService virtual = newVirtualThreadExecutor();
+		if ( virtual != null ) {
+			this.mPlaybackExecutor = virtual;
+			this.mBackgroundExecutor = virtual;
+			this.mControlExecutor = virtual;
+			this.mPlaybackPermits = null;
+			this.mMaxThreads = Integer.MAX_VALUE;
+			this.mVirtualThreads = true;
+		}
+		else {
+			this.mPlaybackExecutor = newPool( "hotsound-playback-" );
+			this.mBackgroundExecutor = newPool( "hotsound-background-" );
+			this.mControlExecutor = newPool( "hotsound-control-" );
+			this.mPlaybackPermits = new Semaphore( DEFAULT_MAX_THREADS );
+			this.mMaxThreads = DEFAULT_MAX_THREADS;
+			this.mVirtualThreads = false;
+		}
+		this.mDispatcher = newDispatcher();
+	}
+
+	/**
+	 * always uses platform threads and lets players use at most pMaxThreads
+	 * playback and decoding threads at the same time. A player that decodes
+	 * ahead needs two of them
+	 */
+	public PlaybackScheduler(int pMaxThreads) {
+		if ( pMaxThreads < 1 ) {
+			throw new IllegalArgumentException( "pMaxThreads has to be at least 1" );
+		}
+		this.mPlaybackExecutor = newPool( "hotsound-playback-" );
+		this.mBackgroundExecutor = newPool( "hotsound-background-" );
+		this.mControlExecutor = newPool( "hotsound-control-" );
+		this.mPlaybackPermits = new Semaphore( pMaxThreads );
+		this.mMaxThreads = pMaxThreads;
+		this.mVirtualThreads = false;
+		this.mDispatcher = newDispatcher();
+	}
+
+	/**
+	 * @return the ExecutorService playback tasks run on. Players reserve
+	 *         their threads before they start, so only the permitted amount
+	 *         of them runs at the same time
+	 */
+	public ExecutorService getPlaybackExecutor() {
+		return this.mPlaybackExecutor;
+	}
+
+	/**
+	 * @return the ExecutorService decoding ahead, the preparation of enqueued
+	 *         Songs and the switch to them run on
+	 */
+	public ExecutorService getBackgroundExecutor() {
+		return this.mBackgroundExecutor;
+	}
+
+	/**
+	 * @return the ExecutorService the asynchronous operations of the players
+	 *         run on. A player runs its operations one after the other, so
+	 *         it never uses more than one of its threads. A player whose
+	 *         operation blocks (e.g. opening a Song over the network) only
+	 *         holds up its own operations
+	 */
+	public ExecutorService getControlExecutor() {
+		return this.mControlExecutor;
+	}
+
+	/**
+	 * @return the single threaded ExecutorService all listener callbacks are
+	 *         dispatched on
+	 */
+	public ExecutorService getDispatcher() {
+		return this.mDispatcher;
+	}
+
+	public boolean isUsingVirtualThreads() {
+		return this.mVirtualThreads;
+	}
+
+	/**
+	 * @return the amount of playback and decoding threads players may use at
+	 *         the same time, Integer.MAX_VALUE for virtual threads
+	 */
+	public int getMaxThreads() {
+		return this.mMaxThreads;
+	}
+
+	/**
+	 * reserves the playback and decoding threads of a player that is about
+	 * to start
+	 *
+	 * @return false if not enough of them are free
+	 */
+	boolean tryAcquirePlayback(int pThreads) {
+		return this.mPlaybackPermits == null || this.mPlaybackPermits.tryAcquire( pThreads );
+	}
+
+	/**
+	 * gives back the threads of a player whose playback has ended
+	 */
+	void releasePlayback(int pThreads) {
+		if ( this.mPlaybackPermits != null ) {
+			this.mPlaybackPermits.release( pThreads );
+		}
+	}
+
+	/**
+	 * shuts down the threads. the players using this scheduler have to be
+	 * closed before
+	 */
+	@Override
+	public void close() {
+		this.mPlaybackExecutor.shutdown();
+		this.mBackgroundExecutor.shutdown();
+		this.mControlExecutor.shutdown();
+		this.mDispatcher.shutdown();
+	}
+
+	public boolean isClosed() {
+		return this.mPlaybackExecutor.isShutdown();
+	}
+
+	/**
+	 * @return a pool that starts a thread for every task that finds no idle
+	 *         one. the amount of tasks is limited by the players
+	 */
+	private static ExecutorService newPool(String pPrefix) {
+		return new ThreadPoolExecutor(
+				0,
+				Integer.MAX_VALUE,
+				KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new NamedThreadFactory( pPrefix )
+		);
+	}
+
+	private static ExecutorService newDispatcher() {
+		return Executors.newSingleThreadExecutor( new NamedThreadFactory( "hotsound-events-" ) );
+	}
+
+	/**
+	 * @return Executors.newVirtualThreadPerTaskExecutor() or null if the JVM
+	 *         doesn't support virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return (ExecutorService) method.invoke( null );
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		return builder.append( "[" ).append( this.getClass().getSimpleName() ).append( ": " )
+				.append( this.mVirtualThreads ? "virtual threads" : "thread pool" ).append( "]" ).toString();
+	}
+
+	private static final class NamedThreadFactory implements ThreadFactory {
+
+		private final String mPrefix;
+		private final AtomicInteger mCount;
+
+		NamedThreadFactory(String pPrefix) {
+			this.mPrefix = pPrefix;
+			this.mCount = new AtomicInteger( 0 );
+		}
+
+		@Override
+		public Thread newThread(Runnable pRunnable) {
+			Thread thread = new Thread( pRunnable, this.mPrefix + this.mCount.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		}
+
+	}
+
+}
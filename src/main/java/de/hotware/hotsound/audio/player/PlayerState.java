@@ -0,0 +1,257 @@
+/**
+ * File PlayerState.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.AudioDevice;
+
+/**
+ * immutable snapshot of the state of a {@link StreamMusicPlayer}. A player
+ * replaces its state atomically on every transition, so the state can be
+ * read without locking.
+ *
+ * @author Martin Braun
+ */
+public final class PlayerState {
+
+	/**
+	 * the state of a player that no Song has been inserted into
+	 */
+	public static final PlayerState EMPTY = new PlayerState( Type.EMPTY, null, null, null, false );
+
+	private final Type mType;
+	private final Song mSong;
+	private final AudioFormat mAudioFormat;
+	private final AudioDevice mAudioDevice;
+	private final boolean mPaused;
+
+	private PlayerState(Type pType, Song pSong, AudioFormat pAudioFormat, AudioDevice pAudioDevice, boolean pPaused) {
+		this.mType = pType;
+		this.mSong = pSong;
+		this.mAudioFormat = pAudioFormat;
+		this.mAudioDevice = pAudioDevice;
+		this.mPaused = pPaused;
+	}
+
+	public Type getType() {
+		return this.mType;
+	}
+
+	/**
+	 * @return the current Song, null if the state is {@link Type#EMPTY}
+	 */
+	public Song getSong() {
+		return this.mSong;
+	}
+
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+	public AudioDevice getAudioDevice() {
+		return this.mAudioDevice;
+	}
+
+	/**
+	 * @return true if not started or ended
+	 */
+	public boolean isStopped() {
+		return !this.mType.isRunning();
+	}
+
+	/**
+	 * @return true if paused while playing or paused before the start. Like
+	 *         the players always did, a player without a Song counts as
+	 *         paused
+	 */
+	public boolean isPaused() {
+		return this.mType == Type.PAUSED || this.mType == Type.EMPTY ||
+				(this.mType == Type.LOADED && this.mPaused);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the transition to the given Type is not allowed
+	 */
+	public void checkTransition(Type pType) {
+		if ( !this.mType.canTransitionTo( pType ) ) {
+			if ( this.mType == Type.EMPTY ) {
+				throw new IllegalStateException( "no Song has been inserted yet" );
+			}
+			throw new IllegalStateException( "can't go from " + this.mType + " to " + pType );
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if no Song has been inserted
+	 */
+	public void checkInitialized() {
+		if ( this.mType == Type.EMPTY ) {
+			throw new IllegalStateException( "no Song has been inserted yet" );
+		}
+	}
+
+	/**
+	 * seeking and skipping is possible in every state but {@link Type#EMPTY}.
+	 * before the start it is applied as soon as the playback starts, after
+	 * the end the playback is restarted
+	 *
+	 * @param pSeekable
+	 *            whether the Audio of the current Song can seek
+	 * @throws IllegalStateException
+	 *             if the player can't seek right now
+	 */
+	public void checkSeek(boolean pSeekable) {
+		this.checkInitialized();
+		if ( !pSeekable ) {
+			throw new IllegalStateException( "can't seek. the current Song is not seekable" );
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the playback can't be started again, i.e. it has not been
+	 *             started yet
+	 */
+	public void checkRestart() {
+		if ( this.mType == Type.LOADED ) {
+			throw new IllegalStateException( "can't restart. not started yet" );
+		}
+		this.checkTransition( Type.PLAYING );
+	}
+
+	/**
+	 * @return the state with the given Type. a running Type follows the paused
+	 *         flag, {@link Type#EMPTY} drops the Song
+	 */
+	PlayerState withType(Type pType) {
+		if ( pType == Type.EMPTY ) {
+			return EMPTY;
+		}
+		Type type = pType;
+		if ( type.isRunning() ) {
+			type = this.mPaused ? Type.PAUSED : Type.PLAYING;
+		}
+		return new PlayerState( type, this.mSong, this.mAudioFormat, this.mAudioDevice, this.mPaused );
+	}
+
+	/**
+	 * @return the state with the given paused flag. a running Type becomes
+	 *         {@link Type#PAUSED} or {@link Type#PLAYING}
+	 * @throws IllegalStateException
+	 *             if the Type can't change that way
+	 */
+	PlayerState withPaused(boolean pPaused) {
+		Type type = this.mType;
+		if ( type.isRunning() ) {
+			type = pPaused ? Type.PAUSED : Type.PLAYING;
+			if ( type != this.mType ) {
+				this.checkTransition( type );
+			}
+		}
+		return new PlayerState( type, this.mSong, this.mAudioFormat, this.mAudioDevice, pPaused );
+	}
+
+	PlayerState withSong(Song pSong, AudioFormat pAudioFormat) {
+		return new PlayerState( this.mType, pSong, pAudioFormat, this.mAudioDevice, this.mPaused );
+	}
+
+	/**
+	 * @return the {@link Type#LOADED} state for the given Song
+	 */
+	PlayerState load(Song pSong, AudioFormat pAudioFormat, AudioDevice pAudioDevice) {
+		return new PlayerState( Type.LOADED, pSong, pAudioFormat, pAudioDevice, this.mPaused );
+	}
+
+	@Override
+	public String toString() {
+		return "[" + this.mType + (this.mPaused ? " (paused)" : "") + ": Current Song: " + this.mSong +
+				" Current AudioDevice: " + this.mAudioDevice + "]";
+	}
+
+	public static enum Type {
+		/**
+		 * no Song has been inserted
+		 */
+		EMPTY,
+		/**
+		 * a Song has been inserted but not started
+		 */
+		LOADED,
+		PLAYING,
+		PAUSED,
+		/**
+		 * stopped manually
+		 */
+		STOPPED,
+		/**
+		 * played to the end
+		 */
+		DONE,
+		/**
+		 * ended because of an exception
+		 */
+		FAILED;
+
+		/**
+		 * @return true if the playback has been started and not ended yet
+		 */
+		public boolean isRunning() {
+			return this == PLAYING || this == PAUSED;
+		}
+
+		/**
+		 * @return true if the playback has been started and ended
+		 */
+		public boolean isEnded() {
+			return this == STOPPED || this == DONE || this == FAILED;
+		}
+
+		public boolean canTransitionTo(Type pType) {
+			if ( pType == EMPTY ) {
+				//closing is always possible
+				return true;
+			}
+			switch ( this ) {
+				case EMPTY:
+					return pType == LOADED;
+				case LOADED:
+					return pType == LOADED || pType.isRunning();
+				case PLAYING:
+					return pType == PAUSED || pType.isEnded();
+				case PAUSED:
+					return pType == PLAYING || pType.isEnded();
+				case STOPPED:
+				case FAILED:
+					return pType == this || pType == LOADED || pType.isRunning();
+				case DONE:
+					//a NextSong that failed to start after the playback ended
+					return pType == this || pType == LOADED || pType == FAILED || pType.isRunning();
+				default:
+					return false;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ * File Playhead.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import javax.sound.sampled.DataLine;
+
+import de.hotware.hotsound.audio.data.AudioDevice;
+import de.hotware.hotsound.audio.data.JavaSoundPlaybackAudioDevice;
+
+/**
+ * maps the frames the AudioDevice has actually played back to positions in
+ * the Audio. Every chunk written to the device leaves an anchor (the amount
+ * of frames written before it and the frame position it was decoded at), the
+ * frames consumed by the line (see {@link DataLine#getLongFramePosition()})
+ * are then looked up in the anchors. Seeks and pauses don't need special
+ * handling: chunks decoded before a seek keep their old positions until they
+ * have been played and a stopped line doesn't consume frames.
+ *
+ * For AudioDevices without a DataLine every frame is considered played once
+ * the write returned.
+ *
+ * @author Martin Braun
+ */
+final class Playhead {
+
+	/**
+	 * the amount of chunks that are remembered. has to be more than the
+	 * chunks that fit into the line buffer
+	 */
+	private static final int ANCHORS = 256;
+
+	private final AudioDevice mAudioDevice;
+	private final int mFrameSize;
+	private final float mFrameRate;
+	private final long[] mWrittenFrames;
+	private final long[] mPositions;
+	private final int[] mFrames;
+	private long mAnchorCount;
+	private long mFramesWritten;
+	private long mFramesCompleted;
+	private DataLine mLine;
+	/**
+	 * the frame position of the line at which our first frame is played
+	 */
+	private long mLineBaseline;
+
+	Playhead(AudioDevice pAudioDevice, int pFrameSize, float pFrameRate) {
+		this.mAudioDevice = pAudioDevice;
+		this.mFrameSize = pFrameSize;
+		this.mFrameRate = pFrameRate;
+		this.mWrittenFrames = new long[ANCHORS];
+		this.mPositions = new long[ANCHORS];
+		this.mFrames = new int[ANCHORS];
+	}
+
+	/**
+	 * to be called before the chunk is written
+	 *
+	 * @param pPosition
+	 *            the frame position the chunk has been decoded at
+	 */
+	synchronized void beforeWrite(long pPosition, int pBytes) {
+		if ( this.mAnchorCount == 0 ) {
+			this.mLine = getLine( this.mAudioDevice );
+			if ( this.mLine != null ) {
+				//whatever is still in the line is played before our data
+				int pending = this.mLine.getBufferSize() - this.mLine.available();
+				this.mLineBaseline = this.mLine.getLongFramePosition() + pending / this.mFrameSize;
+			}
+		}
+		int frames = pBytes / this.mFrameSize;
+		int index = (int) (this.mAnchorCount++ % ANCHORS);
+		this.mWrittenFrames[index] = this.mFramesWritten;
+		this.mPositions[index] = pPosition;
+		this.mFrames[index] = frames;
+		this.mFramesWritten += frames;
+	}
+
+	/**
+	 * to be called after the chunk has been written
+	 */
+	synchronized void afterWrite(int pBytes) {
+		this.mFramesCompleted += pBytes / this.mFrameSize;
+	}
+
+	/**
+	 * @return the frame position in the Audio that is being played right now
+	 *         or -1 if nothing has been written yet
+	 */
+	synchronized long getFrame() {
+		if ( this.mAnchorCount == 0 ) {
+			return -1;
+		}
+		long played = this.getFramesPlayed();
+		long oldest = Math.max( 0, this.mAnchorCount - ANCHORS );
+		for ( long i = this.mAnchorCount - 1; i >= oldest; --i ) {
+			int index = (int) (i % ANCHORS);
+			if ( this.mWrittenFrames[index] <= played ) {
+				return this.mPositions[index] + Math.min( played - this.mWrittenFrames[index], this.mFrames[index] );
+			}
+		}
+		return this.mPositions[(int) (oldest % ANCHORS)];
+	}
+
+	/**
+	 * @return the position of {@link #getFrame()} in microseconds or -1
+	 */
+	long getMicroseconds() {
+		long frame = this.getFrame();
+		if ( frame < 0 || this.mFrameRate <= 0 ) {
+			return -1;
+		}
+		return (long) (frame * 1000000d / this.mFrameRate);
+	}
+
+	/**
+	 * @return the amount of frames that have been written to the AudioDevice
+	 *         but not played yet
+	 */
+	synchronized long getFramesPending() {
+		return this.mFramesWritten - this.getFramesPlayed();
+	}
+
+	float getFrameRate() {
+		return this.mFrameRate;
+	}
+
+	private long getFramesPlayed() {
+		long played;
+		if ( this.mLine != null ) {
+			played = Math.min( this.mLine.getLongFramePosition() - this.mLineBaseline, this.mFramesWritten );
+		}
+		else {
+			played = this.mFramesCompleted;
+		}
+		return Math.max( 0, played );
+	}
+
+	private static DataLine getLine(AudioDevice pAudioDevice) {
+		if ( pAudioDevice instanceof JavaSoundPlaybackAudioDevice ) {
+			return ((JavaSoundPlaybackAudioDevice) pAudioDevice).getDataLine();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * File ProgressEvent.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import de.hotware.util.BaseEvent;
+
+/**
+ * the position of the playhead of a player, see
+ * {@link StreamMusicPlayer#setProgressListener(ProgressListener, long)}
+ */
+public final class ProgressEvent extends BaseEvent<MusicPlayer> {
+
+	private final Song mSong;
+	private final long mFrame;
+	private final long mMicroseconds;
+
+	public ProgressEvent(MusicPlayer pSource, Song pSong, long pFrame, long pMicroseconds) {
+		super( pSource );
+		this.mSong = pSong;
+		this.mFrame = pFrame;
+		this.mMicroseconds = pMicroseconds;
+	}
+
+	/**
+	 * @return the Song that is being played
+	 */
+	public Song getSong() {
+		return this.mSong;
+	}
+
+	/**
+	 * @return the frame that is audible
+	 */
+	public long getFrame() {
+		return this.mFrame;
+	}
+
+	/**
+	 * @return the position of the audible frame in microseconds
+	 */
+	public long getMicroseconds() {
+		return this.mMicroseconds;
+	}
+
+}
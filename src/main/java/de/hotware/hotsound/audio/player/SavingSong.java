@@ -46,7 +46,7 @@ public final class SavingSong extends BasicPlaybackSong {
 
 	@Override
 	protected Audio getAudio(InputStream pInputStream, int pFrameLength) {
-		return new WaveAudio( pInputStream, pFrameLength );
+		return new WaveAudio( pInputStream, pFrameLength, this.mPlaybackURL );
 	}
 
 }
@@ -20,44 +20,120 @@
  */
 package de.hotware.hotsound.audio.player;
 
+import javax.management.JMException;
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Mixer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.concurrent.locks.ReentrantLock;
 
 import de.hotware.hotsound.audio.data.Audio;
 import de.hotware.hotsound.audio.data.AudioDevice;
+import de.hotware.hotsound.audio.data.JavaSoundPlaybackAudioDevice;
+import de.hotware.hotsound.audio.data.MeteredAudioDevice;
 import de.hotware.hotsound.audio.player.StreamPlayerRunnable.StreamPlayerRunnableListener;
 
 /**
  * always runs the playback in its own thread but you can pass an
- * ExecutorService instead if you want to
+ * ExecutorService instead if you want to. Many players can share their
+ * threads by using the same {@link PlaybackScheduler}
+ *
+ * The {@link AsyncMusicPlayer} methods run one after the other in the order
+ * they have been called, on a separate control thread or on the control pool
+ * of the PlaybackScheduler. The operations of different players sharing a
+ * PlaybackScheduler don't wait for each other.
+ *
+ * The state of the player is kept in an immutable {@link PlayerState} that is
+ * replaced on every transition, so querying it never blocks. Transitions that
+ * the state doesn't allow are rejected with an IllegalStateException.
  *
  * TODO: test skipping, etc.
  *
  * @author Martin Braun
  */
-public final class StreamMusicPlayer implements MusicPlayer {
+public final class StreamMusicPlayer implements MusicPlayer, AsyncMusicPlayer {
+
+	/**
+	 * default amount of chunks that are decoded ahead of the AudioDevice
+	 */
+	public static final int DEFAULT_RING_DEPTH = 3;
 
 	protected Executor mPlaybackExecutor;
 	protected ExecutorService mSignallingExecutor;
+	/**
+	 * used for decoding ahead and for preparing enqueued Songs
+	 */
+	protected ExecutorService mDecodingExecutor;
+	protected int mRingDepth;
+	protected int mBufferSize;
+	protected LatencyProfile mLatencyProfile;
+	/**
+	 * null if the player uses its own threads
+	 */
+	protected PlaybackScheduler mScheduler;
 	protected boolean mCreateOwnThread;
-	protected StreamPlayerRunnable mStreamPlayerRunnable;
+	protected volatile StreamPlayerRunnable mStreamPlayerRunnable;
 	protected MusicListener mMusicListener;
 	protected StreamPlayerRunnableListener mPlayerRunnableListener;
 	/**
 	 * the current song after insertion
 	 */
-	protected Song mCurrentSong;
-	protected Audio mCurrentAudio;
+	protected volatile Song mCurrentSong;
+	protected volatile Audio mCurrentAudio;
 	/**
 	 * the current mixer after insertion
 	 */
-	protected AudioDevice mCurrentAudioDevice;
+	protected volatile AudioDevice mCurrentAudioDevice;
+	/**
+	 * the Song enqueued while stopped, enqueued once the playback is started
+	 * again. guarded by mLock
+	 */
+	protected Song mPendingNextSong;
+	/**
+	 * null if metrics are disabled
+	 */
+	protected PlaybackMetrics mMetrics;
+	protected final AudioProcessorChain mProcessorChain;
+	protected ProgressListener mProgressListener;
+	protected ScheduledFuture<?> mProgressTask;
+	/**
+	 * runs the asynchronous operations if the player uses its own threads
+	 */
+	protected ExecutorService mControlExecutor;
+	/**
+	 * the amount of playback and decoding threads of the scheduler the player
+	 * holds
+	 */
+	private final AtomicInteger mPlaybackThreads;
+	/**
+	 * completed once the last asynchronous operation is far enough that the
+	 * next one may run
+	 */
+	private final AtomicReference<CompletableFuture<Void>> mLastControl;
+	private final AtomicReference<PlayerState> mState;
 	private Lock mLock;
 
+	/**
+	 * the timer thread that sends the ProgressEvents of all players
+	 */
+	private static ScheduledExecutorService sProgressTimer;
+
 	private static final MusicListener DEFAULT_LISTENER = new MusicListener() {
 
 		@Override
@@ -84,7 +160,7 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	 * times
 	 */
 	public StreamMusicPlayer() {
-		this( DEFAULT_LISTENER, null );
+		this( DEFAULT_LISTENER, (Executor) null );
 	}
 
 	/**
@@ -93,7 +169,7 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	 * correctly or otherwise bugs might occur
 	 */
 	public StreamMusicPlayer(MusicListener pMusicListener) {
-		this( pMusicListener, null );
+		this( pMusicListener, (Executor) null );
 	}
 
 	/**
@@ -102,7 +178,25 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	 * otherwise bugs might occur
 	 */
 	public StreamMusicPlayer(MusicListener pMusicListener, Executor pExecutor) {
+		this( pMusicListener, pExecutor, null );
+	}
+
+	/**
+	 * uses the threads of the given PlaybackScheduler for playback and
+	 * signalling instead of creating its own. Starting fails while all the
+	 * playback threads of the scheduler are in use. closing the player doesn't
+	 * shut down the scheduler
+	 */
+	public StreamMusicPlayer(MusicListener pMusicListener, PlaybackScheduler pScheduler) {
+		this( pMusicListener, pScheduler.getPlaybackExecutor(), pScheduler );
+	}
+
+	private StreamMusicPlayer(MusicListener pMusicListener, Executor pExecutor, PlaybackScheduler pScheduler) {
 		this.mLock = new ReentrantLock();
+		this.mLastControl = new AtomicReference<>( CompletableFuture.<Void> completedFuture( null ) );
+		this.mState = new AtomicReference<>( PlayerState.EMPTY );
+		this.mPlaybackThreads = new AtomicInteger( 0 );
+		this.mProcessorChain = new AudioProcessorChain();
 		if ( pMusicListener == null ) {
 			throw new IllegalArgumentException( "musiclistener may not be null" );
 		}
@@ -112,17 +206,22 @@ public final class StreamMusicPlayer implements MusicPlayer {
 
 			@Override
 			public void onEnd(final MusicEndEvent pEvent) {
+				StreamMusicPlayer.this.tryTransition( getEndState( pEvent.getType() ) );
+				StreamMusicPlayer.this.releasePlaybackThreads();
 				if ( !StreamMusicPlayer.this.mSignallingExecutor.isShutdown() ) {
+					final Object event = PlaybackEvents.beginListenerDispatch();
 					StreamMusicPlayer.this.mSignallingExecutor
 							.execute(
 									new Runnable() {
 
 										@Override
 										public void run() {
+											PlaybackEvents.listenerDispatched( event );
 											if ( StreamMusicPlayer.this.mMusicListener != null ) {
 												StreamMusicPlayer.this.mMusicListener
 														.onEnd( pEvent );
 											}
+											PlaybackEvents.commitListenerDispatch( event, "onEnd" );
 										}
 
 									}
@@ -134,21 +233,64 @@ public final class StreamMusicPlayer implements MusicPlayer {
 			@Override
 			public void onException(final MusicExceptionEvent pEvent) {
 				if ( !StreamMusicPlayer.this.mSignallingExecutor.isShutdown() ) {
+					final Object event = PlaybackEvents.beginListenerDispatch();
 					StreamMusicPlayer.this.mSignallingExecutor
 							.execute(
 									new Runnable() {
 
 										@Override
 										public void run() {
+											PlaybackEvents.listenerDispatched( event );
 											if ( StreamMusicPlayer.this.mMusicListener != null ) {
 												StreamMusicPlayer.this.mMusicListener
 														.onException( pEvent );
 											}
+											PlaybackEvents.commitListenerDispatch( event, "onException" );
+										}
+
+									}
+							);
+				}
+			}
+
+			@Override
+			public void onSongChange(Song pSong, Audio pAudio) {
+				StreamMusicPlayer.this.mCurrentSong = pSong;
+				StreamMusicPlayer.this.mCurrentAudio = pAudio;
+				PlayerState current;
+				do {
+					current = StreamMusicPlayer.this.mState.get();
+				}
+				while ( !StreamMusicPlayer.this.mState.compareAndSet(
+						current,
+						current.withSong( pSong, pAudio.getAudioFormat() )
+				) );
+			}
+
+			@Override
+			public void onNextSong(final NextSong pNextSong) {
+				StreamMusicPlayer.this.tryTransition( PlayerState.Type.DONE );
+				//a shared dispatcher must not be blocked by opening devices. the
+				//playback thread is kept for the next Song
+				ExecutorService executor = StreamMusicPlayer.this.mScheduler != null ?
+						StreamMusicPlayer.this.mScheduler.getBackgroundExecutor() :
+						StreamMusicPlayer.this.mSignallingExecutor;
+				if ( !executor.isShutdown() ) {
+					executor
+							.execute(
+									new Runnable() {
+
+										@Override
+										public void run() {
+											StreamMusicPlayer.this.playNextSong( pNextSong );
 										}
 
 									}
 							);
 				}
+				else {
+					pNextSong.cancel();
+				}
 			}
 
 		};
@@ -156,9 +298,247 @@ public final class StreamMusicPlayer implements MusicPlayer {
 		if ( this.mPlaybackExecutor == null ) {
 			this.mCreateOwnThread = true;
 		}
-		this.mSignallingExecutor = Executors.newSingleThreadExecutor();
+		this.mScheduler = pScheduler;
+		if ( pScheduler != null ) {
+			this.mSignallingExecutor = pScheduler.getDispatcher();
+			this.mDecodingExecutor = pScheduler.getBackgroundExecutor();
+		}
+		else {
+			this.mSignallingExecutor = Executors.newSingleThreadExecutor();
+		}
 		this.mCurrentSong = null;
 		this.mCurrentAudioDevice = null;
+		this.mRingDepth = DEFAULT_RING_DEPTH;
+		this.mBufferSize = AudioSystem.NOT_SPECIFIED;
+	}
+
+	/**
+	 * sets the amount of chunks that are decoded ahead in a separate thread so
+	 * decoding and writing to the AudioDevice can overlap. 0 disables the
+	 * separate decoding thread. Takes effect with the next insert.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if pRingDepth is negative
+	 */
+	public void setRingDepth(int pRingDepth) {
+		if ( pRingDepth < 0 ) {
+			throw new IllegalArgumentException( "pRingDepth may not be negative" );
+		}
+		this.mLock.lock();
+		try {
+			this.mRingDepth = pRingDepth;
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	public int getRingDepth() {
+		return this.mRingDepth;
+	}
+
+	/**
+	 * sets the size of the chunks that are read from the Audio and written to
+	 * the AudioDevice. The size is aligned to the frame size of the Audio.
+	 * AudioSystem.NOT_SPECIFIED means that the chunk size of the
+	 * LatencyProfile is used or one second of audio if there is none. Takes
+	 * effect with the next insert.
+	 */
+	public void setBufferSize(int pBufferSize) {
+		this.mLock.lock();
+		try {
+			this.mBufferSize = pBufferSize;
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	public int getBufferSize() {
+		return this.mBufferSize;
+	}
+
+	/**
+	 * sets the LatencyProfile that determines the chunk size (if no explicit
+	 * buffer size is set) and the buffer size hint for
+	 * JavaSoundPlaybackAudioDevices that are opened by this player. null
+	 * restores the default behaviour. Takes effect with the next insert.
+	 */
+	public void setLatencyProfile(LatencyProfile pLatencyProfile) {
+		this.mLock.lock();
+		try {
+			this.mLatencyProfile = pLatencyProfile;
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	public LatencyProfile getLatencyProfile() {
+		return this.mLatencyProfile;
+	}
+
+	/**
+	 * @return the output latency in microseconds that the line of the current
+	 *         AudioDevice actually uses (from its buffer size) or
+	 *         AudioSystem.NOT_SPECIFIED if the AudioDevice is no opened
+	 *         JavaSoundPlaybackAudioDevice
+	 */
+	public long getAchievedLatency() {
+		AudioDevice audioDevice = this.mCurrentAudioDevice;
+		if ( !(audioDevice instanceof JavaSoundPlaybackAudioDevice) ) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		DataLine line = ((JavaSoundPlaybackAudioDevice) audioDevice).getDataLine();
+		if ( line == null ) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		AudioFormat format = line.getFormat();
+		if ( format.getFrameSize() <= 0 || format.getFrameRate() <= 0 ) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		long frames = line.getBufferSize() / format.getFrameSize();
+		return (long) (frames * 1000000d / format.getFrameRate());
+	}
+
+	/**
+	 * enables or disables the recording of {@link PlaybackMetrics} for this
+	 * player. Enabled metrics are registered as an MBean (together with the
+	 * aggregate of all players) and unregistered if disabled again or the
+	 * player is closed. Takes effect with the next insert.
+	 *
+	 * @throws MusicPlayerException
+	 *             if the MBean couldn't be (un)registered
+	 */
+	public void setMetricsEnabled(boolean pEnabled) throws MusicPlayerException {
+		this.mLock.lock();
+		try {
+			if ( pEnabled && this.mMetrics == null ) {
+				PlaybackMetrics metrics = PlaybackMetrics.create();
+				try {
+					metrics.register();
+				}
+				catch (JMException e) {
+					throw new MusicPlayerException( "couldn't register the metrics", e );
+				}
+				this.mMetrics = metrics;
+			}
+			else if ( !pEnabled && this.mMetrics != null ) {
+				this.unregisterMetrics();
+			}
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	public boolean isMetricsEnabled() {
+		return this.mMetrics != null;
+	}
+
+	/**
+	 * @return the metrics of this player or null if they are disabled
+	 */
+	public PlaybackMetrics getMetrics() {
+		return this.mMetrics;
+	}
+
+	/**
+	 * @return the AudioProcessorChain that is applied to the audio of every
+	 *         Song before it is written to the AudioDevice. AudioProcessors
+	 *         may be added, removed and bypassed while playing
+	 */
+	public AudioProcessorChain getProcessorChain() {
+		return this.mProcessorChain;
+	}
+
+	/**
+	 * sets the listener that gets the position of the playhead every
+	 * pInterval milliseconds while the player is playing (and the position
+	 * changed). null stops the progress events. The events of all players are
+	 * sent from one timer thread.
+	 */
+	public void setProgressListener(ProgressListener pProgressListener, long pInterval) {
+		if ( pProgressListener != null && pInterval <= 0 ) {
+			throw new IllegalArgumentException( "pInterval has to be positive" );
+		}
+		this.mLock.lock();
+		try {
+			if ( this.mProgressTask != null ) {
+				this.mProgressTask.cancel( false );
+				this.mProgressTask = null;
+			}
+			this.mProgressListener = pProgressListener;
+			if ( pProgressListener != null ) {
+				this.mProgressTask = getProgressTimer().scheduleAtFixedRate(
+						new ProgressTask( pProgressListener ),
+						pInterval,
+						pInterval,
+						TimeUnit.MILLISECONDS
+				);
+			}
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	public ProgressListener getProgressListener() {
+		return this.mProgressListener;
+	}
+
+	/**
+	 * reads the volatile field once without the lock, so polling the playhead
+	 * never waits for a command and works before the first insert
+	 */
+	@Override
+	public long getPlayheadFrame() {
+		StreamPlayerRunnable runnable = this.mStreamPlayerRunnable;
+		return runnable != null ? runnable.getPlayheadFrame() : -1;
+	}
+
+	@Override
+	public long getPlayheadMicroseconds() {
+		StreamPlayerRunnable runnable = this.mStreamPlayerRunnable;
+		return runnable != null ? runnable.getPlayheadMicroseconds() : -1;
+	}
+
+	@Override
+	public long getOutputLatency() {
+		StreamPlayerRunnable runnable = this.mStreamPlayerRunnable;
+		return runnable != null ? runnable.getOutputLatency() : -1;
+	}
+
+	/**
+	 * reads the volatile field without the lock
+	 */
+	private StreamPlayerRunnable getRunnable() {
+		StreamPlayerRunnable runnable = this.mStreamPlayerRunnable;
+		if ( runnable == null ) {
+			throw new IllegalStateException(
+					this +
+							" has not been initialized yet!"
+			);
+		}
+		return runnable;
+	}
+
+	private static synchronized ScheduledExecutorService getProgressTimer() {
+		if ( sProgressTimer == null ) {
+			sProgressTimer = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactory() {
+
+						@Override
+						public Thread newThread(Runnable pRunnable) {
+							Thread thread = new Thread( pRunnable, "HotSound-Progress" );
+							thread.setDaemon( true );
+							return thread;
+						}
+
+					}
+			);
+		}
+		return sProgressTimer;
 	}
 
 	/**
@@ -183,31 +563,116 @@ public final class StreamMusicPlayer implements MusicPlayer {
 		this.mLock.lock();
 		try {
 			this.insertInternal( pSong, pAudioDevice );
+			//it was meant to follow the Song that has been replaced
+			this.mPendingNextSong = null;
+		}
+		finally {
+			this.mLock.unlock();
+		}
+	}
+
+	/**
+	 * enqueues the Song to be played after the current one on the current
+	 * AudioDevice. The Audio is opened and the first chunk decoded in the
+	 * background while the current Song is still playing. If the formats of
+	 * both match, the playback continues without a gap and without reopening
+	 * the AudioDevice. Otherwise the Song is inserted and started as soon as
+	 * the current one has ended. If the current Song has already played to
+	 * the end, the Song is inserted and started right away. If the playback
+	 * has been stopped or failed, the player stays stopped and the Song is
+	 * enqueued once the playback is started again. A Song that has been
+	 * enqueued before and not yet been played is discarded.
+	 *
+	 * @throws IllegalStateException
+	 *             if no Song has been inserted yet
+	 */
+	public void enqueueNext(Song pSong) throws MusicPlayerException {
+		if ( pSong == null ) {
+			throw new NullPointerException( "pSong may not be null" );
+		}
+		this.mLock.lock();
+		try {
+			PlayerState state = this.mState.get();
+			state.checkInitialized();
+			if ( state.getType() == PlayerState.Type.DONE ) {
+				this.insertInternal( pSong, this.mCurrentAudioDevice );
+				this.start();
+				return;
+			}
+			if ( state.getType().isEnded() ) {
+				//stopped by the user, don't start the playback behind their back
+				this.mPendingNextSong = pSong;
+				return;
+			}
+			this.mPendingNextSong = null;
+			this.setNextSong( pSong );
 		}
 		finally {
 			this.mLock.unlock();
 		}
 	}
 
+	/**
+	 * enqueues the Song that has been passed to {@link #enqueueNext(Song)}
+	 * while the player was stopped. called with the lock held after the
+	 * playback has been started
+	 */
+	private void enqueuePendingSong() throws MusicPlayerException {
+		Song pending = this.mPendingNextSong;
+		if ( pending != null ) {
+			this.mPendingNextSong = null;
+			this.setNextSong( pending );
+		}
+	}
+
+	/**
+	 * opens the Song in the background to be played after the running one.
+	 * called with the lock held
+	 */
+	private void setNextSong(Song pSong) throws MusicPlayerException {
+		NextSong next = new NextSong(
+				pSong,
+				this.mBufferSize,
+				this.mLatencyProfile,
+				getMixer( this.mCurrentAudioDevice )
+		);
+		if ( !this.mStreamPlayerRunnable.setNextSong( next ) ) {
+			//the playback ended in the meantime
+			this.joinCurrent();
+			this.insertInternal( pSong, this.mCurrentAudioDevice );
+			this.start();
+			return;
+		}
+		if ( this.mDecodingExecutor == null ) {
+			this.mDecodingExecutor = Executors.newCachedThreadPool();
+		}
+		this.mDecodingExecutor.execute( next );
+	}
+
+	/**
+	 * @inheritDoc
+	 * @throws MusicPlayerException
+	 *             if the player uses a PlaybackScheduler whose playback
+	 *             threads are all in use
+	 */
 	@Override
 	public void start() throws MusicPlayerException {
 		this.mLock.lock();
 		try {
-			if ( this.mStreamPlayerRunnable == null ) {
-				throw new IllegalStateException(
-						this +
-								" has not been initialized yet!"
-				);
-			}
-			if ( !this.mStreamPlayerRunnable.isStopped() &&
-					this.mStreamPlayerRunnable.isAlreadyStarted() ) {
-				throw new IllegalStateException( "Player is already playing" );
+			if ( this.mState.get().getType().isEnded() ) {
+				//the Runnable can't be started twice
+				this.restart();
+				return;
 			}
+			this.mState.get().checkTransition( PlayerState.Type.PLAYING );
+			this.acquirePlaybackThreads( this.mStreamPlayerRunnable );
+			this.transition( PlayerState.Type.PLAYING );
 			this.mStreamPlayerRunnable.mStopped = false;
 			if ( this.mCreateOwnThread && this.mPlaybackExecutor == null ) {
 				this.mPlaybackExecutor = Executors.newSingleThreadExecutor();
 			}
 			this.mPlaybackExecutor.execute( this.mStreamPlayerRunnable );
+			this.enqueuePendingSong();
 		}
 		finally {
 			this.mLock.unlock();
@@ -216,30 +681,40 @@ public final class StreamMusicPlayer implements MusicPlayer {
 
 	@Override
 	public void restart() throws MusicPlayerException {
-		if ( this.mStreamPlayerRunnable == null ) {
-			throw new IllegalStateException( "can't restart. not started yet" );
+		this.mLock.lock();
+		try {
+			this.restartAt( 0 );
 		}
-		if ( this.mStreamPlayerRunnable.isStopped() ) {
-			try {
-				this.mStreamPlayerRunnable.join();
-			}
-			catch (InterruptedException e) {
-				throw new MusicPlayerException( e );
-			}
-			this.mStreamPlayerRunnable.reset();
-			this.mStreamPlayerRunnable.seek( 0 );
-			this.mPlaybackExecutor.execute( this.mStreamPlayerRunnable );
+		finally {
+			this.mLock.unlock();
 		}
-		else {
-			this.mStreamPlayerRunnable.seek( 0 );
+	}
+
+	/**
+	 * seeks to the given frame if playing or starts the ended playback again
+	 * from it
+	 */
+	private void restartAt(long pFrame) throws MusicPlayerException {
+		PlayerState state = this.mState.get();
+		if ( state.getType().isRunning() ) {
+			this.awaitCommand( this.mStreamPlayerRunnable.seek( pFrame ) );
+			return;
+		}
+		state.checkRestart();
+		try {
+			this.mStreamPlayerRunnable.join();
 		}
+		catch (InterruptedException e) {
+			throw new MusicPlayerException( e );
+		}
+		this.restartAt( this.mStreamPlayerRunnable, pFrame );
 	}
 
 	@Override
 	public void pause(boolean pPause) {
 		this.mLock.lock();
 		try {
-			if ( this.mStreamPlayerRunnable != null ) {
+			if ( this.setPausedState( pPause ) ) {
 				this.mStreamPlayerRunnable.pause( pPause );
 			}
 		}
@@ -248,12 +723,38 @@ public final class StreamMusicPlayer implements MusicPlayer {
 		}
 	}
 
+	/**
+	 * @return false if no Song has been inserted
+	 */
+	private boolean setPausedState(boolean pPause) {
+		PlayerState current;
+		do {
+			current = this.mState.get();
+			if ( current.getType() == PlayerState.Type.EMPTY ) {
+				return false;
+			}
+		}
+		while ( !this.mState.compareAndSet( current, current.withPaused( pPause ) ) );
+		return true;
+	}
+
 	@Override
 	public void stop() throws MusicPlayerException {
 		this.mLock.lock();
 		try {
 			if ( this.mStreamPlayerRunnable != null ) {
-				this.mStreamPlayerRunnable.stop();
+				//the AudioDevice may only be closed after the last write
+				this.awaitCommand( this.mStreamPlayerRunnable.stop() );
+				PlayerState current;
+				do {
+					current = this.mState.get();
+				}
+				while ( !this.mState.compareAndSet(
+						current,
+						current.withPaused( false ).withType(
+								current.getType().isRunning() ? PlayerState.Type.STOPPED : current.getType()
+						)
+				) );
 			}
 			if ( this.mCurrentAudioDevice != null ) {
 				this.mCurrentAudioDevice.close();
@@ -264,51 +765,68 @@ public final class StreamMusicPlayer implements MusicPlayer {
 		}
 	}
 
+	/**
+	 * @return the current state. never blocks
+	 */
+	public PlayerState getState() {
+		return this.mState.get();
+	}
+
 	@Override
 	public boolean isStopped() {
-		this.mLock.lock();
-		try {
-			return this.mStreamPlayerRunnable == null ||
-					this.mStreamPlayerRunnable.isStopped() ||
-					!this.mStreamPlayerRunnable.isAlreadyStarted();
-		}
-		finally {
-			this.mLock.unlock();
-		}
+		return this.mState.get().isStopped();
 	}
 
 	@Override
 	public boolean isPaused() {
-		this.mLock.lock();
-		try {
-			return this.mStreamPlayerRunnable == null ||
-					this.mStreamPlayerRunnable.isPaused();
-		}
-		finally {
-			this.mLock.unlock();
-		}
+		return this.mState.get().isPaused();
 	}
 
 	@Override
 	public void close() throws MusicPlayerException {
 		this.mLock.lock();
 		try {
+			if ( this.mStreamPlayerRunnable != null ) {
+				this.mStreamPlayerRunnable.cancelNextSong();
+			}
+			this.mPendingNextSong = null;
 			//auto close the current audio
 			try (Audio audio = this.mCurrentAudio) {
 				this.stop();
 				if ( this.mCreateOwnThread && this.mPlaybackExecutor != null ) {
 					((ExecutorService) this.mPlaybackExecutor).shutdown();
 				}
-				this.mSignallingExecutor.shutdown();
+				if ( this.mScheduler == null ) {
+					if ( this.mDecodingExecutor != null ) {
+						this.mDecodingExecutor.shutdown();
+					}
+					if ( this.mControlExecutor != null ) {
+						this.mControlExecutor.shutdown();
+					}
+					this.mSignallingExecutor.shutdown();
+				}
 			}
 			finally {
 				if ( this.mCreateOwnThread ) {
 					this.mPlaybackExecutor = null;
 				}
+				if ( this.mScheduler == null ) {
+					this.mDecodingExecutor = null;
+					this.mControlExecutor = null;
+				}
 				this.mStreamPlayerRunnable = null;
 				this.mCurrentAudio = null;
 				this.mCurrentAudioDevice = null;
 				this.mCurrentSong = null;
+				this.transition( PlayerState.Type.EMPTY );
+				this.releasePlaybackThreads();
+				if ( this.mProgressTask != null ) {
+					this.mProgressTask.cancel( false );
+					this.mProgressTask = null;
+				}
+				if ( this.mMetrics != null ) {
+					this.unregisterMetrics();
+				}
 			}
 		}
 		finally {
@@ -316,17 +834,54 @@ public final class StreamMusicPlayer implements MusicPlayer {
 		}
 	}
 
+	private void unregisterMetrics() throws MusicPlayerException {
+		PlaybackMetrics metrics = this.mMetrics;
+		this.mMetrics = null;
+		try {
+			metrics.unregister();
+		}
+		catch (JMException e) {
+			throw new MusicPlayerException( "couldn't unregister the metrics", e );
+		}
+	}
+
 	@Override
 	public AudioFormat getAudioFormat() {
+		PlayerState state = this.mState.get();
+		state.checkInitialized();
+		return state.getAudioFormat();
+	}
+
+	@Override
+	public AudioDevice getAudioDevice() {
+		PlayerState state = this.mState.get();
+		state.checkInitialized();
+		return state.getAudioDevice();
+	}
+
+	/**
+	 * @inheritDoc skips relative to the current position. Like
+	 *             {@link #seek(long)} a skip before the start is applied as
+	 *             soon as the playback starts and a skip after the end
+	 *             restarts the playback relative to where it ended
+	 */
+	@Override
+	public void skip(long pFrames) throws MusicPlayerException {
 		this.mLock.lock();
 		try {
-			if ( this.mStreamPlayerRunnable == null ) {
-				throw new IllegalStateException(
-						this +
-								" has not been initialized yet!"
-				);
+			PlayerState state = this.mState.get();
+			state.checkSeek( this.canSeek() );
+			if ( state.getType() == PlayerState.Type.LOADED ) {
+				//applied as soon as it is started
+				this.mStreamPlayerRunnable.skip( pFrames );
+			}
+			else if ( state.getType().isRunning() ) {
+				this.awaitCommand( this.mStreamPlayerRunnable.skip( pFrames ) );
+			}
+			else {
+				long position = Math.max( 0, this.mStreamPlayerRunnable.getPlayheadFrame() );
+				this.restartAt( Math.max( 0, position + pFrames ) );
 			}
-			return this.mStreamPlayerRunnable.getAudioFormat();
 		}
 		finally {
 			this.mLock.unlock();
@@ -334,16 +889,18 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	}
 
 	@Override
-	public AudioDevice getAudioDevice() {
+	public void seek(long pFrame) throws MusicPlayerException {
 		this.mLock.lock();
 		try {
-			if ( this.mStreamPlayerRunnable == null ) {
-				throw new IllegalStateException(
-						this +
-								" has not been initialized yet!"
-				);
+			PlayerState state = this.mState.get();
+			state.checkSeek( this.canSeek() );
+			if ( state.getType() == PlayerState.Type.LOADED ) {
+				//applied as soon as it is started
+				this.mStreamPlayerRunnable.seek( pFrame );
+			}
+			else {
+				this.restartAt( pFrame );
 			}
-			return this.mStreamPlayerRunnable.getAudioDevice();
 		}
 		finally {
 			this.mLock.unlock();
@@ -351,36 +908,281 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	}
 
 	@Override
-	public void skip(long pFrames) throws MusicPlayerException {
+	public boolean canSeek() {
+		return this.mStreamPlayerRunnable != null &&
+				this.mStreamPlayerRunnable.canSeek();
+	}
+
+	/**
+	 * @inheritDoc waits for the end of the current playback without blocking
+	 *             any thread if there is one
+	 */
+	@Override
+	public CompletableFuture<Void> insertAsync(final Song pSong, final AudioDevice pAudioDevice) {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						StreamPlayerRunnable runnable = StreamMusicPlayer.this.mStreamPlayerRunnable;
+						CompletableFuture<Void> previous = runnable != null && runnable.isRunning() ?
+								runnable.getFinished() : CompletableFuture.<Void> completedFuture( null );
+						return previous.thenComposeAsync(
+								new ControlFunction() {
+
+									@Override
+									protected CompletableFuture<Void> apply() throws Exception {
+										StreamMusicPlayer.this.insert( pSong, pAudioDevice );
+										return null;
+									}
+
+								},
+								pExecutor
+						);
+					}
+
+				},
+				true
+		);
+	}
+
+	@Override
+	public CompletableFuture<Void> startAsync() {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						StreamMusicPlayer.this.start();
+						return StreamMusicPlayer.this.getRunnable().getStarted();
+					}
+
+				},
+				false
+		);
+	}
+
+	@Override
+	public CompletableFuture<Void> pauseAsync(final boolean pPause) {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						StreamPlayerRunnable runnable = StreamMusicPlayer.this.mStreamPlayerRunnable;
+						if ( runnable == null || !StreamMusicPlayer.this.setPausedState( pPause ) ) {
+							return null;
+						}
+						return runnable.pause( pPause );
+					}
+
+				},
+				false
+		);
+	}
+
+	@Override
+	public CompletableFuture<Void> seekAsync(final long pFrame) {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						PlayerState state = StreamMusicPlayer.this.mState.get();
+						state.checkSeek( StreamMusicPlayer.this.canSeek() );
+						final StreamPlayerRunnable runnable = StreamMusicPlayer.this.getRunnable();
+						PlayerState.Type type = state.getType();
+						if ( type.isRunning() || type == PlayerState.Type.LOADED ) {
+							return runnable.seek( pFrame );
+						}
+						//the playback has ended (or is about to), so restart it
+						return runnable.getFinished().thenComposeAsync(
+								new ControlFunction() {
+
+									@Override
+									protected CompletableFuture<Void> apply() throws Exception {
+										return StreamMusicPlayer.this.restartAt( runnable, pFrame );
+									}
+
+								},
+								pExecutor
+						);
+					}
+
+				},
+				false
+		);
+	}
+
+	@Override
+	public CompletableFuture<Void> stopAsync() {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						StreamPlayerRunnable runnable = StreamMusicPlayer.this.mStreamPlayerRunnable;
+						CompletableFuture<Void> finished = runnable != null ? runnable.stop() :
+								CompletableFuture.<Void> completedFuture( null );
+						return finished.thenComposeAsync(
+								new ControlFunction() {
+
+									@Override
+									protected CompletableFuture<Void> apply() throws Exception {
+										//the playback is done, so this doesn't block anymore
+										StreamMusicPlayer.this.stop();
+										return null;
+									}
+
+								},
+								pExecutor
+						);
+					}
+
+				},
+				true
+		);
+	}
+
+	@Override
+	public CompletableFuture<Void> closeAsync() {
+		return this.submitControl(
+				new ControlTask() {
+
+					@Override
+					public CompletableFuture<Void> run(Executor pExecutor) throws Exception {
+						StreamPlayerRunnable runnable = StreamMusicPlayer.this.mStreamPlayerRunnable;
+						CompletableFuture<Void> finished = runnable != null ? runnable.stop() :
+								CompletableFuture.<Void> completedFuture( null );
+						return finished.thenComposeAsync(
+								new ControlFunction() {
+
+									@Override
+									protected CompletableFuture<Void> apply() throws Exception {
+										StreamMusicPlayer.this.close();
+										return null;
+									}
+
+								},
+								pExecutor
+						);
+					}
+
+				},
+				true
+		);
+	}
+
+	/**
+	 * restarts the given (done) StreamPlayerRunnable at the given frame if it
+	 * is still the current one
+	 */
+	private CompletableFuture<Void> restartAt(StreamPlayerRunnable pRunnable, long pFrame) throws MusicPlayerException {
 		this.mLock.lock();
 		try {
-			if ( this.mStreamPlayerRunnable == null ) {
-				throw new IllegalStateException( "can't skip" );
+			if ( this.mStreamPlayerRunnable != pRunnable ) {
+				throw new IllegalStateException( "another Song has been inserted in the meantime" );
 			}
-			if ( !this.mStreamPlayerRunnable.isStopped() &&
-					!this.mStreamPlayerRunnable.isDone() ) {
-				this.mStreamPlayerRunnable.skip( pFrames );
+			this.mState.get().checkRestart();
+			if ( this.mCurrentAudioDevice.isClosed() ) {
+				//stop() closes the AudioDevice
+				this.mCurrentAudioDevice.open( pRunnable.getAudioFormat() );
 			}
+			this.acquirePlaybackThreads( pRunnable );
+			pRunnable.reset();
+			CompletableFuture<Void> seek = pRunnable.seek( pFrame );
+			this.transition( PlayerState.Type.PLAYING );
+			this.mPlaybackExecutor.execute( pRunnable );
+			this.enqueuePendingSong();
+			return seek;
 		}
 		finally {
 			this.mLock.unlock();
 		}
 	}
 
-	@Override
-	public void seek(long pFrame) throws MusicPlayerException {
+	/**
+	 * runs the given task on the control Executor after the previous one
+	 *
+	 * @param pSequential
+	 *            whether the next task has to wait until the future of this
+	 *            one is completed or only until this one has been run
+	 * @return a future that is completed with the future of the task. it is
+	 *         completed on the control Executor, never on a playback thread
+	 */
+	private CompletableFuture<Void> submitControl(final ControlTask pTask, final boolean pSequential) {
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+		final Executor executor = this.getControlExecutor();
+		CompletableFuture<Void> previous = this.mLastControl.getAndSet( done );
+		previous.whenComplete(
+				new BiConsumer<Void, Throwable>() {
+
+					@Override
+					public void accept(Void pVoid, Throwable pThrowable) {
+						try {
+							executor.execute(
+									new Runnable() {
+
+										@Override
+										public void run() {
+											CompletableFuture<Void> future;
+											try {
+												future = pTask.run( executor );
+												if ( future == null ) {
+													future = CompletableFuture.completedFuture( null );
+												}
+											}
+											catch (Exception e) {
+												future = new CompletableFuture<>();
+												future.completeExceptionally( e );
+											}
+											future.whenComplete( new Completion( result, executor ) );
+											if ( pSequential ) {
+												future.whenComplete( new Completion( done, null ) );
+											}
+											else {
+												done.complete( null );
+											}
+										}
+
+									}
+							);
+						}
+						catch (RejectedExecutionException e) {
+							result.completeExceptionally( e );
+							done.complete( null );
+						}
+					}
+
+				}
+		);
+		return result;
+	}
+
+	private Executor getControlExecutor() {
 		this.mLock.lock();
 		try {
-			if ( !this.canSeek() ) {
-				throw new IllegalStateException( "can't seek" );
+			if ( this.mScheduler != null ) {
+				//never the playback threads, those may all be in use
+				return this.mScheduler.getControlExecutor();
 			}
-			if ( !this.mStreamPlayerRunnable.isStopped() &&
-					!this.mStreamPlayerRunnable.isDone() ) {
-				this.mStreamPlayerRunnable.seek( pFrame );
-			}
-			else {
-				this.restart();
+			if ( this.mControlExecutor == null ) {
+				//only runs short tasks, nothing that should keep the VM alive
+				this.mControlExecutor = Executors.newSingleThreadExecutor(
+						new ThreadFactory() {
+
+							@Override
+							public Thread newThread(Runnable pRunnable) {
+								Thread thread = new Thread( pRunnable, "HotSound-Control" );
+								thread.setDaemon( true );
+								return thread;
+							}
+
+						}
+				);
 			}
+			return this.mControlExecutor;
 		}
 		finally {
 			this.mLock.unlock();
@@ -388,28 +1190,265 @@ public final class StreamMusicPlayer implements MusicPlayer {
 	}
 
 	@Override
-	public boolean canSeek() {
-		return this.mStreamPlayerRunnable != null &&
-				this.mStreamPlayerRunnable.canSeek();
+	public String toString() {
+		PlayerState state = this.mState.get();
+		StringBuilder builder = new StringBuilder();
+		return builder.append( "[" ).append( this.getClass().getSimpleName() )
+				.append( ": Current Song: " ).append( state.getSong() )
+				.append( " " ).append( "Current AudioDevice: " )
+				.append( state.getAudioDevice() ).append( "]" ).toString();
 	}
 
-	@Override
-	public String toString() {
+	/**
+	 * inserts and starts the NextSong that couldn't be played gapless
+	 */
+	private void playNextSong(NextSong pNextSong) {
 		this.mLock.lock();
 		try {
-			StringBuilder builder = new StringBuilder();
-			return builder.append( "[" ).append( this.getClass().getSimpleName() )
-					.append( ": Current Song: " ).append( this.mCurrentSong )
-					.append( " " ).append( "Current AudioDevice: " )
-					.append( this.mCurrentAudioDevice ).append( "]" ).toString();
+			try {
+				pNextSong.await();
+				if ( !pNextSong.isReady() ) {
+					MusicPlayerException exception = pNextSong.getException();
+					throw exception != null ? exception
+							: new MusicPlayerException( "the next Song has been cancelled" );
+				}
+				this.joinCurrent();
+				if ( this.mCurrentAudio != null && !this.mCurrentAudio.isClosed() ) {
+					this.mCurrentAudio.close();
+				}
+				this.mCurrentSong = pNextSong.getSong();
+				this.mCurrentAudio = pNextSong.getAudio();
+				//the chunk decoded ahead has to fit into the chunks of the Runnable
+				this.prepareRunnable( this.mCurrentAudioDevice, pNextSong.getChunkSize() );
+				this.load();
+				this.mStreamPlayerRunnable.setPrimer( pNextSong );
+				this.start();
+			}
+			catch (InterruptedException e) {
+				throw new MusicPlayerException( e );
+			}
+		}
+		catch (MusicPlayerException e) {
+			pNextSong.cancel();
+			this.mPlayerRunnableListener.onException( new MusicExceptionEvent( this, e ) );
+			this.mPlayerRunnableListener.onEnd( new MusicEndEvent( this, MusicEndEvent.Type.FAILURE ) );
 		}
 		finally {
 			this.mLock.unlock();
 		}
 	}
 
-	private void insertInternal(Song pSong, AudioDevice pAudioDevice) throws MusicPlayerException {
-		//FIXME: move the opening and stuff into start.
+	/**
+	 * reserves the threads of the scheduler the given Runnable is about to
+	 * use: the playback thread and the decoding thread if it decodes ahead.
+	 * does nothing if the player holds them already
+	 *
+	 * @throws MusicPlayerException
+	 *             if not enough of them are free
+	 */
+	private void acquirePlaybackThreads(StreamPlayerRunnable pRunnable) throws MusicPlayerException {
+		if ( this.mScheduler == null ) {
+			return;
+		}
+		int threads = pRunnable.isDecodingAhead() ? 2 : 1;
+		if ( this.mPlaybackThreads.compareAndSet( 0, threads ) && !this.mScheduler.tryAcquirePlayback( threads ) ) {
+			this.mPlaybackThreads.set( 0 );
+			throw new MusicPlayerException(
+					"the " + this.mScheduler.getMaxThreads() + " playback threads of " + this.mScheduler +
+							" can't take another player using " + threads + " of them"
+			);
+		}
+	}
+
+	/**
+	 * gives back the threads once the playback has ended
+	 */
+	private void releasePlaybackThreads() {
+		if ( this.mScheduler == null ) {
+			return;
+		}
+		int threads = this.mPlaybackThreads.getAndSet( 0 );
+		if ( threads > 0 ) {
+			this.mScheduler.releasePlayback( threads );
+		}
+	}
+
+	/**
+	 * moves to the given state
+	 *
+	 * @throws IllegalStateException
+	 *             if the current state can't go there
+	 */
+	private void transition(PlayerState.Type pType) {
+		PlayerState current;
+		do {
+			current = this.mState.get();
+			current.checkTransition( pType );
+		}
+		while ( !this.mState.compareAndSet( current, current.withType( pType ) ) );
+	}
+
+	/**
+	 * moves to the given state if the current state can go there. used by the
+	 * playback threads
+	 *
+	 * @return true if the state has been changed
+	 */
+	private boolean tryTransition(PlayerState.Type pType) {
+		PlayerState current;
+		do {
+			current = this.mState.get();
+			if ( !current.getType().canTransitionTo( pType ) ) {
+				return false;
+			}
+		}
+		while ( !this.mState.compareAndSet( current, current.withType( pType ) ) );
+		return true;
+	}
+
+	/**
+	 * moves to the LOADED state for the current Song
+	 */
+	private void load() {
+		PlayerState current;
+		do {
+			current = this.mState.get();
+			current.checkTransition( PlayerState.Type.LOADED );
+		}
+		while ( !this.mState.compareAndSet(
+				current,
+				current.load( this.mCurrentSong, this.mCurrentAudio.getAudioFormat(), this.mCurrentAudioDevice )
+		) );
+	}
+
+	private static PlayerState.Type getEndState(MusicEndEvent.Type pType) {
+		switch ( pType ) {
+			case SUCCESS:
+				return PlayerState.Type.DONE;
+			case MANUALLY_STOPPED:
+				return PlayerState.Type.STOPPED;
+			default:
+				return PlayerState.Type.FAILED;
+		}
+	}
+
+	/**
+	 * @return the Mixer the AudioDevice plays on, null for any or if it
+	 *         doesn't play on a Mixer
+	 */
+	private static Mixer getMixer(AudioDevice pAudioDevice) {
+		if ( pAudioDevice instanceof JavaSoundPlaybackAudioDevice ) {
+			return ((JavaSoundPlaybackAudioDevice) pAudioDevice).getMixer();
+		}
+		return null;
+	}
+
+	/**
+	 * an operation of the AsyncMusicPlayer
+	 */
+	private interface ControlTask {
+
+		/**
+		 * @return the future that is completed by the playback once the
+		 *         operation has taken effect, null if it already has
+		 */
+		public CompletableFuture<Void> run(Executor pExecutor) throws Exception;
+
+	}
+
+	/**
+	 * the part of a ControlTask that has to wait for the playback
+	 */
+	private abstract static class ControlFunction implements Function<Void, CompletableFuture<Void>> {
+
+		@Override
+		public final CompletableFuture<Void> apply(Void pVoid) {
+			try {
+				CompletableFuture<Void> future = this.apply();
+				return future != null ? future : CompletableFuture.<Void> completedFuture( null );
+			}
+			catch (Exception e) {
+				throw new CompletionException( e );
+			}
+		}
+
+		protected abstract CompletableFuture<Void> apply() throws Exception;
+
+	}
+
+	/**
+	 * passes the outcome of a future on to another one, on the given Executor
+	 * if there is one and it still accepts tasks
+	 */
+	private static final class Completion implements BiConsumer<Void, Throwable> {
+
+		private final CompletableFuture<Void> mTarget;
+		private final Executor mExecutor;
+
+		public Completion(CompletableFuture<Void> pTarget, Executor pExecutor) {
+			this.mTarget = pTarget;
+			this.mExecutor = pExecutor;
+		}
+
+		@Override
+		public void accept(Void pVoid, final Throwable pThrowable) {
+			if ( this.mExecutor != null ) {
+				try {
+					this.mExecutor.execute(
+							new Runnable() {
+
+								@Override
+								public void run() {
+									Completion.this.complete( pThrowable );
+								}
+
+							}
+					);
+					return;
+				}
+				catch (RejectedExecutionException e) {
+					//closed in the meantime
+				}
+			}
+			this.complete( pThrowable );
+		}
+
+		private void complete(Throwable pThrowable) {
+			if ( pThrowable == null ) {
+				this.mTarget.complete( null );
+			}
+			else if ( pThrowable instanceof CompletionException && pThrowable.getCause() != null ) {
+				this.mTarget.completeExceptionally( pThrowable.getCause() );
+			}
+			else {
+				this.mTarget.completeExceptionally( pThrowable );
+			}
+		}
+
+	}
+
+	/**
+	 * waits until a command posted to the StreamPlayerRunnable has taken
+	 * effect. Commands posted before the playback thread runs are applied as
+	 * soon as it starts, so they are not waited for
+	 */
+	private void awaitCommand(CompletableFuture<Void> pCommand) throws MusicPlayerException {
+		if ( !this.mStreamPlayerRunnable.isRunning() ) {
+			return;
+		}
+		try {
+			pCommand.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MusicPlayerException( "interrupted while waiting for the playback", e );
+		}
+		catch (ExecutionException e) {
+			throw new MusicPlayerException( e.getCause() );
+		}
+	}
+
+	private void joinCurrent() throws MusicPlayerException {
 		if ( this.mStreamPlayerRunnable != null ) {
 			if ( !this.mStreamPlayerRunnable.isStopped() ) {
 				throw new IllegalStateException( "You can only insert Songs while the Player is stopped!" );
@@ -426,32 +1465,128 @@ public final class StreamMusicPlayer implements MusicPlayer {
 				}
 			}
 		}
+	}
+
+	private void insertInternal(Song pSong, AudioDevice pAudioDevice) throws MusicPlayerException {
+		//FIXME: move the opening and stuff into start.
+		this.mState.get().checkTransition( PlayerState.Type.LOADED );
+		this.joinCurrent();
+		if ( this.mStreamPlayerRunnable != null ) {
+			this.mStreamPlayerRunnable.cancelNextSong();
+		}
 		if ( this.mCurrentAudio != null && !this.mCurrentAudio.isClosed() ) {
 			this.mCurrentAudio.close();
 		}
 		try {
+			Object event = PlaybackEvents.beginSongOpen();
 			this.mCurrentSong = pSong;
 			this.mCurrentAudio = pSong.getAudio();
+			this.mCurrentAudio.setMixer( getMixer( pAudioDevice ) );
 			this.mCurrentAudio.open();
+			PlaybackEvents.commitSongOpen( event, pSong, this.mCurrentAudio.getAudioFormat() );
 		}
 		catch (MusicPlayerException e) {
 			this.mCurrentAudio = null;
 			this.mCurrentSong = null;
 			throw e;
 		}
+		this.prepareRunnable( pAudioDevice, AudioSystem.NOT_SPECIFIED );
+		this.load();
+	}
+
+	/**
+	 * opens the AudioDevice for the current Audio and creates the Runnable
+	 * playing it
+	 *
+	 * @param pChunkSize
+	 *            the chunk size to use or AudioSystem.NOT_SPECIFIED to derive
+	 *            it from the buffer size and the LatencyProfile
+	 */
+	private void prepareRunnable(AudioDevice pAudioDevice, int pChunkSize) throws MusicPlayerException {
 		this.mCurrentAudioDevice = pAudioDevice;
+		AudioFormat format = this.mCurrentAudio.getAudioFormat();
+		int bufferSize = pChunkSize;
+		if ( bufferSize <= 0 ) {
+			bufferSize = this.mBufferSize;
+			if ( bufferSize <= 0 && this.mLatencyProfile != null ) {
+				bufferSize = this.mLatencyProfile.getChunkSize( format );
+			}
+		}
+		if ( this.mLatencyProfile != null ) {
+			if ( this.mCurrentAudioDevice instanceof JavaSoundPlaybackAudioDevice &&
+					this.mCurrentAudioDevice.isClosed() ) {
+				((JavaSoundPlaybackAudioDevice) this.mCurrentAudioDevice)
+						.setBufferSize( this.mLatencyProfile.getBufferSize( format ) );
+			}
+		}
+		if ( this.mCurrentAudioDevice instanceof MeteredAudioDevice ) {
+			((MeteredAudioDevice) this.mCurrentAudioDevice).setPlaybackMetrics( this.mMetrics );
+		}
 		if ( this.mCurrentAudioDevice.isClosed() ) {
-			this.mCurrentAudioDevice.open( this.mCurrentAudio.getAudioFormat() );
+			this.mCurrentAudioDevice.open( format );
 		}
 		else {
-			this.mCurrentAudioDevice.reopen( this.mCurrentAudio.getAudioFormat() );
+			this.mCurrentAudioDevice.reopen( format );
+		}
+		int ringDepth = this.mRingDepth;
+		if ( ringDepth > 0 && this.mDecodingExecutor == null ) {
+			this.mDecodingExecutor = Executors.newCachedThreadPool();
 		}
 		this.mStreamPlayerRunnable = new StreamPlayerRunnable(
 				this.mCurrentAudio,
 				this.mCurrentAudioDevice,
 				this,
-				this.mPlayerRunnableListener
+				this.mPlayerRunnableListener,
+				ringDepth,
+				bufferSize,
+				this.mDecodingExecutor
 		);
+		this.mStreamPlayerRunnable.setMetrics( this.mMetrics );
+		this.mStreamPlayerRunnable.setProcessorChain( this.mProcessorChain );
+	}
+
+	/**
+	 * sends the position of the playhead to the ProgressListener if the
+	 * player is playing and the position changed
+	 */
+	private final class ProgressTask implements Runnable {
+
+		private final ProgressListener mListener;
+		private long mLastFrame;
+
+		public ProgressTask(ProgressListener pListener) {
+			this.mListener = pListener;
+			this.mLastFrame = -1;
+		}
+
+		@Override
+		public void run() {
+			StreamPlayerRunnable runnable = StreamMusicPlayer.this.mStreamPlayerRunnable;
+			if ( runnable == null || !runnable.isAlreadyStarted() ||
+					StreamMusicPlayer.this.mState.get().getType() != PlayerState.Type.PLAYING ) {
+				return;
+			}
+			long frame = runnable.getPlayheadFrame();
+			if ( frame < 0 || frame == this.mLastFrame ) {
+				return;
+			}
+			this.mLastFrame = frame;
+			try {
+				this.mListener.onProgress(
+						new ProgressEvent(
+								StreamMusicPlayer.this,
+								StreamMusicPlayer.this.mCurrentSong,
+								frame,
+								(long) (frame * 1000000d / runnable.getAudioFormat().getFrameRate())
+						)
+				);
+			}
+			catch (RuntimeException e) {
+				//the timer must not die because of one listener
+				e.printStackTrace();
+			}
+		}
+
 	}
 
 }
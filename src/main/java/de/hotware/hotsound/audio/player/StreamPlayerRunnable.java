@@ -23,8 +23,14 @@ package de.hotware.hotsound.audio.player;
 import javax.sound.sampled.AudioFormat;
 import java.io.IOException;
 import java.util.EventListener;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import de.hotware.hotsound.audio.data.Audio;
@@ -32,7 +38,6 @@ import de.hotware.hotsound.audio.data.Audio.AudioException;
 import de.hotware.hotsound.audio.data.AudioDevice;
 import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
 import de.hotware.hotsound.audio.data.SeekableAudio;
-import de.hotware.util.Pause;
 
 /**
  * To be used with Executors. Is not thread-safe! Do not execute twice!
@@ -43,6 +48,23 @@ import de.hotware.util.Pause;
  * intelligence without mentioning it, I hereby mention him as inspiration,
  * because his code helped me to write this class.
  *
+ * If a ring depth greater than 0 is used, the playback is split into two
+ * stages: a decoder that runs on the passed decoding Executor and fills a
+ * {@link AudioRingBuffer} and the writer (this Runnable) that drains it into
+ * the AudioDevice. With a ring depth of 0 reading and writing happen one after
+ * another in this Runnable. In both cases all buffers are allocated once.
+ *
+ * If a {@link NextSong} is set and its format matches the current one, the
+ * playback continues with it on the same AudioDevice once the current Audio
+ * has ended.
+ *
+ * Pausing, seeking and skipping don't touch the Audio or the AudioDevice from
+ * the calling thread. They are posted as commands to lock-free mailboxes and
+ * applied by the playback threads between two chunks: pausing by the thread
+ * that writes to the AudioDevice, seeking and skipping by the thread that
+ * reads the Audio. Every command returns a future that is completed as soon
+ * as the command has taken effect, which is at most one chunk later.
+ *
  * TODO: review the stopping process and change if necessary. works but may be
  * bad code.
  *
@@ -51,43 +73,149 @@ import de.hotware.util.Pause;
 final class StreamPlayerRunnable implements Runnable {
 
 	protected MusicPlayer mMusicPlayer;
-	protected Pause mPause;
 	protected Lock mJoinLock;
 	protected Condition mJoinCondition;
 	protected StreamPlayerRunnableListener mPlayerRunnableListener;
-	protected Audio mAudio;
+	protected volatile Audio mAudio;
 	protected AudioDevice mAudioDevice;
+	protected Executor mDecodingExecutor;
+	/**
+	 * null if decoding is done in the writing thread
+	 */
+	protected AudioRingBuffer mRingBuffer;
+	/**
+	 * only used if there is no ring buffer
+	 */
+	protected byte[] mBuffer;
+	/**
+	 * frame aligned size of one chunk in bytes
+	 */
+	protected int mBufferSize;
+	/**
+	 * is increased on every seek, so the writer can drop the chunks that
+	 * have been decoded before
+	 */
+	protected volatile int mGeneration;
+	protected volatile Exception mDecodingException;
+	protected AtomicReference<NextSong> mNextSong;
+	/**
+	 * the chunk that has been decoded ahead by a NextSong that couldn't be
+	 * played gapless. written before anything else
+	 */
+	protected NextSong mPrimer;
+	/**
+	 * null if metrics are disabled
+	 */
+	protected PlaybackMetrics mMetrics;
+	/**
+	 * applied to every chunk before it is written. null if there is none
+	 */
+	protected AudioProcessorChain mProcessorChain;
+	/**
+	 * the pending JFR event for the first write, null if it's not recorded
+	 */
+	private Object mFirstByteEvent;
+	protected volatile Playhead mPlayhead;
+	/**
+	 * pause commands, applied by the thread that writes to the AudioDevice
+	 */
+	protected final ConcurrentLinkedQueue<Command> mCommands;
+	/**
+	 * seek and skip commands, applied by the thread that reads the Audio
+	 */
+	protected final ConcurrentLinkedQueue<Command> mAudioCommands;
+	/**
+	 * the thread that is executing {@link #run()}, null if it isn't running
+	 */
+	protected volatile Thread mPlaybackThread;
+	/**
+	 * completed once the first chunk has been written or the Runnable is done
+	 * without writing anything
+	 */
+	protected volatile CompletableFuture<Void> mStarted;
+	/**
+	 * completed once the Runnable is done
+	 */
+	protected volatile CompletableFuture<Void> mFinished;
+	/**
+	 * the state the last pause command asked for
+	 */
+	protected volatile boolean mPauseRequested;
+	/**
+	 * the state the AudioDevice is in. only touched by the playback thread
+	 */
+	protected boolean mPaused;
 
-	protected boolean mAlreadyStarted;
-	protected boolean mPrematureStop;
-	protected boolean mStopped;
-	protected boolean mDone;
+	protected volatile boolean mAlreadyStarted;
+	protected volatile boolean mPrematureStop;
+	protected volatile boolean mStopped;
+	protected volatile boolean mDone;
+	/**
+	 * set as soon as the playback doesn't take a NextSong anymore
+	 */
+	protected volatile boolean mEnded;
 
 	/**
 	 * initializes the StreamPlayerRunnable with the given listener and the
 	 * given Mixer
 	 *
-	 * @throws AudioDeviceException
+	 * @param pRingDepth
+	 *            the amount of chunks to decode ahead. 0 to decode in the
+	 *            playback thread
+	 * @param pBufferSize
+	 *            the size of one chunk in bytes. will be aligned to the frame
+	 *            size. AudioSystem.NOT_SPECIFIED for one second of audio
+	 * @param pDecodingExecutor
+	 *            the Executor the decoder runs on. may only be null if
+	 *            pRingDepth is 0
 	 */
 	public StreamPlayerRunnable(
 			Audio pAudio,
 			AudioDevice pAudioDevice,
 			MusicPlayer pMusicPlayer,
-			StreamPlayerRunnableListener pPlayerRunnableListener) {
+			StreamPlayerRunnableListener pPlayerRunnableListener,
+			int pRingDepth,
+			int pBufferSize,
+			Executor pDecodingExecutor) {
 		if ( pAudioDevice == null || pAudio == null ) {
 			throw new NullPointerException( "the audiodevice and the audio may not be null" );
 		}
+		if ( pRingDepth < 0 ) {
+			throw new IllegalArgumentException( "pRingDepth may not be negative" );
+		}
+		if ( pRingDepth > 0 && pDecodingExecutor == null ) {
+			throw new NullPointerException( "pDecodingExecutor may not be null if decoding ahead" );
+		}
 		this.mMusicPlayer = pMusicPlayer;
 		this.mAudio = pAudio;
 		this.mAudioDevice = pAudioDevice;
 		this.mJoinLock = new ReentrantLock( true );
 		this.mJoinCondition = this.mJoinLock.newCondition();
 		this.mPlayerRunnableListener = pPlayerRunnableListener;
+		this.mDecodingExecutor = pDecodingExecutor;
 		this.mPrematureStop = false;
 		this.mAlreadyStarted = false;
 		this.mStopped = false;
 		this.mDone = false;
-		this.mPause = new Pause();
+		this.mGeneration = 0;
+		this.mNextSong = new AtomicReference<>();
+		this.mCommands = new ConcurrentLinkedQueue<>();
+		this.mAudioCommands = new ConcurrentLinkedQueue<>();
+		this.mStarted = new CompletableFuture<>();
+		this.mFinished = new CompletableFuture<>();
+		this.mPauseRequested = false;
+		this.mPaused = false;
+		AudioFormat format = pAudio.getAudioFormat();
+		if ( format != null ) {
+			this.mBufferSize = getChunkSize( format, pBufferSize );
+			this.mPlayhead = new Playhead( pAudioDevice, format.getFrameSize(), format.getFrameRate() );
+			if ( pRingDepth > 0 ) {
+				this.mRingBuffer = new AudioRingBuffer( pRingDepth, this.mBufferSize );
+			}
+			else {
+				this.mBuffer = new byte[this.mBufferSize];
+			}
+		}
 	}
 
 	/**
@@ -105,29 +233,16 @@ final class StreamPlayerRunnable implements Runnable {
 					throw new IllegalStateException( "has alredy been started once!" );
 				}
 				this.mAlreadyStarted = true;
-				int bytesRead = 0;
-				Audio audio = this.mAudio;
-				AudioDevice dev = this.mAudioDevice;
-				AudioFormat format = audio.getAudioFormat();
-				if ( format != null ) {
-					int bufferSize = (int) format.getSampleRate() *
-							format.getFrameSize();
-					byte[] data = new byte[bufferSize];
-					while ( bytesRead != -1 ) {
-						this.mPause.probe();
-						if ( !this.mStopped ) {
-							bytesRead = audio.read( data, 0, bufferSize );
-							if ( bytesRead != -1 ) {
-								dev.write( data, 0, bytesRead );
-							}
-						}
-						else {
-							break;
-						}
-					}
+				this.mPlaybackThread = Thread.currentThread();
+				this.mFirstByteEvent = PlaybackEvents.beginFirstByte();
+				if ( this.mAudio.getAudioFormat() == null ) {
+					throw new IllegalStateException( "The AudioFormat was null" );
+				}
+				if ( this.mRingBuffer != null ) {
+					this.runPipelined();
 				}
 				else {
-					throw new IllegalStateException( "The AudioFormat was null" );
+					this.runSequential();
 				}
 			}
 			catch (Exception e) {
@@ -153,15 +268,36 @@ final class StreamPlayerRunnable implements Runnable {
 				}
 				this.mStopped = true;
 				final MusicEndEvent.Type finalType = type;
-				StreamPlayerRunnable.this.mPlayerRunnableListener
-						.onEnd(
-								new MusicEndEvent(
-										StreamPlayerRunnable.this.mMusicPlayer,
-										finalType
-								)
-						);
-				this.mJoinCondition.signal();
+				this.mEnded = true;
+				NextSong next = this.mNextSong.getAndSet( null );
+				if ( next != null && finalType == MusicEndEvent.Type.SUCCESS ) {
+					//the player has to take care of the song we couldn't switch to
+					this.mPlayerRunnableListener.onNextSong( next );
+				}
+				else {
+					if ( next != null ) {
+						next.cancel();
+					}
+					StreamPlayerRunnable.this.mPlayerRunnableListener
+							.onEnd(
+									new MusicEndEvent(
+											StreamPlayerRunnable.this.mMusicPlayer,
+											finalType
+									)
+							);
+				}
+				this.mPlaybackThread = null;
 				this.mDone = true;
+				//commands that have been posted too late to be applied
+				this.drainCommands();
+				this.mJoinCondition.signal();
+				if ( exception != null ) {
+					this.mStarted.completeExceptionally( exception );
+				}
+				else {
+					this.mStarted.complete( null );
+				}
+				this.mFinished.complete( null );
 			}
 		}
 		finally {
@@ -169,44 +305,273 @@ final class StreamPlayerRunnable implements Runnable {
 		}
 	}
 
-	public void seek(long pFrame) throws AudioDeviceException {
-		if ( !(this.mAudio instanceof SeekableAudio) ) {
-			throw new UnsupportedOperationException( "seeking is not possible on the current AudioFile" );
+	private void runSequential() throws Exception {
+		int bytesRead = 0;
+		Audio audio = this.mAudio;
+		AudioDevice dev = this.mAudioDevice;
+		byte[] data = this.mBuffer;
+		int bufferSize = this.mBufferSize;
+		PlaybackMetrics metrics = this.mMetrics;
+		int frameSize = audio.getAudioFormat().getFrameSize();
+		//frames read from the current Audio, for Audios that don't know their position
+		long framesRead = 0;
+		NextSong primer = this.takePrimer();
+		if ( primer != null ) {
+			int length = primer.copyData( data );
+			this.writeChunk( dev, data, length, 0, metrics, frameSize );
+			framesRead = length / frameSize;
 		}
-		if ( this.mDone || this.mStopped ) {
-			throw new IllegalStateException( "can't seek if stopped or already done with playing." );
+		while ( bytesRead != -1 ) {
+			this.applyCommands( dev, true );
+			if ( !this.mStopped ) {
+				long start = metrics != null ? System.nanoTime() : 0;
+				Object event = PlaybackEvents.beginDecodeChunk();
+				long position = getFramePosition( audio, framesRead );
+				bytesRead = audio.read( data, 0, bufferSize );
+				if ( bytesRead == -1 ) {
+					NextSong next = this.switchToNextSong();
+					if ( next != null ) {
+						audio = next.getAudio();
+						bytesRead = next.copyData( data );
+						position = 0;
+						framesRead = 0;
+					}
+				}
+				if ( bytesRead > 0 ) {
+					framesRead += bytesRead / frameSize;
+				}
+				PlaybackEvents.commitDecodeChunk( event, audio, bytesRead );
+				if ( metrics != null ) {
+					metrics.recordDecode( System.nanoTime() - start, bytesRead );
+				}
+				if ( bytesRead != -1 ) {
+					this.writeChunk( dev, data, bytesRead, position, metrics, frameSize );
+				}
+			}
+			else {
+				break;
+			}
 		}
-		boolean pause = this.mPause.isPaused();
-		try {
-			this.pause( true );
-			((SeekableAudio) this.mAudio).seek( pFrame );
+	}
+
+	/**
+	 * writes a chunk to the AudioDevice and records how long that took
+	 *
+	 * @param pPosition
+	 *            the frame position the chunk has been decoded at
+	 */
+	private void writeChunk(
+			AudioDevice pAudioDevice,
+			byte[] pData,
+			int pLength,
+			long pPosition,
+			PlaybackMetrics pMetrics,
+			int pFrameSize) throws AudioDeviceException {
+		long start = pMetrics != null ? System.nanoTime() : 0;
+		if ( this.mProcessorChain != null ) {
+			this.mProcessorChain.process( pData, pLength, this.mAudio.getAudioFormat() );
 		}
-		catch (AudioException e) {
-			throw new AudioDeviceException( "couldn't seek with the current audio" );
+		Object event = PlaybackEvents.beginDeviceWrite();
+		this.mPlayhead.beforeWrite( pPosition, pLength );
+		pAudioDevice.write( pData, 0, pLength );
+		this.mPlayhead.afterWrite( pLength );
+		PlaybackEvents.commitDeviceWrite( event, pAudioDevice, pLength );
+		if ( pMetrics != null ) {
+			pMetrics.recordWrite( System.nanoTime() - start, pLength, pFrameSize );
+		}
+		if ( this.mFirstByteEvent != null ) {
+			PlaybackEvents.commitFirstByte( this.mFirstByteEvent, this.mAudio, pLength );
+			this.mFirstByteEvent = null;
+		}
+		if ( !this.mStarted.isDone() ) {
+			this.mStarted.complete( null );
+		}
+	}
+
+	private void runPipelined() throws Exception {
+		AudioRingBuffer ring = this.mRingBuffer;
+		AudioDevice dev = this.mAudioDevice;
+		CountDownLatch decoderDone = new CountDownLatch( 1 );
+		this.mDecodingException = null;
+		this.mDecodingExecutor.execute( new Decoder( decoderDone ) );
+		PlaybackMetrics metrics = this.mMetrics;
+		int frameSize = this.mAudio.getAudioFormat().getFrameSize();
+		boolean written = false;
+		try {
+			while ( true ) {
+				this.applyCommands( dev, false );
+				if ( this.mStopped ) {
+					break;
+				}
+				if ( metrics != null ) {
+					int fill = ring.size();
+					metrics.setBufferFill( fill, ring.getDepth() );
+					if ( fill == 0 && written ) {
+						metrics.recordDecoderUnderrun();
+					}
+				}
+				int slot = ring.acquireRead();
+				if ( slot == -1 ) {
+					break;
+				}
+				int length = ring.getLength( slot );
+				if ( length == AudioRingBuffer.END_OF_STREAM ) {
+					ring.release();
+					//the decoder is gone, so seeks posted since have to be
+					//applied here. if there are any, decode again
+					decoderDone.await();
+					if ( this.mAudioCommands.isEmpty() || this.mStopped ||
+							this.mDecodingException != null ) {
+						break;
+					}
+					this.applyAudioCommands();
+					decoderDone = new CountDownLatch( 1 );
+					this.mDecodingExecutor.execute( new Decoder( decoderDone ) );
+					continue;
+				}
+				if ( ring.getGeneration( slot ) == this.mGeneration ) {
+					this.writeChunk( dev, ring.getBuffer( slot ), length, ring.getPosition( slot ), metrics, frameSize );
+					written = true;
+				}
+				ring.release();
+			}
 		}
 		finally {
-			this.pause( pause );
+			//the decoder must not touch the Audio anymore after we are done
+			ring.close();
+			decoderDone.await();
+		}
+		if ( this.mDecodingException != null && !this.mStopped ) {
+			throw this.mDecodingException;
 		}
 	}
 
-	public void skip(long pFrames) throws AudioDeviceException {
-		if ( !(this.mAudio instanceof SeekableAudio) ) {
-			throw new UnsupportedOperationException( "skipping is not possible on the current AudioFile" );
+	/**
+	 * sets the Song that should be played after the current one. a
+	 * previously set NextSong is cancelled
+	 *
+	 * @return false if the playback has ended before it could take the
+	 *         NextSong. The caller has to play it himself then
+	 */
+	public boolean setNextSong(NextSong pNextSong) {
+		NextSong previous = this.mNextSong.getAndSet( pNextSong );
+		if ( previous != null ) {
+			previous.cancel();
 		}
-		if ( this.mDone || this.mStopped ) {
-			throw new IllegalStateException( "can't skip if stopped or already done with playing." );
+		//either the playback sees the NextSong when it ends or we see the end
+		return pNextSong == null || !this.mEnded || !this.mNextSong.compareAndSet( pNextSong, null );
+	}
+
+	/**
+	 * cancels the NextSong if there is one
+	 */
+	public void cancelNextSong() {
+		this.setNextSong( null );
+	}
+
+	/**
+	 * sets the NextSong whose decoded chunk is written before anything else.
+	 * may only be called before the Runnable is started
+	 */
+	public void setPrimer(NextSong pPrimer) {
+		this.mPrimer = pPrimer;
+	}
+
+	/**
+	 * sets the metrics the playback is recorded in, null disables them. may
+	 * only be called before the Runnable is started
+	 */
+	public void setMetrics(PlaybackMetrics pMetrics) {
+		this.mMetrics = pMetrics;
+	}
+
+	/**
+	 * sets the AudioProcessorChain that is applied to every chunk, null
+	 * disables processing. may only be called before the Runnable is started
+	 */
+	public void setProcessorChain(AudioProcessorChain pProcessorChain) {
+		this.mProcessorChain = pProcessorChain;
+	}
+
+	private NextSong takePrimer() {
+		NextSong primer = this.mPrimer;
+		this.mPrimer = null;
+		return primer;
+	}
+
+	/**
+	 * switches to the NextSong if it can be played gapless after the current
+	 * Audio. Called from the thread that reads the Audio after it has ended
+	 *
+	 * @return the NextSong that is now being played or null if there is none
+	 *         or it can't be played gapless
+	 */
+	private NextSong switchToNextSong() throws InterruptedException {
+		NextSong next = this.mNextSong.get();
+		if ( next == null ) {
+			return null;
 		}
-		boolean pause = this.mPause.isPaused();
+		next.await();
+		Audio previous = this.mAudio;
+		if ( !next.canPlayGapless( previous.getAudioFormat(), this.mBufferSize ) ||
+				!this.mNextSong.compareAndSet( next, null ) ) {
+			return null;
+		}
+		this.mAudio = next.getAudio();
 		try {
-			this.pause( true );
-			((SeekableAudio) this.mAudio).skip( pFrames );
+			previous.close();
 		}
 		catch (AudioException e) {
-			throw new AudioDeviceException( "couldn't skip with the current audio" );
+			this.mPlayerRunnableListener.onException(
+					new MusicExceptionEvent(
+							this.mMusicPlayer,
+							e
+					)
+			);
 		}
-		finally {
-			this.pause( pause );
+		this.mPlayerRunnableListener.onSongChange( next.getSong(), next.getAudio() );
+		return next;
+	}
+
+	/**
+	 * seeks to the given frame in the current Audio
+	 *
+	 * @return a future that is completed once the next chunk is read from the
+	 *         new position. it fails with an AudioDeviceException if the Audio
+	 *         couldn't seek and with an IllegalStateException if the playback
+	 *         ended before
+	 */
+	public CompletableFuture<Void> seek(long pFrame) {
+		if ( !(this.mAudio instanceof SeekableAudio) ) {
+			throw new UnsupportedOperationException( "seeking is not possible on the current AudioFile" );
 		}
+		if ( this.mDone || this.mStopped ) {
+			throw new IllegalStateException( "can't seek if stopped or already done with playing." );
+		}
+		return this.postAudioCommand( new Command( Command.Type.SEEK, pFrame ) );
+	}
+
+	/**
+	 * skips the given amount of frames in the current Audio
+	 *
+	 * @see #seek(long)
+	 */
+	public CompletableFuture<Void> skip(long pFrames) {
+		if ( !(this.mAudio instanceof SeekableAudio) ) {
+			throw new UnsupportedOperationException( "skipping is not possible on the current AudioFile" );
+		}
+		if ( this.mDone || this.mStopped ) {
+			throw new IllegalStateException( "can't skip if stopped or already done with playing." );
+		}
+		return this.postAudioCommand( new Command( Command.Type.SKIP, pFrames ) );
+	}
+
+	/**
+	 * @return true if a separate thread decodes ahead while this Runnable
+	 *         plays
+	 */
+	public boolean isDecodingAhead() {
+		return this.mRingBuffer != null;
 	}
 
 	public boolean canSeek() {
@@ -214,13 +579,27 @@ final class StreamPlayerRunnable implements Runnable {
 				((SeekableAudio) this.mAudio).canSeek();
 	}
 
-	public void pause(boolean pPause) {
-		this.mPause.pause( pPause );
-		this.mAudioDevice.pause( pPause );
+	/**
+	 * pauses or resumes the playback. {@link #isPaused()} reflects the new
+	 * state immediately, the AudioDevice is paused before the next chunk is
+	 * written
+	 *
+	 * @return a future that is completed once the AudioDevice has been
+	 *         paused or resumed
+	 */
+	public CompletableFuture<Void> pause(boolean pPause) {
+		this.mPauseRequested = pPause;
+		Command command = new Command( pPause ? Command.Type.PAUSE : Command.Type.RESUME, 0 );
+		this.mCommands.offer( command );
+		this.wakePlaybackThread();
+		if ( this.mDone ) {
+			this.drainCommands();
+		}
+		return command.mFuture;
 	}
 
 	public boolean isPaused() {
-		return this.mPause.isPaused();
+		return this.mPauseRequested;
 	}
 
 	public boolean isStopped() {
@@ -235,10 +614,158 @@ final class StreamPlayerRunnable implements Runnable {
 		return this.mAlreadyStarted;
 	}
 
-	public void stop() throws MusicPlayerException {
+	/**
+	 * @return a future that is completed once the first chunk has been written
+	 *         to the AudioDevice or the Runnable is done
+	 */
+	public CompletableFuture<Void> getStarted() {
+		return this.mStarted;
+	}
+
+	/**
+	 * @return a future that is completed once the Runnable is done
+	 */
+	public CompletableFuture<Void> getFinished() {
+		return this.mFinished;
+	}
+
+	/**
+	 * @return true if the Runnable is being executed right now
+	 */
+	public boolean isRunning() {
+		return this.mAlreadyStarted && !this.mDone;
+	}
+
+	/**
+	 * stops the playback. the AudioDevice is flushed from the calling thread
+	 * so a pending write returns early
+	 *
+	 * @return a future that is completed once the Runnable is done
+	 */
+	public CompletableFuture<Void> stop() {
+		CompletableFuture<Void> finished = this.mFinished;
+		boolean running = this.isRunning();
+		this.pause( false );
 		this.mStopped = true;
+		if ( this.mRingBuffer != null ) {
+			this.mRingBuffer.close();
+		}
 		this.mAudioDevice.flush();
-		this.pause( false );
+		this.wakePlaybackThread();
+		return running ? finished : CompletableFuture.<Void> completedFuture( null );
+	}
+
+	private CompletableFuture<Void> postAudioCommand(Command pCommand) {
+		this.mAudioCommands.offer( pCommand );
+		AudioRingBuffer ring = this.mRingBuffer;
+		if ( ring != null ) {
+			ring.wakeProducer();
+		}
+		this.wakePlaybackThread();
+		if ( this.mDone ) {
+			this.drainCommands();
+		}
+		return pCommand.mFuture;
+	}
+
+	private void wakePlaybackThread() {
+		Thread thread = this.mPlaybackThread;
+		if ( thread != null ) {
+			LockSupport.unpark( thread );
+		}
+	}
+
+	/**
+	 * applies the pause commands and waits while paused. called by the
+	 * thread that writes to the AudioDevice between two chunks
+	 *
+	 * @param pReadsAudio
+	 *            whether the calling thread reads the Audio as well and has to
+	 *            apply seeks while paused
+	 */
+	private void applyCommands(AudioDevice pAudioDevice, boolean pReadsAudio) {
+		this.applyPauseCommands( pAudioDevice );
+		if ( pReadsAudio ) {
+			this.applyAudioCommands();
+		}
+		while ( this.mPaused && !this.mStopped ) {
+			LockSupport.park( this );
+			this.applyPauseCommands( pAudioDevice );
+			if ( pReadsAudio ) {
+				this.applyAudioCommands();
+			}
+		}
+	}
+
+	private void applyPauseCommands(AudioDevice pAudioDevice) {
+		Command command;
+		while ( (command = this.mCommands.poll()) != null ) {
+			boolean pause = command.mType == Command.Type.PAUSE;
+			try {
+				if ( pause != this.mPaused ) {
+					pAudioDevice.pause( pause );
+					this.mPaused = pause;
+				}
+				command.mFuture.complete( null );
+			}
+			catch (RuntimeException e) {
+				command.mFuture.completeExceptionally( e );
+			}
+		}
+	}
+
+	/**
+	 * applies the seek and skip commands. called by the thread that reads the
+	 * Audio between two chunks
+	 */
+	private void applyAudioCommands() {
+		Command command;
+		while ( (command = this.mAudioCommands.poll()) != null ) {
+			Audio audio = this.mAudio;
+			boolean relative = command.mType == Command.Type.SKIP;
+			try {
+				if ( !(audio instanceof SeekableAudio) ) {
+					throw new UnsupportedOperationException( "seeking is not possible on the current AudioFile" );
+				}
+				Object event = PlaybackEvents.beginSeek();
+				if ( relative ) {
+					((SeekableAudio) audio).skip( command.mArgument );
+				}
+				else {
+					((SeekableAudio) audio).seek( command.mArgument );
+				}
+				PlaybackEvents.commitSeek( event, audio, relative, command.mArgument );
+				++this.mGeneration;
+				command.mFuture.complete( null );
+			}
+			catch (AudioException e) {
+				command.mFuture.completeExceptionally(
+						new AudioDeviceException(
+								relative ? "couldn't skip with the current audio" :
+										"couldn't seek with the current audio",
+								e
+						)
+				);
+			}
+			catch (RuntimeException e) {
+				command.mFuture.completeExceptionally( e );
+			}
+		}
+	}
+
+	/**
+	 * completes the commands that are left after the playback is done. the
+	 * pause state is still applied to the AudioDevice so it's kept for the
+	 * next start
+	 */
+	private void drainCommands() {
+		this.applyPauseCommands( this.mAudioDevice );
+		Command command;
+		while ( (command = this.mAudioCommands.poll()) != null ) {
+			command.mFuture.completeExceptionally(
+					new IllegalStateException( "the playback has ended before the command could be applied" )
+			);
+		}
 	}
 
 	public void join() throws InterruptedException {
@@ -265,7 +792,17 @@ final class StreamPlayerRunnable implements Runnable {
 		this.mPrematureStop = false;
 		this.mAlreadyStarted = false;
 		this.mStopped = false;
+		this.mEnded = false;
+		this.mStarted = new CompletableFuture<>();
+		this.mFinished = new CompletableFuture<>();
 		this.mDone = false;
+		if ( this.mRingBuffer != null ) {
+			this.mRingBuffer.reset();
+		}
+		if ( this.mPlayhead != null ) {
+			AudioFormat format = this.getAudioFormat();
+			this.mPlayhead = new Playhead( this.mAudioDevice, format.getFrameSize(), format.getFrameRate() );
+		}
 	}
 
 	public AudioFormat getAudioFormat() {
@@ -276,12 +813,214 @@ final class StreamPlayerRunnable implements Runnable {
 		return this.mAudioDevice;
 	}
 
+	public Audio getAudio() {
+		return this.mAudio;
+	}
+
+	public int getBufferSize() {
+		return this.mBufferSize;
+	}
+
+	/**
+	 * @return the frame position the Audio is going to read at next, if it
+	 *         doesn't know it, pFramesRead
+	 */
+	private static long getFramePosition(Audio pAudio, long pFramesRead) {
+		if ( pAudio instanceof SeekableAudio ) {
+			return ((SeekableAudio) pAudio).getFramePosition();
+		}
+		return pFramesRead;
+	}
+
+	/**
+	 * @return the frame position in the Audio that is being played back right
+	 *         now or -1 if nothing has been written yet
+	 */
+	public long getPlayheadFrame() {
+		return this.mPlayhead != null ? this.mPlayhead.getFrame() : -1;
+	}
+
+	public long getPlayheadMicroseconds() {
+		return this.mPlayhead != null ? this.mPlayhead.getMicroseconds() : -1;
+	}
+
+	/**
+	 * @return the time in microseconds between decoding a frame and it being
+	 *         played back: the frames decoded ahead plus the frames pending
+	 *         in the AudioDevice
+	 */
+	public long getOutputLatency() {
+		Playhead playhead = this.mPlayhead;
+		if ( playhead == null || playhead.getFrameRate() <= 0 ) {
+			return -1;
+		}
+		long frames = playhead.getFramesPending();
+		AudioRingBuffer ring = this.mRingBuffer;
+		if ( ring != null ) {
+			frames += (long) ring.size() * this.mBufferSize / this.getAudioFormat().getFrameSize();
+		}
+		return (long) (frames * 1000000d / playhead.getFrameRate());
+	}
+
+	/**
+	 * @return the size of one chunk in bytes aligned to the frame size of the
+	 *         given format
+	 */
+	static int getChunkSize(AudioFormat pAudioFormat, int pBufferSize, LatencyProfile pLatencyProfile) {
+		int bufferSize = pBufferSize;
+		if ( bufferSize <= 0 && pLatencyProfile != null ) {
+			bufferSize = pLatencyProfile.getChunkSize( pAudioFormat );
+		}
+		return getChunkSize( pAudioFormat, bufferSize );
+	}
+
+	/**
+	 * @return the size of one chunk in bytes aligned to the frame size of the
+	 *         given format
+	 */
+	static int getChunkSize(AudioFormat pAudioFormat, int pBufferSize) {
+		int frameSize = pAudioFormat.getFrameSize();
+		int bufferSize = pBufferSize;
+		if ( bufferSize <= 0 ) {
+			bufferSize = (int) pAudioFormat.getSampleRate() * frameSize;
+		}
+		if ( frameSize > 0 ) {
+			bufferSize -= bufferSize % frameSize;
+			if ( bufferSize < frameSize ) {
+				bufferSize = frameSize;
+			}
+		}
+		return bufferSize;
+	}
+
+	/**
+	 * first stage of the pipelined playback. reads from the Audio and
+	 * publishes the chunks to the ring buffer
+	 */
+	private final class Decoder implements Runnable {
+
+		private final CountDownLatch mDone;
+
+		public Decoder(CountDownLatch pDone) {
+			this.mDone = pDone;
+		}
+
+		@Override
+		public void run() {
+			AudioRingBuffer ring = StreamPlayerRunnable.this.mRingBuffer;
+			Audio audio = StreamPlayerRunnable.this.mAudio;
+			int bufferSize = StreamPlayerRunnable.this.mBufferSize;
+			PlaybackMetrics metrics = StreamPlayerRunnable.this.mMetrics;
+			int frameSize = audio.getAudioFormat().getFrameSize();
+			long framesRead = 0;
+			try {
+				NextSong primer = StreamPlayerRunnable.this.takePrimer();
+				if ( primer != null ) {
+					int slot = ring.acquireWrite();
+					while ( slot == AudioRingBuffer.WOKEN_UP ) {
+						//nothing has been read from the Audio yet, seeks can wait
+						slot = ring.acquireWrite();
+					}
+					if ( slot == -1 ) {
+						return;
+					}
+					int length = primer.copyData( ring.getBuffer( slot ) );
+					ring.publish( slot, length, StreamPlayerRunnable.this.mGeneration, 0 );
+					framesRead = length / frameSize;
+				}
+				while ( !StreamPlayerRunnable.this.mStopped ) {
+					StreamPlayerRunnable.this.applyAudioCommands();
+					int slot = ring.acquireWrite();
+					if ( slot == AudioRingBuffer.WOKEN_UP ) {
+						continue;
+					}
+					if ( slot == -1 ) {
+						break;
+					}
+
+					int generation = StreamPlayerRunnable.this.mGeneration;
+					long start = metrics != null ? System.nanoTime() : 0;
+					Object event = PlaybackEvents.beginDecodeChunk();
+					long position = getFramePosition( audio, framesRead );
+					int bytesRead = audio.read( ring.getBuffer( slot ), 0, bufferSize );
+					if ( bytesRead == -1 ) {
+						NextSong next = StreamPlayerRunnable.this.switchToNextSong();
+						if ( next != null ) {
+							audio = next.getAudio();
+							bytesRead = next.copyData( ring.getBuffer( slot ) );
+							position = 0;
+							framesRead = 0;
+						}
+					}
+					if ( bytesRead > 0 ) {
+						framesRead += bytesRead / frameSize;
+					}
+					PlaybackEvents.commitDecodeChunk( event, audio, bytesRead );
+					if ( metrics != null ) {
+						metrics.recordDecode( System.nanoTime() - start, bytesRead );
+					}
+					ring.publish( slot, bytesRead, generation, position );
+					if ( bytesRead == -1 ) {
+						break;
+					}
+				}
+			}
+			catch (Exception e) {
+				StreamPlayerRunnable.this.mDecodingException = e;
+				ring.close();
+			}
+			finally {
+				this.mDone.countDown();
+			}
+		}
+
+	}
+
+	/**
+	 * a control operation that is applied by the playback threads
+	 */
+	static final class Command {
+
+		enum Type {
+			PAUSE,
+			RESUME,
+			SEEK,
+			SKIP
+		}
+
+		final Type mType;
+		/**
+		 * the frame to seek to or the amount of frames to skip
+		 */
+		final long mArgument;
+		final CompletableFuture<Void> mFuture;
+
+		Command(Type pType, long pArgument) {
+			this.mType = pType;
+			this.mArgument = pArgument;
+			this.mFuture = new CompletableFuture<>();
+		}
+
+	}
+
 	interface StreamPlayerRunnableListener extends EventListener {
 
 		public void onEnd(MusicEndEvent pEvent);
 
 		public void onException(MusicExceptionEvent pEvent);
 
+		/**
+		 * called from the playback threads after the playback continued
+		 * gapless with the given Song
+		 */
+		public void onSongChange(Song pSong, Audio pAudio);
+
+		/**
+		 * called instead of onEnd if the current Audio ended successfully but
+		 * the NextSong couldn't be played gapless
+		 */
+		public void onNextSong(NextSong pNextSong);
+
 	}
 
 }
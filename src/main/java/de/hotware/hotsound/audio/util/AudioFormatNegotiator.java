@@ -0,0 +1,281 @@
+/**
+ * File AudioFormatNegotiator.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decides which format a stream is played in on a Mixer. The formats the
+ * SourceDataLines of the Mixer support are queried once, the decision for a
+ * source format is cached.
+ *
+ * The cheapest lossless path is preferred, so high resolution audio isn't cut
+ * down to 16 bit if the Mixer can take more:
+ *
+ * <ol>
+ * <li>the source format itself</li>
+ * <li>the same sample size with another byte order or signedness</li>
+ * <li>a larger integer sample size</li>
+ * <li>32 bit float (lossless for up to 24 bit)</li>
+ * <li>smaller sample sizes down to 16 bit signed little endian, which is
+ * also the only choice for encoded (non PCM) streams</li>
+ * </ol>
+ *
+ * All candidates keep the sample rate and channels of the source.
+ *
+ * @author Martin Braun
+ */
+public final class AudioFormatNegotiator {
+
+	/**
+	 * marks cached decisions without a supported format, the map can't hold
+	 * null
+	 */
+	private static final AudioFormat NONE = new AudioFormat( 1, 8, 1, true, false );
+	/**
+	 * marks cached decisions to play the source format as is
+	 */
+	private static final AudioFormat DIRECT = new AudioFormat( 1, 8, 1, true, false );
+
+	private static final AudioFormatNegotiator DEFAULT = new AudioFormatNegotiator( null );
+
+	private static final ConcurrentMap<Mixer.Info, AudioFormatNegotiator> sNegotiators = new ConcurrentHashMap<>();
+
+	private final Mixer mMixer;
+	/**
+	 * null until the first negotiation
+	 */
+	private volatile AudioFormat[] mSupportedFormats;
+	private final ConcurrentMap<String, AudioFormat> mDecisions;
+
+	private AudioFormatNegotiator(Mixer pMixer) {
+		this.mMixer = pMixer;
+		this.mDecisions = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @param pMixer
+	 *            the Mixer the stream is played on, null for any Mixer of
+	 *            the AudioSystem
+	 * @return the negotiator for the given Mixer
+	 */
+	public static AudioFormatNegotiator getInstance(Mixer pMixer) {
+		if ( pMixer == null ) {
+			return DEFAULT;
+		}
+		AudioFormatNegotiator ret = sNegotiators.get( pMixer.getMixerInfo() );
+		if ( ret == null ) {
+			AudioFormatNegotiator negotiator = new AudioFormatNegotiator( pMixer );
+			ret = sNegotiators.putIfAbsent( pMixer.getMixerInfo(), negotiator );
+			if ( ret == null ) {
+				ret = negotiator;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * forgets the formats and decisions of all Mixers, e.g. after a device
+	 * has been plugged in
+	 */
+	public static void invalidate() {
+		sNegotiators.clear();
+		DEFAULT.mSupportedFormats = null;
+		DEFAULT.mDecisions.clear();
+	}
+
+	/**
+	 * @param pSignedOnly
+	 *            true if only PCM_SIGNED formats may be chosen
+	 * @return the format the stream should be converted to (the source
+	 *         format itself if no conversion is needed) or null if the Mixer
+	 *         supports none at the sample rate of the source
+	 */
+	public AudioFormat negotiate(AudioFormat pSourceFormat, boolean pSignedOnly) {
+		String key = pSourceFormat.toString() + pSignedOnly;
+		AudioFormat ret = this.mDecisions.get( key );
+		if ( ret == null ) {
+			ret = NONE;
+			for ( AudioFormat candidate : getCandidates( pSourceFormat ) ) {
+				if ( (!pSignedOnly || AudioFormat.Encoding.PCM_SIGNED.equals( candidate.getEncoding() )) &&
+						this.isSupported( candidate ) ) {
+					ret = candidate == pSourceFormat ? DIRECT : candidate;
+					break;
+				}
+			}
+			this.mDecisions.put( key, ret );
+		}
+		if ( ret == DIRECT ) {
+			return pSourceFormat;
+		}
+		return ret == NONE ? null : ret;
+	}
+
+	/**
+	 * @return true if a SourceDataLine of the Mixer supports the format
+	 */
+	public boolean isSupported(AudioFormat pAudioFormat) {
+		for ( AudioFormat supported : this.getSupportedFormats() ) {
+			if ( pAudioFormat.matches( supported ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private AudioFormat[] getSupportedFormats() {
+		AudioFormat[] ret = this.mSupportedFormats;
+		if ( ret == null ) {
+			Line.Info lineInfo = new Line.Info( SourceDataLine.class );
+			Line.Info[] infos = this.mMixer == null ? AudioSystem.getSourceLineInfo( lineInfo ) : this.mMixer
+					.getSourceLineInfo( lineInfo );
+			List<AudioFormat> formats = new ArrayList<>();
+			for ( Line.Info info : infos ) {
+				if ( info instanceof DataLine.Info ) {
+					for ( AudioFormat format : ((DataLine.Info) info).getFormats() ) {
+						formats.add( format );
+					}
+				}
+			}
+			this.mSupportedFormats = ret = formats.toArray( new AudioFormat[formats.size()] );
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the formats for the source format, cheapest first
+	 */
+	private static List<AudioFormat> getCandidates(AudioFormat pSourceFormat) {
+		List<AudioFormat> ret = new ArrayList<>();
+		float rate = pSourceFormat.getSampleRate();
+		int channels = pSourceFormat.getChannels();
+		AudioFormat.Encoding encoding = pSourceFormat.getEncoding();
+		boolean pcm = PCMCodec.isSupported( pSourceFormat );
+		if ( pcm ) {
+			ret.add( pSourceFormat );
+			int bits = pSourceFormat.getSampleSizeInBits();
+			boolean bigEndian = pSourceFormat.isBigEndian();
+			if ( AudioFormat.Encoding.PCM_FLOAT.equals( encoding ) ) {
+				ret.add( pcm( AudioFormat.Encoding.PCM_FLOAT, rate, 32, channels, !bigEndian ) );
+				for ( int size = 32; size >= 16; size -= 8 ) {
+					addSigned( ret, rate, size, channels );
+				}
+			}
+			else {
+				AudioFormat.Encoding other = AudioFormat.Encoding.PCM_SIGNED.equals( encoding ) ? AudioFormat.Encoding.PCM_UNSIGNED
+						: AudioFormat.Encoding.PCM_SIGNED;
+				if ( bits > 8 ) {
+					ret.add( pcm( encoding, rate, bits, channels, !bigEndian ) );
+				}
+				ret.add( pcm( other, rate, bits, channels, false ) );
+				if ( bits > 8 ) {
+					ret.add( pcm( other, rate, bits, channels, true ) );
+				}
+				for ( int size = bits + 8; size <= 32; size += 8 ) {
+					addSigned( ret, rate, size, channels );
+				}
+				if ( bits <= 24 ) {
+					ret.add( pcm( AudioFormat.Encoding.PCM_FLOAT, rate, 32, channels, false ) );
+					ret.add( pcm( AudioFormat.Encoding.PCM_FLOAT, rate, 32, channels, true ) );
+				}
+				//nothing lossless, lose as little as possible
+				for ( int size = bits - 8; size >= 16; size -= 8 ) {
+					addSigned( ret, rate, size, channels );
+				}
+			}
+		}
+		else {
+			ret.add( pcm( AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, false ) );
+		}
+		return ret;
+	}
+
+	private static void addSigned(List<AudioFormat> pCandidates, float pSampleRate, int pSampleSizeInBits, int pChannels) {
+		pCandidates.add( pcm( AudioFormat.Encoding.PCM_SIGNED, pSampleRate, pSampleSizeInBits, pChannels, false ) );
+		pCandidates.add( pcm( AudioFormat.Encoding.PCM_SIGNED, pSampleRate, pSampleSizeInBits, pChannels, true ) );
+	}
+
+	private static AudioFormat pcm(
+			AudioFormat.Encoding pEncoding,
+			float pSampleRate,
+			int pSampleSizeInBits,
+			int pChannels,
+			boolean pBigEndian) {
+		return new AudioFormat(
+				pEncoding,
+				pSampleRate,
+				pSampleSizeInBits,
+				pChannels,
+				pSampleSizeInBits / 8 * pChannels,
+				pSampleRate,
+				pBigEndian
+		);
+	}
+
+	/**
+	 * @return the common sample rate closest to the one of the given format
+	 *         that the Mixer supports with everything else unchanged,
+	 *         upsampling is preferred. AudioSystem.NOT_SPECIFIED if there is
+	 *         none
+	 */
+	public float getSupportedSampleRate(AudioFormat pAudioFormat, float[] pSampleRates) {
+		float ret = AudioSystem.NOT_SPECIFIED;
+		double best = Double.MAX_VALUE;
+		for ( float sampleRate : pSampleRates ) {
+			double distance = Math.abs( Math.log( sampleRate / pAudioFormat.getSampleRate() ) );
+			if ( sampleRate < pAudioFormat.getSampleRate() ) {
+				//rather keep the highs
+				distance += 1d;
+			}
+			if ( distance >= best ) {
+				continue;
+			}
+			AudioFormat format = new AudioFormat(
+					pAudioFormat.getEncoding(),
+					sampleRate,
+					pAudioFormat.getSampleSizeInBits(),
+					pAudioFormat.getChannels(),
+					pAudioFormat.getFrameSize(),
+					sampleRate,
+					pAudioFormat.isBigEndian()
+			);
+			if ( this.isSupported( format ) ) {
+				ret = sampleRate;
+				best = distance;
+			}
+		}
+		return ret;
+	}
+
+	public Mixer getMixer() {
+		return this.mMixer;
+	}
+
+}
@@ -23,11 +23,9 @@ package de.hotware.hotsound.audio.util;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
 import javax.sound.sampled.Line;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.Mixer.Info;
-import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,6 +34,18 @@ import java.util.List;
 
 public final class AudioUtil {
 
+	/**
+	 * the quality that is used if a stream has to be resampled because the
+	 * line doesn't support its sample rate
+	 */
+	public static final Resampler.Quality DEFAULT_RESAMPLING_QUALITY = Resampler.Quality.MEDIUM;
+
+	/**
+	 * the sample rates that are tried if the line doesn't support the one of
+	 * a stream
+	 */
+	private static final float[] COMMON_SAMPLE_RATES = { 44100f, 48000f, 88200f, 96000f, 32000f, 22050f };
+
 	private AudioUtil() {
 	}
 
@@ -52,11 +62,24 @@ public final class AudioUtil {
 	public static AudioInputStream getSupportedAudioInputStreamFromInputStream(
 			InputStream pInputStream)
 			throws UnsupportedAudioFileException, IOException {
+		return getSupportedAudioInputStreamFromInputStream( pInputStream, null );
+	}
+
+	/**
+	 * same as getSupportedAudioInputStreamFromInputStream(InputStream) but
+	 * negotiates the format with the given Mixer, null for any Mixer of the
+	 * AudioSystem
+	 */
+	public static AudioInputStream getSupportedAudioInputStreamFromInputStream(
+			InputStream pInputStream,
+			Mixer pMixer)
+			throws UnsupportedAudioFileException, IOException {
 		AudioInputStream sourceAudioInputStream = AudioSystem
 				.getAudioInputStream( pInputStream );
 		return getSupportedAudioInputStreamFromAudioInputStream(
 				sourceAudioInputStream,
-				false
+				false,
+				pMixer
 		);
 	}
 
@@ -109,56 +132,145 @@ public final class AudioUtil {
 		);
 	}
 
+	/**
+	 * Ensures audio format support for a given stream on any Mixer of the
+	 * AudioSystem, see
+	 * {@link #getSupportedAudioInputStreamFromAudioInputStream(AudioInputStream, boolean, Mixer)}
+	 */
+	public static AudioInputStream getSupportedAudioInputStreamFromAudioInputStream(
+			AudioInputStream pAudioInputStream,
+			boolean pAlwaysConvert) {
+		return getSupportedAudioInputStreamFromAudioInputStream( pAudioInputStream, pAlwaysConvert, null );
+	}
+
 	/**
 	 * Ensures audio format support for a given stream.
 	 *
-	 * The Stream will be converted to the audio format Encoding.PCM_SIGNED PCM_SIGNED
-	 * if one of the following conditions is true:
+	 * The format is negotiated with the {@link AudioFormatNegotiator} of the
+	 * Mixer, which prefers the cheapest lossless conversion:
 	 *
 	 * <ul>
-	 *  <li>The stream's format is not supported on the system</li>
-	 *  <li>{@code pAlwaysConvert} is true <em>and</em> the stream's format is not already
-	 *  		Encoding.PCM_SIGNED PCM_SIGNED</li>
+	 *  <li>The stream is returned as is if its format is supported (and
+	 *  		Encoding.PCM_SIGNED if {@code pAlwaysConvert} is true)</li>
+	 *  <li>Otherwise it is converted to the same sample size with another byte
+	 *  		order or signedness, a larger sample size or float, in that order.
+	 *  		Only if none of these is supported the sample size is reduced</li>
+	 *  <li>If the Mixer supports no format at the sample rate of the stream, it is
+	 *  		converted to 16 bit signed little endian and resampled to the closest
+	 *  		rate that is supported</li>
 	 * </ul>
 	 *
 	 * @param pAudioInputStream The audio stream to get a supported version of
-	 * @param pAlwaysConvert true to force a audio format conversion, false to perform it on an
-	 * 			as-needed basis.
+	 * @param pAlwaysConvert true to force a audio format conversion to
+	 * 			Encoding.PCM_SIGNED, false to perform it on an as-needed basis.
+	 * @param pMixer the Mixer the stream is played on, null for any Mixer of the
+	 * 			AudioSystem
 	 * @return The converted stream. If no conversion is performed, the input stream
 	 * 			({@code pAudioInputStream}) is returned.
 	 */
 	public static AudioInputStream getSupportedAudioInputStreamFromAudioInputStream(
 			AudioInputStream pAudioInputStream,
-			boolean pAlwaysConvert) {
-		AudioInputStream ret = pAudioInputStream;
+			boolean pAlwaysConvert,
+			Mixer pMixer) {
+		AudioFormatNegotiator negotiator = AudioFormatNegotiator.getInstance( pMixer );
 		AudioFormat sourceAudioFormat = pAudioInputStream.getFormat();
-		DataLine.Info supportInfo = new DataLine.Info(
-				SourceDataLine.class,
-				sourceAudioFormat,
-				AudioSystem.NOT_SPECIFIED
+		AudioFormat targetAudioFormat = negotiator.negotiate( sourceAudioFormat, pAlwaysConvert );
+		if ( targetAudioFormat == sourceAudioFormat ) {
+			return pAudioInputStream;
+		}
+		if ( targetAudioFormat != null ) {
+			return getConvertedAudioInputStream( pAudioInputStream, targetAudioFormat );
+		}
+		// no format at this sample rate -> Convert to 16 bit and resample if possible
+		float sampleRate = sourceAudioFormat.getSampleRate();
+		int channels = sourceAudioFormat.getChannels();
+		AudioFormat newFormat = new AudioFormat(
+				AudioFormat.Encoding.PCM_SIGNED,
+				sampleRate,
+				16,
+				channels,
+				channels * 2,
+				sampleRate,
+				false
 		);
-		boolean directSupport = AudioSystem.isLineSupported( supportInfo );
-		if ( sourceAudioFormat.getEncoding() != AudioFormat.Encoding.PCM_SIGNED && pAlwaysConvert ||
-				!directSupport ) {
-			// Audio format is not supported -> Convert to a supported format
-			float sampleRate = sourceAudioFormat.getSampleRate();
-			int channels = sourceAudioFormat.getChannels();
-			AudioFormat newFormat = new AudioFormat(
-					AudioFormat.Encoding.PCM_SIGNED,
-					sampleRate,
-					16,
-					channels,
-					channels * 2,
-					sampleRate,
-					false
-			);
-			AudioInputStream convertedAudioInputStream = AudioSystem
-					.getAudioInputStream( newFormat, pAudioInputStream );
-			ret = convertedAudioInputStream;
+		AudioInputStream ret = getConvertedAudioInputStream( pAudioInputStream, newFormat );
+		float supportedSampleRate = negotiator.getSupportedSampleRate( newFormat, COMMON_SAMPLE_RATES );
+		if ( supportedSampleRate != AudioSystem.NOT_SPECIFIED ) {
+			ret = getResampledAudioInputStream( ret, supportedSampleRate, DEFAULT_RESAMPLING_QUALITY );
 		}
 		return ret;
 	}
 
+	/**
+	 * converts the given stream to the given sample rate with the built-in
+	 * {@link Resampler}. Streams that {@link PCMCodec} doesn't support are
+	 * converted to 16 bit signed little endian PCM first.
+	 */
+	public static AudioInputStream getResampledAudioInputStream(
+			AudioInputStream pAudioInputStream,
+			float pSampleRate,
+			Resampler.Quality pQuality) {
+		AudioInputStream source = pAudioInputStream;
+		AudioFormat sourceFormat = source.getFormat();
+		if ( !PCMCodec.isSupported( sourceFormat ) ) {
+			int channels = sourceFormat.getChannels();
+			source = getConvertedAudioInputStream(
+					source,
+					new AudioFormat(
+							AudioFormat.Encoding.PCM_SIGNED,
+							sourceFormat.getSampleRate(),
+							16,
+							channels,
+							channels * 2,
+							sourceFormat.getSampleRate(),
+							false
+					)
+			);
+			sourceFormat = source.getFormat();
+		}
+		long frameLength = source.getFrameLength();
+		if ( frameLength != AudioSystem.NOT_SPECIFIED ) {
+			frameLength = (long) Math.ceil( frameLength * (double) pSampleRate / sourceFormat.getSampleRate() );
+		}
+		ResamplingInputStream resampled = new ResamplingInputStream( source, pSampleRate, pQuality );
+		return new AudioInputStream( resampled, resampled.getFormat(), frameLength );
+	}
+
+	/**
+	 * converts the given stream to the given format. Conversions between PCM
+	 * encodings with the same sample rate and channels are done by a
+	 * {@link PCMConverter}, everything else by the converters of JavaSound.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the conversion is not supported
+	 */
+	public static AudioInputStream getConvertedAudioInputStream(
+			AudioInputStream pAudioInputStream,
+			AudioFormat pAudioFormat) {
+		if ( PCMConverter.canConvert( pAudioInputStream.getFormat(), pAudioFormat ) ) {
+			ConvertingInputStream converted = new ConvertingInputStream( pAudioInputStream, pAudioFormat );
+			return new AudioInputStream( converted, converted.getFormat(), pAudioInputStream.getFrameLength() );
+		}
+		return AudioSystem.getAudioInputStream( pAudioFormat, pAudioInputStream );
+	}
+
+	/**
+	 * @return the common sample rate closest to the one of the given format
+	 *         that the line supports with everything else unchanged, upsampling
+	 *         is preferred. AudioSystem.NOT_SPECIFIED if there is none
+	 */
+	public static float getSupportedSampleRate(AudioFormat pAudioFormat) {
+		return getSupportedSampleRate( pAudioFormat, null );
+	}
+
+	/**
+	 * same as getSupportedSampleRate(AudioFormat) for the lines of the given
+	 * Mixer, null for any Mixer of the AudioSystem
+	 */
+	public static float getSupportedSampleRate(AudioFormat pAudioFormat, Mixer pMixer) {
+		return AudioFormatNegotiator.getInstance( pMixer ).getSupportedSampleRate( pAudioFormat, COMMON_SAMPLE_RATES );
+	}
+
 	/**
 	 * @return a mixer info object belonging to the Mixer named as pMixerName or
 	 *         null if not found
@@ -0,0 +1,138 @@
+/**
+ * File ConvertingInputStream.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that reads PCM data from an AudioInputStream and returns it
+ * converted to another PCM encoding with a {@link PCMConverter}. Use
+ * {@link AudioUtil#getConvertedAudioInputStream(AudioInputStream, AudioFormat)}
+ * to get an AudioInputStream of it.
+ *
+ * @author Martin Braun
+ */
+public final class ConvertingInputStream extends InputStream {
+
+	/**
+	 * frames that are read from the source at once
+	 */
+	private static final int BLOCK_FRAMES = 4096;
+
+	private final AudioInputStream mSource;
+	private final PCMConverter mConverter;
+	private final int mSourceFrameSize;
+	private final int mTargetFrameSize;
+	private final byte[] mInput;
+	/**
+	 * bytes in mInput, may end with an incomplete frame
+	 */
+	private int mInputLength;
+	private final byte[] mOutput;
+	private int mOutputPosition;
+	private int mOutputLength;
+	private boolean mEnded;
+	private final byte[] mSingle;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the source can't be converted to the target format (see
+	 *             {@link PCMConverter#canConvert(AudioFormat, AudioFormat)})
+	 */
+	public ConvertingInputStream(AudioInputStream pSource, AudioFormat pTargetFormat) {
+		this.mSource = pSource;
+		this.mConverter = new PCMConverter( pSource.getFormat(), pTargetFormat );
+		this.mSourceFrameSize = this.mConverter.getSourceFrameSize();
+		this.mTargetFrameSize = this.mConverter.getTargetFrameSize();
+		this.mInput = new byte[BLOCK_FRAMES * this.mSourceFrameSize];
+		this.mOutput = new byte[BLOCK_FRAMES * this.mTargetFrameSize];
+		this.mSingle = new byte[1];
+	}
+
+	/**
+	 * @return the format of the data this stream returns
+	 */
+	public AudioFormat getFormat() {
+		return this.mConverter.getTargetFormat();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = this.read( this.mSingle, 0, 1 );
+		return read == -1 ? -1 : this.mSingle[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws IOException {
+		if ( pLength == 0 ) {
+			return 0;
+		}
+		if ( !this.fill() ) {
+			return -1;
+		}
+		int length = Math.min( pLength, this.mOutputLength - this.mOutputPosition );
+		System.arraycopy( this.mOutput, this.mOutputPosition, pData, pStart, length );
+		this.mOutputPosition += length;
+		return length;
+	}
+
+	@Override
+	public int available() {
+		return this.mOutputLength - this.mOutputPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.mSource.close();
+	}
+
+	/**
+	 * converts the next block if everything has been read
+	 *
+	 * @return false if the stream has ended
+	 */
+	private boolean fill() throws IOException {
+		while ( this.mOutputPosition == this.mOutputLength ) {
+			if ( this.mEnded ) {
+				return false;
+			}
+			int read = this.mSource.read( this.mInput, this.mInputLength, this.mInput.length - this.mInputLength );
+			if ( read == -1 ) {
+				//an incomplete frame at the end is dropped
+				this.mEnded = true;
+				return false;
+			}
+			this.mInputLength += read;
+			int frames = this.mInputLength / this.mSourceFrameSize;
+			this.mConverter.convert( this.mInput, 0, this.mOutput, 0, frames );
+			int used = frames * this.mSourceFrameSize;
+			this.mInputLength -= used;
+			System.arraycopy( this.mInput, used, this.mInput, 0, this.mInputLength );
+			this.mOutputPosition = 0;
+			this.mOutputLength = frames * this.mTargetFrameSize;
+		}
+		return true;
+	}
+
+}
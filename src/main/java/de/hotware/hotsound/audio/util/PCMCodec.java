@@ -0,0 +1,291 @@
+/**
+ * File PCMCodec.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteOrder;
+
+/**
+ * Converts PCM bytes to normalized float samples and back. Signed and
+ * unsigned integer data with 8, 16, 24 or 32 bits per sample and 32 bit float
+ * data in either byte order is supported. Float samples are in the range
+ * [-1, 1), encoding to integers rounds to the nearest value and clips
+ * everything outside that range. 32 bit float data is passed through as is.
+ *
+ * Float data is either interleaved (one array, frame after frame) or planar
+ * (one array per channel). A codec is immutable and can be shared between
+ * threads, none of the methods allocate.
+ *
+ * @author Martin Braun
+ */
+public final class PCMCodec {
+
+	private final AudioFormat mAudioFormat;
+	private final int mChannels;
+	private final int mBytesPerSample;
+	private final int mFrameSize;
+	private final boolean mFloat;
+	/**
+	 * xor'ed with the raw value to convert unsigned to signed data and back
+	 */
+	private final int mFlip;
+	/**
+	 * offsets of the bytes of a sample, least significant byte first
+	 */
+	private final int mByte0;
+	private final int mByte1;
+	private final int mByte2;
+	private final int mByte3;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the AudioFormat is not {@link #isSupported(AudioFormat)}
+	 */
+	public PCMCodec(AudioFormat pAudioFormat) {
+		if ( !isSupported( pAudioFormat ) ) {
+			throw new IllegalArgumentException( "unsupported AudioFormat: " + pAudioFormat );
+		}
+		this.mAudioFormat = pAudioFormat;
+		this.mChannels = pAudioFormat.getChannels();
+		this.mBytesPerSample = pAudioFormat.getSampleSizeInBits() / 8;
+		this.mFrameSize = this.mBytesPerSample * this.mChannels;
+		this.mFloat = AudioFormat.Encoding.PCM_FLOAT.equals( pAudioFormat.getEncoding() );
+		boolean unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals( pAudioFormat.getEncoding() );
+		this.mFlip = unsigned ? 1 << (pAudioFormat.getSampleSizeInBits() - 1) : 0;
+		boolean bigEndian = pAudioFormat.isBigEndian() && this.mBytesPerSample > 1;
+		int last = this.mBytesPerSample - 1;
+		this.mByte0 = bigEndian ? last : 0;
+		this.mByte1 = bigEndian ? last - 1 : 1;
+		this.mByte2 = bigEndian ? last - 2 : 2;
+		this.mByte3 = bigEndian ? last - 3 : 3;
+	}
+
+	/**
+	 * @return true if the AudioFormat is signed or unsigned integer PCM with
+	 *         8, 16, 24 or 32 bits per sample or 32 bit float PCM, each with
+	 *         packed frames
+	 */
+	public static boolean isSupported(AudioFormat pAudioFormat) {
+		AudioFormat.Encoding encoding = pAudioFormat.getEncoding();
+		int bits = pAudioFormat.getSampleSizeInBits();
+		int channels = pAudioFormat.getChannels();
+		boolean supported;
+		if ( AudioFormat.Encoding.PCM_FLOAT.equals( encoding ) ) {
+			supported = bits == 32;
+		}
+		else {
+			supported = (AudioFormat.Encoding.PCM_SIGNED.equals( encoding ) || AudioFormat.Encoding.PCM_UNSIGNED
+					.equals( encoding )) && (bits == 8 || bits == 16 || bits == 24 || bits == 32);
+		}
+		return supported && channels > 0 && pAudioFormat.getFrameSize() == bits / 8 * channels;
+	}
+
+	/**
+	 * @return the AudioFormat of float samples with the sample rate and
+	 *         channels of the given AudioFormat in native byte order
+	 */
+	public static AudioFormat getFloatFormat(AudioFormat pAudioFormat) {
+		int channels = pAudioFormat.getChannels();
+		return new AudioFormat(
+				AudioFormat.Encoding.PCM_FLOAT,
+				pAudioFormat.getSampleRate(),
+				32,
+				channels,
+				channels * 4,
+				pAudioFormat.getSampleRate(),
+				ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN
+		);
+	}
+
+	/**
+	 * decodes pFrames interleaved frames into interleaved float samples
+	 */
+	public void decode(byte[] pIn, int pInOffset, float[] pOut, int pOutOffset, int pFrames) {
+		this.decode( pIn, pInOffset, this.mBytesPerSample, pOut, pOutOffset, pFrames * this.mChannels );
+	}
+
+	/**
+	 * decodes pFrames interleaved frames into one float array per channel
+	 */
+	public void decodePlanar(byte[] pIn, int pInOffset, float[][] pOut, int pOutOffset, int pFrames) {
+		for ( int channel = 0; channel < this.mChannels; ++channel ) {
+			this.decode( pIn, pInOffset + channel * this.mBytesPerSample, this.mFrameSize, pOut[channel], pOutOffset, pFrames );
+		}
+	}
+
+	/**
+	 * encodes pFrames frames of interleaved float samples
+	 */
+	public void encode(float[] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pFrames) {
+		this.encode( pIn, pInOffset, pOut, pOutOffset, this.mBytesPerSample, pFrames * this.mChannels );
+	}
+
+	/**
+	 * encodes pFrames frames from one float array per channel
+	 */
+	public void encodePlanar(float[][] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pFrames) {
+		for ( int channel = 0; channel < this.mChannels; ++channel ) {
+			this.encode( pIn[channel], pInOffset, pOut, pOutOffset + channel * this.mBytesPerSample, this.mFrameSize, pFrames );
+		}
+	}
+
+	private void decode(byte[] pIn, int pInOffset, int pStride, float[] pOut, int pOutOffset, int pCount) {
+		int flip = this.mFlip;
+		int b0 = pInOffset + this.mByte0;
+		int b1 = pInOffset + this.mByte1;
+		int b2 = pInOffset + this.mByte2;
+		int b3 = pInOffset + this.mByte3;
+		int end = pOutOffset + pCount;
+		if ( this.mFloat ) {
+			for ( int i = pOutOffset, pos = 0; i < end; ++i, pos += pStride ) {
+				int raw = (pIn[b0 + pos] & 0xFF) | ((pIn[b1 + pos] & 0xFF) << 8) | ((pIn[b2 + pos] & 0xFF) << 16) |
+						(pIn[b3 + pos] << 24);
+				pOut[i] = Float.intBitsToFloat( raw );
+			}
+			return;
+		}
+		switch ( this.mBytesPerSample ) {
+			case 1: {
+				float scale = 1f / 0x80;
+				for ( int i = pOutOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					pOut[i] = (byte) ((pIn[b0 + pos] & 0xFF) ^ flip) * scale;
+				}
+				break;
+			}
+			case 2: {
+				float scale = 1f / 0x8000;
+				for ( int i = pOutOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					int raw = (pIn[b0 + pos] & 0xFF) | ((pIn[b1 + pos] & 0xFF) << 8);
+					pOut[i] = (short) (raw ^ flip) * scale;
+				}
+				break;
+			}
+			case 3: {
+				float scale = 1f / 0x800000;
+				for ( int i = pOutOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					int raw = (pIn[b0 + pos] & 0xFF) | ((pIn[b1 + pos] & 0xFF) << 8) | ((pIn[b2 + pos] & 0xFF) << 16);
+					pOut[i] = (((raw ^ flip) << 8) >> 8) * scale;
+				}
+				break;
+			}
+			default: {
+				float scale = 1f / 0x80000000L;
+				for ( int i = pOutOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					int raw = (pIn[b0 + pos] & 0xFF) | ((pIn[b1 + pos] & 0xFF) << 8) | ((pIn[b2 + pos] & 0xFF) << 16) |
+							(pIn[b3 + pos] << 24);
+					pOut[i] = (raw ^ flip) * scale;
+				}
+				break;
+			}
+		}
+	}
+
+	private void encode(float[] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pStride, int pCount) {
+		int flip = this.mFlip;
+		int b0 = pOutOffset + this.mByte0;
+		int b1 = pOutOffset + this.mByte1;
+		int b2 = pOutOffset + this.mByte2;
+		int b3 = pOutOffset + this.mByte3;
+		int end = pInOffset + pCount;
+		if ( this.mFloat ) {
+			for ( int i = pInOffset, pos = 0; i < end; ++i, pos += pStride ) {
+				int raw = Float.floatToRawIntBits( pIn[i] );
+				pOut[b0 + pos] = (byte) raw;
+				pOut[b1 + pos] = (byte) (raw >> 8);
+				pOut[b2 + pos] = (byte) (raw >> 16);
+				pOut[b3 + pos] = (byte) (raw >> 24);
+			}
+			return;
+		}
+		switch ( this.mBytesPerSample ) {
+			case 1: {
+				for ( int i = pInOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					pOut[b0 + pos] = (byte) (clip( pIn[i], 0x80 ) ^ flip);
+				}
+				break;
+			}
+			case 2: {
+				for ( int i = pInOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					int raw = clip( pIn[i], 0x8000 ) ^ flip;
+					pOut[b0 + pos] = (byte) raw;
+					pOut[b1 + pos] = (byte) (raw >> 8);
+				}
+				break;
+			}
+			case 3: {
+				for ( int i = pInOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					int raw = clip( pIn[i], 0x800000 ) ^ flip;
+					pOut[b0 + pos] = (byte) raw;
+					pOut[b1 + pos] = (byte) (raw >> 8);
+					pOut[b2 + pos] = (byte) (raw >> 16);
+				}
+				break;
+			}
+			default: {
+				for ( int i = pInOffset, pos = 0; i < end; ++i, pos += pStride ) {
+					//the cast saturates at the limits of int
+					int raw = (int) Math.rint( pIn[i] * 2147483648d ) ^ flip;
+					pOut[b0 + pos] = (byte) raw;
+					pOut[b1 + pos] = (byte) (raw >> 8);
+					pOut[b2 + pos] = (byte) (raw >> 16);
+					pOut[b3 + pos] = (byte) (raw >> 24);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the sample scaled by pScale, rounded and clipped to
+	 *         [-pScale, pScale - 1]
+	 */
+	private static int clip(float pSample, int pScale) {
+		int value = Math.round( pSample * pScale );
+		if ( value >= pScale ) {
+			return pScale - 1;
+		}
+		if ( value < -pScale ) {
+			return -pScale;
+		}
+		return value;
+	}
+
+	public AudioFormat getAudioFormat() {
+		return this.mAudioFormat;
+	}
+
+	public int getChannels() {
+		return this.mChannels;
+	}
+
+	public int getBytesPerSample() {
+		return this.mBytesPerSample;
+	}
+
+	public int getFrameSize() {
+		return this.mFrameSize;
+	}
+
+	public boolean isFloat() {
+		return this.mFloat;
+	}
+
+}
@@ -0,0 +1,354 @@
+/**
+ * File PCMConverter.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Converts PCM data from one encoding to another without going through the
+ * JavaSound format converters. Every format a {@link PCMCodec} supports can be
+ * converted to every other one with the same sample rate and channels.
+ *
+ * The kernels are plain counted loops over primitive arrays without calls or
+ * branches in their bodies, so the JIT can unroll and vectorize them:
+ *
+ * <ul>
+ * <li>identical layouts are copied</li>
+ * <li>8 bit signed to unsigned and back only flips the sign bit</li>
+ * <li>samples of the same size are moved byte by byte, which swaps the byte
+ * order and flips the sign bit in one pass</li>
+ * <li>everything else is unpacked into 32 bit integers in blocks and packed
+ * into the target format. Integer samples are widened with zeros and narrowed
+ * by cutting off the lower bits, float samples are scaled and clipped</li>
+ * </ul>
+ *
+ * A PCMConverter keeps a scratch block and must not be shared between threads.
+ *
+ * @author Martin Braun
+ */
+public final class PCMConverter {
+
+	private static final int BLOCK_SAMPLES = 1024;
+
+	private static final int COPY = 0;
+	private static final int FLIP = 1;
+	private static final int SAME_SIZE = 2;
+	private static final int GENERIC = 3;
+
+	private final AudioFormat mSourceFormat;
+	private final AudioFormat mTargetFormat;
+	private final int mKernel;
+	private final int mChannels;
+	private final int mSourceFrameSize;
+	private final int mTargetFrameSize;
+	private final Layout mSource;
+	private final Layout mTarget;
+	/**
+	 * null unless the generic kernel is used
+	 */
+	private final int[] mBlock;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the formats can't be converted with
+	 *             {@link #canConvert(AudioFormat, AudioFormat)}
+	 */
+	public PCMConverter(AudioFormat pSourceFormat, AudioFormat pTargetFormat) {
+		if ( !canConvert( pSourceFormat, pTargetFormat ) ) {
+			throw new IllegalArgumentException( "can't convert " + pSourceFormat + " to " + pTargetFormat );
+		}
+		this.mSourceFormat = pSourceFormat;
+		this.mTargetFormat = pTargetFormat;
+		this.mChannels = pSourceFormat.getChannels();
+		this.mSourceFrameSize = pSourceFormat.getFrameSize();
+		this.mTargetFrameSize = pTargetFormat.getFrameSize();
+		this.mSource = new Layout( pSourceFormat );
+		this.mTarget = new Layout( pTargetFormat );
+		Layout source = this.mSource;
+		Layout target = this.mTarget;
+		if ( source.mBytes != target.mBytes || source.mFloat != target.mFloat ) {
+			this.mKernel = GENERIC;
+		}
+		else if ( source.mFlip == target.mFlip && (source.mBytes == 1 || source.mBigEndian == target.mBigEndian) ) {
+			this.mKernel = COPY;
+		}
+		else if ( source.mBytes == 1 ) {
+			this.mKernel = FLIP;
+		}
+		else {
+			this.mKernel = SAME_SIZE;
+		}
+		this.mBlock = this.mKernel == GENERIC ? new int[BLOCK_SAMPLES] : null;
+	}
+
+	/**
+	 * @return true if both formats are supported by {@link PCMCodec} and have
+	 *         the same sample rate and channels
+	 */
+	public static boolean canConvert(AudioFormat pSourceFormat, AudioFormat pTargetFormat) {
+		if ( !PCMCodec.isSupported( pSourceFormat ) || !PCMCodec.isSupported( pTargetFormat ) ) {
+			return false;
+		}
+		float sourceRate = pSourceFormat.getSampleRate();
+		float targetRate = pTargetFormat.getSampleRate();
+		return pSourceFormat.getChannels() == pTargetFormat.getChannels() &&
+				(sourceRate == AudioSystem.NOT_SPECIFIED || targetRate == AudioSystem.NOT_SPECIFIED || Math
+						.abs( sourceRate - targetRate ) < 0.5f);
+	}
+
+	/**
+	 * converts pFrames frames. pIn and pOut may not overlap unless they
+	 * start at the same position and the target frames aren't larger than
+	 * the source frames
+	 */
+	public void convert(byte[] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pFrames) {
+		int samples = pFrames * this.mChannels;
+		switch ( this.mKernel ) {
+			case COPY:
+				System.arraycopy( pIn, pInOffset, pOut, pOutOffset, pFrames * this.mSourceFrameSize );
+				break;
+			case FLIP:
+				flip( pIn, pInOffset, pOut, pOutOffset, samples );
+				break;
+			case SAME_SIZE:
+				this.convertSameSize( pIn, pInOffset, pOut, pOutOffset, samples );
+				break;
+			default:
+				int[] block = this.mBlock;
+				int inBytes = this.mSource.mBytes;
+				int outBytes = this.mTarget.mBytes;
+				for ( int done = 0; done < samples; done += BLOCK_SAMPLES ) {
+					int count = Math.min( BLOCK_SAMPLES, samples - done );
+					this.mSource.unpack( pIn, pInOffset + done * inBytes, block, count );
+					this.mTarget.pack( block, pOut, pOutOffset + done * outBytes, count );
+				}
+				break;
+		}
+	}
+
+	private static void flip(byte[] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pSamples) {
+		for ( int i = 0; i < pSamples; ++i ) {
+			pOut[pOutOffset + i] = (byte) (pIn[pInOffset + i] ^ 0x80);
+		}
+	}
+
+	private void convertSameSize(byte[] pIn, int pInOffset, byte[] pOut, int pOutOffset, int pSamples) {
+		Layout source = this.mSource;
+		Layout target = this.mTarget;
+		//the sign bit is in the most significant byte
+		int flip = (source.mFlip ^ target.mFlip) != 0 ? 0x80 : 0;
+		int end = pSamples * source.mBytes;
+		int in0 = pInOffset + source.mByte0;
+		int in1 = pInOffset + source.mByte1;
+		int out0 = pOutOffset + target.mByte0;
+		int out1 = pOutOffset + target.mByte1;
+		switch ( source.mBytes ) {
+			case 2:
+				for ( int pos = 0; pos < end; pos += 2 ) {
+					byte low = pIn[in0 + pos];
+					byte high = pIn[in1 + pos];
+					pOut[out0 + pos] = low;
+					pOut[out1 + pos] = (byte) (high ^ flip);
+				}
+				break;
+			case 3: {
+				int in2 = pInOffset + source.mByte2;
+				int out2 = pOutOffset + target.mByte2;
+				for ( int pos = 0; pos < end; pos += 3 ) {
+					byte low = pIn[in0 + pos];
+					byte middle = pIn[in1 + pos];
+					byte high = pIn[in2 + pos];
+					pOut[out0 + pos] = low;
+					pOut[out1 + pos] = middle;
+					pOut[out2 + pos] = (byte) (high ^ flip);
+				}
+				break;
+			}
+			default: {
+				int in2 = pInOffset + source.mByte2;
+				int in3 = pInOffset + source.mByte3;
+				int out2 = pOutOffset + target.mByte2;
+				int out3 = pOutOffset + target.mByte3;
+				for ( int pos = 0; pos < end; pos += 4 ) {
+					byte b0 = pIn[in0 + pos];
+					byte b1 = pIn[in1 + pos];
+					byte b2 = pIn[in2 + pos];
+					byte b3 = pIn[in3 + pos];
+					pOut[out0 + pos] = b0;
+					pOut[out1 + pos] = b1;
+					pOut[out2 + pos] = b2;
+					pOut[out3 + pos] = (byte) (b3 ^ flip);
+				}
+				break;
+			}
+		}
+	}
+
+	public AudioFormat getSourceFormat() {
+		return this.mSourceFormat;
+	}
+
+	public AudioFormat getTargetFormat() {
+		return this.mTargetFormat;
+	}
+
+	public int getSourceFrameSize() {
+		return this.mSourceFrameSize;
+	}
+
+	public int getTargetFrameSize() {
+		return this.mTargetFrameSize;
+	}
+
+	/**
+	 * the position of the bytes of a sample and the conversion from and to
+	 * signed 32 bit integers
+	 */
+	private static final class Layout {
+
+		private final int mBytes;
+		private final boolean mFloat;
+		private final boolean mBigEndian;
+		/**
+		 * xor'ed with the left aligned value to convert unsigned data
+		 */
+		private final int mFlip;
+		/**
+		 * offsets of the bytes of a sample, least significant byte first
+		 */
+		private final int mByte0;
+		private final int mByte1;
+		private final int mByte2;
+		private final int mByte3;
+
+		Layout(AudioFormat pAudioFormat) {
+			this.mBytes = pAudioFormat.getSampleSizeInBits() / 8;
+			this.mFloat = AudioFormat.Encoding.PCM_FLOAT.equals( pAudioFormat.getEncoding() );
+			this.mFlip = AudioFormat.Encoding.PCM_UNSIGNED.equals( pAudioFormat.getEncoding() ) ? 0x80000000 : 0;
+			this.mBigEndian = pAudioFormat.isBigEndian() && this.mBytes > 1;
+			int last = this.mBytes - 1;
+			this.mByte0 = this.mBigEndian ? last : 0;
+			this.mByte1 = this.mBigEndian ? last - 1 : 1;
+			this.mByte2 = this.mBigEndian ? last - 2 : 2;
+			this.mByte3 = this.mBigEndian ? last - 3 : 3;
+		}
+
+		/**
+		 * reads pCount samples into signed 32 bit integers
+		 */
+		void unpack(byte[] pIn, int pOffset, int[] pBlock, int pCount) {
+			int flip = this.mFlip;
+			int b0 = pOffset + this.mByte0;
+			int b1 = pOffset + this.mByte1;
+			int b2 = pOffset + this.mByte2;
+			int b3 = pOffset + this.mByte3;
+			if ( this.mFloat ) {
+				for ( int i = 0, pos = 0; i < pCount; ++i, pos += 4 ) {
+					int raw = (pIn[b0 + pos] & 0xFF) | ((pIn[b1 + pos] & 0xFF) << 8) | ((pIn[b2 + pos] & 0xFF) << 16) |
+							(pIn[b3 + pos] << 24);
+					//the cast saturates at the limits of int
+					pBlock[i] = (int) (Float.intBitsToFloat( raw ) * 2147483648d);
+				}
+				return;
+			}
+			switch ( this.mBytes ) {
+				case 1:
+					for ( int i = 0; i < pCount; ++i ) {
+						pBlock[i] = (pIn[b0 + i] << 24) ^ flip;
+					}
+					break;
+				case 2:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 2 ) {
+						pBlock[i] = ((pIn[b1 + pos] << 24) | ((pIn[b0 + pos] & 0xFF) << 16)) ^ flip;
+					}
+					break;
+				case 3:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 3 ) {
+						pBlock[i] = ((pIn[b2 + pos] << 24) | ((pIn[b1 + pos] & 0xFF) << 16) | ((pIn[b0 + pos] & 0xFF) << 8)) ^
+								flip;
+					}
+					break;
+				default:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 4 ) {
+						pBlock[i] = ((pIn[b3 + pos] << 24) | ((pIn[b2 + pos] & 0xFF) << 16) | ((pIn[b1 + pos] & 0xFF) << 8) |
+								(pIn[b0 + pos] & 0xFF)) ^ flip;
+					}
+					break;
+			}
+		}
+
+		/**
+		 * writes pCount signed 32 bit integers as samples of this layout
+		 */
+		void pack(int[] pBlock, byte[] pOut, int pOffset, int pCount) {
+			int flip = this.mFlip;
+			int b0 = pOffset + this.mByte0;
+			int b1 = pOffset + this.mByte1;
+			int b2 = pOffset + this.mByte2;
+			int b3 = pOffset + this.mByte3;
+			if ( this.mFloat ) {
+				float scale = 1f / 2147483648f;
+				for ( int i = 0, pos = 0; i < pCount; ++i, pos += 4 ) {
+					int raw = Float.floatToRawIntBits( pBlock[i] * scale );
+					pOut[b0 + pos] = (byte) raw;
+					pOut[b1 + pos] = (byte) (raw >> 8);
+					pOut[b2 + pos] = (byte) (raw >> 16);
+					pOut[b3 + pos] = (byte) (raw >> 24);
+				}
+				return;
+			}
+			switch ( this.mBytes ) {
+				case 1:
+					for ( int i = 0; i < pCount; ++i ) {
+						pOut[b0 + i] = (byte) ((pBlock[i] ^ flip) >> 24);
+					}
+					break;
+				case 2:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 2 ) {
+						int value = pBlock[i] ^ flip;
+						pOut[b0 + pos] = (byte) (value >> 16);
+						pOut[b1 + pos] = (byte) (value >> 24);
+					}
+					break;
+				case 3:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 3 ) {
+						int value = pBlock[i] ^ flip;
+						pOut[b0 + pos] = (byte) (value >> 8);
+						pOut[b1 + pos] = (byte) (value >> 16);
+						pOut[b2 + pos] = (byte) (value >> 24);
+					}
+					break;
+				default:
+					for ( int i = 0, pos = 0; i < pCount; ++i, pos += 4 ) {
+						int value = pBlock[i] ^ flip;
+						pOut[b0 + pos] = (byte) value;
+						pOut[b1 + pos] = (byte) (value >> 8);
+						pOut[b2 + pos] = (byte) (value >> 16);
+						pOut[b3 + pos] = (byte) (value >> 24);
+					}
+					break;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,465 @@
+/**
+ * File Resampler.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import java.util.Arrays;
+
+/**
+ * Streaming sample rate converter for interleaved float samples.
+ *
+ * Except for {@link Quality#LINEAR} the conversion is done with a polyphase
+ * windowed-sinc filter: a Kaiser windowed sinc is tabulated for a fixed amount
+ * of phases between two input frames, the coefficients for an output frame
+ * are interpolated linearly between the two nearest phases. When downsampling
+ * the cutoff is lowered to the new Nyquist frequency and the filter is
+ * widened accordingly.
+ *
+ * The output is aligned to the input, the first output frame is taken at the
+ * first input frame. The filter needs half its length of input ahead, so the
+ * last frames are only put out by {@link #flush(float[], int, int)}. The
+ * position is kept as a fraction of the rates (to a thousandth of a Hertz),
+ * so it doesn't drift and the output doesn't depend on how the input is split
+ * into blocks.
+ *
+ * Buffers are only allocated in the constructor and if a block is bigger than
+ * every block before. Not thread-safe.
+ *
+ * @author Martin Braun
+ */
+public final class Resampler {
+
+	/**
+	 * the filter is never wider than this amount of input frames
+	 */
+	private static final int MAX_TAPS = 1024;
+	/**
+	 * the rates are rounded to multiples of 1 / RATE_SCALE Hz
+	 */
+	private static final double RATE_SCALE = 1000d;
+
+	private final int mChannels;
+	private final double mInputRate;
+	private final double mOutputRate;
+	private final Quality mQuality;
+	/**
+	 * input frames per output frame, mStepFrames + mStepFraction /
+	 * mDenominator
+	 */
+	private final int mStepFrames;
+	private final long mStepFraction;
+	private final long mDenominator;
+	/**
+	 * taps per phase, always even
+	 */
+	private final int mTaps;
+	private final int mPhases;
+	/**
+	 * (mPhases + 1) * mTaps coefficients, the last phase equals the first one
+	 * shifted by one frame
+	 */
+	private final float[] mTable;
+	private final float[] mCoefficients;
+	private final float[] mSums;
+	private final float[] mSilence;
+	/**
+	 * interleaved input. the frames before the current position are kept as
+	 * history for the filter
+	 */
+	private float[] mBuffer;
+	private int mBuffered;
+	/**
+	 * position of the next output frame in input frames relative to the start
+	 * of mBuffer, mPosition + mFraction / mDenominator
+	 */
+	private int mPosition;
+	private long mFraction;
+
+	public Resampler(int pChannels, double pInputRate, double pOutputRate, Quality pQuality) {
+		if ( pChannels < 1 ) {
+			throw new IllegalArgumentException( "pChannels has to be at least 1" );
+		}
+		if ( !(pInputRate > 0) || !(pOutputRate > 0) ) {
+			throw new IllegalArgumentException( "the sample rates have to be positive" );
+		}
+		if ( pQuality == null ) {
+			throw new NullPointerException( "pQuality may not be null" );
+		}
+		this.mChannels = pChannels;
+		this.mInputRate = pInputRate;
+		this.mOutputRate = pOutputRate;
+		this.mQuality = pQuality;
+		long input = Math.max( 1L, Math.round( pInputRate * RATE_SCALE ) );
+		long output = Math.max( 1L, Math.round( pOutputRate * RATE_SCALE ) );
+		long divisor = gcd( input, output );
+		input /= divisor;
+		output /= divisor;
+		this.mStepFrames = (int) (input / output);
+		this.mStepFraction = input % output;
+		this.mDenominator = output;
+		if ( pQuality == Quality.LINEAR ) {
+			this.mTaps = 2;
+			this.mPhases = 0;
+			this.mTable = null;
+		}
+		else {
+			double scale = Math.min( 1d, pOutputRate / pInputRate );
+			int taps = (int) Math.ceil( pQuality.mTaps / scale );
+			taps = Math.min( MAX_TAPS, taps + (taps & 1) );
+			this.mTaps = taps;
+			this.mPhases = pQuality.mPhases;
+			this.mTable = createTable( taps, pQuality.mPhases, 0.5d * scale * pQuality.mRolloff, pQuality.mBeta );
+		}
+		this.mCoefficients = new float[this.mTaps];
+		this.mSums = new float[pChannels];
+		this.mSilence = new float[this.mTaps / 2 * pChannels];
+		this.mBuffer = new float[this.mTaps * 4 * pChannels];
+		this.reset();
+	}
+
+	/**
+	 * forgets all buffered input, the next frame is treated as the start of a
+	 * new stream
+	 */
+	public void reset() {
+		int history = this.mTaps / 2 - 1;
+		Arrays.fill( this.mBuffer, 0, history * this.mChannels, 0f );
+		this.mBuffered = history;
+		this.mPosition = history;
+		this.mFraction = 0L;
+	}
+
+	/**
+	 * converts the given input. All input is taken, but at most pOutFrames
+	 * frames are put out. Frames that don't fit are put out by the next call.
+	 *
+	 * @param pIn
+	 *            interleaved input samples
+	 * @param pInOffset
+	 *            the index of the first input sample
+	 * @param pInFrames
+	 *            the amount of input frames
+	 * @param pOut
+	 *            the array the interleaved output samples are written to
+	 * @param pOutOffset
+	 *            the index the first output sample is written to
+	 * @param pOutFrames
+	 *            the maximum amount of output frames
+	 * @return the amount of frames written to pOut
+	 */
+	public int process(float[] pIn, int pInOffset, int pInFrames, float[] pOut, int pOutOffset, int pOutFrames) {
+		int channels = this.mChannels;
+		int needed = (this.mBuffered + pInFrames) * channels;
+		if ( needed > this.mBuffer.length ) {
+			float[] buffer = new float[Math.max( needed, this.mBuffer.length * 2 )];
+			System.arraycopy( this.mBuffer, 0, buffer, 0, this.mBuffered * channels );
+			this.mBuffer = buffer;
+		}
+		System.arraycopy( pIn, pInOffset, this.mBuffer, this.mBuffered * channels, pInFrames * channels );
+		this.mBuffered += pInFrames;
+		int written;
+		if ( this.mTable == null ) {
+			written = this.processLinear( pOut, pOutOffset, pOutFrames );
+		}
+		else {
+			written = this.processSinc( pOut, pOutOffset, pOutFrames );
+		}
+		this.discardHistory();
+		return written;
+	}
+
+	/**
+	 * puts out the frames that are still held back because the filter needs
+	 * input ahead of them. The stream should be {@link #reset()} afterwards
+	 *
+	 * @return the amount of frames written to pOut
+	 */
+	public int flush(float[] pOut, int pOutOffset, int pOutFrames) {
+		return this.process( this.mSilence, 0, this.mSilence.length / this.mChannels, pOut, pOutOffset, pOutFrames );
+	}
+
+	/**
+	 * @return the maximum amount of frames a call to process with the given
+	 *         amount of input frames puts out
+	 */
+	public int getMaxOutputFrames(int pInFrames) {
+		//output frames are put out while their position is before this frame
+		long end = this.mBuffered + pInFrames - this.mTaps / 2;
+		long available = end * this.mDenominator - this.getPositionNumerator();
+		if ( available <= 0 ) {
+			return 0;
+		}
+		long step = this.getStepNumerator();
+		return (int) ((available + step - 1) / step);
+	}
+
+	/**
+	 * @return the amount of input frames a call to process needs to put out
+	 *         pOutFrames frames
+	 */
+	public int getRequiredInputFrames(int pOutFrames) {
+		if ( pOutFrames <= 0 ) {
+			return 0;
+		}
+		long last = (this.getPositionNumerator() + (pOutFrames - 1) * this.getStepNumerator()) / this.mDenominator;
+		return (int) Math.max( 0L, last + this.mTaps / 2 + 1 - this.mBuffered );
+	}
+
+	private long getPositionNumerator() {
+		return this.mPosition * this.mDenominator + this.mFraction;
+	}
+
+	private long getStepNumerator() {
+		return this.mStepFrames * this.mDenominator + this.mStepFraction;
+	}
+
+	private int processLinear(float[] pOut, int pOutOffset, int pOutFrames) {
+		int channels = this.mChannels;
+		float[] buffer = this.mBuffer;
+		int index = this.mPosition;
+		long numerator = this.mFraction;
+		long denominator = this.mDenominator;
+		int last = this.mBuffered - 1;
+		int written = 0;
+		int out = pOutOffset;
+		while ( written < pOutFrames ) {
+			if ( index >= last ) {
+				break;
+			}
+			float fraction = (float) ((double) numerator / denominator);
+			int base = index * channels;
+			for ( int c = 0; c < channels; ++c ) {
+				float first = buffer[base + c];
+				pOut[out++] = first + fraction * (buffer[base + channels + c] - first);
+			}
+			++written;
+			index += this.mStepFrames;
+			numerator += this.mStepFraction;
+			if ( numerator >= denominator ) {
+				numerator -= denominator;
+				++index;
+			}
+		}
+		this.mPosition = index;
+		this.mFraction = numerator;
+		return written;
+	}
+
+	private int processSinc(float[] pOut, int pOutOffset, int pOutFrames) {
+		int channels = this.mChannels;
+		int taps = this.mTaps;
+		int half = taps / 2;
+		int phases = this.mPhases;
+		float[] buffer = this.mBuffer;
+		float[] table = this.mTable;
+		float[] coefficients = this.mCoefficients;
+		float[] sums = this.mSums;
+		int index = this.mPosition;
+		long numerator = this.mFraction;
+		long denominator = this.mDenominator;
+		int written = 0;
+		int out = pOutOffset;
+		while ( written < pOutFrames ) {
+			if ( index + half >= this.mBuffered ) {
+				break;
+			}
+			double phase = (double) numerator / denominator * phases;
+			int lower = (int) phase;
+			float fraction = (float) (phase - lower);
+			int a = lower * taps;
+			int b = a + taps;
+			for ( int k = 0; k < taps; ++k ) {
+				float first = table[a + k];
+				coefficients[k] = first + fraction * (table[b + k] - first);
+			}
+			int base = (index - half + 1) * channels;
+			if ( channels == 2 ) {
+				float left = 0f;
+				float right = 0f;
+				for ( int k = 0, i = base; k < taps; ++k, i += 2 ) {
+					float coefficient = coefficients[k];
+					left += buffer[i] * coefficient;
+					right += buffer[i + 1] * coefficient;
+				}
+				pOut[out++] = left;
+				pOut[out++] = right;
+			}
+			else {
+				for ( int c = 0; c < channels; ++c ) {
+					sums[c] = 0f;
+				}
+				for ( int k = 0, i = base; k < taps; ++k, i += channels ) {
+					float coefficient = coefficients[k];
+					for ( int c = 0; c < channels; ++c ) {
+						sums[c] += buffer[i + c] * coefficient;
+					}
+				}
+				for ( int c = 0; c < channels; ++c ) {
+					pOut[out++] = sums[c];
+				}
+			}
+			++written;
+			index += this.mStepFrames;
+			numerator += this.mStepFraction;
+			if ( numerator >= denominator ) {
+				numerator -= denominator;
+				++index;
+			}
+		}
+		this.mPosition = index;
+		this.mFraction = numerator;
+		return written;
+	}
+
+	/**
+	 * moves the frames that are still needed to the start of the buffer
+	 */
+	private void discardHistory() {
+		int first = this.mPosition - (this.mTaps / 2 - 1);
+		if ( first <= 0 ) {
+			return;
+		}
+		first = Math.min( first, this.mBuffered );
+		int channels = this.mChannels;
+		System.arraycopy( this.mBuffer, first * channels, this.mBuffer, 0, (this.mBuffered - first) * channels );
+		this.mBuffered -= first;
+		this.mPosition -= first;
+	}
+
+	public int getChannels() {
+		return this.mChannels;
+	}
+
+	public double getInputRate() {
+		return this.mInputRate;
+	}
+
+	public double getOutputRate() {
+		return this.mOutputRate;
+	}
+
+	public Quality getQuality() {
+		return this.mQuality;
+	}
+
+	/**
+	 * @return the length of the filter in input frames
+	 */
+	public int getTaps() {
+		return this.mTaps;
+	}
+
+	/**
+	 * tabulates the windowed sinc for every phase. coefficient k of phase p
+	 * belongs to the input frame that is (k - taps / 2 + 1) frames after the
+	 * frame before the output position, p / phases frames after it
+	 */
+	private static float[] createTable(int pTaps, int pPhases, double pCutoff, double pBeta) {
+		float[] table = new float[(pPhases + 1) * pTaps];
+		int half = pTaps / 2;
+		double norm = bessel( pBeta );
+		for ( int p = 0; p <= pPhases; ++p ) {
+			double offset = (double) p / pPhases;
+			double sum = 0;
+			for ( int k = 0; k < pTaps; ++k ) {
+				double t = offset + half - 1 - k;
+				double x = t / half;
+				double window = Math.abs( x ) >= 1d ? 0d : bessel( pBeta * Math.sqrt( 1d - x * x ) ) / norm;
+				double value = 2d * pCutoff * sinc( 2d * pCutoff * t ) * window;
+				table[p * pTaps + k] = (float) value;
+				sum += value;
+			}
+			//unity gain for DC in every phase
+			for ( int k = 0; k < pTaps; ++k ) {
+				table[p * pTaps + k] /= sum;
+			}
+		}
+		return table;
+	}
+
+	private static long gcd(long pA, long pB) {
+		while ( pB != 0 ) {
+			long rest = pA % pB;
+			pA = pB;
+			pB = rest;
+		}
+		return pA;
+	}
+
+	private static double sinc(double pX) {
+		if ( pX == 0d ) {
+			return 1d;
+		}
+		double x = Math.PI * pX;
+		return Math.sin( x ) / x;
+	}
+
+	/**
+	 * zeroth order modified Bessel function of the first kind
+	 */
+	private static double bessel(double pX) {
+		double sum = 1d;
+		double term = 1d;
+		double x = pX / 2d;
+		for ( int k = 1; k < 64; ++k ) {
+			term *= x / k;
+			double square = term * term;
+			sum += square;
+			if ( square < sum * 1e-12 ) {
+				break;
+			}
+		}
+		return sum;
+	}
+
+	public static enum Quality {
+		/**
+		 * linear interpolation. cheap, but aliases and dulls the highs
+		 */
+		LINEAR(2, 0, 0d, 1d),
+		/**
+		 * 16 taps per phase. rolls off early, good enough for many mixed
+		 * voices
+		 */
+		LOW(16, 128, 6d, 0.85d),
+		/**
+		 * 32 taps per phase. transparent for most material
+		 */
+		MEDIUM(32, 256, 8d, 0.91d),
+		/**
+		 * 64 taps per phase. flat up to 95% of the Nyquist frequency
+		 */
+		HIGH(64, 512, 10d, 0.95d);
+
+		final int mTaps;
+		final int mPhases;
+		final double mBeta;
+		final double mRolloff;
+
+		private Quality(int pTaps, int pPhases, double pBeta, double pRolloff) {
+			this.mTaps = pTaps;
+			this.mPhases = pPhases;
+			this.mBeta = pBeta;
+			this.mRolloff = pRolloff;
+		}
+
+	}
+
+}
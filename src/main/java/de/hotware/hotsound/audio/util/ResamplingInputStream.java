@@ -0,0 +1,166 @@
+/**
+ * File ResamplingInputStream.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that reads PCM from an AudioInputStream and returns it
+ * converted to another sample rate with a {@link Resampler}. The encoding,
+ * sample size, channels and byte order stay the same. Every format a
+ * {@link PCMCodec} supports can be resampled. Use
+ * {@link AudioUtil#getResampledAudioInputStream(AudioInputStream, float, Resampler.Quality)}
+ * to get an AudioInputStream of it.
+ *
+ * @author Martin Braun
+ */
+public final class ResamplingInputStream extends InputStream {
+
+	/**
+	 * frames that are read from the source at once
+	 */
+	private static final int BLOCK_FRAMES = 4096;
+
+	private final AudioInputStream mSource;
+	private final AudioFormat mFormat;
+	private final Resampler mResampler;
+	private final int mChannels;
+	private final int mFrameSize;
+	private final PCMCodec mCodec;
+	private final byte[] mInput;
+	/**
+	 * bytes in mInput, may end with an incomplete frame
+	 */
+	private int mInputLength;
+	private final float[] mSamples;
+	private final float[] mResampled;
+	private final int mCapacity;
+	private final byte[] mOutput;
+	private int mOutputPosition;
+	private int mOutputLength;
+	private boolean mEnded;
+	private final byte[] mSingle;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the source isn't supported by {@link PCMCodec}
+	 */
+	public ResamplingInputStream(AudioInputStream pSource, float pSampleRate, Resampler.Quality pQuality) {
+		AudioFormat source = pSource.getFormat();
+		if ( !PCMCodec.isSupported( source ) ) {
+			throw new IllegalArgumentException( "can't resample " + source );
+		}
+		this.mSource = pSource;
+		this.mChannels = source.getChannels();
+		this.mFrameSize = source.getFrameSize();
+		this.mFormat = new AudioFormat(
+				source.getEncoding(),
+				pSampleRate,
+				source.getSampleSizeInBits(),
+				this.mChannels,
+				this.mFrameSize,
+				pSampleRate,
+				source.isBigEndian()
+		);
+		this.mCodec = new PCMCodec( this.mFormat );
+		this.mResampler = new Resampler( this.mChannels, source.getSampleRate(), pSampleRate, pQuality );
+		this.mInput = new byte[BLOCK_FRAMES * this.mFrameSize];
+		this.mSamples = new float[BLOCK_FRAMES * this.mChannels];
+		double step = source.getSampleRate() / (double) pSampleRate;
+		this.mCapacity = (int) Math.ceil( (BLOCK_FRAMES + this.mResampler.getTaps()) / step ) + 2;
+		this.mResampled = new float[this.mCapacity * this.mChannels];
+		this.mOutput = new byte[this.mCapacity * this.mFrameSize];
+		this.mSingle = new byte[1];
+	}
+
+	/**
+	 * @return the format of the data this stream returns
+	 */
+	public AudioFormat getFormat() {
+		return this.mFormat;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = this.read( this.mSingle, 0, 1 );
+		return read == -1 ? -1 : this.mSingle[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] pData, int pStart, int pLength) throws IOException {
+		if ( pLength == 0 ) {
+			return 0;
+		}
+		if ( !this.fill() ) {
+			return -1;
+		}
+		int length = Math.min( pLength, this.mOutputLength - this.mOutputPosition );
+		System.arraycopy( this.mOutput, this.mOutputPosition, pData, pStart, length );
+		this.mOutputPosition += length;
+		return length;
+	}
+
+	@Override
+	public int available() {
+		return this.mOutputLength - this.mOutputPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.mSource.close();
+	}
+
+	/**
+	 * resamples the next block if everything has been read
+	 *
+	 * @return false if the stream has ended
+	 */
+	private boolean fill() throws IOException {
+		while ( this.mOutputPosition == this.mOutputLength ) {
+			if ( this.mEnded ) {
+				return false;
+			}
+			int read = this.mSource.read( this.mInput, this.mInputLength, this.mInput.length - this.mInputLength );
+			int frames;
+			if ( read == -1 ) {
+				frames = this.mResampler.flush( this.mResampled, 0, this.mCapacity );
+				this.mEnded = true;
+			}
+			else {
+				this.mInputLength += read;
+				int inFrames = this.mInputLength / this.mFrameSize;
+				this.mCodec.decode( this.mInput, 0, this.mSamples, 0, inFrames );
+				frames = this.mResampler.process( this.mSamples, 0, inFrames, this.mResampled, 0, this.mCapacity );
+				int used = inFrames * this.mFrameSize;
+				this.mInputLength -= used;
+				System.arraycopy( this.mInput, used, this.mInput, 0, this.mInputLength );
+			}
+			this.mCodec.encode( this.mResampled, 0, this.mOutput, 0, frames );
+			this.mOutputPosition = 0;
+			this.mOutputLength = frames * this.mFrameSize;
+		}
+		return true;
+	}
+
+}
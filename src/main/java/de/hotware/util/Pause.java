@@ -30,10 +30,13 @@ public class Pause {
 	 * @throws InterruptedException
 	 */
 	public void probe() throws InterruptedException {
-		while ( this.mPaused.get() ) {
+		if ( this.mPaused.get() ) {
 			this.mLock.lock();
 			try {
-				this.mCondition.await();
+				//checked under the lock, so pause(false) can't slip in between
+				while ( this.mPaused.get() ) {
+					this.mCondition.await();
+				}
 			}
 			finally {
 				this.mLock.unlock();
@@ -48,13 +51,16 @@ public class Pause {
 		if ( !pValue ) {
 			this.mLock.lock();
 			try {
+				this.mPaused.set( false );
 				this.mCondition.signalAll();
 			}
 			finally {
 				this.mLock.unlock();
 			}
 		}
-		this.mPaused.set( pValue );
+		else {
+			this.mPaused.set( true );
+		}
 	}
 
 	public boolean isPaused() {
@@ -0,0 +1,185 @@
+/**
+ * File DecodedAudioCacheTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.player.BasicPlaybackSong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * fills the cache from in memory sources, which play the same as decoders
+ */
+public class DecodedAudioCacheTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+
+    private URL mURL;
+    private byte[] mData;
+
+    @Before
+    public void setUp() throws Exception {
+        this.mURL = new URL("http://localhost/jingle.wav");
+        this.mData = new byte[10000 * FORMAT.getFrameSize()];
+        for(int i = 0; i < this.mData.length; ++i) {
+            this.mData[i] = (byte) i;
+        }
+    }
+
+    @Test
+    public void testFilledWhilePlaying() throws Exception {
+        DecodedAudioCache cache = new DecodedAudioCache(1024 * 1024);
+        assertNull(cache.get(this.mURL));
+        CountingAudio source = this.newSource();
+        Audio audio = cache.tee(this.mURL, source);
+        assertTrue(audio instanceof SeekableAudio);
+        //nothing is decoded before the playback reads it
+        assertEquals(0, source.mRead);
+        byte[] played = readFully(audio);
+        assertArrayEquals(this.mData, played);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(this.mData.length, cache.getSize());
+        CachedAudio cached = cache.get(this.mURL);
+        assertNotNull(cached);
+        assertArrayEquals(this.mData, readFully(cached));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testFilledOnlyOnceAtATime() throws Exception {
+        DecodedAudioCache cache = new DecodedAudioCache(1024 * 1024);
+        Audio first = cache.tee(this.mURL, this.newSource());
+        CountingAudio source = this.newSource();
+        //the second miss plays without copying
+        assertSame(source, cache.tee(this.mURL, source));
+        readFully(first);
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testTooBigIsCopiedOnlyOnce() throws Exception {
+        DecodedAudioCache cache = new DecodedAudioCache(this.mData.length / 2);
+        Audio audio = cache.tee(this.mURL, this.newSource());
+        assertArrayEquals(this.mData, readFully(audio));
+        assertEquals(0, cache.getEntryCount());
+        CountingAudio source = this.newSource();
+        assertSame(source, cache.tee(this.mURL, source));
+        assertNull(cache.put(this.mURL, this.newSource()));
+    }
+
+    @Test
+    public void testSeekingGivesUpTheCopy() throws Exception {
+        DecodedAudioCache cache = new DecodedAudioCache(1024 * 1024);
+        Audio audio = cache.tee(this.mURL, this.newSource());
+        audio.open();
+        audio.read(new byte[400], 0, 400);
+        ((SeekableAudio) audio).seek(5000);
+        assertEquals(this.mData.length - 5000 * FORMAT.getFrameSize(), readFully(audio).length);
+        assertEquals(0, cache.getEntryCount());
+        //the next playback tries again
+        assertNotNull(cache.put(this.mURL, this.newSource()));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void testHitDoesNotProbeTheSource() throws Exception {
+        final URL resource = this.getClass().getResource("/test.wav");
+        final AtomicInteger connections = new AtomicInteger();
+        URL url = new URL("hotsound", "", -1, "test.wav", new URLStreamHandler() {
+
+            @Override
+            protected URLConnection openConnection(URL pURL) throws IOException {
+                connections.incrementAndGet();
+                return resource.openConnection();
+            }
+
+        });
+        DecodedAudioCache cache = new DecodedAudioCache(1024 * 1024);
+        BasicPlaybackSong song = new BasicPlaybackSong(url);
+        song.setDecodedAudioCache(cache);
+        byte[] played = readFully(song.getAudio());
+        int misses = connections.get();
+        assertTrue(misses > 0);
+        assertEquals(1, cache.getEntryCount());
+
+        BasicPlaybackSong again = new BasicPlaybackSong(url);
+        again.setDecodedAudioCache(cache);
+        Audio cached = again.getAudio();
+        assertTrue(cached instanceof CachedAudio);
+        assertEquals(misses, connections.get());
+        assertTrue(again.getAudioFormat().matches(song.getAudioFormat()));
+        assertArrayEquals(played, readFully(cached));
+    }
+
+    private CountingAudio newSource() {
+        return new CountingAudio(ByteBuffer.wrap(this.mData));
+    }
+
+    private static byte[] readFully(Audio pAudio) throws Exception {
+        if(pAudio.isClosed()) {
+            pAudio.open();
+        }
+        ByteBuffer ret = ByteBuffer.allocate(1024 * 1024);
+        byte[] chunk = new byte[1000];
+        int read;
+        while((read = pAudio.read(chunk, 0, chunk.length)) >= 0) {
+            ret.put(chunk, 0, read);
+        }
+        pAudio.close();
+        byte[] data = new byte[ret.position()];
+        ret.flip();
+        ret.get(data);
+        return data;
+    }
+
+    private static final class CountingAudio extends CachedAudio {
+
+        int mRead;
+
+        CountingAudio(ByteBuffer pData) {
+            super(FORMAT, pData);
+        }
+
+        @Override
+        public int read(byte[] pData, int pStart, int pLength) throws AudioException {
+            ++this.mRead;
+            return super.read(pData, pStart, pLength);
+        }
+
+    }
+
+}
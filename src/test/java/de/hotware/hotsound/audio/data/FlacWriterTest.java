@@ -0,0 +1,131 @@
+/**
+ * File FlacWriterTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * encodes audio with the FLAC recorder and decodes it again with jflac. jflac
+ * is loaded separately, its JavaSound provider would otherwise take over the
+ * reading of WAVE streams in the other tests.
+ */
+public class FlacWriterTest {
+
+    private static final File JFLAC = new File("DECODERLIBRARIES/jflac.jar");
+
+    @Test
+    public void testRoundTripWave() throws Exception {
+        AudioInputStream in = AudioSystem.getAudioInputStream(this.getClass().getResource("/test.wav"));
+        AudioFormat format = in.getFormat();
+        byte[] data = readFully(in);
+        in.close();
+        assertArrayEquals(data, this.roundTrip(format, data, 1));
+        assertArrayEquals(data, this.roundTrip(format, data, 3));
+    }
+
+    @Test
+    public void testRoundTrip24Bit() throws Exception {
+        AudioFormat format = new AudioFormat(96000, 24, 2, true, false);
+        //not a multiple of the block size and written in odd chunks below
+        int frames = 3 * FlacWriter.BLOCK_SIZE + 1234;
+        byte[] data = new byte[frames * 6];
+        Random random = new Random(42);
+        for(int i = 0; i < frames; ++i) {
+            double t = i / 96000.0;
+            int left = (int) (3000000 * Math.sin(2 * Math.PI * 440 * t)) + random.nextInt(512) - 256;
+            int right = i < frames / 2 ? left / 2 : random.nextInt(1 << 24) - (1 << 23);
+            for(int b = 0; b < 3; ++b) {
+                data[i * 6 + b] = (byte) (left >> (8 * b));
+                data[i * 6 + 3 + b] = (byte) (right >> (8 * b));
+            }
+        }
+        assertArrayEquals(data, this.roundTrip(format, data, 1));
+        assertArrayEquals(data, this.roundTrip(format, data, 2));
+    }
+
+    private byte[] roundTrip(AudioFormat pFormat, byte[] pData, int pThreads) throws Exception {
+        assumeTrue(JFLAC.isFile());
+        File flac = File.createTempFile("hotsound", ".flac");
+        File wav = File.createTempFile("hotsound", ".wav");
+        try {
+            FlacRecordingAudioDevice device = new FlacRecordingAudioDevice(flac, pThreads);
+            device.open(pFormat);
+            int pos = 0;
+            int chunk = 1;
+            while(pos < pData.length) {
+                int length = Math.min(chunk, pData.length - pos);
+                device.write(pData, pos, length);
+                pos += length;
+                chunk = chunk * 3 + 1;
+            }
+            device.close();
+            assertTrue(flac.length() < pData.length);
+            try(URLClassLoader loader = new URLClassLoader(new URL[] {JFLAC.toURI().toURL()}, null)) {
+                Class<?> decoder = loader.loadClass("org.kc7bfi.jflac.apps.Decoder");
+                Method decode = decoder.getMethod("decode", String.class, String.class);
+                //the decoder is rather chatty
+                PrintStream out = System.out;
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                try {
+                    decode.invoke(decoder.getDeclaredConstructor().newInstance(), flac.getAbsolutePath(), wav.getAbsolutePath());
+                } finally {
+                    System.setOut(out);
+                }
+            }
+            byte[] decoded = Files.readAllBytes(wav.toPath());
+            //the decoder writes a plain 44 byte header
+            return Arrays.copyOfRange(decoded, 44, decoded.length);
+        } finally {
+            flac.delete();
+            wav.delete();
+        }
+    }
+
+    private static byte[] readFully(InputStream pIn) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = pIn.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
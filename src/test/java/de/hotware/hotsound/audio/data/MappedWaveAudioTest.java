@@ -0,0 +1,130 @@
+/**
+ * File MappedWaveAudioTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * compares the mapped reading of test.wav with the JavaSound decoding of
+ * {@link BasicPlaybackAudio}
+ */
+public class MappedWaveAudioTest {
+
+    private static final int FRAMES = 66432;
+
+    @Test
+    public void testReadMatchesBasicPlaybackAudio() throws Exception {
+        byte[] expected = this.decode();
+        for(long window : new long[] {Long.MAX_VALUE, 1000, 4096}) {
+            MappedWaveAudio audio = new MappedWaveAudio(this.file(), window);
+            audio.open();
+            try {
+                AudioFormat format = audio.getAudioFormat();
+                assertEquals(AudioFormat.Encoding.PCM_SIGNED, format.getEncoding());
+                assertEquals(44100, format.getSampleRate(), 0);
+                assertEquals(16, format.getSampleSizeInBits());
+                assertEquals(2, format.getChannels());
+                assertEquals(FRAMES, audio.getFrameLength());
+                //odd sizes are cut down to whole frames
+                assertArrayEquals("window " + window, expected, readFully(audio, 1001));
+                assertEquals(FRAMES, audio.getFramePosition());
+                assertEquals(-1, audio.read(new byte[4], 0, 4));
+            }
+            finally {
+                audio.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        byte[] expected = this.decode();
+        for(long window : new long[] {Long.MAX_VALUE, 1000}) {
+            MappedWaveAudio audio = new MappedWaveAudio(this.file(), window);
+            audio.open();
+            try {
+                byte[] chunk = new byte[4 * 500];
+                for(long frame : new long[] {1234, FRAMES / 2, 17, FRAMES - 100, 0, 40000, 39999}) {
+                    audio.seek(frame);
+                    assertEquals(frame, audio.getFramePosition());
+                    int read = audio.read(chunk, 0, chunk.length);
+                    int start = (int) frame * 4;
+                    int length = Math.min(chunk.length, expected.length - start);
+                    assertEquals(length, read);
+                    assertArrayEquals("window " + window + ", frame " + frame,
+                            Arrays.copyOfRange(expected, start, start + length), Arrays.copyOf(chunk, read));
+                }
+                audio.skip(-600);
+                assertEquals(39999 + 500 - 600, audio.getFramePosition());
+                //seeking is clamped to the data
+                audio.seek(FRAMES + 10);
+                assertEquals(FRAMES, audio.getFramePosition());
+                assertEquals(-1, audio.read(chunk, 0, chunk.length));
+                audio.seek(-5);
+                assertEquals(0, audio.getFramePosition());
+            }
+            finally {
+                audio.close();
+            }
+        }
+    }
+
+    private File file() throws Exception {
+        return new File(this.getClass().getResource("/test.wav").toURI());
+    }
+
+    private byte[] decode() throws Exception {
+        URL url = this.getClass().getResource("/test.wav");
+        BasicPlaybackAudio audio = new BasicPlaybackAudio(
+                new BufferedInputStream(new FileInputStream(this.file())), FRAMES, url);
+        audio.open();
+        try {
+            byte[] ret = readFully(audio, 8192);
+            assertEquals(FRAMES * 4, ret.length);
+            return ret;
+        }
+        finally {
+            audio.close();
+        }
+    }
+
+    private static byte[] readFully(Audio pAudio, int pChunk) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[pChunk];
+        int read;
+        while((read = pAudio.read(chunk, 0, chunk.length)) >= 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * File MixingAudioTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import de.hotware.hotsound.audio.data.Audio.AudioException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MixingAudioTest {
+
+    private static final AudioFormat MONO = new AudioFormat(8000, 16, 1, true, false);
+
+    @Test
+    public void testMixesVoices() throws AudioException {
+        MixingAudio mixer = new MixingAudio(8000);
+        mixer.open();
+        //hard left and hard right, so every voice ends up in one channel
+        mixer.play(constant(1000, 64), 1f, -1f);
+        mixer.play(constant(2000, 64), 1f, 1f);
+        mixer.play(constant(-300, 64), 1f, -1f);
+        short[] out = read(mixer, 64);
+        for(int i = 0; i < 64; ++i) {
+            assertEquals(700, out[2 * i]);
+            assertEquals(2000, out[2 * i + 1]);
+        }
+        mixer.setGain(0.5f);
+        mixer.play(constant(1000, 64), 1f, 0f);
+        out = read(mixer, 1);
+        //constant power panning in the center
+        assertEquals(Math.round(1000 * Math.sqrt(0.5) * 0.5), out[0], 1);
+        mixer.close();
+    }
+
+    @Test
+    public void testEndedVoicesAreRemoved() throws AudioException {
+        MixingAudio mixer = new MixingAudio(8000);
+        mixer.open();
+        Audio shortAudio = constant(1000, 100);
+        Audio longAudio = constant(2000, 300);
+        MixingAudio.Voice shortVoice = mixer.play(shortAudio, 1f, -1f);
+        MixingAudio.Voice longVoice = mixer.play(longAudio, 1f, 1f);
+        assertEquals(2, mixer.getVoiceCount());
+
+        short[] out = read(mixer, 200);
+        for(int i = 0; i < 200; ++i) {
+            assertEquals(i < 100 ? 1000 : 0, out[2 * i]);
+            assertEquals(2000, out[2 * i + 1]);
+        }
+        out = read(mixer, 200);
+        assertTrue(shortVoice.isDone());
+        assertTrue(shortAudio.isClosed());
+        assertFalse(longVoice.isDone());
+        assertEquals(1, mixer.getVoiceCount());
+        for(int i = 0; i < 200; ++i) {
+            assertEquals(0, out[2 * i]);
+            assertEquals(i < 100 ? 2000 : 0, out[2 * i + 1]);
+        }
+        read(mixer, 200);
+        assertTrue(longVoice.isDone());
+        assertTrue(longAudio.isClosed());
+        assertEquals(0, mixer.getVoiceCount());
+        //silence while there is nothing to mix
+        out = read(mixer, 10);
+        for(short sample : out) {
+            assertEquals(0, sample);
+        }
+        mixer.close();
+    }
+
+    @Test
+    public void testMaxVoices() throws AudioException {
+        MixingAudio mixer = new MixingAudio(8000, 2);
+        mixer.open();
+        MixingAudio.Voice first = mixer.play(constant(1000, 1000));
+        mixer.play(constant(1000, 1000));
+        Audio rejected = constant(1000, 1000);
+        try {
+            mixer.play(rejected);
+            fail("a third voice must be rejected");
+        }
+        catch(IllegalStateException e) {
+            assertTrue(rejected.isClosed());
+        }
+        assertEquals(2, mixer.getVoiceCount());
+        first.stop();
+        read(mixer, 10);
+        assertTrue(first.isDone());
+        assertEquals(1, mixer.getVoiceCount());
+        mixer.play(constant(1000, 1000));
+        assertEquals(2, mixer.getVoiceCount());
+        mixer.close();
+    }
+
+    @Test
+    public void testCloseFinishesVoices() throws AudioException {
+        MixingAudio mixer = new MixingAudio(8000);
+        mixer.open();
+        Audio playing = constant(1000, 1000);
+        mixer.play(playing);
+        read(mixer, 10);
+        Audio pending = constant(1000, 1000);
+        mixer.play(pending);
+        mixer.close();
+        assertTrue(playing.isClosed());
+        assertTrue(pending.isClosed());
+        assertEquals(0, mixer.getVoiceCount());
+        try {
+            read(mixer, 10);
+            fail("a closed mixer must not be read");
+        }
+        catch(IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private static Audio constant(int pValue, int pFrames) {
+        ByteBuffer data = ByteBuffer.allocate(pFrames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for(int i = 0; i < pFrames; ++i) {
+            data.putShort((short) pValue);
+        }
+        data.flip();
+        return new CachedAudio(MONO, data);
+    }
+
+    private static short[] read(MixingAudio pMixer, int pFrames) throws AudioException {
+        byte[] data = new byte[pFrames * 4];
+        assertEquals(data.length, pMixer.read(data, 0, data.length));
+        short[] samples = new short[pFrames * 2];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * File MultiAudioDeviceTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.data.MultiAudioDevice.SlowConsumerPolicy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * writes numbered chunks of 4 bytes to several recording devices, some of
+ * which are held up or fail
+ */
+public class MultiAudioDeviceTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int CAPACITY = 2;
+
+    @Test
+    public void testFanOut() throws Exception {
+        RecordingDevice first = new RecordingDevice();
+        RecordingDevice second = new RecordingDevice();
+        MultiAudioDevice sync = new MultiAudioDevice(Arrays.<AudioDevice> asList(first, second));
+        sync.open(FORMAT);
+        write(sync, 0, 10);
+        sync.close();
+        assertChunks(first, 0, 10);
+        assertChunks(second, 0, 10);
+        first = new RecordingDevice();
+        second = new RecordingDevice();
+        MultiAudioDevice async = async(SlowConsumerPolicy.BLOCK, first, second);
+        write(async, 0, 100);
+        async.close();
+        assertChunks(first, 0, 100);
+        assertChunks(second, 0, 100);
+        assertPoolComplete(async);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        RecordingDevice fast = new RecordingDevice();
+        RecordingDevice slow = new RecordingDevice();
+        slow.hold();
+        MultiAudioDevice device = async(SlowConsumerPolicy.DROP_OLDEST, fast, slow);
+        write(device, 0, 1);
+        assertTrue(slow.mWriting.await(10, TimeUnit.SECONDS));
+        //the slow device never holds up the writer
+        writeInStep(device, fast, 1, 50);
+        assertTrue(device.getMaxQueuedChunks() <= CAPACITY);
+        slow.release();
+        device.close();
+        assertChunks(fast, 0, 50);
+        //the one it was writing and the newest ones that were queued
+        List<Integer> chunks = slow.getChunks();
+        assertEquals(0, (int) chunks.get(0));
+        assertEquals(49, (int) chunks.get(chunks.size() - 1));
+        assertTrue(chunks.size() <= 1 + CAPACITY);
+        assertPoolComplete(device);
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        RecordingDevice fast = new RecordingDevice();
+        RecordingDevice slow = new RecordingDevice();
+        slow.hold();
+        final MultiAudioDevice device = async(SlowConsumerPolicy.BLOCK, fast, slow);
+        final CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    write(device, 0, 20);
+                    written.countDown();
+                }
+                catch(AudioDeviceException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        };
+        writer.start();
+        assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+        slow.release();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        device.close();
+        assertChunks(fast, 0, 20);
+        assertChunks(slow, 0, 20);
+        assertPoolComplete(device);
+    }
+
+    @Test
+    public void testInterruptedWhileBlocked() throws Exception {
+        RecordingDevice slow = new RecordingDevice();
+        RecordingDevice fast = new RecordingDevice();
+        slow.hold();
+        //the slow device comes first, so the fast one is never reached
+        final MultiAudioDevice device = async(SlowConsumerPolicy.BLOCK, slow, fast);
+        final AtomicReference<AudioDeviceException> failure = new AtomicReference<>();
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    write(device, 0, 20);
+                }
+                catch(AudioDeviceException e) {
+                    failure.set(e);
+                }
+            }
+
+        };
+        writer.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(writer.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        writer.interrupt();
+        writer.join(10000);
+        assertTrue(failure.get() != null);
+        slow.release();
+        device.close();
+        //every reference of the interrupted chunk has been given back
+        assertPoolComplete(device);
+    }
+
+    @Test
+    public void testFailingDevice() throws Exception {
+        RecordingDevice good = new RecordingDevice();
+        RecordingDevice failing = new RecordingDevice();
+        failing.mFail = true;
+        MultiAudioDevice device = async(SlowConsumerPolicy.BLOCK, good, failing);
+        int reported = 0;
+        for(int i = 0; i < 10; ++i) {
+            try {
+                write(device, i, i + 1);
+            }
+            catch(AudioDeviceException e) {
+                //by the next write after the worker failed
+                reported += e.getSuppressed().length;
+            }
+        }
+        try {
+            device.close();
+        }
+        catch(AudioDeviceException e) {
+            reported += e.getSuppressed().length;
+        }
+        //once per failed write, the good device isn't affected
+        assertTrue(reported > 0);
+        assertChunks(good, 0, 10);
+        assertPoolComplete(device);
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        RecordingDevice fast = new RecordingDevice();
+        RecordingDevice slow = new RecordingDevice();
+        slow.hold();
+        MultiAudioDevice device = async(SlowConsumerPolicy.DETACH, fast, slow);
+        writeInStep(device, fast, 0, 1);
+        assertTrue(slow.mWriting.await(10, TimeUnit.SECONDS));
+        //fills the queue of the slow device, the next chunk detaches it
+        writeInStep(device, fast, 1, 1 + CAPACITY + 1);
+        try {
+            write(device, 1 + CAPACITY + 1, 1 + CAPACITY + 2);
+            fail("the detached device has to be reported");
+        }
+        catch(AudioDeviceException e) {
+            //the chunk has been written to the others nonetheless
+            assertEquals(1, e.getSuppressed().length);
+        }
+        writeInStep(device, fast, 1 + CAPACITY + 2, 20);
+        slow.release();
+        device.close();
+        assertChunks(fast, 0, 20);
+        //what was queued when it has been detached is dropped as well
+        assertEquals(Arrays.asList(0), slow.getChunks());
+        assertPoolComplete(device);
+    }
+
+    private static MultiAudioDevice async(SlowConsumerPolicy pPolicy, AudioDevice... pDevices)
+            throws AudioDeviceException {
+        MultiAudioDevice ret = new MultiAudioDevice(Arrays.asList(pDevices), CAPACITY, pPolicy);
+        ret.open(FORMAT);
+        return ret;
+    }
+
+    private static void write(AudioDevice pDevice, int pFrom, int pTo) throws AudioDeviceException {
+        for(int i = pFrom; i < pTo; ++i) {
+            byte[] chunk = {(byte) i, (byte) (i >> 8), (byte) (i >> 16), (byte) (i >> 24)};
+            pDevice.write(chunk, 0, chunk.length);
+        }
+    }
+
+    /**
+     * waits for pFast after every chunk, so only the other devices fall
+     * behind
+     */
+    private static void writeInStep(AudioDevice pDevice, RecordingDevice pFast, int pFrom, int pTo)
+            throws AudioDeviceException, InterruptedException {
+        for(int i = pFrom; i < pTo; ++i) {
+            write(pDevice, i, i + 1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(pFast.getChunks().size() < i + 1) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void assertChunks(RecordingDevice pDevice, int pFrom, int pTo) {
+        List<Integer> chunks = pDevice.getChunks();
+        assertEquals(pTo - pFrom, chunks.size());
+        for(int i = pFrom; i < pTo; ++i) {
+            assertEquals(i, (int) chunks.get(i - pFrom));
+        }
+    }
+
+    private static void assertPoolComplete(MultiAudioDevice pDevice) {
+        int poolSize = CAPACITY + pDevice.mDevices.size() + 1;
+        assertTrue(pDevice.mChunkPool.size() >= poolSize);
+    }
+
+    private static final class RecordingDevice extends BaseAudioDevice {
+
+        final CountDownLatch mWriting = new CountDownLatch(1);
+        private volatile CountDownLatch mHold = new CountDownLatch(0);
+        volatile boolean mFail;
+        private final List<Integer> mChunks = new ArrayList<>();
+
+        void hold() {
+            this.mHold = new CountDownLatch(1);
+        }
+
+        void release() {
+            this.mHold.countDown();
+        }
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            if(this.mFail) {
+                throw new AudioDeviceException("failing on purpose");
+            }
+            synchronized(this) {
+                this.mChunks.add((pData[pStart] & 0xFF) | (pData[pStart + 1] & 0xFF) << 8
+                        | (pData[pStart + 2] & 0xFF) << 16 | pData[pStart + 3] << 24);
+            }
+            this.mWriting.countDown();
+            try {
+                this.mHold.await();
+            }
+            catch(InterruptedException e) {
+                throw new AudioDeviceException("interrupted", e);
+            }
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        synchronized List<Integer> getChunks() {
+            return new ArrayList<>(this.mChunks);
+        }
+
+    }
+
+}
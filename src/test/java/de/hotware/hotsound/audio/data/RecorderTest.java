@@ -0,0 +1,203 @@
+/**
+ * File RecorderTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecorderTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        this.mFile = File.createTempFile("hotsound-recorder", ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        this.mFile.delete();
+    }
+
+    @Test
+    public void testHeaderIsPatchedWhileRecording() throws Exception {
+        //header update every 100 ms of audio
+        Recorder recorder = new Recorder(this.mFile, 100);
+        recorder.open(FORMAT);
+        try {
+            byte[] data = data(FORMAT.getFrameSize() * 44100);
+            for(int i = 0; i < data.length; i += 1000) {
+                recorder.write(data, i, Math.min(1000, data.length - i));
+            }
+            //not closed yet, but the file already describes what is on disk
+            WaveFileHeader header = new WaveFileHeader();
+            try(InputStream in = new FileInputStream(this.mFile)) {
+                assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, header.read(in));
+            }
+            long onDisk = this.mFile.length() - WaveFileHeader.RESERVED_HEADER_LENGTH;
+            assertTrue(onDisk > 0);
+            assertEquals(onDisk, header.getDataLength());
+            assertEquals(44100, header.getSampleRate());
+            try(AudioInputStream in = AudioSystem.getAudioInputStream(this.mFile)) {
+                assertEquals(onDisk / FORMAT.getFrameSize(), in.getFrameLength());
+                byte[] read = readFully(in);
+                assertEquals(onDisk, read.length);
+                for(int i = 0; i < read.length; ++i) {
+                    assertEquals(data[i], read[i]);
+                }
+            }
+        }
+        finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void testCloseWritesFinalHeader() throws Exception {
+        Recorder recorder = new Recorder(this.mFile);
+        recorder.open(FORMAT);
+        byte[] data = data(4 * 1001);
+        recorder.write(data, 0, data.length);
+        recorder.close();
+        assertEquals(data.length, recorder.getBytesWritten());
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH + data.length, this.mFile.length());
+        try(AudioInputStream in = AudioSystem.getAudioInputStream(this.mFile)) {
+            assertEquals(1001, in.getFrameLength());
+        }
+    }
+
+    @Test
+    public void testAsyncWritesSameBytesAsSync() throws Exception {
+        //several buffers of the recorder and an odd tail
+        byte[] data = data(5 * 128000 + 4 * 777 + 1);
+        File sync = File.createTempFile("hotsound-recorder-sync", ".wav");
+        try {
+            record(new Recorder(sync, 100, 0, RecordingAudioDevice.FsyncPolicy.NONE), data, 4096);
+            record(new Recorder(this.mFile, 100, 3, RecordingAudioDevice.FsyncPolicy.NONE), data, 4096);
+            byte[] expected = Files.readAllBytes(sync.toPath());
+            assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH + data.length + 1, expected.length);
+            assertArrayEquals(expected, Files.readAllBytes(this.mFile.toPath()));
+        }
+        finally {
+            sync.delete();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseDrainsQueue() throws Exception {
+        byte[] data = data(20 * 128000);
+        Recorder recorder = new Recorder(this.mFile, 0, 8, RecordingAudioDevice.FsyncPolicy.NONE);
+        //one large write fills the queue faster than the writer empties it
+        record(recorder, data, data.length);
+        byte[] file = Files.readAllBytes(this.mFile.toPath());
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH + data.length, file.length);
+        assertArrayEquals(data, Arrays.copyOfRange(file, WaveFileHeader.RESERVED_HEADER_LENGTH, file.length));
+        try(AudioInputStream in = AudioSystem.getAudioInputStream(this.mFile)) {
+            assertEquals(data.length / FORMAT.getFrameSize(), in.getFrameLength());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterFailureSurfaces() throws Exception {
+        Recorder recorder = new Recorder(this.mFile, 0, 2, RecordingAudioDevice.FsyncPolicy.NONE);
+        recorder.open(FORMAT);
+        byte[] data = data(128000);
+        recorder.write(data, 0, data.length);
+        writerThread(this.mFile).interrupt();
+        IOException failure = null;
+        try {
+            while(true) {
+                recorder.write(data, 0, data.length);
+            }
+        }
+        catch(IOException e) {
+            failure = e;
+        }
+        assertTrue(failure.getCause() instanceof InterruptedIOException);
+        try {
+            recorder.close();
+            fail("close must report the failed writer");
+        }
+        catch(IOException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+    }
+
+    private static void record(Recorder pRecorder, byte[] pData, int pChunk) throws IOException {
+        pRecorder.open(FORMAT);
+        try {
+            for(int i = 0; i < pData.length; i += pChunk) {
+                pRecorder.write(pData, i, Math.min(pChunk, pData.length - i));
+            }
+        }
+        finally {
+            pRecorder.close();
+        }
+    }
+
+    private static Thread writerThread(File pFile) {
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals("HotSound-Recorder-" + pFile.getName())) {
+                return thread;
+            }
+        }
+        throw new AssertionError("no writer thread for " + pFile);
+    }
+
+    static byte[] data(int pLength) {
+        byte[] data = new byte[pLength];
+        for(int i = 0; i < data.length; ++i) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        return data;
+    }
+
+    static byte[] readFully(InputStream pIn) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = pIn.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * File RotatingRecordingAudioDeviceTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RotatingRecordingAudioDeviceTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+
+    /**
+     * not a multiple of the frame size, the device has to cut it down
+     */
+    private static final int SEGMENT_BYTES = 4003;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.mDirectory = Files.createTempDirectory("hotsound-segments").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for(File file : this.mDirectory.listFiles()) {
+            file.delete();
+        }
+        this.mDirectory.delete();
+    }
+
+    @Test
+    public void testSegmentsAreGapless() throws Exception {
+        //chunks that end in the middle of segments
+        this.testSegments(8, 3 * 1000 + 4);
+    }
+
+    @Test
+    public void testSegmentsAreGaplessWithoutQueue() throws Exception {
+        this.testSegments(0, 3 * 1000 + 4);
+    }
+
+    @Test
+    public void testRotationWaitsForSegmentBeingOpened() throws Exception {
+        //one write spans many segments, so most rotations have to wait for
+        //the opening thread to hand over the next segment
+        this.testSegments(8, Integer.MAX_VALUE);
+    }
+
+    private void testSegments(int pQueueCapacity, int pChunk) throws Exception {
+        RotatingRecordingAudioDevice device = new RotatingRecordingAudioDevice(
+                this.mDirectory, "test", 0, SEGMENT_BYTES, pQueueCapacity, RecordingAudioDevice.FsyncPolicy.NONE);
+        int segmentBytes = SEGMENT_BYTES - SEGMENT_BYTES % FORMAT.getFrameSize();
+        byte[] data = RecorderTest.data(12 * segmentBytes + 3 * FORMAT.getFrameSize());
+        device.open(FORMAT);
+        for(int i = 0; i < data.length; i += pChunk) {
+            device.write(data, i, Math.min(pChunk, data.length - i));
+        }
+        device.close();
+
+        File[] segments = device.getSegments();
+        //the sequence number at the end of the name is the recording order
+        Arrays.sort(segments);
+        assertEquals(13, segments.length);
+        assertEquals(13, this.mDirectory.listFiles().length);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for(int i = 0; i < segments.length; ++i) {
+            assertTrue(segments[i].getName(), segments[i].getName().endsWith(String.format("-%06d.wav", i + 1)));
+            try(AudioInputStream in = AudioSystem.getAudioInputStream(segments[i])) {
+                int expected = i < 12 ? segmentBytes : 3 * FORMAT.getFrameSize();
+                assertEquals(expected / FORMAT.getFrameSize(), in.getFrameLength());
+                assertTrue(in.getFormat().matches(FORMAT));
+                byte[] audio = RecorderTest.readFully(in);
+                assertEquals(expected, audio.length);
+                joined.write(audio);
+            }
+            WaveFileHeader header = new WaveFileHeader();
+            try(InputStream in = Files.newInputStream(segments[i].toPath())) {
+                assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, header.read(in));
+            }
+            assertEquals(segments[i].length() - WaveFileHeader.RESERVED_HEADER_LENGTH, header.getDataLength());
+        }
+        assertArrayEquals(data, joined.toByteArray());
+    }
+
+}
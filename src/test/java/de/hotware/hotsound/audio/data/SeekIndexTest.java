@@ -0,0 +1,258 @@
+/**
+ * File SeekIndexTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The seeking tests decode with mp3spi, which is loaded separately like
+ * jflac in the FlacWriterTest. The MPEG fixture is written by the test: layer
+ * I frames with random subband samples, which decode to noise without any
+ * encoder being involved
+ */
+public class SeekIndexTest {
+
+    /**
+     * MPEG 1 layer III, 128 kbit/s, 44.1 kHz, no padding
+     */
+    private static final byte[] HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00};
+    private static final int FRAME_LENGTH = 417;
+
+    private static final File[] MP3SPI = {
+            new File("DECODERLIBRARIES/mp3spi1.9.5.jar"),
+            new File("DECODERLIBRARIES/jl1.0.1.jar"),
+            new File("DECODERLIBRARIES/tritonus_share.jar")
+    };
+    /**
+     * MPEG 1 layer I, 128 kbit/s, 44.1 kHz, mono
+     */
+    private static final int LAYER_I_FRAME_LENGTH = 136;
+    private static final int LAYER_I_SAMPLES = 384;
+    private static final int LAYER_I_FRAMES = 200;
+
+    @Test
+    public void testRemoteSourcesAreNotIndexed() throws Exception {
+        CompletableFuture<SeekIndex> index = SeekIndex.forSourceAsync(new URL("http://localhost/song.mp3"));
+        assertTrue(index.isDone());
+        assertSame(SeekIndex.EMPTY, index.get());
+    }
+
+    @Test
+    public void testIndexedInTheBackground() throws Exception {
+        File file = File.createTempFile("hotsound", ".mp3");
+        try {
+            try(OutputStream out = new FileOutputStream(file)) {
+                byte[] frame = new byte[FRAME_LENGTH];
+                System.arraycopy(HEADER, 0, frame, 0, HEADER.length);
+                for(int i = 0; i < 100; ++i) {
+                    out.write(frame);
+                }
+            }
+            URL url = file.toURI().toURL();
+            CompletableFuture<SeekIndex> future = SeekIndex.forSourceAsync(url);
+            //requested again while building or afterwards it is the same one
+            assertSame(future, SeekIndex.forSourceAsync(url));
+            SeekIndex index = future.get(10, TimeUnit.SECONDS);
+            assertSame(index, SeekIndex.forSource(url));
+            assertEquals(3, index.size());
+            assertEquals(38 * 1152, index.getFrame(1));
+            assertEquals(38 * FRAME_LENGTH, index.getOffset(1));
+            assertEquals(1, index.floor(50 * 1152));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSeekMatchesSequentialDecoding() throws Exception {
+        for(File jar : MP3SPI) {
+            assumeTrue(jar.isFile());
+        }
+        File file = File.createTempFile("hotsound", ".mp1");
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        URL[] urls = new URL[MP3SPI.length];
+        for(int i = 0; i < urls.length; ++i) {
+            urls[i] = MP3SPI[i].toURI().toURL();
+        }
+        try(URLClassLoader loader = new URLClassLoader(urls, this.getClass().getClassLoader())) {
+            //JavaSound looks up its providers with the context class loader
+            Thread.currentThread().setContextClassLoader(loader);
+            writeLayerI(file);
+            URL url = file.toURI().toURL();
+            SeekIndex index = SeekIndex.forSourceAsync(url).get(10, TimeUnit.SECONDS);
+            //a checkpoint every 38 frames
+            assertEquals(6, index.size());
+            byte[] sequential = readFully(open(file, url, LAYER_I_FRAMES * LAYER_I_SAMPLES));
+            assertEquals(LAYER_I_FRAMES * LAYER_I_SAMPLES * 2, sequential.length);
+            //before the first checkpoint, right after one and between two
+            this.assertSeek(file, url, sequential, 1000, 20000, 38 * LAYER_I_SAMPLES + 5, 150 * LAYER_I_SAMPLES + 77);
+            //forward and backward on the same Audio
+            this.assertSeek(file, url, sequential, 70000, 16000, 60000, 3);
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(previous);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSeekWithoutIndexReopensAndSkips() throws Exception {
+        URL url = this.getClass().getResource("/test.wav");
+        File file = new File(url.toURI());
+        SeekIndex index = SeekIndex.forSourceAsync(url).get(10, TimeUnit.SECONDS);
+        assertTrue(index.isEmpty());
+        AudioInputStream in = AudioSystem.getAudioInputStream(file);
+        long frames = in.getFrameLength();
+        in.close();
+        byte[] sequential = readFully(open(file, url, frames));
+        this.assertSeek(file, url, sequential, 40000, 1000, 1000, 60000, 0);
+    }
+
+    /**
+     * seeks one Audio to all the given frames one after the other and checks
+     * that it plays the same as the sequentially decoded data from there
+     */
+    private void assertSeek(File pFile, URL pURL, byte[] pSequential, long... pFrames) throws Exception {
+        BasicPlaybackAudio audio = open(pFile, pURL, pSequential.length);
+        int frameSize = audio.getAudioFormat().getFrameSize();
+        byte[] chunk = new byte[4096 * frameSize];
+        for(long frame : pFrames) {
+            audio.seek(frame);
+            assertEquals(frame, audio.getFramePosition());
+            int expected = (int) frame * frameSize;
+            int read = audio.read(chunk, 0, chunk.length);
+            assertTrue(read > 0);
+            assertArrayEquals("seek to " + frame,
+                    Arrays.copyOfRange(pSequential, expected, Math.min(expected + read, pSequential.length)),
+                    Arrays.copyOf(chunk, Math.min(read, pSequential.length - expected)));
+        }
+        audio.seek(pFrames[pFrames.length - 1]);
+        byte[] rest = readFully(audio);
+        int start = (int) pFrames[pFrames.length - 1] * frameSize;
+        assertArrayEquals(Arrays.copyOfRange(pSequential, start, pSequential.length), rest);
+    }
+
+    private static BasicPlaybackAudio open(File pFile, URL pURL, long pFrameLength) throws Exception {
+        BasicPlaybackAudio audio = new BasicPlaybackAudio(
+                new BufferedInputStream(new FileInputStream(pFile)), pFrameLength, pURL);
+        audio.open();
+        return audio;
+    }
+
+    private static byte[] readFully(Audio pAudio) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while((read = pAudio.read(chunk, 0, chunk.length)) >= 0) {
+            out.write(chunk, 0, read);
+        }
+        pAudio.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * writes layer I frames whose lower 8 subbands hold random samples
+     */
+    private static void writeLayerI(File pFile) throws Exception {
+        Random random = new Random(7);
+        try(OutputStream out = new FileOutputStream(pFile)) {
+            for(int f = 0; f < LAYER_I_FRAMES; ++f) {
+                BitWriter frame = new BitWriter(LAYER_I_FRAME_LENGTH);
+                //sync, MPEG 1, layer I, no CRC
+                frame.write(0xFFF, 12);
+                frame.write(1, 1);
+                frame.write(3, 2);
+                frame.write(1, 1);
+                //128 kbit/s, 44.1 kHz, no padding, private bit
+                frame.write(4, 4);
+                frame.write(0, 2);
+                frame.write(0, 2);
+                //mono, mode extension, copyright, original, emphasis
+                frame.write(3, 2);
+                frame.write(0, 6);
+                int[] allocation = new int[32];
+                for(int sb = 0; sb < 32; ++sb) {
+                    //5 bits per sample
+                    allocation[sb] = sb < 8 ? 4 : 0;
+                    frame.write(allocation[sb], 4);
+                }
+                for(int sb = 0; sb < 32; ++sb) {
+                    if(allocation[sb] != 0) {
+                        frame.write(10 + random.nextInt(30), 6);
+                    }
+                }
+                for(int s = 0; s < 12; ++s) {
+                    for(int sb = 0; sb < 32; ++sb) {
+                        if(allocation[sb] != 0) {
+                            int bits = allocation[sb] + 1;
+                            //all ones is not a valid sample
+                            frame.write(random.nextInt((1 << bits) - 1), bits);
+                        }
+                    }
+                }
+                out.write(frame.mData);
+            }
+        }
+    }
+
+    private static final class BitWriter {
+
+        final byte[] mData;
+        private int mBit;
+
+        BitWriter(int pLength) {
+            this.mData = new byte[pLength];
+        }
+
+        void write(int pValue, int pBits) {
+            for(int i = pBits - 1; i >= 0; --i) {
+                if(((pValue >> i) & 1) != 0) {
+                    this.mData[this.mBit >> 3] |= (byte) (0x80 >> (this.mBit & 7));
+                }
+                ++this.mBit;
+            }
+        }
+
+    }
+
+}
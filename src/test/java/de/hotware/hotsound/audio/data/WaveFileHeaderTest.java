@@ -0,0 +1,86 @@
+/**
+ * File WaveFileHeaderTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * checks the reserved header that the Recorder rewrites in place while
+ * recording
+ */
+public class WaveFileHeaderTest {
+
+    @Test
+    public void testReservedRoundTrip() throws IOException {
+        byte[] header = this.writeReserved(123456);
+        assertEquals("RIFF", new String(header, 0, 4, "US-ASCII"));
+        assertEquals("JUNK", new String(header, 12, 4, "US-ASCII"));
+        WaveFileHeader read = new WaveFileHeader();
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, read.read(new ByteArrayInputStream(header)));
+        assertEquals(WaveFileHeader.FORMAT_PCM, read.getFormat());
+        assertEquals(2, read.getNumChannels());
+        assertEquals(44100, read.getSampleRate());
+        assertEquals(16, read.getBitsPerSample());
+        assertEquals(123456, read.getNumBytes());
+        assertEquals(123456, read.getDataLength());
+    }
+
+    @Test
+    public void testSwitchToRF64() throws IOException {
+        long last = WaveFileHeader.MAX_RIFF_DATA_LENGTH;
+        byte[] riff = this.writeReserved(last);
+        assertEquals("RIFF", new String(riff, 0, 4, "US-ASCII"));
+        WaveFileHeader read = new WaveFileHeader();
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, read.read(new ByteArrayInputStream(riff)));
+        assertEquals(last, read.getDataLength());
+
+        long large = last + 1;
+        byte[] rf64 = this.writeReserved(large);
+        assertEquals(riff.length, rf64.length);
+        assertEquals("RF64", new String(rf64, 0, 4, "US-ASCII"));
+        assertEquals("ds64", new String(rf64, 12, 4, "US-ASCII"));
+        read = new WaveFileHeader();
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, read.read(new ByteArrayInputStream(rf64)));
+        assertEquals(-1, read.getNumBytes());
+        assertEquals(large, read.getDataLength());
+        assertEquals(44100, read.getSampleRate());
+
+        long huge = 6L * 1024 * 1024 * 1024 + 2;
+        read = new WaveFileHeader();
+        read.read(new ByteArrayInputStream(this.writeReserved(huge)));
+        assertEquals(huge, read.getDataLength());
+    }
+
+    private byte[] writeReserved(long pNumBytes) throws IOException {
+        WaveFileHeader header = new WaveFileHeader(WaveFileHeader.FORMAT_PCM, (short) 2, 44100, (short) 16, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, header.writeReserved(out, pNumBytes));
+        assertEquals(WaveFileHeader.RESERVED_HEADER_LENGTH, out.size());
+        return out.toByteArray();
+    }
+
+}
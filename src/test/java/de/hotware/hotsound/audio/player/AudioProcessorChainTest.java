@@ -0,0 +1,292 @@
+/**
+ * File AudioProcessorChainTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+import de.hotware.hotsound.audio.data.CachedAudio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AudioProcessorChainTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+    private static final int FRAMES = 10000;
+    private static final int CHUNK_FRAMES = 100;
+
+    @Test
+    public void testOrder() {
+        AudioProcessorChain chain = new AudioProcessorChain();
+        Operation add = new Operation(0.25f, 1f, 3);
+        Operation multiply = new Operation(0f, 2f, 5);
+        AudioProcessorChain.Stage first = chain.add(add);
+        AudioProcessorChain.Stage second = chain.add(multiply);
+        assertEquals(2, chain.getStages().size());
+        assertSame(first, chain.getStages().get(0));
+        assertSame(second, chain.getStages().get(1));
+        assertEquals(8, chain.getLatency());
+
+        //(0.125 + 0.25) * 2 and not 0.125 * 2 + 0.25
+        byte[] data = samples(0.125f, -0.25f);
+        chain.process(data, data.length, FORMAT);
+        assertArrayEquals(samples(0.75f, 0f), data);
+        assertEquals(1, first.getBlockCount());
+        assertEquals(1, second.getBlockCount());
+        //both have been prepared once with the float format of the chunks
+        assertEquals(1, add.mPrepared.size());
+        assertEquals(AudioFormat.Encoding.PCM_FLOAT, add.mPrepared.get(0).getEncoding());
+        assertEquals(2, add.mPrepared.get(0).getChannels());
+        chain.process(data, data.length, FORMAT);
+        assertEquals(1, multiply.mPrepared.size());
+
+        chain.remove(add);
+        chain.add(add);
+        data = samples(0.125f, -0.25f);
+        chain.process(data, data.length, FORMAT);
+        assertArrayEquals(samples(0.5f, -0.25f), data);
+    }
+
+    @Test
+    public void testBypassAndRemove() {
+        AudioProcessorChain chain = new AudioProcessorChain();
+        Operation add = new Operation(0.25f, 1f, 3);
+        Operation multiply = new Operation(0f, 2f, 5);
+        chain.add(add);
+        AudioProcessorChain.Stage stage = chain.add(multiply);
+        stage.setBypassed(true);
+        assertEquals(3, chain.getLatency());
+        byte[] data = samples(0.125f, -0.25f);
+        chain.process(data, data.length, FORMAT);
+        assertArrayEquals(samples(0.375f, 0f), data);
+        assertEquals(0, stage.getBlockCount());
+
+        assertTrue(chain.remove(add));
+        assertFalse(chain.remove(add));
+        //only bypassed stages, the chunk isn't touched
+        data = new byte[] {1, 2, 3, 4};
+        chain.process(data, data.length, FORMAT);
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, data);
+        stage.setBypassed(false);
+        data = samples(0.125f, -0.25f);
+        chain.process(data, data.length, FORMAT);
+        assertArrayEquals(samples(0.25f, -0.5f), data);
+
+        chain.clear();
+        assertTrue(chain.getStages().isEmpty());
+        assertEquals(0, chain.getLatency());
+    }
+
+    @Test
+    public void testUnsupportedFormat() {
+        AudioProcessorChain chain = new AudioProcessorChain();
+        chain.add(new Operation(0.25f, 1f, 0));
+        byte[] data = {1, 2, 3, 4};
+        chain.process(data, data.length, new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 2, 2, 8000, false));
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, data);
+    }
+
+    /**
+     * mutes the audio while the player is playing and removes the mute again
+     * later. Both changes take effect with the chunk after the one that is
+     * being written
+     */
+    @Test
+    public void testChangesWhilePlaying() throws Exception {
+        final BlockingQueue<MusicEndEvent.Type> ends = new LinkedBlockingQueue<>();
+        StreamMusicPlayer player = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                ends.add(pEvent.getType());
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        });
+        GateDevice device = new GateDevice(11, 31);
+        try {
+            player.setBufferSize(CHUNK_FRAMES * FORMAT.getFrameSize());
+            player.insert(song(), device);
+            player.start();
+            Operation mute = new Operation(0f, 0f, 0);
+            assertEquals(Integer.valueOf(11), device.mReached.poll(10, TimeUnit.SECONDS));
+            player.getProcessorChain().add(mute);
+            device.mPermits.release();
+            assertEquals(Integer.valueOf(31), device.mReached.poll(10, TimeUnit.SECONDS));
+            player.getProcessorChain().remove(mute);
+            device.mPermits.release();
+            assertEquals(MusicEndEvent.Type.SUCCESS, ends.poll(10, TimeUnit.SECONDS));
+        }
+        finally {
+            device.mPermits.release(2);
+            player.close();
+        }
+        int[] frames = device.getFrames();
+        assertEquals(FRAMES, frames.length);
+        for(int i = 0; i < FRAMES; ++i) {
+            boolean muted = i >= 11 * CHUNK_FRAMES && i < 31 * CHUNK_FRAMES;
+            assertEquals("frame " + i, muted ? 0 : i, frames[i]);
+        }
+    }
+
+    /**
+     * 16 bit little endian stereo samples
+     */
+    private static byte[] samples(float... pValues) {
+        ByteBuffer data = ByteBuffer.allocate(pValues.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for(float value : pValues) {
+            data.putShort((short) (value * 32768));
+        }
+        return data.array();
+    }
+
+    private static Song song() {
+        return new Song() {
+
+            @Override
+            public Audio getAudio() {
+                ByteBuffer data = ByteBuffer.allocate(FRAMES * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for(int i = 0; i < FRAMES; ++i) {
+                    data.putInt(i);
+                }
+                data.flip();
+                return new CachedAudio(FORMAT, data);
+            }
+
+            @Override
+            public long getFrameLength() {
+                return FRAMES;
+            }
+
+        };
+    }
+
+    /**
+     * (x + add) * factor
+     */
+    private static final class Operation implements AudioProcessor {
+
+        final List<AudioFormat> mPrepared = new ArrayList<>();
+        private final float mAdd;
+        private final float mFactor;
+        private final int mLatency;
+        private int mChannels;
+
+        Operation(float pAdd, float pFactor, int pLatency) {
+            this.mAdd = pAdd;
+            this.mFactor = pFactor;
+            this.mLatency = pLatency;
+        }
+
+        @Override
+        public void prepare(AudioFormat pAudioFormat) {
+            this.mPrepared.add(pAudioFormat);
+            this.mChannels = pAudioFormat.getChannels();
+        }
+
+        @Override
+        public void process(float[] pSamples, int pFrames) {
+            for(int i = 0; i < pFrames * this.mChannels; ++i) {
+                pSamples[i] = (pSamples[i] + this.mAdd) * this.mFactor;
+            }
+        }
+
+        @Override
+        public int getLatency() {
+            return this.mLatency;
+        }
+
+    }
+
+    /**
+     * keeps every frame written to it and blocks on the given chunks (counted
+     * from 1) until the test releases it
+     */
+    private static final class GateDevice extends BaseAudioDevice {
+
+        final BlockingQueue<Integer> mReached = new LinkedBlockingQueue<>();
+        final Semaphore mPermits = new Semaphore(0);
+        private final int[] mGates;
+        private final ByteBuffer mData = ByteBuffer.allocate(FRAMES * 4).order(ByteOrder.LITTLE_ENDIAN);
+        private int mChunks;
+
+        GateDevice(int... pGates) {
+            this.mGates = pGates;
+        }
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            int chunk;
+            synchronized(this) {
+                this.mData.put(pData, pStart, pLength);
+                chunk = ++this.mChunks;
+            }
+            for(int gate : this.mGates) {
+                if(gate == chunk) {
+                    this.mReached.add(chunk);
+                    try {
+                        this.mPermits.acquire();
+                    }
+                    catch(InterruptedException e) {
+                        throw new AudioDeviceException("interrupted", e);
+                    }
+                }
+            }
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        synchronized int[] getFrames() {
+            int[] frames = new int[this.mData.position() / 4];
+            ByteBuffer data = this.mData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            data.flip();
+            data.asIntBuffer().get(frames);
+            return frames;
+        }
+
+    }
+
+}
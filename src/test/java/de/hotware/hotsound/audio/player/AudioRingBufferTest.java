@@ -0,0 +1,286 @@
+/**
+ * File AudioRingBufferTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * checks the AudioRingBuffer with one producer and one consumer. Blocking
+ * calls run on a second thread and the test waits until that thread is parked
+ * before it does anything, so the outcome doesn't depend on timing
+ */
+public class AudioRingBufferTest {
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        this.mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        this.mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testWraparound() {
+        AudioRingBuffer ring = new AudioRingBuffer(3, 4);
+        for(int i = 0; i < 10; ++i) {
+            //the producer runs one slot ahead of the consumer
+            int slot = ring.acquireWrite();
+            assertEquals(i % 3, slot);
+            ring.getBuffer(slot)[0] = (byte) i;
+            ring.publish(slot, i + 1, i / 4, i * 100L);
+            assertEquals(1, ring.size());
+            int read = ring.acquireRead();
+            assertEquals(slot, read);
+            assertEquals(i, ring.getBuffer(read)[0]);
+            assertEquals(i + 1, ring.getLength(read));
+            assertEquals(i / 4, ring.getGeneration(read));
+            assertEquals(i * 100L, ring.getPosition(read));
+            ring.release();
+            assertEquals(0, ring.size());
+        }
+        //fill it completely across the end of the array
+        for(int i = 0; i < 3; ++i) {
+            int slot = ring.acquireWrite();
+            assertEquals((10 + i) % 3, slot);
+            ring.publish(slot, i, 0, 0);
+        }
+        assertEquals(3, ring.size());
+        for(int i = 0; i < 3; ++i) {
+            assertEquals(i, ring.getLength(ring.acquireRead()));
+            ring.release();
+        }
+    }
+
+    @Test
+    public void testProducerWaitsForRelease() throws Exception {
+        final AudioRingBuffer ring = this.fill(2);
+        Future<Integer> write = this.acquireWrite(ring);
+        assertFalse(write.isDone());
+        assertEquals(0, ring.acquireRead());
+        ring.release();
+        assertEquals(0, (int) write.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConsumerWaitsForPublish() throws Exception {
+        final AudioRingBuffer ring = new AudioRingBuffer(2, 4);
+        final Thread[] consumer = new Thread[1];
+        Future<Integer> read = this.mExecutor.submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                consumer[0] = Thread.currentThread();
+                return ring.acquireRead();
+            }
+
+        });
+        awaitParked(consumer);
+        assertFalse(read.isDone());
+        ring.publish(ring.acquireWrite(), 4, 0, 0);
+        assertEquals(0, (int) read.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWakeProducerWhileBlocked() throws Exception {
+        AudioRingBuffer ring = this.fill(2);
+        Future<Integer> write = this.acquireWrite(ring);
+        ring.wakeProducer();
+        assertEquals(AudioRingBuffer.WOKEN_UP, (int) write.get(10, TimeUnit.SECONDS));
+        //the wakeup is consumed, the next acquire waits again
+        write = this.acquireWrite(ring);
+        assertFalse(write.isDone());
+        ring.acquireRead();
+        ring.release();
+        assertEquals(0, (int) write.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWakeProducerBeforeBlocking() {
+        AudioRingBuffer ring = new AudioRingBuffer(1, 4);
+        ring.wakeProducer();
+        //a free slot is handed out, the wakeup stays pending
+        int slot = ring.acquireWrite();
+        assertEquals(0, slot);
+        ring.publish(slot, 4, 0, 0);
+        assertEquals(AudioRingBuffer.WOKEN_UP, ring.acquireWrite());
+    }
+
+    @Test
+    public void testGenerationResetOnSeek() {
+        AudioRingBuffer ring = new AudioRingBuffer(4, 4);
+        int generation = 0;
+        //decoded ahead before the seek
+        for(int i = 0; i < 3; ++i) {
+            ring.publish(ring.acquireWrite(), 4, generation, i * 10);
+        }
+        //the seek bumps the generation, the producer continues at the new position
+        ++generation;
+        ring.publish(ring.acquireWrite(), 4, generation, 5000);
+        long[] played = new long[1];
+        int count = 0;
+        while(ring.size() > 0) {
+            int slot = ring.acquireRead();
+            if(ring.getGeneration(slot) == generation) {
+                played[count++] = ring.getPosition(slot);
+            }
+            ring.release();
+        }
+        assertArrayEquals(new long[] {5000}, played);
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void testCloseAndReset() throws Exception {
+        AudioRingBuffer ring = this.fill(2);
+        Future<Integer> write = this.acquireWrite(ring);
+        ring.close();
+        assertEquals(-1, (int) write.get(10, TimeUnit.SECONDS));
+        assertTrue(ring.isClosed());
+        assertEquals(-1, ring.acquireRead());
+        ring.wakeProducer();
+        ring.reset();
+        assertFalse(ring.isClosed());
+        assertEquals(0, ring.size());
+        //neither the data nor the wakeup survive the reset
+        for(int i = 0; i < 2; ++i) {
+            assertEquals(i, ring.acquireWrite());
+            ring.publish(i, 4, 0, 0);
+        }
+        write = this.acquireWrite(ring);
+        assertFalse(write.isDone());
+        ring.close();
+        assertEquals(-1, (int) write.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOrderWithConcurrentProducer() throws Exception {
+        final AudioRingBuffer ring = new AudioRingBuffer(4, 8);
+        final int chunks = 20000;
+        Future<?> producer = this.mExecutor.submit(new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                for(int i = 0; i < chunks; ++i) {
+                    int slot = ring.acquireWrite();
+                    writeInt(ring.getBuffer(slot), i);
+                    ring.publish(slot, 4, 0, i);
+                }
+                ring.publish(ring.acquireWrite(), AudioRingBuffer.END_OF_STREAM, 0, chunks);
+                return null;
+            }
+
+        });
+        int expected = 0;
+        while(true) {
+            int slot = ring.acquireRead();
+            if(ring.getLength(slot) == AudioRingBuffer.END_OF_STREAM) {
+                ring.release();
+                break;
+            }
+            assertEquals(expected, readInt(ring.getBuffer(slot)));
+            assertEquals(expected, ring.getPosition(slot));
+            ++expected;
+            ring.release();
+        }
+        assertEquals(chunks, expected);
+        producer.get(10, TimeUnit.SECONDS);
+    }
+
+    private AudioRingBuffer fill(int pDepth) {
+        AudioRingBuffer ring = new AudioRingBuffer(pDepth, 4);
+        for(int i = 0; i < pDepth; ++i) {
+            ring.publish(ring.acquireWrite(), 4, 0, 0);
+        }
+        return ring;
+    }
+
+    /**
+     * @return the result of acquireWrite on the other thread, once that
+     *         thread is parked
+     */
+    private Future<Integer> acquireWrite(final AudioRingBuffer pRing) throws InterruptedException {
+        final Thread[] producer = new Thread[1];
+        Future<Integer> ret = this.mExecutor.submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                producer[0] = Thread.currentThread();
+                return pRing.acquireWrite();
+            }
+
+        });
+        awaitParked(producer);
+        return ret;
+    }
+
+    /**
+     * waits until the thread is parked inside the ring. A full ring parks with
+     * a timeout
+     */
+    private static void awaitParked(Thread[] pThread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(pThread[0] == null || !isParkedIn(pThread[0])) {
+            assertTrue("the thread didn't block", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static boolean isParkedIn(Thread pThread) {
+        if(pThread.getState() != Thread.State.TIMED_WAITING) {
+            return false;
+        }
+        for(StackTraceElement element : pThread.getStackTrace()) {
+            if(element.getClassName().equals(AudioRingBuffer.class.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeInt(byte[] pBuffer, int pValue) {
+        pBuffer[0] = (byte) pValue;
+        pBuffer[1] = (byte) (pValue >> 8);
+        pBuffer[2] = (byte) (pValue >> 16);
+        pBuffer[3] = (byte) (pValue >> 24);
+    }
+
+    private static int readInt(byte[] pBuffer) {
+        return (pBuffer[0] & 0xFF) | (pBuffer[1] & 0xFF) << 8 | (pBuffer[2] & 0xFF) << 16 | pBuffer[3] << 24;
+    }
+
+}
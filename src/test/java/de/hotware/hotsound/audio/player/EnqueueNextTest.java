@@ -0,0 +1,217 @@
+/**
+ * File EnqueueNextTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+import de.hotware.hotsound.audio.data.CachedAudio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * plays two in-memory Songs whose frames contain their own index one after
+ * the other
+ */
+public class EnqueueNextTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+    private static final int FRAMES = 10000;
+    private static final int CHUNK_FRAMES = 100;
+
+    private StreamMusicPlayer mPlayer;
+    private GateDevice mDevice;
+    private BlockingQueue<MusicEndEvent.Type> mEnds;
+    private Song mFirst;
+    private Song mSecond;
+
+    @Before
+    public void setUp() throws Exception {
+        this.mEnds = new LinkedBlockingQueue<>();
+        this.mPlayer = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                EnqueueNextTest.this.mEnds.add(pEvent.getType());
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        });
+        this.mPlayer.setBufferSize(CHUNK_FRAMES * FORMAT.getFrameSize());
+        this.mDevice = new GateDevice();
+        this.mFirst = song(0, FRAMES);
+        this.mSecond = song(FRAMES, FRAMES);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.mDevice.mRelease.countDown();
+        this.mPlayer.close();
+    }
+
+    @Test
+    public void testEnqueuedSongIsGapless() throws Exception {
+        this.mPlayer.insert(this.mFirst, this.mDevice);
+        this.mPlayer.start();
+        assertTrue(this.mDevice.mBlocked.await(10, TimeUnit.SECONDS));
+        this.mPlayer.enqueueNext(this.mSecond);
+        this.mDevice.mRelease.countDown();
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEnds.poll(10, TimeUnit.SECONDS));
+        //one stream of frames on a device that has been opened once
+        assertEquals(1, this.mDevice.getOpens());
+        assertFrames(this.mDevice.getFrames(), 0, 0, 2 * FRAMES);
+        assertSame(this.mSecond, this.mPlayer.getState().getSong());
+    }
+
+    @Test
+    public void testEnqueueAfterStopWaitsForStart() throws Exception {
+        this.mPlayer.insert(this.mFirst, this.mDevice);
+        this.mPlayer.start();
+        assertTrue(this.mDevice.mBlocked.await(10, TimeUnit.SECONDS));
+        this.mPlayer.stop();
+        assertEquals(MusicEndEvent.Type.MANUALLY_STOPPED, this.mEnds.poll(10, TimeUnit.SECONDS));
+        int written = this.mDevice.getFrames().length;
+
+        this.mPlayer.enqueueNext(this.mSecond);
+        Thread.sleep(200);
+        assertEquals(PlayerState.Type.STOPPED, this.mPlayer.getState().getType());
+        assertSame(this.mFirst, this.mPlayer.getState().getSong());
+        assertEquals(written, this.mDevice.getFrames().length);
+
+        //the stopped Song plays again and the enqueued one follows
+        this.mPlayer.start();
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEnds.poll(10, TimeUnit.SECONDS));
+        assertFrames(this.mDevice.getFrames(), written, 0, 2 * FRAMES);
+        assertSame(this.mSecond, this.mPlayer.getState().getSong());
+    }
+
+    @Test
+    public void testEnqueueAfterEndStarts() throws Exception {
+        this.mDevice.mRelease.countDown();
+        this.mPlayer.insert(this.mFirst, this.mDevice);
+        this.mPlayer.start();
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEnds.poll(10, TimeUnit.SECONDS));
+        this.mPlayer.enqueueNext(this.mSecond);
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEnds.poll(10, TimeUnit.SECONDS));
+        assertFrames(this.mDevice.getFrames(), 0, 0, 2 * FRAMES);
+        assertSame(this.mSecond, this.mPlayer.getState().getSong());
+    }
+
+    private static void assertFrames(int[] pFrames, int pOffset, int pFirst, int pCount) {
+        assertEquals(pOffset + pCount, pFrames.length);
+        for(int i = 0; i < pCount; ++i) {
+            assertEquals(pFirst + i, pFrames[pOffset + i]);
+        }
+    }
+
+    private static Song song(final int pFirst, final int pFrames) {
+        return new Song() {
+
+            @Override
+            public Audio getAudio() {
+                ByteBuffer data = ByteBuffer.allocate(pFrames * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for(int i = 0; i < pFrames; ++i) {
+                    data.putInt(pFirst + i);
+                }
+                data.flip();
+                return new CachedAudio(FORMAT, data);
+            }
+
+            @Override
+            public long getFrameLength() {
+                return pFrames;
+            }
+
+        };
+    }
+
+    /**
+     * keeps every frame written to it. The first write blocks until the test
+     * releases it
+     */
+    private static final class GateDevice extends BaseAudioDevice {
+
+        final CountDownLatch mBlocked = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        private final ByteBuffer mData = ByteBuffer.allocate(8 * FRAMES * 4).order(ByteOrder.LITTLE_ENDIAN);
+        private int mOpens;
+
+        @Override
+        public synchronized void open(AudioFormat pAudioFormat) throws AudioDeviceException {
+            super.open(pAudioFormat);
+            ++this.mOpens;
+        }
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            synchronized(this) {
+                this.mData.put(pData, pStart, pLength);
+            }
+            this.mBlocked.countDown();
+            try {
+                this.mRelease.await();
+            }
+            catch(InterruptedException e) {
+                throw new AudioDeviceException("interrupted", e);
+            }
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+            this.mRelease.countDown();
+        }
+
+        synchronized int getOpens() {
+            return this.mOpens;
+        }
+
+        synchronized int[] getFrames() {
+            int[] frames = new int[this.mData.position() / 4];
+            ByteBuffer data = this.mData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            data.flip();
+            data.asIntBuffer().get(frames);
+            return frames;
+        }
+
+    }
+
+}
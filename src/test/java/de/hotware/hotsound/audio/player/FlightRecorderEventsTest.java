@@ -0,0 +1,119 @@
+/**
+ * File FlightRecorderEventsTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * plays a Song while recording with JFR and checks that the events of
+ * HotSound end up in the recording
+ */
+public class FlightRecorderEventsTest {
+
+    private static final String[] EVENTS = {
+            "SongProbe",
+            "SongOpen",
+            "FirstByte",
+            "DecodeChunk",
+            "DeviceWrite",
+            "Seek",
+            "ListenerDispatch"
+    };
+
+    @Test
+    public void testEventsAreRecorded() throws Exception {
+        File file = File.createTempFile("hotsound", ".jfr");
+        try(Recording recording = new Recording()) {
+            for(String event : EVENTS) {
+                recording.enable(FlightRecorderEvents.PREFIX + event).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            this.play();
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        Set<String> recorded = new HashSet<>();
+        for(RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            recorded.add(event.getEventType().getName());
+            if(event.getEventType().getName().equals(FlightRecorderEvents.PREFIX + "Seek")) {
+                assertTrue(event.getLong("frames") == 1000);
+            }
+        }
+        file.delete();
+        for(String event : EVENTS) {
+            assertTrue(event + " hasn't been recorded", recorded.contains(FlightRecorderEvents.PREFIX + event));
+        }
+    }
+
+    private void play() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        PlaybackScheduler scheduler = new PlaybackScheduler();
+        StreamMusicPlayer player = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                done.countDown();
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        }, scheduler);
+        player.insert(new BasicPlaybackSong(this.getClass().getResource("/test.wav")), new BaseAudioDevice() {
+
+            @Override
+            public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+                super.write(pData, pStart, pLength);
+                return pLength;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+        });
+        player.seek(1000);
+        player.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        player.close();
+        //wait for the dispatch of onEnd to finish
+        scheduler.close();
+        scheduler.getDispatcher().awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * File LatencyProfileTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Mixer;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+import de.hotware.hotsound.audio.data.CachedAudio;
+import de.hotware.hotsound.audio.data.JavaSoundPlaybackAudioDevice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyProfileTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private static final int FRAMES = 44100;
+
+    @Test
+    public void testSizes() {
+        //5 ms are 220.5 frames, a chunk never holds less than asked for
+        assertEquals(221 * 4, LatencyProfile.LOW_LATENCY.getChunkSize(FORMAT));
+        assertEquals(882 * 4, LatencyProfile.LOW_LATENCY.getBufferSize(FORMAT));
+        assertEquals(1103 * 4, LatencyProfile.BALANCED.getChunkSize(FORMAT));
+        assertEquals(4410 * 4, LatencyProfile.BALANCED.getBufferSize(FORMAT));
+        assertEquals(11025 * 4, LatencyProfile.THROUGHPUT.getChunkSize(FORMAT));
+        assertEquals(44100 * 4, LatencyProfile.THROUGHPUT.getBufferSize(FORMAT));
+        AudioFormat mono = new AudioFormat(8000, 8, 1, true, false);
+        assertEquals(40, LatencyProfile.LOW_LATENCY.getChunkSize(mono));
+        assertEquals(8000, LatencyProfile.THROUGHPUT.getBufferSize(mono));
+    }
+
+    @Test
+    public void testOfMillis() {
+        LatencyProfile profile = LatencyProfile.ofMillis(40);
+        assertEquals(10, profile.getChunkMillis());
+        assertEquals(40, profile.getBufferMillis());
+        assertEquals(441 * 4, profile.getChunkSize(FORMAT));
+        assertEquals(1764 * 4, profile.getBufferSize(FORMAT));
+        //a chunk is at least a millisecond and one frame
+        profile = LatencyProfile.ofMillis(1);
+        assertEquals(1, profile.getChunkMillis());
+        assertEquals(4, profile.getChunkSize(new AudioFormat(100, 16, 2, true, false)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOfMillisTooSmall() {
+        LatencyProfile.ofMillis(0);
+    }
+
+    @Test
+    public void testChunkSize() {
+        //an explicit size wins and is cut down to whole frames
+        assertEquals(1000, StreamPlayerRunnable.getChunkSize(FORMAT, 1003, LatencyProfile.THROUGHPUT));
+        assertEquals(4, StreamPlayerRunnable.getChunkSize(FORMAT, 3, null));
+        assertEquals(LatencyProfile.BALANCED.getChunkSize(FORMAT),
+                StreamPlayerRunnable.getChunkSize(FORMAT, AudioSystem.NOT_SPECIFIED, LatencyProfile.BALANCED));
+        //one second without any profile
+        assertEquals(44100 * 4, StreamPlayerRunnable.getChunkSize(FORMAT, AudioSystem.NOT_SPECIFIED, null));
+    }
+
+    @Test
+    public void testPlayerUsesProfile() throws Exception {
+        BlockingQueue<MusicEndEvent.Type> ends = new LinkedBlockingQueue<>();
+        StreamMusicPlayer player = new StreamMusicPlayer(listener(ends));
+        try {
+            player.setLatencyProfile(LatencyProfile.LOW_LATENCY);
+            RecordingDevice device = new RecordingDevice();
+            player.insert(song(), device);
+            player.start();
+            assertEquals(MusicEndEvent.Type.SUCCESS, ends.poll(10, TimeUnit.SECONDS));
+            assertEquals(LatencyProfile.LOW_LATENCY.getBufferSize(FORMAT), device.mBufferSize);
+            assertEquals(LatencyProfile.LOW_LATENCY.getChunkSize(FORMAT), device.mMaxWrite);
+            assertEquals(FRAMES * 4, device.mWritten);
+
+            //an explicit buffer size overrides the chunk, the line is still sized by the profile
+            player.setBufferSize(1000 * 4);
+            device = new RecordingDevice();
+            player.insert(song(), device);
+            player.start();
+            assertEquals(MusicEndEvent.Type.SUCCESS, ends.poll(10, TimeUnit.SECONDS));
+            assertEquals(LatencyProfile.LOW_LATENCY.getBufferSize(FORMAT), device.mBufferSize);
+            assertEquals(1000 * 4, device.mMaxWrite);
+            assertEquals(FRAMES * 4, device.mWritten);
+        }
+        finally {
+            player.close();
+        }
+    }
+
+    private static MusicListener listener(final BlockingQueue<MusicEndEvent.Type> pEnds) {
+        return new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                pEnds.add(pEvent.getType());
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        };
+    }
+
+    private static Song song() {
+        return new Song() {
+
+            @Override
+            public Audio getAudio() {
+                return new CachedAudio(FORMAT, ByteBuffer.allocate(FRAMES * 4));
+            }
+
+            @Override
+            public long getFrameLength() {
+                return FRAMES;
+            }
+
+        };
+    }
+
+    /**
+     * remembers the buffer size hint and the biggest write
+     */
+    private static final class RecordingDevice extends BaseAudioDevice implements JavaSoundPlaybackAudioDevice {
+
+        volatile int mBufferSize = AudioSystem.NOT_SPECIFIED;
+        volatile int mMaxWrite;
+        volatile int mWritten;
+
+        @Override
+        public void setBufferSize(int pBufferSize) {
+            this.mBufferSize = pBufferSize;
+        }
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            this.mMaxWrite = Math.max(this.mMaxWrite, pLength);
+            this.mWritten += pLength;
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void setMixer(Mixer pMixer) {
+        }
+
+        @Override
+        public DataLine getDataLine() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * File MixerNegotiationTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+import de.hotware.hotsound.audio.data.JavaSoundPlaybackAudioDevice;
+import de.hotware.hotsound.audio.util.AudioFormatNegotiator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * inserts a 16 bit little endian Song for an AudioDevice whose Mixer only
+ * takes 24 bit big endian
+ */
+public class MixerNegotiationTest {
+
+    private static final AudioFormat SUPPORTED = new AudioFormat(AudioSystem.NOT_SPECIFIED, 24, 2, true, true);
+
+    @Test
+    public void testPlaybackUsesTheMixerOfTheDevice() throws Exception {
+        assumeFalse("the default Mixer takes the format as well",
+                AudioFormatNegotiator.getInstance(null).isSupported(
+                        new AudioFormat(44100F, 24, 2, true, true)));
+        StubDevice device = new StubDevice(mixer(SUPPORTED));
+        StreamMusicPlayer player = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+            }
+
+        });
+        try {
+            player.insert(new BasicPlaybackSong(this.getClass().getResource("/test.wav")), device);
+            AudioFormat format = device.mOpenedWith;
+            assertTrue("opened with " + format, format.matches(SUPPORTED));
+            assertEquals(44100F, format.getSampleRate(), 0F);
+            assertTrue(player.getAudioFormat().matches(format));
+        }
+        finally {
+            player.close();
+        }
+    }
+
+    private static Mixer mixer(final AudioFormat... pFormats) {
+        //Mixer.Info uses identity, every stub gets its own negotiator
+        final Mixer.Info info = new Mixer.Info("stub", "hotsound", "stub mixer", "1") {
+        };
+        return (Mixer) Proxy.newProxyInstance(Mixer.class.getClassLoader(), new Class<?>[] {Mixer.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                        switch(pMethod.getName()) {
+                            case "getMixerInfo":
+                                return info;
+                            case "getSourceLineInfo":
+                                return new Line.Info[] {new DataLine.Info(SourceDataLine.class, pFormats, 0,
+                                        AudioSystem.NOT_SPECIFIED)};
+                            default:
+                                throw new UnsupportedOperationException(pMethod.getName());
+                        }
+                    }
+
+                });
+    }
+
+    private static final class StubDevice extends BaseAudioDevice implements JavaSoundPlaybackAudioDevice {
+
+        private final Mixer mMixer;
+        AudioFormat mOpenedWith;
+
+        StubDevice(Mixer pMixer) {
+            this.mMixer = pMixer;
+        }
+
+        @Override
+        public void open(AudioFormat pAudioFormat) throws AudioDeviceException {
+            super.open(pAudioFormat);
+            this.mOpenedWith = pAudioFormat;
+        }
+
+        @Override
+        public void setMixer(Mixer pMixer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Mixer getMixer() {
+            return this.mMixer;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public DataLine getDataLine() {
+            return null;
+        }
+
+    }
+
+}
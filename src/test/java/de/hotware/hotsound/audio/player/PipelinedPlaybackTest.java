@@ -0,0 +1,196 @@
+/**
+ * File PipelinedPlaybackTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * plays a file whose frames contain their own index through the decode-ahead
+ * pipeline. The first write to the AudioDevice blocks until the test releases
+ * it, so commands can be posted while the ring is full and the playback
+ * thread is busy
+ */
+public class PipelinedPlaybackTest {
+
+    private static final int FRAMES = 40000;
+    private static final int CHUNK_FRAMES = 100;
+    private static final int FRAME_SIZE = 4;
+
+    private File mFile;
+    private StreamMusicPlayer mPlayer;
+    private BlockingDevice mDevice;
+    private CountDownLatch mEnd;
+    private volatile MusicEndEvent.Type mEndType;
+
+    @Before
+    public void setUp() throws Exception {
+        this.mFile = File.createTempFile("hotsound", ".wav");
+        byte[] data = new byte[FRAMES * FRAME_SIZE];
+        for(int i = 0; i < FRAMES; ++i) {
+            //left is the low, right the high half of the index
+            data[i * FRAME_SIZE] = (byte) i;
+            data[i * FRAME_SIZE + 1] = (byte) (i >> 8);
+            data[i * FRAME_SIZE + 2] = (byte) (i >> 16);
+            data[i * FRAME_SIZE + 3] = (byte) (i >> 24);
+        }
+        AudioFormat format = new AudioFormat(8000, 16, 2, true, false);
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, FRAMES),
+                AudioFileFormat.Type.WAVE, this.mFile);
+        this.mEnd = new CountDownLatch(1);
+        this.mPlayer = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                PipelinedPlaybackTest.this.mEndType = pEvent.getType();
+                PipelinedPlaybackTest.this.mEnd.countDown();
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        });
+        this.mPlayer.setRingDepth(4);
+        this.mPlayer.setBufferSize(CHUNK_FRAMES * FRAME_SIZE);
+        this.mDevice = new BlockingDevice();
+        this.mPlayer.insert(new BasicPlaybackSong(this.mFile), this.mDevice);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.mPlayer.close();
+        this.mFile.delete();
+    }
+
+    @Test
+    public void testSeekDiscardsChunksDecodedAhead() throws Exception {
+        this.mPlayer.start();
+        assertTrue(this.mDevice.mBlocked.await(10, TimeUnit.SECONDS));
+        //the decoder applies the seek although the playback thread is stuck
+        CompletableFuture<Void> seek = this.mPlayer.seekAsync(20000);
+        seek.get(10, TimeUnit.SECONDS);
+        this.mDevice.mRelease.countDown();
+        assertTrue(this.mEnd.await(10, TimeUnit.SECONDS));
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEndType);
+        List<int[]> chunks = this.mDevice.getChunks();
+        assertEquals(0, chunks.get(0)[0]);
+        //nothing that was decoded before the seek is played after it
+        int expected = 20000;
+        for(int i = 1; i < chunks.size(); ++i) {
+            assertEquals(expected, chunks.get(i)[0]);
+            expected += chunks.get(i)[1];
+        }
+        assertEquals(FRAMES, expected);
+    }
+
+    @Test
+    public void testCommandsWhilePlaybackThreadIsBusy() throws Exception {
+        this.mPlayer.start();
+        assertTrue(this.mDevice.mBlocked.await(10, TimeUnit.SECONDS));
+        //applied by the playback thread between two chunks
+        CompletableFuture<Void> pause = this.mPlayer.pauseAsync(true);
+        //posted by the control thread
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(!this.mPlayer.isPaused()) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        assertFalse(pause.isDone());
+        this.mDevice.mRelease.countDown();
+        pause.get(10, TimeUnit.SECONDS);
+        assertTrue(this.mDevice.isPaused());
+        int written = this.mDevice.getChunks().size();
+        this.mPlayer.seekAsync(30000).get(10, TimeUnit.SECONDS);
+        assertEquals(written, this.mDevice.getChunks().size());
+        this.mPlayer.pauseAsync(false).get(10, TimeUnit.SECONDS);
+        assertFalse(this.mDevice.isPaused());
+        this.mPlayer.stopAsync().get(10, TimeUnit.SECONDS);
+        assertTrue(this.mEnd.await(10, TimeUnit.SECONDS));
+        assertEquals(MusicEndEvent.Type.MANUALLY_STOPPED, this.mEndType);
+        assertEquals(PlayerState.Type.STOPPED, this.mPlayer.getState().getType());
+        //the chunks after the pause are the ones after the seek
+        List<int[]> chunks = this.mDevice.getChunks();
+        if(chunks.size() > written) {
+            assertEquals(30000, chunks.get(written)[0]);
+        }
+    }
+
+    private static final class BlockingDevice extends BaseAudioDevice {
+
+        final CountDownLatch mBlocked = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        /**
+         * the first frame and the amount of frames of every chunk
+         */
+        private final List<int[]> mChunks = new ArrayList<>();
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            synchronized(this) {
+                int first = (pData[pStart] & 0xFF) | (pData[pStart + 1] & 0xFF) << 8
+                        | (pData[pStart + 2] & 0xFF) << 16 | pData[pStart + 3] << 24;
+                this.mChunks.add(new int[] {first, pLength / FRAME_SIZE});
+            }
+            this.mBlocked.countDown();
+            try {
+                this.mRelease.await();
+            }
+            catch(InterruptedException e) {
+                throw new AudioDeviceException("interrupted", e);
+            }
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+            this.mRelease.countDown();
+        }
+
+        synchronized List<int[]> getChunks() {
+            return new ArrayList<>(this.mChunks);
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * File PlaybackMetricsTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sound.sampled.AudioFormat;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.AudioDevice.AudioDeviceException;
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+import de.hotware.hotsound.audio.data.CachedAudio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * plays a short in-memory Song with metrics enabled
+ */
+public class PlaybackMetricsTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(8000, 16, 2, true, false);
+    private static final int FRAMES = 10000;
+    private static final int CHUNK_FRAMES = 100;
+
+    private StreamMusicPlayer mPlayer;
+    private BlockingQueue<MusicEndEvent.Type> mEnds;
+
+    @Before
+    public void setUp() {
+        this.mEnds = new LinkedBlockingQueue<>();
+        this.mPlayer = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+                PlaybackMetricsTest.this.mEnds.add(pEvent.getType());
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        });
+        this.mPlayer.setBufferSize(CHUNK_FRAMES * FORMAT.getFrameSize());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.mPlayer.close();
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        this.assertCounters(0);
+    }
+
+    @Test
+    public void testCountersPipelined() throws Exception {
+        this.assertCounters(4);
+        assertEquals(4, this.mPlayer.getMetrics().getBufferCapacity());
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertNull(this.mPlayer.getMetrics());
+        this.mPlayer.setMetricsEnabled(true);
+        PlaybackMetrics metrics = this.mPlayer.getMetrics();
+        ObjectName name = metrics.getObjectName();
+        assertNotNull(name);
+        assertEquals(PlaybackMetrics.DOMAIN, name.getDomain());
+        assertTrue(server.isRegistered(name));
+        assertTrue(server.isRegistered(new ObjectName(PlaybackMetrics.DOMAIN + ":type=StreamMusicPlayer,name=all")));
+        assertEquals(0L, server.getAttribute(name, "BytesPlayed"));
+        //enabling twice keeps the registered metrics
+        this.mPlayer.setMetricsEnabled(true);
+        assertSame(metrics, this.mPlayer.getMetrics());
+
+        this.mPlayer.setMetricsEnabled(false);
+        assertFalse(server.isRegistered(name));
+        assertNull(metrics.getObjectName());
+        assertNull(this.mPlayer.getMetrics());
+        //the aggregate stays
+        assertTrue(server.isRegistered(new ObjectName(PlaybackMetrics.DOMAIN + ":type=StreamMusicPlayer,name=all")));
+
+        this.mPlayer.setMetricsEnabled(true);
+        name = this.mPlayer.getMetrics().getObjectName();
+        assertTrue(server.isRegistered(name));
+        this.mPlayer.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private void assertCounters(int pRingDepth) throws Exception {
+        PlaybackMetrics aggregate = PlaybackMetrics.getAggregate();
+        long aggregateBytes = aggregate.getBytesPlayed();
+        long aggregateChunks = aggregate.getChunksDecoded();
+        this.mPlayer.setRingDepth(pRingDepth);
+        this.mPlayer.setMetricsEnabled(true);
+        this.mPlayer.insert(song(), new NullDevice());
+        this.mPlayer.start();
+        assertEquals(MusicEndEvent.Type.SUCCESS, this.mEnds.poll(10, TimeUnit.SECONDS));
+
+        PlaybackMetrics metrics = this.mPlayer.getMetrics();
+        int chunks = FRAMES / CHUNK_FRAMES;
+        assertEquals(FRAMES * 4, metrics.getBytesPlayed());
+        assertEquals(FRAMES, metrics.getFramesPlayed());
+        assertEquals(chunks, metrics.getChunksDecoded());
+        assertEquals(chunks, metrics.getDecodeTime().getCount());
+        assertEquals(chunks, metrics.getWriteTime().getCount());
+        assertEquals(0, metrics.getLineUnderruns());
+        assertTrue(metrics.getWriteTimeMax() >= metrics.getWriteTimeMean());
+        assertEquals(aggregateBytes + FRAMES * 4, aggregate.getBytesPlayed());
+        assertEquals(aggregateChunks + chunks, aggregate.getChunksDecoded());
+
+        metrics.reset();
+        assertEquals(0, metrics.getBytesPlayed());
+        assertEquals(0, metrics.getWriteTime().getCount());
+        assertEquals(aggregateBytes + FRAMES * 4, aggregate.getBytesPlayed());
+    }
+
+    private static Song song() {
+        return new Song() {
+
+            @Override
+            public Audio getAudio() {
+                return new CachedAudio(FORMAT, ByteBuffer.allocate(FRAMES * 4));
+            }
+
+            @Override
+            public long getFrameLength() {
+                return FRAMES;
+            }
+
+        };
+    }
+
+    private static final class NullDevice extends BaseAudioDevice {
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+    }
+
+}
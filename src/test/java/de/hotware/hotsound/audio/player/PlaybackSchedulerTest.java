@@ -0,0 +1,240 @@
+/**
+ * File PlaybackSchedulerTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.hotware.hotsound.audio.data.Audio;
+import de.hotware.hotsound.audio.data.BaseAudioDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * plays on a PlaybackScheduler with platform threads. The AudioDevices block
+ * every write until the playback is stopped, so the playing players hold
+ * their threads as long as the test needs them to
+ */
+public class PlaybackSchedulerTest {
+
+    private PlaybackScheduler mScheduler;
+    private List<StreamMusicPlayer> mPlayers;
+
+    @Before
+    public void setUp() {
+        //two players decoding ahead
+        this.mScheduler = new PlaybackScheduler(4);
+        this.mPlayers = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for(StreamMusicPlayer player : this.mPlayers) {
+            player.close();
+        }
+        this.mScheduler.close();
+    }
+
+    @Test
+    public void testRejectsPlayersBeyondTheLimit() throws Exception {
+        assertEquals(4, this.mScheduler.getMaxThreads());
+        StreamMusicPlayer first = this.newPlayer();
+        StreamMusicPlayer second = this.newPlayer();
+        StreamMusicPlayer third = this.newPlayer();
+        this.startAndAwaitWrite(first);
+        this.startAndAwaitWrite(second);
+        try {
+            third.start();
+            fail("the third player must not be started or queued");
+        }
+        catch(MusicPlayerException e) {
+            assertEquals(PlayerState.Type.LOADED, third.getState().getType());
+        }
+        first.stop();
+        assertEquals(PlayerState.Type.STOPPED, first.getState().getType());
+        //the thread of the stopped player is free again
+        this.startAndAwaitWrite(third);
+        //and decoding ahead is still enabled on the pool
+        assertTrue(third.getRingDepth() > 0);
+    }
+
+    @Test
+    public void testControlsWhileAllPlaybackThreadsAreInUse() throws Exception {
+        StreamMusicPlayer first = this.newPlayer();
+        StreamMusicPlayer second = this.newPlayer();
+        this.startAndAwaitWrite(first);
+        this.startAndAwaitWrite(second);
+        //the asynchronous operations must not wait for a playback thread
+        second.seekAsync(0).get(10, TimeUnit.SECONDS);
+        first.stopAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(PlayerState.Type.STOPPED, first.getState().getType());
+        second.stopAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(PlayerState.Type.STOPPED, second.getState().getType());
+    }
+
+    @Test
+    public void testDecodingThreadsAreCounted() throws Exception {
+        StreamMusicPlayer first = this.newPlayer();
+        StreamMusicPlayer second = this.newPlayer();
+        StreamMusicPlayer third = this.newPlayer(0);
+        this.startAndAwaitWrite(first);
+        StreamMusicPlayer single = this.newPlayer(0);
+        this.startAndAwaitWrite(single);
+        //one thread is left, not enough for a player decoding ahead
+        try {
+            second.start();
+            fail("the decoding thread has to be counted");
+        }
+        catch(MusicPlayerException e) {
+            assertEquals(PlayerState.Type.LOADED, second.getState().getType());
+        }
+        //but for one that doesn't
+        this.startAndAwaitWrite(third);
+    }
+
+    @Test
+    public void testBlockedControlDoesNotStallOtherPlayers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Song blocking = new Song() {
+
+            @Override
+            public Audio getAudio() throws MusicPlayerException {
+                //e.g. a slow remote stream
+                try {
+                    release.await();
+                }
+                catch(InterruptedException e) {
+                    throw new MusicPlayerException(e);
+                }
+                return new BasicPlaybackSong(PlaybackSchedulerTest.class.getResource("/test.wav")).getAudio();
+            }
+
+            @Override
+            public long getFrameLength() {
+                return -1;
+            }
+
+        };
+        List<CompletableFuture<Void>> blocked = new ArrayList<>();
+        try {
+            //more blocked players than a small shared pool would have threads
+            for(int i = 0; i < 4; ++i) {
+                StreamMusicPlayer player = new StreamMusicPlayer(new MusicListener() {
+
+                    @Override
+                    public void onEnd(MusicEndEvent pEvent) {
+                    }
+
+                    @Override
+                    public void onException(MusicExceptionEvent pEvent) {
+                    }
+
+                }, this.mScheduler);
+                this.mPlayers.add(player);
+                blocked.add(player.insertAsync(blocking, new BlockingDevice()));
+            }
+            StreamMusicPlayer other = this.newPlayer();
+            this.startAndAwaitWrite(other);
+            other.seekAsync(0).get(10, TimeUnit.SECONDS);
+            other.stopAsync().get(10, TimeUnit.SECONDS);
+            assertEquals(PlayerState.Type.STOPPED, other.getState().getType());
+            for(CompletableFuture<Void> future : blocked) {
+                assertFalse(future.isDone());
+            }
+        }
+        finally {
+            release.countDown();
+        }
+        for(CompletableFuture<Void> future : blocked) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private StreamMusicPlayer newPlayer() throws MusicPlayerException {
+        return this.newPlayer(-1);
+    }
+
+    /**
+     * @param pRingDepth -1 for the default
+     */
+    private StreamMusicPlayer newPlayer(int pRingDepth) throws MusicPlayerException {
+        StreamMusicPlayer player = new StreamMusicPlayer(new MusicListener() {
+
+            @Override
+            public void onEnd(MusicEndEvent pEvent) {
+            }
+
+            @Override
+            public void onException(MusicExceptionEvent pEvent) {
+                pEvent.getException().printStackTrace();
+            }
+
+        }, this.mScheduler);
+        if(pRingDepth >= 0) {
+            player.setRingDepth(pRingDepth);
+        }
+        player.insert(new BasicPlaybackSong(this.getClass().getResource("/test.wav")), new BlockingDevice());
+        this.mPlayers.add(player);
+        return player;
+    }
+
+    private void startAndAwaitWrite(StreamMusicPlayer pPlayer) throws Exception {
+        pPlayer.start();
+        assertTrue(((BlockingDevice) pPlayer.getAudioDevice()).mWriting.await(10, TimeUnit.SECONDS));
+    }
+
+    private static final class BlockingDevice extends BaseAudioDevice {
+
+        final CountDownLatch mWriting = new CountDownLatch(1);
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        @Override
+        public int write(byte[] pData, int pStart, int pLength) throws AudioDeviceException {
+            super.write(pData, pStart, pLength);
+            this.mWriting.countDown();
+            try {
+                this.mRelease.await();
+            }
+            catch(InterruptedException e) {
+                throw new AudioDeviceException("interrupted", e);
+            }
+            return pLength;
+        }
+
+        @Override
+        public void flush() {
+            //a stop flushes the device, after that nothing blocks anymore
+            this.mRelease.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * File PlayerStateTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static de.hotware.hotsound.audio.player.PlayerState.Type.DONE;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.EMPTY;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.FAILED;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.LOADED;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.PAUSED;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.PLAYING;
+import static de.hotware.hotsound.audio.player.PlayerState.Type.STOPPED;
+
+/**
+ * checks the transition table of the PlayerState and the checks that are
+ * derived from it
+ */
+public class PlayerStateTest {
+
+    @Test
+    public void testTransitionTable() {
+        assertTransitions(EMPTY, EMPTY, LOADED);
+        assertTransitions(LOADED, EMPTY, LOADED, PLAYING, PAUSED);
+        assertTransitions(PLAYING, EMPTY, PAUSED, STOPPED, DONE, FAILED);
+        assertTransitions(PAUSED, EMPTY, PLAYING, STOPPED, DONE, FAILED);
+        assertTransitions(STOPPED, EMPTY, STOPPED, LOADED, PLAYING, PAUSED);
+        assertTransitions(FAILED, EMPTY, FAILED, LOADED, PLAYING, PAUSED);
+        assertTransitions(DONE, EMPTY, DONE, LOADED, FAILED, PLAYING, PAUSED);
+    }
+
+    @Test
+    public void testWithType() {
+        PlayerState loaded = PlayerState.EMPTY.load(null, null, null);
+        assertEquals(LOADED, loaded.getType());
+        assertEquals(PLAYING, loaded.withType(PLAYING).getType());
+        //a running Type follows the paused flag
+        assertEquals(PAUSED, loaded.withPaused(true).withType(PLAYING).getType());
+        assertTrue(loaded.withPaused(true).isPaused());
+        assertEquals(PLAYING, loaded.withType(PAUSED).getType());
+        assertSame(PlayerState.EMPTY, loaded.withType(PLAYING).withType(EMPTY));
+    }
+
+    @Test
+    public void testWithPaused() {
+        PlayerState playing = PlayerState.EMPTY.load(null, null, null).withType(PLAYING);
+        PlayerState paused = playing.withPaused(true);
+        assertEquals(PAUSED, paused.getType());
+        assertTrue(paused.isPaused());
+        assertEquals(PLAYING, paused.withPaused(false).getType());
+        assertFalse(paused.withPaused(false).isPaused());
+        //an ended playback keeps its Type, the flag applies to the next start
+        PlayerState stopped = paused.withType(STOPPED);
+        assertEquals(STOPPED, stopped.withPaused(true).getType());
+        assertEquals(PAUSED, stopped.withPaused(true).withType(PLAYING).getType());
+        //a player without a Song has always counted as paused
+        assertTrue(PlayerState.EMPTY.isPaused());
+    }
+
+    @Test
+    public void testChecks() {
+        PlayerState empty = PlayerState.EMPTY;
+        PlayerState loaded = empty.load(null, null, null);
+        PlayerState playing = loaded.withType(PLAYING);
+        PlayerState done = playing.withType(DONE);
+
+        assertThrows(new Check() {
+
+            @Override
+            public void run() {
+                PlayerState.EMPTY.checkInitialized();
+            }
+
+        });
+        loaded.checkInitialized();
+
+        for(final PlayerState state : new PlayerState[] {loaded, playing, done}) {
+            state.checkSeek(true);
+            assertThrows(new Check() {
+
+                @Override
+                public void run() {
+                    state.checkSeek(false);
+                }
+
+            });
+        }
+        assertThrows(new Check() {
+
+            @Override
+            public void run() {
+                PlayerState.EMPTY.checkSeek(true);
+            }
+
+        });
+
+        done.checkRestart();
+        playing.withType(STOPPED).checkRestart();
+        for(final PlayerState state : new PlayerState[] {empty, loaded, playing}) {
+            assertThrows(new Check() {
+
+                @Override
+                public void run() {
+                    state.checkRestart();
+                }
+
+            });
+        }
+    }
+
+    private static void assertTransitions(PlayerState.Type pFrom, PlayerState.Type... pAllowed) {
+        Set<PlayerState.Type> allowed = EnumSet.noneOf(PlayerState.Type.class);
+        for(PlayerState.Type type : pAllowed) {
+            allowed.add(type);
+        }
+        for(PlayerState.Type to : PlayerState.Type.values()) {
+            assertEquals(pFrom + " -> " + to, allowed.contains(to), pFrom.canTransitionTo(to));
+        }
+    }
+
+    private static void assertThrows(Check pCheck) {
+        try {
+            pCheck.run();
+            fail("expected an IllegalStateException");
+        }
+        catch(IllegalStateException e) {
+            assertFalse(e.getMessage().isEmpty());
+        }
+    }
+
+    private interface Check {
+
+        void run();
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * File PlayheadTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.sound.sampled.DataLine;
+
+import de.hotware.hotsound.audio.data.AudioDevice;
+import de.hotware.hotsound.audio.data.JavaSoundPlaybackAudioDevice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * checks the mapping of played frames to positions in the Audio with a stub
+ * DataLine whose frame position is set by hand
+ */
+public class PlayheadTest {
+
+    private static final int FRAME_SIZE = 4;
+    private static final float FRAME_RATE = 1000F;
+    private static final int CHUNK = 100 * FRAME_SIZE;
+
+    @Test
+    public void testNothingWritten() {
+        Playhead playhead = new Playhead(new StubLine().device(), FRAME_SIZE, FRAME_RATE);
+        assertEquals(-1, playhead.getFrame());
+        assertEquals(-1, playhead.getMicroseconds());
+    }
+
+    @Test
+    public void testPlayerWithoutSong() throws Exception {
+        StreamMusicPlayer player = new StreamMusicPlayer();
+        try {
+            //may be polled by a UI before anything has been inserted
+            assertEquals(-1, player.getPlayheadFrame());
+            assertEquals(-1, player.getPlayheadMicroseconds());
+            assertEquals(-1, player.getOutputLatency());
+        }
+        finally {
+            player.close();
+        }
+    }
+
+    @Test
+    public void testFramesDecodedAhead() {
+        StubLine line = new StubLine();
+        Playhead playhead = new Playhead(line.device(), FRAME_SIZE, FRAME_RATE);
+        for(int i = 0; i < 3; ++i) {
+            playhead.beforeWrite(i * 100, CHUNK);
+            playhead.afterWrite(CHUNK);
+        }
+        //three chunks are written, the line is in the middle of the second
+        line.mPosition = 150;
+        assertEquals(150, playhead.getFrame());
+        assertEquals(150000, playhead.getMicroseconds());
+        assertEquals(150, playhead.getFramesPending());
+        //a seek: the chunks decoded before still play at their old positions
+        playhead.beforeWrite(5000, CHUNK);
+        playhead.afterWrite(CHUNK);
+        line.mPosition = 250;
+        assertEquals(250, playhead.getFrame());
+        assertEquals(150, playhead.getFramesPending());
+        line.mPosition = 320;
+        assertEquals(5020, playhead.getFrame());
+        assertEquals(5020000, playhead.getMicroseconds());
+        assertEquals(80, playhead.getFramesPending());
+        //the line can't play more than has been written
+        line.mPosition = 1000;
+        assertEquals(5100, playhead.getFrame());
+        assertEquals(0, playhead.getFramesPending());
+    }
+
+    @Test
+    public void testFramesBufferedInDevice() {
+        StubLine line = new StubLine();
+        //100 frames of a previous Song are still in the line
+        line.mPosition = 1000;
+        line.mAvailable = line.mBufferSize - CHUNK;
+        Playhead playhead = new Playhead(line.device(), FRAME_SIZE, FRAME_RATE);
+        playhead.beforeWrite(0, CHUNK);
+        playhead.afterWrite(CHUNK);
+        line.mPosition = 1050;
+        assertEquals(0, playhead.getFrame());
+        assertEquals(100, playhead.getFramesPending());
+        line.mPosition = 1160;
+        assertEquals(60, playhead.getFrame());
+        assertEquals(40, playhead.getFramesPending());
+    }
+
+    @Test
+    public void testWithoutDataLine() {
+        AudioDevice device = (AudioDevice) Proxy.newProxyInstance(AudioDevice.class.getClassLoader(),
+                new Class<?>[] {AudioDevice.class}, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                        return null;
+                    }
+
+                });
+        Playhead playhead = new Playhead(device, FRAME_SIZE, FRAME_RATE);
+        playhead.beforeWrite(300, CHUNK);
+        //nothing counts as played before the write returned
+        assertEquals(300, playhead.getFrame());
+        assertEquals(100, playhead.getFramesPending());
+        playhead.afterWrite(CHUNK);
+        assertEquals(400, playhead.getFrame());
+        assertEquals(0, playhead.getFramesPending());
+    }
+
+    private static final class StubLine implements InvocationHandler {
+
+        int mBufferSize = 40 * CHUNK;
+        int mAvailable = this.mBufferSize;
+        long mPosition;
+
+        JavaSoundPlaybackAudioDevice device() {
+            final DataLine line = (DataLine) Proxy.newProxyInstance(DataLine.class.getClassLoader(),
+                    new Class<?>[] {DataLine.class}, this);
+            return (JavaSoundPlaybackAudioDevice) Proxy.newProxyInstance(
+                    JavaSoundPlaybackAudioDevice.class.getClassLoader(),
+                    new Class<?>[] {JavaSoundPlaybackAudioDevice.class}, new InvocationHandler() {
+
+                        @Override
+                        public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                            return pMethod.getName().equals("getDataLine") ? line : null;
+                        }
+
+                    });
+        }
+
+        @Override
+        public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+            switch(pMethod.getName()) {
+                case "getBufferSize":
+                    return this.mBufferSize;
+                case "available":
+                    return this.mAvailable;
+                case "getLongFramePosition":
+                    return this.mPosition;
+                default:
+                    throw new UnsupportedOperationException(pMethod.getName());
+            }
+        }
+
+    }
+
+}
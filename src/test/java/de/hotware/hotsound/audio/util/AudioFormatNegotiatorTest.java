@@ -0,0 +1,173 @@
+/**
+ * File AudioFormatNegotiatorTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * negotiates against stub Mixers whose SourceDataLines support only the
+ * given formats
+ */
+public class AudioFormatNegotiatorTest {
+
+    private static final float RATE = 96000F;
+
+    @Test
+    public void testDirect() {
+        AudioFormat source = signed(24, false);
+        AudioFormatNegotiator negotiator = negotiator(supported(24, true, false), supported(16, true, false));
+        assertSame(source, negotiator.negotiate(source, false));
+        assertSame(source, negotiator.negotiate(source, true));
+    }
+
+    @Test
+    public void testSameSizeOtherByteOrder() {
+        AudioFormatNegotiator negotiator = negotiator(supported(24, true, true), supported(32, true, false));
+        assertFormat(signed(24, true), negotiator.negotiate(signed(24, false), false));
+    }
+
+    @Test
+    public void testSameSizeOtherSignedness() {
+        AudioFormat source = new AudioFormat(RATE, 16, 2, false, false);
+        assertFormat(signed(16, false),
+                negotiator(supported(16, true, true), supported(16, true, false)).negotiate(source, false));
+        assertFormat(signed(16, true),
+                negotiator(supported(16, true, true), supported(24, true, false)).negotiate(source, false));
+    }
+
+    @Test
+    public void testWider() {
+        AudioFormatNegotiator negotiator = negotiator(supported(16, true, false), supported(32, true, true),
+                floating(AudioSystem.NOT_SPECIFIED));
+        assertFormat(signed(32, true), negotiator.negotiate(signed(24, false), false));
+    }
+
+    @Test
+    public void testFloat() {
+        AudioFormatNegotiator negotiator = negotiator(supported(16, true, false), floating(AudioSystem.NOT_SPECIFIED));
+        assertFormat(floating(RATE), negotiator.negotiate(signed(24, false), false));
+        //float is no option if only signed formats may be chosen
+        assertFormat(signed(16, false), negotiator.negotiate(signed(24, false), true));
+    }
+
+    @Test
+    public void testNarrower() {
+        AudioFormatNegotiator negotiator = negotiator(supported(8, true, false), supported(16, true, true));
+        assertFormat(signed(16, true), negotiator.negotiate(signed(24, false), false));
+    }
+
+    @Test
+    public void testSignedOnly() {
+        AudioFormat source = new AudioFormat(RATE, 8, 2, false, false);
+        AudioFormatNegotiator negotiator = negotiator(supported(8, false, false), supported(16, true, false));
+        assertSame(source, negotiator.negotiate(source, false));
+        assertFormat(signed(16, false), negotiator.negotiate(source, true));
+        //float sources fall back to the widest signed format
+        negotiator = negotiator(floating(AudioSystem.NOT_SPECIFIED), supported(32, true, false),
+                supported(16, true, false));
+        assertFormat(floating(RATE), negotiator.negotiate(floating(RATE), false));
+        assertFormat(signed(32, false), negotiator.negotiate(floating(RATE), true));
+    }
+
+    @Test
+    public void testNone() {
+        AudioFormatNegotiator negotiator = negotiator(new AudioFormat(48000F, 16, 2, true, false));
+        assertNull(negotiator.negotiate(signed(16, false), false));
+        assertEquals(48000F,
+                negotiator.getSupportedSampleRate(signed(16, false), new float[] {44100F, 48000F, 88200F}), 0F);
+    }
+
+    @Test
+    public void testDecisionsAreCached() {
+        final int[] queries = new int[1];
+        AudioFormatNegotiator negotiator = AudioFormatNegotiator.getInstance(mixer(queries, supported(16, true, false)));
+        AudioFormat first = negotiator.negotiate(signed(24, false), false);
+        assertFormat(signed(16, false), first);
+        assertSame(first, negotiator.negotiate(signed(24, false), false));
+        negotiator.negotiate(signed(32, false), false);
+        assertEquals(1, queries[0]);
+    }
+
+    /**
+     * AudioFormat doesn't implement equals
+     */
+    private static void assertFormat(AudioFormat pExpected, AudioFormat pActual) {
+        assertTrue("expected " + pExpected + " but was " + pActual,
+                pActual != null && pExpected.matches(pActual) && pActual.matches(pExpected));
+    }
+
+    private static AudioFormat signed(int pSampleSizeInBits, boolean pBigEndian) {
+        return new AudioFormat(RATE, pSampleSizeInBits, 2, true, pBigEndian);
+    }
+
+    private static AudioFormat floating(float pSampleRate) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, pSampleRate, 32, 2, 8, pSampleRate, false);
+    }
+
+    private static AudioFormat supported(int pSampleSizeInBits, boolean pSigned, boolean pBigEndian) {
+        return new AudioFormat(AudioSystem.NOT_SPECIFIED, pSampleSizeInBits, 2, pSigned, pBigEndian);
+    }
+
+    private static AudioFormatNegotiator negotiator(AudioFormat... pFormats) {
+        return AudioFormatNegotiator.getInstance(mixer(new int[1], pFormats));
+    }
+
+    private static Mixer mixer(final int[] pQueries, final AudioFormat... pFormats) {
+        //Mixer.Info uses identity, every stub gets its own negotiator
+        final Mixer.Info info = new Mixer.Info("stub", "hotsound", "stub mixer", "1") {
+        };
+        return (Mixer) Proxy.newProxyInstance(Mixer.class.getClassLoader(), new Class<?>[] {Mixer.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object pProxy, Method pMethod, Object[] pArgs) {
+                        switch(pMethod.getName()) {
+                            case "getMixerInfo":
+                                return info;
+                            case "getSourceLineInfo":
+                                ++pQueries[0];
+                                return new Line.Info[] {new DataLine.Info(SourceDataLine.class, pFormats, 0,
+                                        AudioSystem.NOT_SPECIFIED)};
+                            default:
+                                throw new UnsupportedOperationException(pMethod.getName());
+                        }
+                    }
+
+                });
+    }
+
+}
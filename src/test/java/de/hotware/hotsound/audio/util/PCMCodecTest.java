@@ -0,0 +1,86 @@
+/**
+ * File PCMCodecTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PCMCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for(int bits : new int[] {8, 16, 24, 32}) {
+            for(boolean signed : new boolean[] {true, false}) {
+                for(boolean bigEndian : new boolean[] {true, false}) {
+                    AudioFormat format = new AudioFormat(44100, bits, 2, signed, bigEndian);
+                    PCMCodec codec = new PCMCodec(format);
+                    int frames = 1000;
+                    byte[] data = new byte[frames * codec.getFrameSize()];
+                    random.nextBytes(data);
+                    if(bits == 32) {
+                        //floats only hold 24 bits exactly
+                        int low = bigEndian ? 3 : 0;
+                        for(int i = low; i < data.length; i += 4) {
+                            data[i] = 0;
+                        }
+                    }
+                    float[] interleaved = new float[frames * 2];
+                    codec.decode(data, 0, interleaved, 0, frames);
+                    byte[] encoded = new byte[data.length];
+                    codec.encode(interleaved, 0, encoded, 0, frames);
+                    assertArrayEquals(format.toString(), data, encoded);
+
+                    float[][] planar = new float[2][frames];
+                    codec.decodePlanar(data, 0, planar, 0, frames);
+                    for(int i = 0; i < frames; ++i) {
+                        assertEquals(interleaved[i * 2], planar[0][i], 0f);
+                        assertEquals(interleaved[i * 2 + 1], planar[1][i], 0f);
+                    }
+                    encoded = new byte[data.length];
+                    codec.encodePlanar(planar, 0, encoded, 0, frames);
+                    assertArrayEquals(format.toString(), data, encoded);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testScaleAndClipping() {
+        PCMCodec codec = new PCMCodec(new AudioFormat(44100, 16, 1, true, false));
+        byte[] data = new byte[8];
+        codec.encode(new float[] {0.5f, -1f, 2f, -2f}, 0, data, 0, 4);
+        assertArrayEquals(new byte[] {0x00, 0x40, 0x00, (byte) 0x80, (byte) 0xFF, 0x7F, 0x00, (byte) 0x80}, data);
+        float[] samples = new float[4];
+        codec.decode(data, 0, samples, 0, 4);
+        assertArrayEquals(new float[] {0.5f, -1f, 32767f / 32768f, -1f}, samples, 0f);
+
+        PCMCodec unsigned = new PCMCodec(new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, 44100, 8, 1, 1, 44100, false));
+        unsigned.decode(new byte[] {(byte) 0x80, 0x00, (byte) 0xFF}, 0, samples, 0, 3);
+        assertArrayEquals(new float[] {0f, -1f, 127f / 128f}, new float[] {samples[0], samples[1], samples[2]}, 0f);
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * File PCMConverterTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PCMConverterTest {
+
+    private static List<AudioFormat> formats() {
+        List<AudioFormat> ret = new ArrayList<>();
+        for(int bits : new int[] {8, 16, 24, 32}) {
+            for(boolean signed : new boolean[] {true, false}) {
+                for(boolean bigEndian : new boolean[] {true, false}) {
+                    if(bits > 8 || !bigEndian) {
+                        ret.add(new AudioFormat(44100, bits, 2, signed, bigEndian));
+                    }
+                }
+            }
+        }
+        ret.add(new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 2, 8, 44100, false));
+        ret.add(new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 2, 8, 44100, true));
+        return ret;
+    }
+
+    @Test
+    public void testWideningRoundTrip() {
+        Random random = new Random(42);
+        int frames = 3000;
+        for(AudioFormat source : formats()) {
+            if(AudioFormat.Encoding.PCM_FLOAT.equals(source.getEncoding())) {
+                continue;
+            }
+            byte[] data = new byte[frames * source.getFrameSize()];
+            random.nextBytes(data);
+            for(AudioFormat target : formats()) {
+                if(target.getSampleSizeInBits() < source.getSampleSizeInBits() ||
+                        AudioFormat.Encoding.PCM_FLOAT.equals(target.getEncoding()) &&
+                        source.getSampleSizeInBits() > 16) {
+                    //floats only hold 24 bits exactly
+                    continue;
+                }
+                byte[] converted = new byte[frames * target.getFrameSize()];
+                new PCMConverter(source, target).convert(data, 0, converted, 0, frames);
+                byte[] back = new byte[data.length];
+                new PCMConverter(target, source).convert(converted, 0, back, 0, frames);
+                assertArrayEquals(source + " -> " + target, data, back);
+            }
+        }
+    }
+
+    @Test
+    public void testValues() {
+        AudioFormat source = new AudioFormat(44100, 16, 1, true, false);
+        byte[] data = {0x34, 0x12, (byte) 0xCC, (byte) 0xED};
+        assertArrayEquals(new byte[] {0x12, (byte) 0xED},
+                convert(source, new AudioFormat(44100, 8, 1, true, false), data));
+        assertArrayEquals(new byte[] {(byte) 0x92, 0x6D},
+                convert(source, new AudioFormat(44100, 8, 1, false, false), data));
+        assertArrayEquals(new byte[] {0x12, 0x34, 0x00, (byte) 0xED, (byte) 0xCC, 0x00},
+                convert(source, new AudioFormat(44100, 24, 1, true, true), data));
+        assertArrayEquals(new byte[] {(byte) 0x92, 0x34, (byte) 0x6D, (byte) 0xCC},
+                convert(source, new AudioFormat(44100, 16, 1, false, true), data));
+        AudioFormat floatFormat = new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 44100, 32, 1, 4, 44100, false);
+        float[] samples = new float[2];
+        new PCMCodec(floatFormat).decode(convert(source, floatFormat, data), 0, samples, 0, 2);
+        assertEquals(0x1234 / 32768f, samples[0], 0f);
+        assertEquals(-0x1234 / 32768f, samples[1], 0f);
+    }
+
+    private static byte[] convert(AudioFormat pSource, AudioFormat pTarget, byte[] pData) {
+        int frames = pData.length / pSource.getFrameSize();
+        byte[] ret = new byte[frames * pTarget.getFrameSize()];
+        new PCMConverter(pSource, pTarget).convert(pData, 0, ret, 0, frames);
+        return ret;
+    }
+
+}
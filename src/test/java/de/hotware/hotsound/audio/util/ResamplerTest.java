@@ -0,0 +1,206 @@
+/**
+ * File ResamplerTest.java
+ * ---------------------------------------------------------
+ * <p/>
+ * Copyright (C) 2012 Martin Braun (martinbraun123@aol.com)
+ * <p/>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * <p/>
+ * - The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * - The origin of the software must not be misrepresented.
+ * <p/>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * <p/>
+ * TL;DR: As long as you clearly give me credit for this Software, you are free to use as you like, even in commercial software, but don't blame me
+ * if it breaks something.
+ */
+package de.hotware.hotsound.audio.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResamplerTest {
+
+    private static final double[][] RATES = {
+            {44100, 48000},
+            {48000, 44100},
+            {22050, 44100},
+            {44100, 22050},
+            {44100, 44100},
+            {8000, 44100},
+            {96000, 44100}
+    };
+
+    /**
+     * RMS error bounds of a resampled 1 kHz sine, in the order of
+     * {@link Resampler.Quality#values()}
+     */
+    private static final double[] SINE_BOUNDS = {1e-3, 1e-4, 3e-5, 3e-6};
+
+    @Test
+    public void testOutputLength() {
+        for(double[] rates : RATES) {
+            for(Resampler.Quality quality : Resampler.Quality.values()) {
+                for(int frames : new int[] {1, 100, 4410, 10007}) {
+                    Resampler resampler = new Resampler(2, rates[0], rates[1], quality);
+                    float[] out = resample(resampler, new float[frames * 2], frames);
+                    long expected = (long) Math.ceil(frames * rates[1] / rates[0] - 1e-9);
+                    assertEquals(rates[0] + " -> " + rates[1] + " " + quality + " " + frames,
+                            expected, out.length / 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * output frame k has to be taken at input frame k * inputRate / outputRate
+     */
+    @Test
+    public void testPositionAlignment() {
+        for(double[] rates : RATES) {
+            for(Resampler.Quality quality : Resampler.Quality.values()) {
+                //slow enough for every filter and for linear interpolation
+                double frequency = 100;
+                int frames = (int) rates[0];
+                float[] in = sine(frequency, rates[0], frames, 1);
+                Resampler resampler = new Resampler(1, rates[0], rates[1], quality);
+                float[] out = resample(resampler, in, frames);
+                int margin = resampler.getTaps() * (int) Math.ceil(rates[1] / rates[0]);
+                double maxError = 0;
+                for(int k = margin; k < out.length - margin; ++k) {
+                    double expected = 0.5 * Math.sin(2 * Math.PI * frequency * k / rates[1]);
+                    maxError = Math.max(maxError, Math.abs(out[k] - expected));
+                }
+                //one frame off would be an error of about 2 * pi * 100 / 96000 * 0.5
+                assertTrue(rates[0] + " -> " + rates[1] + " " + quality + ": " + maxError, maxError < 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testPassbandAccuracy() {
+        double frequency = 1000;
+        int frames = 44100;
+        float[] in = sine(frequency, 44100, frames, 1);
+        for(Resampler.Quality quality : Resampler.Quality.values()) {
+            Resampler resampler = new Resampler(1, 44100, 48000, quality);
+            float[] out = resample(resampler, in, frames);
+            int margin = resampler.getTaps() * 2;
+            double sum = 0;
+            for(int k = margin; k < out.length - margin; ++k) {
+                double error = out[k] - 0.5 * Math.sin(2 * Math.PI * frequency * k / 48000);
+                sum += error * error;
+            }
+            double rms = Math.sqrt(sum / (out.length - 2 * margin));
+            assertTrue(quality + ": " + rms, rms < SINE_BOUNDS[quality.ordinal()]);
+        }
+    }
+
+    /**
+     * feeding the input in random chunks and taking the output in small
+     * portions has to give the same result as resampling it at once
+     */
+    @Test
+    public void testStreamingMatchesOneShot() {
+        Random random = new Random(42);
+        int frames = 20000;
+        float[] in = new float[frames * 2];
+        for(int i = 0; i < in.length; ++i) {
+            in[i] = random.nextFloat() * 2 - 1;
+        }
+        for(double[] rates : RATES) {
+            for(Resampler.Quality quality : Resampler.Quality.values()) {
+                float[] expected = resample(new Resampler(2, rates[0], rates[1], quality), in, frames);
+                Resampler resampler = new Resampler(2, rates[0], rates[1], quality);
+                float[] out = new float[expected.length + 64];
+                int written = 0;
+                int offset = 0;
+                while(offset < frames) {
+                    int chunk = Math.min(frames - offset, 1 + random.nextInt(700));
+                    written += drain(resampler, in, offset, chunk, out, written, 1 + random.nextInt(300));
+                    offset += chunk;
+                }
+                written += drain(resampler, null, 0, 0, out, written, 1 + random.nextInt(300));
+                assertArrayEquals(rates[0] + " -> " + rates[1] + " " + quality,
+                        expected, Arrays.copyOf(out, written * 2), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testRequiredInputFrames() {
+        for(double[] rates : RATES) {
+            for(Resampler.Quality quality : Resampler.Quality.values()) {
+                for(int wanted : new int[] {1, 17, 500, 1000}) {
+                    float[] out = new float[wanted * 4];
+                    Resampler resampler = new Resampler(1, rates[0], rates[1], quality);
+                    int required = resampler.getRequiredInputFrames(wanted);
+                    assertTrue(resampler.getMaxOutputFrames(required) >= wanted);
+                    assertEquals(wanted, resampler.process(new float[required], 0, required, out, 0, wanted));
+                    //one frame less isn't enough
+                    resampler = new Resampler(1, rates[0], rates[1], quality);
+                    assertTrue(resampler.getMaxOutputFrames(required - 1) < wanted);
+                    assertTrue(resampler.process(new float[required], 0, required - 1, out, 0, wanted) < wanted);
+                }
+            }
+        }
+    }
+
+    private static float[] sine(double pFrequency, double pRate, int pFrames, int pChannels) {
+        float[] ret = new float[pFrames * pChannels];
+        for(int i = 0; i < pFrames; ++i) {
+            float value = (float) (0.5 * Math.sin(2 * Math.PI * pFrequency * i / pRate));
+            Arrays.fill(ret, i * pChannels, (i + 1) * pChannels, value);
+        }
+        return ret;
+    }
+
+    /**
+     * resamples and flushes the whole input at once
+     */
+    private static float[] resample(Resampler pResampler, float[] pIn, int pFrames) {
+        int channels = pResampler.getChannels();
+        float[] out = new float[(pResampler.getMaxOutputFrames(pFrames) + pResampler.getTaps() * 4 + 8) * channels];
+        int written = pResampler.process(pIn, 0, pFrames, out, 0, out.length / channels);
+        written += pResampler.flush(out, written * channels, out.length / channels - written);
+        return Arrays.copyOf(out, written * channels);
+    }
+
+    /**
+     * passes the input and then the flush to the Resampler, taking at most
+     * pPortion frames per call
+     */
+    private static int drain(Resampler pResampler, float[] pIn, int pOffset, int pFrames, float[] pOut, int pWritten,
+            int pPortion) {
+        int channels = pResampler.getChannels();
+        int written = 0;
+        int frames;
+        if(pIn == null) {
+            frames = pResampler.flush(pOut, (pWritten + written) * channels, pPortion);
+            written += frames;
+            while(frames == pPortion) {
+                frames = pResampler.process(pOut, 0, 0, pOut, (pWritten + written) * channels, pPortion);
+                written += frames;
+            }
+            return written;
+        }
+        frames = pResampler.process(pIn, pOffset * channels, pFrames, pOut, (pWritten + written) * channels, pPortion);
+        written += frames;
+        while(frames == pPortion) {
+            frames = pResampler.process(pIn, 0, 0, pOut, (pWritten + written) * channels, pPortion);
+            written += frames;
+        }
+        return written;
+    }
+
+}